@@ -0,0 +1,156 @@
+/**
+ * 	This file is part of PTL Trader.
+ *
+ * 	Copyright © 2011-2021 Quantverse OÜ. All Rights Reserved.
+ *
+ *  PTL Trader is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  PTL Trader is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with PTL Trader. If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.pairtradinglab.ptltrader.trading;
+
+import static org.mockito.Mockito.*;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.log4j.Logger;
+import org.openjdk.jmh.annotations.*;
+
+import com.google.common.eventbus.EventBus;
+import com.ib.client.EClientSocket;
+import com.ib.client.TickType;
+import com.pairtradinglab.ptltrader.ActiveCores;
+import com.pairtradinglab.ptltrader.LoggerFactory;
+import com.pairtradinglab.ptltrader.LoggerFactoryImpl;
+import com.pairtradinglab.ptltrader.RuntimeParams;
+import com.pairtradinglab.ptltrader.StringXorProcessor;
+import com.pairtradinglab.ptltrader.events.AccountConnected;
+import com.pairtradinglab.ptltrader.ib.SimpleWrapper;
+import com.pairtradinglab.ptltrader.model.PairStrategy;
+import com.pairtradinglab.ptltrader.model.Portfolio;
+import com.pairtradinglab.ptltrader.model.Settings;
+import com.pairtradinglab.ptltrader.trading.events.GenericTick;
+import com.pairtradinglab.ptltrader.trading.events.PortfolioUpdate;
+import com.pairtradinglab.ptltrader.trading.events.Tick;
+
+/**
+ * Quote handling of a started and ready engine running the ratio model: a tick delivered as a control message,
+ * and a burst of ticks drained from the tick ring. The IB side is mocked and the entry threshold is out of
+ * reach, so every quote runs the trade logic without placing orders.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ConfinedEngineBenchmark {
+	private static final String STOCK1 = "NYSE:A";
+	private static final String STOCK2 = "NASDAQ:B";
+	private static final int BURST = 16;
+	
+	private ConfinedEngine ce;
+	private TickRing tickRing;
+	private final ControlMessage ticksPending = new ControlMessage(ControlMessage.TYPE_TICKS_PENDING, null);
+	private double bid1, bid2;
+	private int seq;
+	
+	@SuppressWarnings("unchecked")
+	@Setup(Level.Trial)
+	public void setUp() {
+		RuntimeParams runtime = mock(RuntimeParams.class);
+		ActivityDetector detector = mock(ActivityDetector.class);
+		when(detector.isExchangeActive(anyString())).thenReturn(true);
+		
+		LoggerFactory lf = new LoggerFactoryImpl(runtime);
+		Logger l = lf.createLogger(ConfinedEngineBenchmark.class.getSimpleName());
+		EClientSocket es = mock(EClientSocket.class);
+		when(es.isConnected()).thenReturn(true);
+		SimpleWrapper wrapper = mock(SimpleWrapper.class);
+		when(wrapper.getIbClientId()).thenReturn(1);
+		when(wrapper.getIbSocket()).thenReturn(es);
+		when(wrapper.getUid()).thenReturn("");
+		Map<String, SimpleWrapper> wrapperMap = mock(Map.class);
+		when(wrapperMap.get(any())).thenReturn(wrapper);
+		
+		EventBus bus = new EventBus("bus_benchmark");
+		Portfolio pf = new Portfolio(bus, null, lf, "abcd");
+		pf.setAccountCode("xxx");
+		pf.setEquity(30000);
+		PairStrategy ps = new PairStrategy("xyz", pf, STOCK1, STOCK2, 0, 0, bus, new TickRouter(l), null);
+		ps.injectCore(mock(PairTradingCore.class));
+		pf.addPairStrategy(ps);
+		
+		SyntheticPairSeries series = new SyntheticPairSeries(250, 42);
+		PairTradingModelRatio ratio = new PairTradingModelRatio(new MarketRates(), new MarketRates(), l);
+		ratio.initialize();
+		ratio.setEntryThreshold(1000);
+		ratio.setPrices(series.prices1, series.prices2);
+		bid1 = series.prices1[series.length()-1];
+		bid2 = series.prices2[series.length()-1];
+		
+		Set<String> connectedAccounts = new HashSet<String>();
+		ce = new ConfinedEngine(ratio, ps, wrapperMap, lf, mock(MarketDataProvider.class), bus,
+				new PairDataProviderFactoryImpl(bus, new HistoricalDataProviderFactoryImpl(mock(List.class), new Settings(runtime, new StringXorProcessor()), new HistoricalBarCache(runtime, new DailyBarStore(runtime), l), l)),
+				connectedAccounts, mock(ActiveCores.class), detector);
+		tickRing = ce.enableTickRing(1, 2);
+		
+		ce.start();
+		ce.onAccountConnected(new AccountConnected("xxx"));
+		// first portfolio updates make the engine ready
+		ce.onPortfolioUpdate(new PortfolioUpdate("xxx", ContractExt.createFromGoogleSymbol(STOCK1, false)));
+		ce.onPortfolioUpdate(new PortfolioUpdate("xxx", ContractExt.createFromGoogleSymbol(STOCK2, false)));
+		ce.onGenericTick(new GenericTick(STOCK1, TickType.SHORTABLE, 3));
+		ce.onGenericTick(new GenericTick(STOCK2, TickType.SHORTABLE, 3));
+		ce.onTick(new Tick(STOCK1, TickType.BID, bid1, 1));
+		ce.onTick(new Tick(STOCK1, TickType.ASK, bid1+0.01, 1));
+		ce.onTick(new Tick(STOCK2, TickType.BID, bid2, 1));
+		ce.onTick(new Tick(STOCK2, TickType.ASK, bid2+0.01, 1));
+	}
+	
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		ce.stop(false);
+	}
+	
+	// small oscillation around the last close, alternating the legs and sides
+	private double nextPrice(int s) {
+		double base = (s & 1)==0 ? bid1 : bid2;
+		return base + 0.01*((s >> 2) & 7) + ((s & 2)==0 ? 0 : 0.01);
+	}
+	
+	private static int field(int s) {
+		return (s & 2)==0 ? TickType.BID : TickType.ASK;
+	}
+	
+	@Benchmark
+	public void tickMessage() {
+		int s = seq++;
+		ce.handleMessage(new ControlMessage(ControlMessage.TYPE_TICK, new Tick((s & 1)==0 ? STOCK1 : STOCK2, field(s), nextPrice(s), 1)));
+	}
+	
+	@Benchmark
+	@OperationsPerInvocation(BURST)
+	public void tickRingBurst() {
+		long now = System.nanoTime();
+		for (int i=0; i<BURST; i++) {
+			int s = seq++;
+			tickRing.offer((s & 1)==0 ? 1 : 2, field(s), nextPrice(s), 1, now);
+		}
+		ce.handleMessage(ticksPending);
+	}
+	
+}
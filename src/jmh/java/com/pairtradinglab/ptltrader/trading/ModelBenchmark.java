@@ -0,0 +1,105 @@
+/**
+ * 	This file is part of PTL Trader.
+ *
+ * 	Copyright © 2011-2021 Quantverse OÜ. All Rights Reserved.
+ *
+ *  PTL Trader is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  PTL Trader is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with PTL Trader. If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.pairtradinglab.ptltrader.trading;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.log4j.Logger;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * OLS and the ratio model, both recalculated from a year of synthetic daily closes as on every new historical
+ * bar, the rolling OLS moved by one bar, plus the z-score read again with the same quote (cached evaluation)
+ * and on a new quote.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ModelBenchmark {
+	
+	@State(Scope.Thread)
+	public static class Ols {
+		@Param({"30", "120"})
+		public int linRegPeriod;
+		
+		final OlsCalculator olsc = new OlsCalculator();
+		RollingOls rolling;
+		int next = 0;
+		
+		@Setup(Level.Trial)
+		public void setUp() {
+			rolling = new RollingOls(linRegPeriod);
+		}
+	}
+	
+	private SyntheticPairSeries series;
+	private PairTradingModelRatio ratio;
+	private double bid1;
+	private boolean uptick = false;
+	
+	@Setup(Level.Trial)
+	public void setUp() {
+		series = new SyntheticPairSeries(250, 42);
+		ratio = new PairTradingModelRatio(new MarketRates(), new MarketRates(), Logger.getLogger(ModelBenchmark.class));
+		ratio.initialize();
+		ratio.setPrices(series.prices1, series.prices2);
+		MarketRates mr1 = ratio.getMr1();
+		MarketRates mr2 = ratio.getMr2();
+		bid1 = series.prices1[series.length()-1];
+		mr1.setBid(bid1);
+		mr1.setAsk(series.prices1[series.length()-1]+0.01);
+		mr2.setBid(series.prices2[series.length()-1]);
+		mr2.setAsk(series.prices2[series.length()-1]+0.01);
+	}
+	
+	@Benchmark
+	public OlsResult olsCalculate(Ols ols) {
+		return ols.olsc.calculate(ols.linRegPeriod, 0, series.prices1, series.prices2);
+	}
+	
+	@Benchmark
+	public OlsResult olsRollingAdd(Ols ols) {
+		int i = ols.next;
+		ols.next = (i+1)%series.length();
+		ols.rolling.add(series.prices1[i], series.prices2[i]);
+		return ols.rolling.getResult();
+	}
+	
+	@Benchmark
+	public void ratioSetPrices() {
+		ratio.setPrices(series.prices1, series.prices2);
+	}
+	
+	@Benchmark
+	public double ratioZScore() {
+		return ratio.getZScore(PairTradingModel.ZSCORE_AUTO);
+	}
+	
+	@Benchmark
+	public double ratioZScoreNewQuote() {
+		// the bid moves by a tick back and forth, so every invocation evaluates the model again
+		uptick = !uptick;
+		ratio.getMr1().setBid(uptick ? bid1+0.01 : bid1);
+		return ratio.getZScore(PairTradingModel.ZSCORE_AUTO);
+	}
+	
+}
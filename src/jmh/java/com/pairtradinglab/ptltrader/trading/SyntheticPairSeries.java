@@ -0,0 +1,52 @@
+/**
+ * 	This file is part of PTL Trader.
+ *
+ * 	Copyright © 2011-2021 Quantverse OÜ. All Rights Reserved.
+ *
+ *  PTL Trader is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  PTL Trader is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with PTL Trader. If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.pairtradinglab.ptltrader.trading;
+
+import java.util.Random;
+
+/**
+ * Reproducible daily closes of a cointegrated pair for the benchmarks: the first leg is a slowly mean reverting
+ * log price around 50, the second one follows it with a fixed hedge ratio plus a faster mean reverting spread.
+ * Both stay in range, so benchmarks can cycle through the series.
+ */
+public final class SyntheticPairSeries {
+	public final double[] prices1;
+	public final double[] prices2;
+	
+	public SyntheticPairSeries(int length, long seed) {
+		Random r = new Random(seed);
+		prices1 = new double[length];
+		prices2 = new double[length];
+		double base = Math.log(50);
+		double lp1 = base;
+		double spread = 0;
+		for (int i=0; i<length; i++) {
+			lp1 = 0.995*lp1 + 0.005*base + 0.015*r.nextGaussian();
+			spread = 0.9*spread + 0.5*r.nextGaussian(); // AR(1) spread
+			double p1 = Math.exp(lp1);
+			prices1[i] = p1;
+			prices2[i] = Math.max(1, 0.6*p1 + 2 + spread);
+		}
+	}
+	
+	public int length() {
+		return prices1.length;
+	}
+	
+}
@@ -0,0 +1,95 @@
+/**
+ * 	This file is part of PTL Trader.
+ *
+ * 	Copyright © 2011-2021 Quantverse OÜ. All Rights Reserved.
+ *
+ *  PTL Trader is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  PTL Trader is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with PTL Trader. If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.pairtradinglab.ptltrader.trading.kernelfx;
+
+import com.pairtradinglab.ptltrader.trading.SyntheticPairSeries;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of one daily bar in the Kalman sub-models, measured on warmed-up models cycling through a synthetic pair.
+ * The single filter bank stands for the former single filter model (SubModelKalman) the bank replaced.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class KalmanBenchmark {
+    private static final int WARMUP_BARS = 500;
+
+    @Param({"0", "1"})
+    public int transform;
+
+    private SyntheticPairSeries series;
+    private SubModelKalmanGrid grid;
+    private SubModelKalmanAuto auto;
+    private KalmanBank single;
+    private int bar;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        series = new SyntheticPairSeries(4096, 42);
+        grid = new SubModelKalmanGrid();
+        grid.setTransform(transform);
+        grid.init();
+        auto = new SubModelKalmanAuto();
+        auto.setTransform(transform);
+        auto.init();
+        single = new KalmanBank();
+        single.add(0.0001, 0.001);
+        for (bar=0; bar<WARMUP_BARS; bar++) {
+            grid.update(series.prices1[bar], series.prices2[bar]);
+            auto.update(series.prices1[bar], series.prices2[bar]);
+            single.update(grid.transformP1(series.prices1[bar]), grid.transformP2(series.prices2[bar]));
+        }
+    }
+
+    private int nextBar() {
+        if (++bar >= series.length()) bar = 0;
+        return bar;
+    }
+
+    @Benchmark
+    public double singleUpdate() {
+        int i = nextBar();
+        single.update(grid.transformP1(series.prices1[i]), grid.transformP2(series.prices2[i]));
+        return single.getSq(0);
+    }
+
+    @Benchmark
+    public boolean gridUpdate() {
+        int i = nextBar();
+        return grid.update(series.prices1[i], series.prices2[i]);
+    }
+
+    @Benchmark
+    public boolean autoUpdate() {
+        int i = nextBar();
+        return auto.update(series.prices1[i], series.prices2[i]);
+    }
+
+    @Benchmark
+    public double gridEvaluate() {
+        int i = nextBar();
+        return grid.evaluate(series.prices1[i], series.prices2[i]);
+    }
+}
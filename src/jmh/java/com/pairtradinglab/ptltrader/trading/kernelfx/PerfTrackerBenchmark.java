@@ -0,0 +1,101 @@
+/**
+ * 	This file is part of PTL Trader.
+ *
+ * 	Copyright © 2011-2021 Quantverse OÜ. All Rights Reserved.
+ *
+ *  PTL Trader is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  PTL Trader is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with PTL Trader. If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.pairtradinglab.ptltrader.trading.kernelfx;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One bar of the strategy performance trackers (update followed by fillWeights) for a grid of strategies,
+ * fed by synthetic daily returns and closed trades.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PerfTrackerBenchmark {
+    private static final int BARS = 1024;
+
+    @Param({"25", "250"})
+    public int strategies;
+
+    @Param({"240"})
+    public int period;
+
+    private PerfTrackerOls ols;
+    private PerfTrackerSharpe sharpe;
+    private double[][] returns;
+    private int[][] closed;
+    private int bar;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random r = new Random(7);
+        returns = new double[BARS][strategies];
+        closed = new int[BARS][strategies];
+        for (int t=0; t<BARS; t++) {
+            for (int i=0; i<strategies; i++) {
+                returns[t][i] = 1 + 0.0002*(i % 7) + 0.01*r.nextGaussian();
+                closed[t][i] = r.nextInt(10)==0 ? 1:0;
+            }
+        }
+        ols = new PerfTrackerOls();
+        ols.period = period;
+        ols.inhibitThreshold = 0;
+        ols.setSize(strategies);
+        ols.reset();
+        sharpe = new PerfTrackerSharpe();
+        sharpe.period = period;
+        sharpe.setSize(strategies);
+        sharpe.reset();
+        for (bar=0; bar<period; bar++) {
+            step(ols, bar);
+            step(sharpe, bar);
+        }
+    }
+
+    private double step(AbstractPerfTracker tracker, int t) {
+        tracker.prepare();
+        double[] ret = returns[t];
+        int[] cnt = closed[t];
+        for (int i=0; i<strategies; i++) tracker.set(i, ret[i], cnt[i]);
+        tracker.update();
+        tracker.fillWeights();
+        return tracker.sum();
+    }
+
+    private int nextBar() {
+        if (++bar >= BARS) bar = 0;
+        return bar;
+    }
+
+    @Benchmark
+    public double olsUpdateAndFill() {
+        return step(ols, nextBar());
+    }
+
+    @Benchmark
+    public double sharpeUpdateAndFill() {
+        return step(sharpe, nextBar());
+    }
+}
@@ -108,10 +108,15 @@ import com.pairtradinglab.ptltrader.model.converter.IbConnected2String;
 import com.pairtradinglab.ptltrader.model.converter.Inverter;
 import com.pairtradinglab.ptltrader.model.converter.SimpleInt2String;
 import com.pairtradinglab.ptltrader.trading.ActivityDetector;
+import com.pairtradinglab.ptltrader.trading.DailyBarStore;
+import com.pairtradinglab.ptltrader.trading.EngineScheduler;
+import com.pairtradinglab.ptltrader.trading.HistoricalBarCache;
 import com.pairtradinglab.ptltrader.trading.HistoricalDataProviderFactoryImpl;
 import com.pairtradinglab.ptltrader.trading.MarketDataProvider;
+import com.pairtradinglab.ptltrader.trading.ModelSnapshotStore;
 import com.pairtradinglab.ptltrader.trading.PairDataProviderFactoryImpl;
 import com.pairtradinglab.ptltrader.trading.PairTradingCoreFactoryImpl;
+import com.pairtradinglab.ptltrader.trading.TickRouter;
 import com.google.common.eventbus.*;
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
@@ -345,6 +350,9 @@ public class Application {
 					pico.addComponent(Status.class);
 					pico.addComponent(StringXorProcessor.class);
 					pico.addComponent(ActiveCores.class);
+					pico.addComponent(TickRouter.class);
+					pico.addComponent(EngineScheduler.class);
+					pico.addComponent(ModelSnapshotStore.class);
 					pico.addComponent(ActivityDetector.class);
 					pico.as(Characteristics.USE_NAMES).addComponent(PtlApiClient.class);
 					pico.addComponent(PortfolioList.class);
@@ -364,6 +372,8 @@ public class Application {
 					pico.addComponent(wrapperMap);
 					ArrayList<SimpleWrapper> wrapperList = new ArrayList<SimpleWrapper>();
 					pico.addComponent(wrapperList);
+					pico.addComponent(DailyBarStore.class);
+					pico.addComponent(HistoricalBarCache.class);
 					pico.addComponent(HistoricalDataProviderFactoryImpl.class);
 					pico.as(Characteristics.USE_NAMES).addComponent(SimpleWrapper.class);
 					
@@ -21,11 +21,27 @@ package com.pairtradinglab.ptltrader;
 public class RuntimeParams {
 	private String profile = "default";
 	private boolean autoStart=false;
+	private boolean tickRing=false;
+	private boolean pooledEngines=false;
+	private boolean parallelReplay=false;
+	private boolean approximateTracking=false;
+	private boolean modelSnapshots=false;
+	private boolean sharedBars=false;
+	private boolean storedBars=false;
 	
 	public RuntimeParams(String[] args) {
 		super();
 		if (args.length>=1) profile = args[0]; 
-		if (args.length>=2 && "autostart".equals(args[1])) autoStart=true;
+		for (int i=1; i<args.length; i++) {
+			if ("autostart".equals(args[i])) autoStart=true;
+			else if ("ticks=ring".equals(args[i])) tickRing=true;
+			else if ("engines=pool".equals(args[i])) pooledEngines=true;
+			else if ("replay=parallel".equals(args[i])) parallelReplay=true;
+			else if ("tracking=approx".equals(args[i])) approximateTracking=true;
+			else if ("models=snapshot".equals(args[i])) modelSnapshots=true;
+			else if ("bars=shared".equals(args[i])) sharedBars=true;
+			else if ("bars=stored".equals(args[i])) sharedBars=storedBars=true;
+		}
 	}
 
 	public String getProfile() {
@@ -35,10 +51,45 @@ public class RuntimeParams {
 	public boolean isAutoStart() {
 		return autoStart;
 	}
+	
+	// primitive tick ingestion through per-core ring buffers
+	public boolean isTickRing() {
+		return tickRing;
+	}
+	
+	// trading engines scheduled on a shared thread pool instead of one thread per pair
+	public boolean isPooledEngines() {
+		return pooledEngines;
+	}
+
+	// Kalman grid history replayed with the filters partitioned across the common fork/join pool
+	public boolean isParallelReplay() {
+		return parallelReplay;
+	}
+
+	// Kalman grid OLS tracker with the streaming approximation of the semi-deviation instead of the window pass
+	public boolean isApproximateTracking() {
+		return approximateTracking;
+	}
+
+	// model state persisted after each historical data update and restored at startup
+	public boolean isModelSnapshots() {
+		return modelSnapshots;
+	}
+
+	// daily bars cached per contract for all strategies, only missing days requested from IB
+	public boolean isSharedBars() {
+		return sharedBars;
+	}
+
+	// shared daily bars also kept on disk, so a restart requests only the days since the last stored bar
+	public boolean isStoredBars() {
+		return storedBars;
+	}
 
 	@Override
 	public String toString() {
-		return String.format("profile=%s autostart=%s", profile, Boolean.toString(autoStart));
+		return String.format("profile=%s autostart=%s ticks=%s engines=%s replay=%s tracking=%s models=%s bars=%s", profile, Boolean.toString(autoStart), tickRing ? "ring" : "legacy", pooledEngines ? "pool" : "thread", parallelReplay ? "parallel" : "sequential", approximateTracking ? "approx" : "exact", modelSnapshots ? "snapshot" : "replay", storedBars ? "stored" : sharedBars ? "shared" : "private");
 	}
 	
 	
@@ -23,6 +23,9 @@ import com.ib.client.EClientSocket;
 
 //ibWrapper.getIbSocket().reqHistoricalData(reqid, contract, DateTime.now().toString(fmt), "1 Y", "1 day", "TRADES", 1, 1);
 public class HistoricalDataRequest {
+	public static final int PRIORITY_REFRESH = 0; // data of a strategy which can trade meanwhile
+	public static final int PRIORITY_WAITING = 1; // flat strategy waiting for data to trade
+	
 	public final int reqid;
 	public final Contract contract;
 	public final String endDatetime;
@@ -31,6 +34,7 @@ public class HistoricalDataRequest {
 	public final String whatToShow;
 	public final int useRTH;
 	public final int format;
+	public final int priority;
 	
 	
 	public HistoricalDataRequest(int reqid, Contract contract,
@@ -45,11 +49,17 @@ public class HistoricalDataRequest {
 		this.whatToShow = whatToShow;
 		this.useRTH = useRTH;
 		this.format = format;
+		this.priority = PRIORITY_REFRESH;
 	}
 
 
 	public HistoricalDataRequest(int reqid, Contract contract,
 			String endDatetime, String duration, String barSize) {
+		this(reqid, contract, endDatetime, duration, barSize, PRIORITY_REFRESH);
+	}
+	
+	public HistoricalDataRequest(int reqid, Contract contract,
+			String endDatetime, String duration, String barSize, int priority) {
 		super();
 		this.reqid = reqid;
 		this.contract = contract;
@@ -60,6 +70,21 @@ public class HistoricalDataRequest {
 		this.whatToShow="TRADES";
 		this.useRTH = 1;
 		this.format = 1;
+		this.priority = priority;
+	}
+	
+	/**
+	 * Key of the contract for IB pacing purposes (contract, exchange and tick type)
+	 */
+	public String getContractKey() {
+		return String.format("%s_%s_%s_%s_%s_%s", contract.m_symbol, contract.m_secType, contract.m_exchange, contract.m_primaryExch, contract.m_currency, whatToShow);
+	}
+	
+	/**
+	 * Requests with the same key are identical for IB
+	 */
+	public String getKey() {
+		return String.format("%s_%s_%s_%s_%d_%d", getContractKey(), endDatetime, duration, barSize, useRTH, format);
 	}
 	
 	public void execute(EClientSocket socket) {
@@ -0,0 +1,306 @@
+/**
+ * 	This file is part of PTL Trader.
+ *
+ * 	Copyright © 2011-2021 Quantverse OÜ. All Rights Reserved.
+ *
+ *  PTL Trader is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  PTL Trader is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with PTL Trader. If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.pairtradinglab.ptltrader.ib;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import net.jcip.annotations.*;
+
+/**
+ * Schedules the historical data requests of one IB connection according to the IB pacing rules, each modelled
+ * as a bucket of tokens where a token spent on a request returns to the bucket after the rule's period:
+ * - no more than 60 requests within any ten minutes (one bucket for the connection)
+ * - no six or more requests for the same contract, exchange and tick type within two seconds (bucket per contract)
+ * - no identical request within 15 seconds (bucket per request)
+ * Requests are sent back-to-back while the buckets allow, the requests of flat strategies waiting for data first.
+ * An identical request waiting in the queue is merged into the queued one, its id becoming an alias of the sent one
+ * (the data and errors of the sent request must be passed to the aliases).
+ */
+@ThreadSafe
+public class HistoricalRequestScheduler {
+	static final int WINDOW_REQUESTS = 60;
+	static final long WINDOW_NANOS = TimeUnit.MINUTES.toNanos(10);
+	static final int CONTRACT_REQUESTS = 5;
+	static final long CONTRACT_WINDOW_NANOS = TimeUnit.SECONDS.toNanos(2);
+	static final long IDENTICAL_WINDOW_NANOS = TimeUnit.SECONDS.toNanos(15);
+	
+	@NotThreadSafe
+	static class TokenBucket {
+		private final long[] spent; // times the tokens were spent, ring ordered from the oldest
+		private final long period;
+		private int pos = 0;
+		private int count = 0;
+		
+		TokenBucket(int size, long period) {
+			this.spent = new long[size];
+			this.period = period;
+		}
+		
+		/**
+		 * @return nanoseconds until a token is available (zero or less if available now)
+		 */
+		long availableIn(long now) {
+			if (count<spent.length) return 0;
+			return spent[pos]+period-now;
+		}
+		
+		boolean isFull(long now) {
+			return count==0 || spent[(pos+spent.length-1) % spent.length]+period-now<=0;
+		}
+		
+		void spend(long now) {
+			spent[pos] = now;
+			pos = (pos+1) % spent.length;
+			if (count<spent.length) count++;
+		}
+	}
+	
+	@NotThreadSafe
+	private static class Pending implements Comparable<Pending> {
+		final HistoricalDataRequest req;
+		final String key;
+		final String contractKey;
+		final long seq;
+		final long queued;
+		int priority;
+		final List<Integer> aliases = new ArrayList<Integer>();
+		
+		Pending(HistoricalDataRequest req, long seq, long queued) {
+			this.req = req;
+			this.key = req.getKey();
+			this.contractKey = req.getContractKey();
+			this.seq = seq;
+			this.queued = queued;
+			this.priority = req.priority;
+		}
+
+		@Override
+		public int compareTo(Pending o) {
+			if (priority!=o.priority) return priority>o.priority ? -1 : 1;
+			return Long.compare(seq, o.seq);
+		}
+	}
+	
+	private final ReentrantLock lock = new ReentrantLock();
+	private final Condition changed = lock.newCondition();
+	
+	@GuardedBy("lock")
+	private final TreeSet<Pending> queue = new TreeSet<Pending>();
+	@GuardedBy("lock")
+	private final Map<String, Pending> queued = new HashMap<String, Pending>();
+	@GuardedBy("lock")
+	private final TokenBucket window = new TokenBucket(WINDOW_REQUESTS, WINDOW_NANOS);
+	@GuardedBy("lock")
+	private final Map<String, TokenBucket> contractBuckets = new HashMap<String, TokenBucket>();
+	@GuardedBy("lock")
+	private final Map<String, TokenBucket> identicalBuckets = new HashMap<String, TokenBucket>();
+	@GuardedBy("lock")
+	private long seq = 0;
+	
+	// metrics
+	@GuardedBy("lock")
+	private long sentCount = 0;
+	@GuardedBy("lock")
+	private long totalWait = 0;
+	@GuardedBy("lock")
+	private long maxWait = 0;
+	
+	// read from EReader thread for every bar
+	private final Map<Integer, int[]> aliases = new ConcurrentHashMap<Integer, int[]>();
+	
+	long nanoTime() {
+		return System.nanoTime();
+	}
+	
+	public void submit(HistoricalDataRequest req) {
+		lock.lock();
+		try {
+			Pending p = queued.get(req.getKey());
+			if (p!=null) {
+				p.aliases.add(req.reqid);
+				if (req.priority>p.priority) {
+					queue.remove(p);
+					p.priority = req.priority;
+					queue.add(p);
+				}
+			} else {
+				p = new Pending(req, seq++, nanoTime());
+				queued.put(p.key, p);
+				queue.add(p);
+			}
+			changed.signalAll();
+		} finally {
+			lock.unlock();
+		}
+	}
+	
+	/**
+	 * Waits until a request may be sent
+	 * @return the request to send
+	 */
+	public HistoricalDataRequest take() throws InterruptedException {
+		lock.lockInterruptibly();
+		try {
+			while (true) {
+				long now = nanoTime();
+				long wait = Long.MAX_VALUE;
+				for (Pending p: queue) {
+					long w = readyIn(p, now);
+					if (w<=0) {
+						send(p, now);
+						return p.req;
+					}
+					wait = Math.min(wait, w);
+				}
+				if (wait==Long.MAX_VALUE) {
+					changed.await();
+				} else {
+					changed.awaitNanos(wait);
+				}
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+	
+	/**
+	 * @return nanoseconds until the next request may be sent (zero or less if now), Long.MAX_VALUE if there is none
+	 */
+	long getReadyIn() {
+		lock.lock();
+		try {
+			long now = nanoTime();
+			long wait = Long.MAX_VALUE;
+			for (Pending p: queue) wait = Math.min(wait, readyIn(p, now));
+			return wait;
+		} finally {
+			lock.unlock();
+		}
+	}
+	
+	@GuardedBy("lock")
+	private long readyIn(Pending p, long now) {
+		long w = window.availableIn(now);
+		w = Math.max(w, availableIn(contractBuckets, p.contractKey, now));
+		return Math.max(w, availableIn(identicalBuckets, p.key, now));
+	}
+	
+	@GuardedBy("lock")
+	private void send(Pending p, long now) {
+		queue.remove(p);
+		queued.remove(p.key);
+		prune(contractBuckets, now);
+		prune(identicalBuckets, now);
+		window.spend(now);
+		getBucket(contractBuckets, p.contractKey, CONTRACT_REQUESTS, CONTRACT_WINDOW_NANOS).spend(now);
+		getBucket(identicalBuckets, p.key, 1, IDENTICAL_WINDOW_NANOS).spend(now);
+		if (!p.aliases.isEmpty()) {
+			int[] ids = new int[p.aliases.size()];
+			for (int i=0; i<ids.length; i++) ids[i] = p.aliases.get(i);
+			aliases.put(p.req.reqid, ids);
+		}
+		long wait = now-p.queued;
+		sentCount++;
+		totalWait += wait;
+		if (wait>maxWait) maxWait = wait;
+	}
+	
+	private static long availableIn(Map<String, TokenBucket> buckets, String key, long now) {
+		TokenBucket b = buckets.get(key);
+		return b==null ? 0 : b.availableIn(now);
+	}
+	
+	private static TokenBucket getBucket(Map<String, TokenBucket> buckets, String key, int size, long period) {
+		TokenBucket b = buckets.get(key);
+		if (b==null) {
+			b = new TokenBucket(size, period);
+			buckets.put(key, b);
+		}
+		return b;
+	}
+	
+	private static void prune(Map<String, TokenBucket> buckets, long now) {
+		for (Iterator<TokenBucket> it = buckets.values().iterator(); it.hasNext(); ) {
+			if (it.next().isFull(now)) it.remove();
+		}
+	}
+	
+	/**
+	 * @return ids of the requests merged into the sent request, null if none
+	 */
+	public int[] getAliases(int reqId) {
+		return aliases.get(reqId);
+	}
+	
+	/**
+	 * Called when the sent request is done (finished or failed)
+	 */
+	public void release(int reqId) {
+		aliases.remove(reqId);
+	}
+	
+	public int getQueueDepth() {
+		lock.lock();
+		try {
+			return queue.size();
+		} finally {
+			lock.unlock();
+		}
+	}
+	
+	public long getSentCount() {
+		lock.lock();
+		try {
+			return sentCount;
+		} finally {
+			lock.unlock();
+		}
+	}
+	
+	/**
+	 * @return average time the sent requests waited in the queue
+	 */
+	public long getAverageWaitMillis() {
+		lock.lock();
+		try {
+			return sentCount==0 ? 0 : TimeUnit.NANOSECONDS.toMillis(totalWait/sentCount);
+		} finally {
+			lock.unlock();
+		}
+	}
+	
+	public long getMaxWaitMillis() {
+		lock.lock();
+		try {
+			return TimeUnit.NANOSECONDS.toMillis(maxWait);
+		} finally {
+			lock.unlock();
+		}
+	}
+	
+}
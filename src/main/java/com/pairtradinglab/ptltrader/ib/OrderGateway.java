@@ -0,0 +1,248 @@
+/**
+ * 	This file is part of PTL Trader.
+ *
+ * 	Copyright © 2011-2021 Quantverse OÜ. All Rights Reserved.
+ *
+ *  PTL Trader is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  PTL Trader is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with PTL Trader. If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.pairtradinglab.ptltrader.ib;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.log4j.Logger;
+
+import com.ib.client.Contract;
+import com.ib.client.EClientSocket;
+import com.ib.client.Order;
+
+import net.jcip.annotations.*;
+
+/**
+ * Order submission of one IB connection. Order IDs are assigned in submission order and the orders are
+ * transmitted in ascending ID order, as IB requires; the outbound rate is limited by a token bucket, orders
+ * over the limit are queued and transmitted by the scheduler as soon as the bucket refills. The two legs of
+ * a pair are never split by the limit, they are transmitted in one burst. Cancellations share the queue and
+ * the limit with the orders.
+ */
+@ThreadSafe
+public class OrderGateway {
+	public static final int MESSAGES_PER_SECOND = 40; // IB accepts 50 messages per second, the rest is left for the data requests
+	public static final int BURST = 10;
+	
+	public interface Listener {
+		/**
+		 * Called on the submitting thread once the order ID is assigned, before any order of the submission is transmitted
+		 */
+		void assigned(Order order);
+		
+		/**
+		 * Called right before the order is handed to the socket, on the scheduler thread if the order was queued
+		 */
+		void transmitted(Order order, long nanoTime);
+	}
+	
+	private static class Pending {
+		final Contract contract;
+		final Order order; // null for a cancellation
+		final Listener listener;
+		final int cancelId;
+		boolean paired; // the next pending order is the second leg
+		
+		Pending(Contract contract, Order order, Listener listener, boolean paired) {
+			this.contract = contract;
+			this.order = order;
+			this.listener = listener;
+			this.paired = paired;
+			cancelId = 0;
+		}
+		
+		Pending(int cancelId) {
+			contract = null;
+			order = null;
+			listener = null;
+			paired = false;
+			this.cancelId = cancelId;
+		}
+	}
+	
+	private final EClientSocket socket;
+	private final ScheduledExecutorService scheduler;
+	private final Logger logger;
+	
+	private final AtomicInteger nextId = new AtomicInteger(1);
+	
+	@GuardedBy("this")
+	private final ArrayDeque<Pending> queue = new ArrayDeque<Pending>();
+	@GuardedBy("this")
+	private double tokens = BURST;
+	@GuardedBy("this")
+	private long refilled;
+	@GuardedBy("this")
+	private boolean drainScheduled = false;
+	
+	private final Runnable drainTask = new Runnable() {
+		@Override
+		public void run() {
+			drain();
+		}
+	};
+	
+	public OrderGateway(EClientSocket socket, ScheduledExecutorService scheduler, Logger logger) {
+		this.socket = socket;
+		this.scheduler = scheduler;
+		this.logger = logger;
+		refilled = nanoTime();
+	}
+	
+	/**
+	 * Assigns the order ID and transmits the order
+	 */
+	public synchronized void submit(Contract contract, Order order, Listener listener) {
+		assign(order, listener);
+		queue.add(new Pending(contract, order, listener, false));
+		flush();
+	}
+	
+	/**
+	 * Assigns consecutive order IDs to both legs and transmits them back to back, without a rate limit wait
+	 * between them
+	 */
+	public synchronized void submitPair(Contract contract1, Order order1, Contract contract2, Order order2, Listener listener) {
+		assign(order1, listener);
+		assign(order2, listener);
+		queue.add(new Pending(contract1, order1, listener, true));
+		queue.add(new Pending(contract2, order2, listener, false));
+		flush();
+	}
+	
+	/**
+	 * Cancels the order: it is just dropped if it is still queued, otherwise the cancellation is transmitted
+	 * under the rate limit
+	 * @return true if the order was dropped from the queue, i.e. it has never been transmitted
+	 */
+	public synchronized boolean cancel(int orderId) {
+		Pending previous = null;
+		for (Iterator<Pending> it = queue.iterator(); it.hasNext(); ) {
+			Pending p = it.next();
+			if (p.order!=null && p.order.m_orderId==orderId) {
+				it.remove();
+				if (previous!=null && previous.paired) previous.paired = false; // the first leg goes alone
+				logger.debug(String.format("order #%d cancelled before transmission", orderId));
+				return true;
+			}
+			previous = p;
+		}
+		queue.add(new Pending(orderId));
+		flush();
+		return false;
+	}
+	
+	/**
+	 * Sets the next order ID, as reported by IB on (re)connection. The queued orders whose IDs are no longer
+	 * valid are dropped, the others keep their IDs and the numbering continues after them. A pair is never
+	 * split: once its first leg is dropped, the second one is dropped too.
+	 * @return orders dropped from the queue, never transmitted
+	 */
+	public synchronized List<Order> setNextId(int id) {
+		List<Order> dropped = new ArrayList<Order>();
+		int next = id;
+		boolean dropLeg = false; // the first leg of the pair has been dropped
+		for (Iterator<Pending> it = queue.iterator(); it.hasNext(); ) {
+			Pending p = it.next();
+			if (p.order==null) continue;
+			// the legs have consecutive IDs, the second one can still be valid while the first is not
+			if (p.order.m_orderId<id || dropLeg) {
+				it.remove();
+				dropped.add(p.order);
+				dropLeg = p.paired;
+			} else {
+				dropLeg = false;
+				next = Math.max(next, p.order.m_orderId+1);
+			}
+		}
+		if (!dropped.isEmpty()) logger.warn(String.format("next order ID %d, %d queued orders dropped", id, dropped.size()));
+		nextId.set(next);
+		return dropped;
+	}
+	
+	public int getNextId() {
+		return nextId.get();
+	}
+	
+	public synchronized int getQueueDepth() {
+		return queue.size();
+	}
+	
+	void drain() {
+		synchronized(this) {
+			drainScheduled = false;
+			flush();
+		}
+	}
+	
+	long nanoTime() {
+		return System.nanoTime();
+	}
+	
+	@GuardedBy("this")
+	private void assign(Order order, Listener listener) {
+		order.m_orderId = nextId.getAndIncrement();
+		if (listener!=null) listener.assigned(order);
+	}
+	
+	@GuardedBy("this")
+	private void flush() {
+		long now = nanoTime();
+		tokens = Math.min(BURST, tokens+(now-refilled)*(double) MESSAGES_PER_SECOND/1e9);
+		refilled = now;
+		int needed = 1;
+		while (!queue.isEmpty()) {
+			// the first leg of a pair waits for both tokens, so the second one always follows it at once
+			needed = queue.peek().paired ? 2 : 1;
+			if (tokens<needed) break;
+			tokens -= 1;
+			transmit(queue.poll());
+		}
+		if (!queue.isEmpty()) {
+			logger.debug(String.format("order rate limit reached, %d orders queued", queue.size()));
+			if (!drainScheduled && scheduler!=null) {
+				long delay = (long) Math.ceil((needed-tokens)*1e9/(double) MESSAGES_PER_SECOND);
+				try {
+					scheduler.schedule(drainTask, delay, TimeUnit.NANOSECONDS);
+					drainScheduled = true;
+				} catch (RejectedExecutionException e) {
+					logger.warn(String.format("order gateway stopped, %d orders not transmitted", queue.size()));
+				}
+			}
+		}
+	}
+	
+	@GuardedBy("this")
+	private void transmit(Pending p) {
+		if (p.order==null) {
+			socket.cancelOrder(p.cancelId);
+			return;
+		}
+		if (p.listener!=null) p.listener.transmitted(p.order, nanoTime());
+		socket.placeOrder(p.order.m_orderId, p.contract, p.order);
+	}
+
+}
@@ -27,6 +27,7 @@ import org.picocontainer.Startable;
 
 import com.google.common.eventbus.EventBus;
 import com.google.common.eventbus.Subscribe;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.ib.client.CommissionReport;
 import com.ib.client.Contract;
 import com.ib.client.ContractDetails;
@@ -38,19 +39,15 @@ import com.ib.client.TickType;
 import com.ib.client.UnderComp;
 import com.ib.client.EClientSocket;
 
-import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
 import java.util.Set;
-import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
-import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
@@ -75,7 +72,6 @@ import com.pairtradinglab.ptltrader.trading.events.Error;
 
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
 
 import net.jcip.annotations.*;
 
@@ -99,6 +95,7 @@ public class SimpleWrapper extends AbstractModelObject implements EWrapper, Star
 	private final Map<String, SimpleWrapper> ibWrapperMap;
 	private final RuntimeParams runtimeParams;
 	private final Set<String> connectedAccounts;
+	private final TickRouter tickRouter;
 	
 	
 	private volatile int ibClientId = 0;
@@ -111,18 +108,17 @@ public class SimpleWrapper extends AbstractModelObject implements EWrapper, Star
 	private boolean connecting = false;
 	
 	
-	final BlockingQueue<HistoricalDataRequest> histRequestQueue = new LinkedBlockingQueue<>(1024);
+	final HistoricalRequestScheduler histRequestScheduler = new HistoricalRequestScheduler();
 	final Thread histRequestQueueWorker = new Thread(new Runnable() {
 		
 		@Override
 		public void run() {
 			while (true) {
                 try {
-                	HistoricalDataRequest hrq = histRequestQueue.take();
-                    logger.trace("processing queued historical request for "+hrq.contract.m_symbol);
+                	HistoricalDataRequest hrq = histRequestScheduler.take();
+                    logger.trace(String.format("processing queued historical request for %s, queued: %d, average wait: %d ms", hrq.contract.m_symbol, histRequestScheduler.getQueueDepth(), histRequestScheduler.getAverageWaitMillis()));
                     hrq.execute(getIbSocket());
                     
-                    Thread.sleep(1000);
                 } catch (InterruptedException e) {
                 	Thread.currentThread().interrupt();
                     //System.out.println("Interrupted via InterruptedIOException");
@@ -230,45 +226,29 @@ public class SimpleWrapper extends AbstractModelObject implements EWrapper, Star
 	}
 	
 	// for maintaining market data subscriptions
-	private Map<Integer,String> marketDataReqMap = Collections.synchronizedMap(new HashMap<Integer, String>());
+	private final SubscriptionRegistry subscriptions;
 	
-	public void clearMarketDataReqMap() {
-		marketDataReqMap.clear();
+	public SubscriptionRegistry getSubscriptions() {
+		return subscriptions;
 	}
 	
-	public void getMarketDataReqMapCopy(Collection<? extends Entry<Integer, String>> out) {
-		marketDataReqMap.entrySet().addAll(out);
-	}
-	
-	public void putToMarketDataReqMap(int i, String v) {
-		marketDataReqMap.put(i, v);
-	}
-	
-	public String getSymbolFromMarketDataReqMap(int i) {
-		return marketDataReqMap.get(i);
-	}
 	
+	private EClientSocket ibSocket = new EClientSocket(this);
 	
-	// for maintaining order IDs
-	private final ReentrantLock nextIdLock = new ReentrantLock(); // used for lock getNextId->sendOrder phase
-	private final AtomicInteger nextId = new AtomicInteger(1);
-	
-	public void lockOrderId() {
-		nextIdLock.lock();
-	}
+	// for order IDs and order submission
+	private final ScheduledExecutorService orderScheduler = Executors.newScheduledThreadPool(1, new ThreadFactoryBuilder().setNameFormat("order-gateway-%d").build());
+	private final OrderGateway orderGateway;
 	
-	public void unlockOrderId() {
-		nextIdLock.unlock();
+	public OrderGateway getOrderGateway() {
+		return orderGateway;
 	}
 	
-	private EClientSocket ibSocket = new EClientSocket(this);
-	
 	// for maintaining request Ids
 	private final AtomicInteger nextReqId = new AtomicInteger(1000000);
 	
 	
 	public SimpleWrapper(Status status, PortfolioList portfolioList,
-			AccountList accountList, EventBus bus, LoggerFactory loggerFactory, Map<String, SimpleWrapper> ibWrapperMap, RuntimeParams runtimeParams, Set<String> connectedAccounts) {
+			AccountList accountList, EventBus bus, LoggerFactory loggerFactory, Map<String, SimpleWrapper> ibWrapperMap, RuntimeParams runtimeParams, Set<String> connectedAccounts, TickRouter tickRouter) {
 		super();
 		this.status = status;
 		this.portfolioList = portfolioList;
@@ -278,6 +258,9 @@ public class SimpleWrapper extends AbstractModelObject implements EWrapper, Star
 		this.ibWrapperMap = ibWrapperMap;
 		this.runtimeParams = runtimeParams;
 		this.connectedAccounts = connectedAccounts;
+		this.tickRouter = tickRouter;
+		this.subscriptions = new SubscriptionRegistry(tickRouter);
+		this.orderGateway = new OrderGateway(ibSocket, orderScheduler, logger);
 		
 		attachDisconnectHook(this);
 	}
@@ -301,6 +284,12 @@ public class SimpleWrapper extends AbstractModelObject implements EWrapper, Star
 	public void error(int id, int errorCode, String errorMsg) {
 		Error err = new Error(uid, id, errorCode, errorMsg);
 		bus.post(err);
+		int[] aliases = id>0 ? histRequestScheduler.getAliases(id) : null;
+		if (aliases!=null && errorCode<2100) {
+			// failed historical request, the identical requests merged into it failed as well
+			for (int alias: aliases) bus.post(new Error(uid, alias, errorCode, errorMsg));
+			histRequestScheduler.release(id);
+		}
 		
 		if (errorCode>=1100 && errorCode<2100) {
 			// system warning
@@ -351,11 +340,11 @@ public class SimpleWrapper extends AbstractModelObject implements EWrapper, Star
 		//logger.info(String.format("TICK #%d: field %d price %f canexec %d", tickerId, field, price, canAutoExecute));
 		
 		// resolve tickerId
-		String symbol = marketDataReqMap.get(tickerId);
-		if (symbol!=null) {
-			// send event to event bus
-			Tick tev = new Tick(symbol, field, price, canAutoExecute);
-			bus.post(tev);
+		int symbolId = subscriptions.getSymbolId(tickerId);
+		if (symbolId!=0) {
+			subscriptions.acknowledge(tickerId);
+			// deliver directly to subscribers of the symbol
+			tickRouter.route(symbolId, field, price, canAutoExecute);
 		}
 		
 		
@@ -366,8 +355,9 @@ public class SimpleWrapper extends AbstractModelObject implements EWrapper, Star
 	@Override
 	public void tickSize(int tickerId, int field, int size) {
 		// TODO Auto-generated method stub
-		String symbol = marketDataReqMap.get(tickerId);
+		String symbol = subscriptions.getSymbol(tickerId);
 		if (symbol!=null) {
+			subscriptions.acknowledge(tickerId);
 			//logger.info(String.format("TICK for %s: field %d size %d", symbol, field, size));
 			TickSize tev = new TickSize(symbol, field, size);
 			bus.post(tev);
@@ -388,8 +378,9 @@ public class SimpleWrapper extends AbstractModelObject implements EWrapper, Star
 	public void tickGeneric(int tickerId, int tickType, double value) {
 		//logger.debug(String.format("GTICK #%d: ticktype %d value %f", tickerId, tickType, value));
 		
-		String symbol = marketDataReqMap.get(tickerId);
+		String symbol = subscriptions.getSymbol(tickerId);
 		if (symbol!=null) {
+			subscriptions.acknowledge(tickerId);
 			//logger.debug(String.format("GTICK #%d: resolved to %s", tickerId, symbol));
 			GenericTick ev = new GenericTick(symbol, tickType, value);
 			bus.post(ev);
@@ -636,6 +627,15 @@ public class SimpleWrapper extends AbstractModelObject implements EWrapper, Star
 		if (hdp!=null) {
 			hdp.addRecord(date, close);
 		}
+		int[] aliases = histRequestScheduler.getAliases(reqId);
+		if (aliases!=null) {
+			// identical requests merged by the scheduler
+			for (int alias: aliases) {
+				HistoricalDataProvider ahdp = hmap.get(alias);
+				if (ahdp!=null && ahdp!=hdp) ahdp.addRecord(date, close);
+			}
+			if (date.startsWith("finished")) histRequestScheduler.release(reqId);
+		}
 
 	}
 
@@ -719,12 +719,11 @@ public class SimpleWrapper extends AbstractModelObject implements EWrapper, Star
 	      });			    	
 	}
 	
-	public int getNextId() {
-		return nextId.getAndIncrement();
-	}
-
 	public void setNextId(int nextId) {
-		this.nextId.set(nextId);
+		// the orders still queued under stale IDs fail like rejected ones, so their engines can react
+		for (Order o: orderGateway.setNextId(nextId)) {
+			bus.post(new Error(uid, o.m_orderId, Error.ERRC_ORDER_NOT_TRANSMITTED, "order not transmitted before reconnection"));
+		}
 		
 	}
 	public String getUid() {
@@ -753,12 +752,17 @@ public class SimpleWrapper extends AbstractModelObject implements EWrapper, Star
 	public void stop() {
 		histRequestQueueWorker.interrupt();
 		if (retryHandle!=null) retryHandle.cancel(true); 
+		orderScheduler.shutdownNow();
 		bus.unregister(this);
 		
 	}
 	
 	public void executeHistoricalDataRequestQueued(HistoricalDataRequest req) {
-		histRequestQueue.add(req);
+		histRequestScheduler.submit(req);
+	}
+	
+	public HistoricalRequestScheduler getHistRequestScheduler() {
+		return histRequestScheduler;
 	}
 	
 	@Subscribe
@@ -73,6 +73,7 @@ public class PairStrategy extends AbstractModelObject {
 	// injected dependencies
 	private final EventBus bus;
 	private final PairTradingCoreFactory coreFactory;
+	private final TickRouter tickRouter;
 	
 	@JsonIgnore
 	private final String uid;
@@ -124,6 +125,8 @@ public class PairStrategy extends AbstractModelObject {
 	private volatile String profitPotentialS="";
 	@JsonIgnore
 	private volatile double lastOpenEquity = 0;
+	@JsonIgnore
+	private final LegLatency legLatency = new LegLatency();
 	
 	// model settings
 	@JsonIgnore
@@ -251,7 +254,7 @@ public class PairStrategy extends AbstractModelObject {
 		this.dirty = dirty;
 	}
 	
-	public PairStrategy(String uid, Portfolio parent, String stock1, String stock2, int tradeAs1, int tradeAs2, EventBus bus, PairTradingCoreFactory coreFactory) {
+	public PairStrategy(String uid, Portfolio parent, String stock1, String stock2, int tradeAs1, int tradeAs2, EventBus bus, TickRouter tickRouter, PairTradingCoreFactory coreFactory) {
 		this.uid = uid;
 		this.parent = parent;
 		this.stock1 = stock1;
@@ -260,6 +263,7 @@ public class PairStrategy extends AbstractModelObject {
 		this.tradeAs2 = tradeAs2;
 		this.bus = bus;
 		this.coreFactory = coreFactory;
+		this.tickRouter = tickRouter;
 		positions.add(new Position(stock1, tradeAs1 == TRADE_AS_CFD));
 		positions.add(new Position(stock2, tradeAs2 == TRADE_AS_CFD));
 
@@ -442,10 +446,11 @@ public class PairStrategy extends AbstractModelObject {
 	}
 	
 	public synchronized void initialize() {
-		// register all position objects to event bus
+		// register all position objects to event bus and tick router
 		if (initialized) return;
 		for (Position p: (List<Position>) positions) {
 			bus.register(p);
+			tickRouter.subscribe(p.symbol, p);
 		}
 		
 		bind();
@@ -464,6 +469,7 @@ public class PairStrategy extends AbstractModelObject {
 		if (core!=null) core.stop();
 		for (Position p: (List<Position>) positions) {
 			bus.unregister(p);
+			tickRouter.unsubscribe(p.symbol, p);
 		}
 		
 	}
@@ -476,6 +482,10 @@ public class PairStrategy extends AbstractModelObject {
 	
 	}
 
+	public LegLatency getLegLatency() {
+		return legLatency;
+	}
+
 	public CoreStatus getCoreStatus() {
 		return coreStatus;
 	}
@@ -23,17 +23,20 @@ import java.util.UUID;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.google.common.eventbus.EventBus;
 import com.pairtradinglab.ptltrader.trading.PairTradingCoreFactory;
+import com.pairtradinglab.ptltrader.trading.TickRouter;
 
 public class PairStrategyFactoryImpl implements PairStrategyFactory {
 	private final EventBus bus;
 	private final PairTradingCoreFactory coreFactory;
+	private final TickRouter tickRouter;
 	
 	
 
-	public PairStrategyFactoryImpl(EventBus bus,
+	public PairStrategyFactoryImpl(EventBus bus, TickRouter tickRouter,
 			PairTradingCoreFactory coreFactory) {
 		super();
 		this.bus = bus;
+		this.tickRouter = tickRouter;
 		this.coreFactory = coreFactory;
 	}
 
@@ -51,14 +54,14 @@ public class PairStrategyFactoryImpl implements PairStrategyFactory {
 	@Override
 	public PairStrategy createForPortfolio(String uid, Portfolio p,
 			String stock1, String stock2, int tradeAs1, int tradeAs2) {
-		return new PairStrategy(uid, p, stock1, stock2, tradeAs1, tradeAs2, bus, coreFactory);
+		return new PairStrategy(uid, p, stock1, stock2, tradeAs1, tradeAs2, bus, tickRouter, coreFactory);
 	}
 
 
 
 	@Override
 	public PairStrategy createForPortfolio(Portfolio p, String stock1, String stock2, int tradeAs1, int tradeAs2) {
-		return new PairStrategy(UUID.randomUUID().toString(), p, stock1, stock2, tradeAs1, tradeAs2, bus, coreFactory);
+		return new PairStrategy(UUID.randomUUID().toString(), p, stock1, stock2, tradeAs1, tradeAs2, bus, tickRouter, coreFactory);
 	}
 
 	
@@ -21,15 +21,15 @@ package com.pairtradinglab.ptltrader.model;
 import org.joda.time.DateTime;
 
 import com.google.common.eventbus.Subscribe;
+import com.pairtradinglab.ptltrader.trading.TickListener;
 import com.pairtradinglab.ptltrader.trading.events.GenericTick;
-import com.pairtradinglab.ptltrader.trading.events.Tick;
 import com.pairtradinglab.ptltrader.trading.events.TickSize;
 import com.ib.client.TickType;
 
 import net.jcip.annotations.*;
 
 @ThreadSafe
-public class Position extends AbstractModelObject {
+public class Position extends AbstractModelObject implements TickListener {
 	public static final String STATUS_LONG = "long";
 	public static final String STATUS_SHORT = "short";
 	public static final String STATUS_NONE = "";
@@ -175,20 +175,19 @@ public class Position extends AbstractModelObject {
 	}
 	
 
-	@Subscribe
-	public void onTick(Tick t) {
-		if (symbol.equals(t.symbol)) {
-			switch(t.type) {
-			case TickType.BID:
-				setBid(t.price);
-				break;
-			case TickType.ASK:
-				setAsk(t.price);
-				break;
-			case TickType.LAST:
-				setLast(t.price);
-				break;
-			}
+	@Override
+	public void onTick(int symbolId, int field, double price, int canAutoExecute, long nanoTime) {
+		// only ticks of our symbol are routed here
+		switch(field) {
+		case TickType.BID:
+			setBid(price);
+			break;
+		case TickType.ASK:
+			setAsk(price);
+			break;
+		case TickType.LAST:
+			setLast(price);
+			break;
 		}
 		
 	}
@@ -29,16 +29,20 @@ import net.jcip.annotations.*;
 
 import com.pairtradinglab.ptltrader.events.AccountConnected;
 import com.pairtradinglab.ptltrader.trading.events.Disconnected;
-import com.pairtradinglab.ptltrader.trading.events.Tick;
 import com.google.common.eventbus.*;
 import com.ib.client.TickType;
 
 @ThreadSafe
-public class ActivityDetector implements Startable {
+public class ActivityDetector implements Startable, TickListener {
 	private final ConcurrentHashMap<String,DateTime> map = new ConcurrentHashMap<String,DateTime>();
 	private final EventBus bus;
 	private final Logger l;
 	private final MarketDataProvider marketDataProvider;
+	private final TickRouter tickRouter;
+	private final int nyseArcaSymbolId;
+	private final int nyseSymbolId;
+	private final int nasdaqSymbolId;
+	private final int nyseMktSymbolId;
 	
 	public static final String NYSEARCA_SYMBOL = "NYSEARCA:SPY";
 	public static final String NYSE_SYMBOL = "NYSE:BAC";
@@ -48,11 +52,16 @@ public class ActivityDetector implements Startable {
 	public static final int MAX_DELAY = 1800; // in seconds
 	
 
-	public ActivityDetector(EventBus bus, MarketDataProvider marketDataProvider, Logger l) {
+	public ActivityDetector(EventBus bus, MarketDataProvider marketDataProvider, TickRouter tickRouter, Logger l) {
 		super();
 		this.bus = bus;
 		this.marketDataProvider = marketDataProvider;
+		this.tickRouter = tickRouter;
 		this.l = l;
+		nyseArcaSymbolId = tickRouter.getSymbolId(NYSEARCA_SYMBOL);
+		nyseSymbolId = tickRouter.getSymbolId(NYSE_SYMBOL);
+		nasdaqSymbolId = tickRouter.getSymbolId(NASDAQ_SYMBOL);
+		nyseMktSymbolId = tickRouter.getSymbolId(NYSEMKT_SYMBOL);
 		
 	}
 
@@ -60,6 +69,10 @@ public class ActivityDetector implements Startable {
 	public void start() {
 		l.debug("starting exchange activity detector");
 		bus.register(this);
+		tickRouter.subscribe(NYSEARCA_SYMBOL, this);
+		tickRouter.subscribe(NYSE_SYMBOL, this);
+		tickRouter.subscribe(NYSEMKT_SYMBOL, this);
+		tickRouter.subscribe(NASDAQ_SYMBOL, this);
 		
 	}
 
@@ -67,6 +80,10 @@ public class ActivityDetector implements Startable {
 	public void stop() {
 		l.debug("stopping exchange activity detector");
 		bus.unregister(this);
+		tickRouter.unsubscribe(NYSEARCA_SYMBOL, this);
+		tickRouter.unsubscribe(NYSE_SYMBOL, this);
+		tickRouter.unsubscribe(NYSEMKT_SYMBOL, this);
+		tickRouter.unsubscribe(NASDAQ_SYMBOL, this);
 		
 	}
 	
@@ -89,27 +106,18 @@ public class ActivityDetector implements Startable {
 		
 	}
 	
-	@Subscribe
-	public void onTick(Tick t) {
-		if (t.type != TickType.LAST) return; // we are interested only in last prices at this place
+	@Override
+	public void onTick(int symbolId, int field, double price, int canAutoExecute, long nanoTime) {
+		if (field != TickType.LAST) return; // we are interested only in last prices at this place
 		
-		switch(t.symbol) {
-			case NYSE_SYMBOL:
-				map.put("NYSE", DateTime.now());
-				//System.out.println("NYSE active");
-				break;
-			case NYSEARCA_SYMBOL:
-				map.put("NYSEARCA", DateTime.now());
-				//System.out.println("NYSEARCA active");
-				break;
-			case NYSEMKT_SYMBOL:
-				map.put("NYSEMKT", DateTime.now());
-				//System.out.println("NYSEMKT active");
-				break;
-			case NASDAQ_SYMBOL:
-				map.put("NASDAQ", DateTime.now());
-				//System.out.println("NASDAQ active");
-				break;
+		if (symbolId==nyseSymbolId) {
+			map.put("NYSE", DateTime.now());
+		} else if (symbolId==nyseArcaSymbolId) {
+			map.put("NYSEARCA", DateTime.now());
+		} else if (symbolId==nyseMktSymbolId) {
+			map.put("NYSEMKT", DateTime.now());
+		} else if (symbolId==nasdaqSymbolId) {
+			map.put("NASDAQ", DateTime.now());
 		}
 		
 	}
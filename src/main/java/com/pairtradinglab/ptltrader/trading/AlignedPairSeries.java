@@ -0,0 +1,81 @@
+/**
+ * 	This file is part of PTL Trader.
+ *
+ * 	Copyright © 2011-2021 Quantverse OÜ. All Rights Reserved.
+ *
+ *  PTL Trader is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  PTL Trader is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with PTL Trader. If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.pairtradinglab.ptltrader.trading;
+
+import java.util.Arrays;
+
+import org.joda.time.DateTime;
+
+import net.jcip.annotations.*;
+
+/**
+ * Daily close prices of both legs of a pair on the days both of them traded.
+ * The arrays must not be modified, the models get them directly.
+ */
+@Immutable
+public final class AlignedPairSeries {
+	public static final AlignedPairSeries EMPTY = new AlignedPairSeries(new int[0], new double[0], new double[0]);
+	
+	public final int[] days;
+	public final double[] prices1;
+	public final double[] prices2;
+	
+	private AlignedPairSeries(int[] days, double[] prices1, double[] prices2) {
+		this.days = days;
+		this.prices1 = prices1;
+		this.prices2 = prices2;
+	}
+	
+	/**
+	 * Aligns the series by a merge join of their (ascending) days
+	 */
+	public static AlignedPairSeries join(BarSeries s1, BarSeries s2) {
+		int n1 = s1.size();
+		int n2 = s2.size();
+		int n = Math.min(n1, n2);
+		int[] days = new int[n];
+		double[] prices1 = new double[n];
+		double[] prices2 = new double[n];
+		int i = 0, j = 0, k = 0;
+		while (i<n1 && j<n2) {
+			int d1 = s1.days[i];
+			int d2 = s2.days[j];
+			if (d1==d2) {
+				days[k] = d1;
+				prices1[k] = s1.closes[i++];
+				prices2[k++] = s2.closes[j++];
+			} else if (d1<d2) {
+				i++;
+			} else {
+				j++;
+			}
+		}
+		if (k<n) return new AlignedPairSeries(Arrays.copyOf(days, k), Arrays.copyOf(prices1, k), Arrays.copyOf(prices2, k));
+		return new AlignedPairSeries(days, prices1, prices2);
+	}
+	
+	public int size() {
+		return days.length;
+	}
+	
+	public DateTime getLastDate() {
+		return BarSeries.fromEpochDay(days[days.length-1]);
+	}
+	
+}
@@ -0,0 +1,94 @@
+/**
+ * 	This file is part of PTL Trader.
+ *
+ * 	Copyright © 2011-2021 Quantverse OÜ. All Rights Reserved.
+ *
+ *  PTL Trader is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  PTL Trader is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with PTL Trader. If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.pairtradinglab.ptltrader.trading;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeConstants;
+import org.joda.time.DateTimeZone;
+import org.joda.time.LocalDate;
+
+import net.jcip.annotations.*;
+
+/**
+ * Daily close prices of one instrument, the bar days as epoch days in ascending order.
+ * The arrays must not be modified.
+ */
+@Immutable
+public final class BarSeries {
+	public static final BarSeries EMPTY = new BarSeries(new int[0], new double[0]);
+	
+	public final int[] days;
+	public final double[] closes;
+	
+	public BarSeries(int[] days, double[] closes) {
+		if (days.length!=closes.length) throw new IllegalArgumentException("days and closes must have same length");
+		this.days = days;
+		this.closes = closes;
+	}
+	
+	public int size() {
+		return days.length;
+	}
+	
+	public int lastDay() {
+		return days[days.length-1];
+	}
+	
+	public static int toEpochDay(DateTime dt) {
+		return (int) (dt.toLocalDate().toDateTimeAtStartOfDay(DateTimeZone.UTC).getMillis()/DateTimeConstants.MILLIS_PER_DAY);
+	}
+	
+	/**
+	 * Parses the yyyyMMdd day of an IB bar (the per bar hot path, no Joda involved)
+	 * @throws IllegalArgumentException if the day is malformed
+	 */
+	public static int parseDay(String s) {
+		if (s.length()!=8) throw new IllegalArgumentException("Invalid bar day: "+s);
+		int v = 0;
+		for (int i=0; i<8; i++) {
+			int d = s.charAt(i)-'0';
+			if (d<0 || d>9) throw new IllegalArgumentException("Invalid bar day: "+s);
+			v = v*10+d;
+		}
+		int y = v/10000;
+		int m = v/100%100;
+		int d = v%100;
+		if (m<1 || m>12 || d<1 || d>daysInMonth(y, m)) throw new IllegalArgumentException("Invalid bar day: "+s);
+		// days from civil, the year starting in March so the leap day comes last
+		if (m<=2) y--;
+		int era = (y>=0 ? y : y-399)/400;
+		int yoe = y-era*400;
+		int doy = (153*(m>2 ? m-3 : m+9)+2)/5+d-1;
+		int doe = yoe*365+yoe/4-yoe/100+doy;
+		return era*146097+doe-719468;
+	}
+	
+	private static int daysInMonth(int y, int m) {
+		if (m==2) return (y%4==0 && (y%100!=0 || y%400==0)) ? 29 : 28;
+		return (m==4 || m==6 || m==9 || m==11) ? 30 : 31;
+	}
+	
+	/**
+	 * @return start of the day in the default time zone
+	 */
+	public static DateTime fromEpochDay(int day) {
+		return new LocalDate((long) day*DateTimeConstants.MILLIS_PER_DAY, DateTimeZone.UTC).toDateTimeAtStartOfDay();
+	}
+	
+}
@@ -18,17 +18,16 @@
  */
 package com.pairtradinglab.ptltrader.trading;
 
-import java.util.ArrayList;
+import java.io.IOException;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.TreeMap;
 
 import org.apache.log4j.Logger;
 import org.joda.time.DateTime;
 import org.joda.time.DateTimeConstants;
+import org.joda.time.DateTimeUtils;
 import org.joda.time.DateTimeZone;
 import org.joda.time.Duration;
 import org.joda.time.format.DateTimeFormat;
@@ -36,6 +35,7 @@ import org.joda.time.format.DateTimeFormatter;
 
 import com.google.common.base.Joiner;
 import com.google.common.eventbus.EventBus;
+import com.google.common.primitives.Doubles;
 import com.ib.client.CommissionReport;
 import com.ib.client.EClientSocket;
 import com.ib.client.Execution;
@@ -47,6 +47,8 @@ import com.pairtradinglab.ptltrader.events.AccountConnected;
 import com.pairtradinglab.ptltrader.events.BeaconFlash;
 import com.pairtradinglab.ptltrader.events.GlobalPortfolioUpdateRequest;
 import com.pairtradinglab.ptltrader.events.LogEvent;
+import com.pairtradinglab.ptltrader.ib.HistoricalDataRequest;
+import com.pairtradinglab.ptltrader.ib.OrderGateway;
 import com.pairtradinglab.ptltrader.ib.SimpleWrapper;
 import com.pairtradinglab.ptltrader.model.PairStrategy;
 import com.pairtradinglab.ptltrader.model.Portfolio;
@@ -75,6 +77,7 @@ import net.jcip.annotations.*;
  * Pair Trading Engine
  * @author carloss
  * This class is designed to run in thread confinement.
+ * In the pooled engine mode it is run serially by the worker threads of EngineScheduler.
  * Only methods permitted to call from other threads are:
  * setPtModel, getPtModel, hasActiveOrPendingPosition
  *
@@ -95,7 +98,9 @@ public class ConfinedEngine {
 	private static final int MAX_HIST_PRICE_AGE = 5; // max age of last hist price in days
 	private static final double PRICE_MOVE_RATIO_LIMIT = 1.99; // this number must be >1
 	
-	private static int SLEEP_AFTER_POST = 50; // in ms
+	
+	private static final int TICK_RING_CAPACITY = 4096;
+	private static final long MAX_TICK_AGE_NANOS = 2000000000L; // 2 seconds
 	
 	// dependencies to be injected
 	private volatile PairTradingModel ptmodel; // not final so it could be replaced!
@@ -188,6 +193,11 @@ public class ConfinedEngine {
 	private DateTime lastOrderFilled1;
 	private DateTime lastOrderFilled2;
 	
+	// leg latency tracking
+	private final LegTiming timing1 = new LegTiming();
+	private final LegTiming timing2 = new LegTiming();
+	private boolean legsPaired = false;
+	
 	// cooldown
 	private DateTime lastPositionClosed=null;
 	
@@ -205,6 +215,24 @@ public class ConfinedEngine {
 	private final String exchange1;
 	private final String exchange2;
 	
+	private ModelSnapshotStore snapshotStore = null; // model state persistence (optional)
+	
+	// primitive tick ingestion (optional)
+	private TickRing tickRing = null;
+	private int symbolId1 = -1;
+	private int symbolId2 = -1;
+	private final TickListener tickRingConsumer = new TickListener() {
+		
+		@Override
+		public void onTick(int symbolId, int field, double price, int canAutoExecute, long nanoTime) {
+			conflateTick(symbolId, field, price, nanoTime);
+		}
+	};
+	
+	// latest-value slots conflating the drained ticks: leg 1 bid, ask, last, leg 2 bid, ask, last
+	private final double[] conflatedPrices = new double[6];
+	private int conflatedSlots = 0; // bit mask of slots updated within the current drain
+	
 	public ConfinedEngine(PairTradingModel ptmodel, PairStrategy strategy,
 			Map<String, SimpleWrapper> ibWrapperMap, LoggerFactory loggerFactory,
 			MarketDataProvider marketDataProvider,
@@ -242,10 +270,27 @@ public class ConfinedEngine {
 		
 	}
 	
+	// must be called before the engine thread is started
+	void enableSnapshots(ModelSnapshotStore snapshotStore) {
+		this.snapshotStore = snapshotStore;
+	}
+	
+	// must be called before the engine thread is started
+	TickRing enableTickRing(int symbolId1, int symbolId2) {
+		this.symbolId1 = symbolId1;
+		this.symbolId2 = symbolId2;
+		tickRing = new TickRing(TICK_RING_CAPACITY);
+		return tickRing;
+	}
+	
 	public void handleMessage(ControlMessage message) {
-		Duration d = new Duration(message.timestamp, DateTime.now());
-		//debug(message.type+" "+d);
-		long ms = d.getMillis();
+		if (message.type==ControlMessage.TYPE_TICKS_PENDING) {
+			// the wake-up message is reused, ticks in the ring carry their own timestamps
+			drainTicks();
+			return;
+		}
+		
+		long ms = DateTimeUtils.currentTimeMillis()-message.timestamp;
 		
 		// reject all messages older than 30 seconds
 		if (ms>30000) return;
@@ -361,8 +406,8 @@ public class ConfinedEngine {
 		strategy.setStatus(PairStrategy.STATUS_INACTIVE);
 		
 		// unsubscribe from market data (if applicable)
-		marketDataProvider.unsubscribeData(strategy.getStock1(), strategy.getUid());
-		marketDataProvider.unsubscribeData(strategy.getStock2(), strategy.getUid());
+		marketDataProvider.unsubscribeData(strategy.getStock1(), strategy);
+		marketDataProvider.unsubscribeData(strategy.getStock2(), strategy);
 		provider.stop();
 		activeCores.unregisterCore(strategy.getUid());
 		
@@ -431,18 +476,19 @@ public class ConfinedEngine {
 	}
 	
 	private void handleRecoverableErrorTimeout(int leg) {
-		EClientSocket es = getSocket();
-		if (es==null) return;
+		SimpleWrapper w = getWrapper();
+		if (w==null) return;
+		OrderGateway gateway = w.getOrderGateway();
 		warn("recoverable error timeout, cancelling order and liquidating position for leg #"+leg);
 		if (leg==1) {
 			if (o1!=null && opening1!=0) {
 				// cancel the order for leg #1
 				debug("cancelling order #"+o1.m_orderId);
-				es.cancelOrder(o1.m_orderId);
+				gateway.cancel(o1.m_orderId);
 				if (o2!=null && opening2!=0) {
 					// cancel order for leg #2 too (if pending)
 					debug("cancelling order #"+o2.m_orderId);
-					es.cancelOrder(o2.m_orderId);
+					gateway.cancel(o2.m_orderId);
 					opening2=0;
 					o2=null;
 				} else if (pos2!=0) {
@@ -459,11 +505,11 @@ public class ConfinedEngine {
 			if (o2!=null && opening2!=0) {
 				// cancel the order for leg #2
 				debug("cancelling order #"+o2.m_orderId);
-				es.cancelOrder(o2.m_orderId);
+				gateway.cancel(o2.m_orderId);
 				if (o1!=null && opening1!=0) {
 					// cancel order for leg #1 too (if pending)
 					debug("cancelling order #"+o1.m_orderId);
-					es.cancelOrder(o1.m_orderId);
+					gateway.cancel(o1.m_orderId);
 					opening1=0;
 					o1=null;
 				} else if (pos1!=0) {
@@ -483,37 +529,77 @@ public class ConfinedEngine {
 	
 	protected void onTick(Tick t) {
 		if (t.symbol.equals(strategy.getStock1())) {
-			MarketRates mrates1 = ptmodel.getMr1();
-			switch(t.type) {
-			case TickType.BID:
-				mrates1.setBid(t.price);
-				break;
-			case TickType.ASK:
-				mrates1.setAsk(t.price);
-				break;
-			case TickType.LAST:
-				mrates1.setLast(t.price);
-				break;
-			}
-			if (started) tradeLogic(false);
+			onLegTick(ptmodel.getMr1(), t.type, t.price);
 		} else if (t.symbol.equals(strategy.getStock2())) {
-			MarketRates mrates2 = ptmodel.getMr2();
-			switch(t.type) {
-			case TickType.BID:
-				mrates2.setBid(t.price);
-				break;
-			case TickType.ASK:
-				mrates2.setAsk(t.price);
-				break;
-			case TickType.LAST:
-				mrates2.setLast(t.price);
-				break;
-			}
-			if (started) tradeLogic(false);
+			onLegTick(ptmodel.getMr2(), t.type, t.price);
 		}
 		
 	}
 	
+	/**
+	 * Drains all ticks queued in the tick ring. Only the latest price of each leg and field
+	 * is applied and the trade logic runs once per drain instead of once per tick.
+	 */
+	protected void drainTicks() {
+		if (tickRing==null) return;
+		conflatedSlots = 0;
+		tickRing.drainTo(tickRingConsumer);
+		if (conflatedSlots==0) return;
+		
+		applyConflated(ptmodel.getMr1(), 0);
+		applyConflated(ptmodel.getMr2(), 3);
+		if (started) tradeLogic(false);
+	}
+	
+	private void conflateTick(int symbolId, int field, double price, long nanoTime) {
+		// reject all ticks older than 2 seconds
+		if (System.nanoTime()-nanoTime>MAX_TICK_AGE_NANOS) return;
+		
+		int slot;
+		if (symbolId==symbolId1) {
+			slot = 0;
+		} else if (symbolId==symbolId2) {
+			slot = 3;
+		} else {
+			return;
+		}
+		switch(field) {
+		case TickType.BID:
+			break;
+		case TickType.ASK:
+			slot += 1;
+			break;
+		case TickType.LAST:
+			slot += 2;
+			break;
+		default:
+			return;
+		}
+		conflatedPrices[slot] = price;
+		conflatedSlots |= 1 << slot;
+	}
+	
+	private void applyConflated(MarketRates mrates, int firstSlot) {
+		if ((conflatedSlots & (1 << firstSlot))!=0) mrates.setBid(conflatedPrices[firstSlot]);
+		if ((conflatedSlots & (1 << (firstSlot+1)))!=0) mrates.setAsk(conflatedPrices[firstSlot+1]);
+		if ((conflatedSlots & (1 << (firstSlot+2)))!=0) mrates.setLast(conflatedPrices[firstSlot+2]);
+	}
+	
+	private void onLegTick(MarketRates mrates, int field, double price) {
+		switch(field) {
+		case TickType.BID:
+			mrates.setBid(price);
+			break;
+		case TickType.ASK:
+			mrates.setAsk(price);
+			break;
+		case TickType.LAST:
+			mrates.setLast(price);
+			break;
+		}
+		if (started) tradeLogic(false);
+	}
+	
 	protected void onGenericTick(GenericTick t) {
 		//debug(String.format("gen tick type %d of %s value %f (%s %s)", t.type, t.symbol, t.value, strategy.getStock1(), strategy.getStock2()));
 		if (t.symbol.equals(strategy.getStock1())) {
@@ -670,6 +756,7 @@ public class ConfinedEngine {
 	}
 	
 	private void handleOrderStatus(OrderStatus os) {
+		trackLatency(os);
 		if (o1!=null && os.id==o1.m_orderId) {
 			// relevant to order #1
 			if ("Filled".equals(os.status) && os.remaining==0) {
@@ -762,6 +849,26 @@ public class ConfinedEngine {
 		
 	}
 	
+	private void trackLatency(OrderStatus os) {
+		LegTiming t;
+		if (os.id==timing1.getOrderId()) t = timing1;
+		else if (os.id==timing2.getOrderId()) t = timing2;
+		else return;
+		long now = System.nanoTime();
+		LegLatency stats = strategy.getLegLatency();
+		t.acked(now, stats);
+		if (os.filled>0) t.partiallyFilled(now, stats);
+		if (!"Filled".equals(os.status) || os.remaining!=0 || t.isFilled()) return;
+		t.filled(now, stats);
+		if (legsPaired && timing1.isFilled() && timing2.isFilled()) {
+			long submitSkew = Math.abs(timing2.getTransmitted()-timing1.getTransmitted());
+			long fillSkew = Math.abs(timing2.getLastFill()-timing1.getLastFill());
+			stats.getSubmitSkew().record(submitSkew);
+			stats.getFillSkew().record(fillSkew);
+			debug(String.format("both legs filled, submit skew %.3fms, fill skew %.3fms", submitSkew/1e6, fillSkew/1e6));
+		}
+	}
+	
 	private void handleExecutionEvent(ExecutionEvent ee) {
 		Execution ex = ee.getExecution();
 		if (!executions.containsKey(ex.m_orderId)) return;
@@ -773,6 +880,10 @@ public class ConfinedEngine {
 		
 		debug(String.format("handling execution event %s for order %d", ex.m_execId, ex.m_orderId));
 		
+		long now = System.nanoTime();
+		if (ex.m_orderId==timing1.getOrderId()) timing1.partiallyFilled(now, strategy.getLegLatency());
+		else if (ex.m_orderId==timing2.getOrderId()) timing2.partiallyFilled(now, strategy.getLegLatency());
+		
 		if (ex.m_orderId == openOrderId1) {
 			if (openTransaction1!=null) {
 				openTransaction1.add2CumVal(ex.m_avgPrice * (double) ex.m_shares);
@@ -988,6 +1099,7 @@ public class ConfinedEngine {
 			// post history event
 			debug("posting close history entry");
 			bus.post(closeHistoryEntry);
+			l.info("leg latency since start: "+strategy.getLegLatency());
 			closeHistoryEntryLastSent=closeHistoryEntry;
 			closeHistoryEntry=null;
 			
@@ -1240,70 +1352,85 @@ public class ConfinedEngine {
 		MarketRates mrates1 = ptmodel.getMr1();
 		MarketRates mrates2 = ptmodel.getMr2();
 		
+		Order order1 = null;
+		Order order2 = null;
+		String ref = String.format("ptl close %s-%s", c1.m_symbol, c2.m_symbol);
 		if (qty1>0) {
 			closeTransaction1 = new TransactionEvent(strategy.getUid(), strategy.getPortfolio().getAccountCode(), strategy.getStock1(), (pos1>0)?TransactionEvent.DIRECTION_SHORT:TransactionEvent.DIRECTION_LONG, qty1, (pos1>0)?mrates1.getBid():mrates1.getAsk());
-			o1 = new Order();
-			o1.m_orderType="MKT";
-			o1.m_totalQuantity = qty1;
-			debug("acquiring orderId lock");
-			w.lockOrderId(); // lock order ID subsystem
-			try {
-				o1.m_orderId = w.getNextId();
-				o1.m_clientId = w.getIbClientId();
-				o1.m_action = (pos1>0)?"SELL":"BUY";
-				o1.m_account = strategy.getPortfolio().getAccountCode();
-				o1.m_orderRef = String.format("ptl close %s-%s", c1.m_symbol, c2.m_symbol);
-				debug(String.format("transmit %s order symbol=%s qty=%d oid=%d account=%s", o1.m_action, c1.m_symbol, o1.m_totalQuantity, o1.m_orderId, o1.m_account));
-				closing1=-pos1;
-				closeOrderId1 = o1.m_orderId;
-				executions.put(o1.m_orderId, new HashSet<String>());
-				
-				lastOrderPlaced1=DateTime.now();
-				
-				es.placeOrder(o1.m_orderId, c1, o1);
-				Thread.sleep(SLEEP_AFTER_POST);
-			} catch (InterruptedException e) {
-				// TODO Auto-generated catch block
-				e.printStackTrace();
-			} finally {
-				debug("releasing orderId lock");
-				w.unlockOrderId();
-			}
+			o1 = order1 = createOrder(w, (pos1>0)?"SELL":"BUY", qty1, ref);
+			closing1=-pos1;
+			lastOrderPlaced1=DateTime.now();
 		}
 		
 		if (qty2>0) {
 			closeTransaction2 = new TransactionEvent(strategy.getUid(), strategy.getPortfolio().getAccountCode(), strategy.getStock2(), (pos2>0)?TransactionEvent.DIRECTION_SHORT:TransactionEvent.DIRECTION_LONG, qty2, (pos2>0)?mrates2.getBid():mrates2.getAsk());
-			o2 = new Order();
-			o2.m_orderType="MKT";
-			o2.m_totalQuantity = qty2;
-			debug("acquiring orderId lock");
-			w.lockOrderId(); // lock order ID subsystem
-			try {
-				o2.m_orderId = w.getNextId();
-				o2.m_clientId = w.getIbClientId();
-				o2.m_action = (pos2>0)?"SELL":"BUY";
-				o2.m_account = strategy.getPortfolio().getAccountCode();
-				o2.m_orderRef = String.format("ptl close %s-%s", c1.m_symbol, c2.m_symbol);
-				debug(String.format("transmit %s order symbol=%s qty=%d oid=%d account=%s", o2.m_action, c2.m_symbol, o2.m_totalQuantity, o2.m_orderId, o2.m_account));
-				closing2=-pos2;
-				closeOrderId2 = o2.m_orderId;
-				executions.put(o2.m_orderId, new HashSet<String>());
-				
-				lastOrderPlaced2=DateTime.now();
-				
-				es.placeOrder(o2.m_orderId, c2, o2);
-				Thread.sleep(SLEEP_AFTER_POST);
-			} catch (InterruptedException e) {
-				// TODO Auto-generated catch block
-				e.printStackTrace();
-			} finally {
-				debug("releasing orderId lock");
-				w.unlockOrderId();
-			}
+			o2 = order2 = createOrder(w, (pos2>0)?"SELL":"BUY", qty2, ref);
+			closing2=-pos2;
+			lastOrderPlaced2=DateTime.now();
 		}
 		
+		OrderGateway gateway = w.getOrderGateway();
+		legsPaired = order1!=null && order2!=null;
+		if (legsPaired) gateway.submitPair(c1, order1, c2, order2, closeListener);
+		else if (order1!=null) gateway.submit(c1, order1, closeListener);
+		else if (order2!=null) gateway.submit(c2, order2, closeListener);
+		
+	}
+	
+	private Order createOrder(SimpleWrapper w, String action, int qty, String ref) {
+		Order o = new Order();
+		o.m_orderType="MKT";
+		o.m_totalQuantity = qty;
+		o.m_clientId = w.getIbClientId();
+		o.m_action = action;
+		o.m_account = strategy.getPortfolio().getAccountCode();
+		o.m_orderRef = ref;
+		return o;
 	}
 	
+	// called by the order gateway before the order is transmitted
+	private void orderAssigned(Order order) {
+		Contract c = (order==o1) ? c1 : c2;
+		debug(String.format("transmit %s order symbol=%s qty=%d oid=%d account=%s", order.m_action, c.m_symbol, order.m_totalQuantity, order.m_orderId, order.m_account));
+		executions.put(order.m_orderId, new HashSet<String>());
+		if (order==o1) timing1.start(order.m_orderId);
+		else timing2.start(order.m_orderId);
+	}
+	
+	// called by the order gateway, possibly on its scheduler thread, so it may touch the volatile timestamp only
+	private void orderTransmitted(Order order, long nanoTime) {
+		if (order.m_orderId==timing1.getOrderId()) timing1.transmitted(nanoTime);
+		else if (order.m_orderId==timing2.getOrderId()) timing2.transmitted(nanoTime);
+	}
+	
+	private final OrderGateway.Listener openListener = new OrderGateway.Listener() {
+		@Override
+		public void assigned(Order order) {
+			if (order==o1) openOrderId1 = order.m_orderId;
+			else openOrderId2 = order.m_orderId;
+			orderAssigned(order);
+		}
+		
+		@Override
+		public void transmitted(Order order, long nanoTime) {
+			orderTransmitted(order, nanoTime);
+		}
+	};
+	
+	private final OrderGateway.Listener closeListener = new OrderGateway.Listener() {
+		@Override
+		public void assigned(Order order) {
+			if (order==o1) closeOrderId1 = order.m_orderId;
+			else closeOrderId2 = order.m_orderId;
+			orderAssigned(order);
+		}
+		
+		@Override
+		public void transmitted(Order order, long nanoTime) {
+			orderTransmitted(order, nanoTime);
+		}
+	};
+	
 	
 	private boolean histDataReady() {
 		if (lastDataObtained==null) {
@@ -1330,7 +1457,9 @@ public class ConfinedEngine {
 		debug("requesting historical data, reqid = "+dataRequestId);
 		lastDataRequested=DateTime.now();
 		lastHistDataRequestFailed = false;
-		provider.requestData();
+		// flat strategies can't trade until the data arrive, the others just refresh
+		boolean waiting = position==0 && strategy.getTradingStatus()==PairStrategy.TRADING_STATUS_ACTIVE;
+		provider.requestData(waiting ? HistoricalDataRequest.PRIORITY_WAITING : HistoricalDataRequest.PRIORITY_REFRESH);
 		
 	}
 	
@@ -1369,65 +1498,18 @@ public class ConfinedEngine {
 						openHistoryEntry = new HistoryEntry(strategy.getUid(), strategy.getPortfolio().getAccountCode(), null, strategy.getStock1(), strategy.getStock2(), HistoryEntry.ACTION_OPENED_LONG, 
 								ptmodel.getLastZscoreInvolved(), "");
 						openTransaction1 = new TransactionEvent(strategy.getUid(), strategy.getPortfolio().getAccountCode(), strategy.getStock1(), TransactionEvent.DIRECTION_LONG, qq.qty1, mrates1.getAsk());
+						openTransaction2 = new TransactionEvent(strategy.getUid(), strategy.getPortfolio().getAccountCode(), strategy.getStock2(), TransactionEvent.DIRECTION_SHORT, qq.qty2, mrates2.getBid());
 						
 						// create and transmit orders
-						o1 = new Order();
-						o1.m_orderType="MKT";
-						o1.m_totalQuantity = qq.qty1;
-						debug("acquiring orderId lock");
-						w.lockOrderId(); // lock order ID subsystem
-						try {
-							o1.m_orderId = w.getNextId();
-							o1.m_clientId = w.getIbClientId();
-							o1.m_action = "BUY";
-							o1.m_account = strategy.getPortfolio().getAccountCode();
-							o1.m_orderRef = String.format("ptl open long %s-%s", c1.m_symbol, c2.m_symbol);
-							debug(String.format("transmit BUY order symbol=%s qty=%d oid=%d account=%s", c1.m_symbol, o1.m_totalQuantity, o1.m_orderId, o1.m_account));
-							opening1=qq.qty1;
-							openOrderId1 = o1.m_orderId;
-							executions.put(o1.m_orderId, new HashSet<String>());
-							
-							lastOrderPlaced1=DateTime.now();
-							
-							es.placeOrder(o1.m_orderId, c1, o1);
-							Thread.sleep(SLEEP_AFTER_POST);
-						} catch (InterruptedException e) {
-							// TODO Auto-generated catch block
-							e.printStackTrace();
-						} finally {
-							debug("releasing orderId lock");
-							w.unlockOrderId();
-						}
-						
-						openTransaction2 = new TransactionEvent(strategy.getUid(), strategy.getPortfolio().getAccountCode(), strategy.getStock2(), TransactionEvent.DIRECTION_SHORT, qq.qty2, mrates2.getBid());
-						o2 = new Order();
-						o2.m_orderType="MKT";
-						o2.m_totalQuantity = qq.qty2;
-						debug("acquiring orderId lock");
-						w.lockOrderId(); // lock order ID subsystem
-						try {
-							o2.m_orderId = w.getNextId();
-							o2.m_clientId = w.getIbClientId();
-							o2.m_action = "SELL";
-							o2.m_account = strategy.getPortfolio().getAccountCode();
-							o2.m_orderRef = String.format("ptl open long %s-%s", c1.m_symbol, c2.m_symbol);
-							debug(String.format("transmit SELL order symbol=%s qty=%d oid=%d account=%s", c2.m_symbol, o2.m_totalQuantity, o2.m_orderId, o2.m_account));
-							opening2=-qq.qty2;
-							openOrderId2 = o2.m_orderId; 
-							executions.put(o2.m_orderId, new HashSet<String>());
-							
-							lastOrderPlaced2=DateTime.now();
-							
-							
-							es.placeOrder(o2.m_orderId, c2, o2);
-							Thread.sleep(SLEEP_AFTER_POST);
-						} catch (InterruptedException e) {
-							// TODO Auto-generated catch block
-							e.printStackTrace();
-						} finally {
-							debug("releasing orderId lock");
-							w.unlockOrderId();
-						}
+						String ref = String.format("ptl open long %s-%s", c1.m_symbol, c2.m_symbol);
+						o1 = createOrder(w, "BUY", qq.qty1, ref);
+						o2 = createOrder(w, "SELL", qq.qty2, ref);
+						opening1=qq.qty1;
+						opening2=-qq.qty2;
+						lastOrderPlaced1=DateTime.now();
+						lastOrderPlaced2=lastOrderPlaced1;
+						legsPaired = true;
+						w.getOrderGateway().submitPair(c1, o1, c2, o2, openListener);
 					}
 					
 				} else if (signal==PairTradingModel.SIGNAL_SHORT) {
@@ -1439,63 +1521,18 @@ public class ConfinedEngine {
 						openHistoryEntry = new HistoryEntry(strategy.getUid(), strategy.getPortfolio().getAccountCode(), null, strategy.getStock1(), strategy.getStock2(), HistoryEntry.ACTION_OPENED_SHORT,
 								ptmodel.getLastZscoreInvolved(), "");
 						openTransaction1 = new TransactionEvent(strategy.getUid(), strategy.getPortfolio().getAccountCode(), strategy.getStock1(), TransactionEvent.DIRECTION_SHORT, qq.qty1, mrates1.getBid());
-						// create and transmit orders
-						o1 = new Order();
-						o1.m_orderType="MKT";
-						o1.m_totalQuantity = qq.qty1;
-						debug("acquiring orderId lock");
-						w.lockOrderId(); // lock order ID subsystem
-						try {
-							o1.m_orderId = w.getNextId();
-							o1.m_clientId = w.getIbClientId();
-							o1.m_action = "SELL";
-							o1.m_account = strategy.getPortfolio().getAccountCode();
-							o1.m_orderRef = String.format("ptl open short %s-%s", c1.m_symbol, c2.m_symbol);
-							debug(String.format("transmit SELL order symbol=%s qty=%d oid=%d account=%s", c1.m_symbol, o1.m_totalQuantity, o1.m_orderId, o1.m_account));
-							opening1=-qq.qty1;
-							openOrderId1 = o1.m_orderId;
-							executions.put(o1.m_orderId, new HashSet<String>());
-							
-							lastOrderPlaced1=DateTime.now();
-							
-							es.placeOrder(o1.m_orderId, c1, o1);
-							Thread.sleep(SLEEP_AFTER_POST);
-						} catch (InterruptedException e) {
-							// TODO Auto-generated catch block
-							e.printStackTrace();
-						} finally {
-							debug("releasing orderId lock");
-							w.unlockOrderId();
-						}
-						
 						openTransaction2 = new TransactionEvent(strategy.getUid(), strategy.getPortfolio().getAccountCode(), strategy.getStock2(), TransactionEvent.DIRECTION_LONG, qq.qty2, mrates2.getAsk());
-						o2 = new Order();
-						o2.m_orderType="MKT";
-						o2.m_totalQuantity = qq.qty2;
-						debug("acquiring orderId lock");
-						w.lockOrderId(); // lock order ID subsystem
-						try {
-							o2.m_orderId = w.getNextId();
-							o2.m_clientId = w.getIbClientId();
-							o2.m_action = "BUY";
-							o2.m_account = strategy.getPortfolio().getAccountCode();
-							o2.m_orderRef = String.format("ptl open short %s-%s", c1.m_symbol, c2.m_symbol);
-							debug(String.format("transmit BUY order symbol=%s qty=%d oid=%d account=%s", c2.m_symbol, o2.m_totalQuantity, o2.m_orderId, o2.m_account));
-							opening2=qq.qty2;
-							openOrderId2 = o2.m_orderId;
-							executions.put(o2.m_orderId, new HashSet<String>());
-							
-							lastOrderPlaced2=DateTime.now();
-							
-							es.placeOrder(o2.m_orderId, c2, o2);
-							Thread.sleep(SLEEP_AFTER_POST);
-						} catch (InterruptedException e) {
-							// TODO Auto-generated catch block
-							e.printStackTrace();
-						} finally {
-							debug("releasing orderId lock");
-							w.unlockOrderId();
-						}
+						
+						// create and transmit orders
+						String ref = String.format("ptl open short %s-%s", c1.m_symbol, c2.m_symbol);
+						o1 = createOrder(w, "SELL", qq.qty1, ref);
+						o2 = createOrder(w, "BUY", qq.qty2, ref);
+						opening1=-qq.qty1;
+						opening2=qq.qty2;
+						lastOrderPlaced1=DateTime.now();
+						lastOrderPlaced2=lastOrderPlaced1;
+						legsPaired = true;
+						w.getOrderGateway().submitPair(c1, o1, c2, o2, openListener);
 					}
 					
 				}
@@ -1907,17 +1944,8 @@ public class ConfinedEngine {
 			lastHistDataRequestFailed = false;
 			// extract data to the model TODO
 			
-			TreeMap<DateTime, Double> p1 = provider.getDataOut1();
-			TreeMap<DateTime, Double> p2 = provider.getDataOut2();
-			if (p1.size()!=p2.size()) {
-				// this should not happen, but if it does, we fail gracefuly here
-				dataRequestId=0;
-				requestManualIntervention("unable to get correct historical data");
-				lastHistDataRequestFailed = true;
-				return;
-			}
-			
-			int sz = p1.size();
+			AlignedPairSeries series = provider.getSeries();
+			int sz = series.size();
 			if (sz <= 0) {
 				// we got empty data for whatever reason!
 				dataRequestId=0;
@@ -1927,28 +1955,17 @@ public class ConfinedEngine {
 			}
 			
 			DateTimeFormatter fmt = DateTimeFormat.forPattern("yyyyMMdd");
-			lastHistPriceDate1 = p1.lastKey();
-			lastHistPrice1 = p1.get(lastHistPriceDate1);
-			lastHistPriceDate2 = p2.lastKey();
-			lastHistPrice2 = p2.get(lastHistPriceDate2);
+			lastHistPriceDate1 = series.getLastDate();
+			lastHistPrice1 = series.prices1[sz-1];
+			lastHistPriceDate2 = lastHistPriceDate1;
+			lastHistPrice2 = series.prices2[sz-1];
 			
-			int ls1 = (p1.size()>15) ? 15 : p1.size();
-			List<Double> l1 = new ArrayList<Double>(p1.values()).subList(p1.size()-ls1, p1.size());
-			debug(String.format("last %d prices (%s): %s", ls1, strategy.getStock1(), Joiner.on(" ").join(l1)));
-			int ls2 = (p2.size()>15) ? 15 : p2.size();
-			List<Double> l2 = new ArrayList<Double>(p2.values()).subList(p2.size()-ls2, p2.size());
-			debug(String.format("last %d prices (%s): %s", ls2, strategy.getStock2(), Joiner.on(" ").join(l2)));
+			int ls = (sz>15) ? 15 : sz;
+			debug(String.format("last %d prices (%s): %s", ls, strategy.getStock1(), Joiner.on(" ").join(Doubles.asList(series.prices1).subList(sz-ls, sz))));
+			debug(String.format("last %d prices (%s): %s", ls, strategy.getStock2(), Joiner.on(" ").join(Doubles.asList(series.prices2).subList(sz-ls, sz))));
 			
 			info(String.format("got historical data: last entries are %f@%s / %f@%s", lastHistPrice1, lastHistPriceDate1.toString(fmt), lastHistPrice2, lastHistPriceDate2.toString(fmt)));
 			
-			if (!lastHistPriceDate1.equals(lastHistPriceDate2)) {
-				// this should not happen, but if it does, we fail gracefuly here
-				dataRequestId=0;
-				requestManualIntervention("unable to get correct historical data");
-				lastHistDataRequestFailed = true;
-				return;
-			}
-			
 			// check the last price point age
 			Duration d = new Duration(lastHistPriceDate1, DateTime.now());
 			if (d.getStandardDays() > MAX_HIST_PRICE_AGE) {
@@ -1959,16 +1976,15 @@ public class ConfinedEngine {
 			}
 			
 			
-			double prices1[] = new double[p1.size()];
-			double prices2[] = new double[p2.size()];
-			int i=0;
-			for (DateTime k:p1.keySet()) {
-				prices1[i]=p1.get(k);
-				prices2[i]=p2.get(k);
-				i++;
+			if (snapshotStore!=null && !ptmodel.isPricesInitialized()) {
+				try {
+					if (snapshotStore.restore(strategy.getUid(), ptmodel, series)) info("model state restored from snapshot");
+				} catch (IOException e) {
+					warn("unable to restore model snapshot: "+e.getMessage());
+				}
 			}
 			try {
-				ptmodel.setPrices(prices1, prices2);
+				ptmodel.appendPrices(series); // full setPrices unless only new bars arrived
 			} catch (RuntimeException e) {
 				dataRequestId=0;
 				requestManualIntervention("not enough data to calculate model");
@@ -1980,6 +1996,13 @@ public class ConfinedEngine {
 			dataRequestId=0;
 			
 			info("obtained historical data OK: "+ptmodel.getStatusInfo());
+			if (snapshotStore!=null) {
+				try {
+					snapshotStore.save(strategy.getUid(), ptmodel, series);
+				} catch (IOException e) {
+					warn("unable to save model snapshot: "+e.getMessage());
+				}
+			}
 			
 		}
 	}
@@ -1999,8 +2022,8 @@ public class ConfinedEngine {
 		
 		// subscribe to market data
 		if (marketDataProvider.isConnected()) {
-			marketDataProvider.subscribeData(strategy.getStock1(), strategy.getUid());
-			marketDataProvider.subscribeData(strategy.getStock2(), strategy.getUid());
+			marketDataProvider.subscribeData(strategy.getStock1(), strategy);
+			marketDataProvider.subscribeData(strategy.getStock2(), strategy);
 		}
 	}
 	
@@ -20,7 +20,7 @@ package com.pairtradinglab.ptltrader.trading;
 
 import net.jcip.annotations.*;
 
-import org.joda.time.DateTime;
+import org.joda.time.DateTimeUtils;
 
 @Immutable
 public class ControlMessage {
@@ -40,16 +40,17 @@ public class ControlMessage {
 	public static final int TYPE_PAIR_DATA_FAILURE = 14;
 	public static final int TYPE_ACCOUNT_CONNECTED = 15;
 	public static final int TYPE_RESUME_REQUEST = 16;
+	public static final int TYPE_TICKS_PENDING = 17;
 	
 	public final int type;
 	public final Object data;
-	public final DateTime timestamp;
+	public final long timestamp; // epoch millis
 	
 	public ControlMessage(int type, Object data) {
 		super();
 		this.type = type;
 		this.data = data;
-		this.timestamp = DateTime.now();
+		this.timestamp = DateTimeUtils.currentTimeMillis();
 	}
 	
 }
@@ -0,0 +1,201 @@
+/**
+ * 	This file is part of PTL Trader.
+ *
+ * 	Copyright © 2011-2021 Quantverse OÜ. All Rights Reserved.
+ *
+ *  PTL Trader is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  PTL Trader is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with PTL Trader. If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.pairtradinglab.ptltrader.trading;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+import com.pairtradinglab.ptltrader.RuntimeParams;
+
+import net.jcip.annotations.*;
+
+/**
+ * Keeps the daily bars of each contract on disk, so a restart needs to request only the days since the last stored bar.
+ * One file per contract, accessed through a mapped buffer. The file is a header followed by blocks of BLOCK_CAPACITY bars,
+ * each block holding its bar count and two columns: the bar days (epoch days) and the close prices. New bars go to
+ * the last block or to new blocks appended to the file, and a block count is updated only after its bars are written,
+ * so an interrupted write leaves the bars written so far. The file never shrinks or gets replaced, as that is not
+ * possible while it is mapped on some platforms; replaced bars are written over the old ones from the first block.
+ * Callers must not access the same contract concurrently (the bar cache loads a contract once, before storing any of
+ * its bars, and stores the bars from its single writer thread).
+ */
+@ThreadSafe
+public class DailyBarStore {
+	private static final int MAGIC = 0x50544c42; // "PTLB"
+	private static final int VERSION = 1;
+	private static final int HEADER_SIZE = 12; // magic, version, block capacity
+	static final int BLOCK_CAPACITY = 256;
+	private static final int BLOCK_SIZE = 8 + 12*BLOCK_CAPACITY; // count, padding, days, closes
+	
+	private final File dir;
+	
+	public DailyBarStore(RuntimeParams runtimeParams) {
+		super();
+		if (runtimeParams.isStoredBars()) {
+			String home = System.getProperty("user.home")+ File.separator + "Application Data";
+			dir = new File(home + File.separator + "PTLTrader" + File.separator + runtimeParams.getProfile() + "-bars");
+		} else {
+			dir = null;
+		}
+	}
+	
+	DailyBarStore(File dir) {
+		super();
+		this.dir = dir;
+	}
+	
+	public boolean isEnabled() {
+		return dir!=null;
+	}
+	
+	private File getFile(String key) {
+		return new File(dir, key.replaceAll("[^A-Za-z0-9._-]", "_") + ".bars");
+	}
+	
+	private static int blockOffset(int block) {
+		return HEADER_SIZE + block*BLOCK_SIZE;
+	}
+	
+	/**
+	 * Reads all bars stored for the contract
+	 * @return the bars, null if none are stored
+	 */
+	public BarSeries load(String key) throws IOException {
+		File f = getFile(key);
+		if (!f.isFile()) return null;
+		try (FileChannel ch = FileChannel.open(f.toPath(), StandardOpenOption.READ)) {
+			MappedByteBuffer buf = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+			int blocks = checkHeader(buf, ch.size(), f);
+			int count = 0;
+			for (int b=0; b<blocks; b++) {
+				int bc = getBlockCount(buf, b, f);
+				if (bc==0) break;
+				count += bc;
+			}
+			if (count==0) return null;
+			int[] days = new int[count];
+			double[] closes = new double[count];
+			int n = 0;
+			for (int b=0; n<count; b++) {
+				int bc = buf.getInt(blockOffset(b));
+				buf.position(blockOffset(b) + 8);
+				buf.asIntBuffer().get(days, n, bc);
+				buf.position(blockOffset(b) + 8 + 4*BLOCK_CAPACITY);
+				buf.asDoubleBuffer().get(closes, n, bc);
+				n += bc;
+			}
+			return new BarSeries(days, closes);
+		}
+	}
+	
+	/**
+	 * Appends bars after the last stored one
+	 * @throws IllegalArgumentException if the days are not ascending or do not follow the stored bars
+	 */
+	public void append(String key, int[] days, double[] closes, int n) throws IOException {
+		write(key, days, closes, n, false);
+	}
+	
+	/**
+	 * Replaces all bars of the contract (e.g. after the history was adjusted)
+	 */
+	public void replace(String key, int[] days, double[] closes, int n) throws IOException {
+		write(key, days, closes, n, true);
+	}
+	
+	private void write(String key, int[] days, double[] closes, int n, boolean replace) throws IOException {
+		if (n==0 && !replace) return;
+		if (!dir.isDirectory() && !dir.mkdirs()) throw new IOException("unable to create directory "+dir);
+		File f = getFile(key);
+		try (FileChannel ch = FileChannel.open(f.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+			long size = ch.size();
+			int blocks;
+			if (size==0) {
+				blocks = 0;
+			} else {
+				blocks = checkHeader(ch.map(FileChannel.MapMode.READ_ONLY, 0, size), size, f);
+			}
+			
+			// locate the first free slot
+			MappedByteBuffer buf = ch.map(FileChannel.MapMode.READ_WRITE, 0, blockOffset(blocks));
+			if (size==0) {
+				buf.putInt(0, MAGIC);
+				buf.putInt(4, VERSION);
+				buf.putInt(8, BLOCK_CAPACITY);
+			}
+			if (replace) {
+				for (int b=0; b<blocks; b++) buf.putInt(blockOffset(b), 0);
+				buf.force();
+			}
+			int block = 0;
+			int count = 0;
+			int last = Integer.MIN_VALUE;
+			for (int b=0; b<blocks; b++) {
+				int bc = getBlockCount(buf, b, f);
+				if (bc==0) break;
+				block = b;
+				count = bc;
+				last = buf.getInt(blockOffset(b) + 8 + 4*(bc-1));
+			}
+			for (int i=0; i<n; i++) {
+				if (days[i]<=last) throw new IllegalArgumentException("bar days must be ascending");
+				last = days[i];
+			}
+			if (count==BLOCK_CAPACITY) {
+				block++;
+				count = 0;
+			}
+			
+			// fill the blocks, mapping the new ones as needed
+			int needed = block + (count + n + BLOCK_CAPACITY - 1)/BLOCK_CAPACITY;
+			if (needed>blocks) buf = ch.map(FileChannel.MapMode.READ_WRITE, 0, blockOffset(needed));
+			int i = 0;
+			while (i<n) {
+				int off = blockOffset(block);
+				int k = Math.min(n-i, BLOCK_CAPACITY-count);
+				for (int j=0; j<k; j++) {
+					buf.putInt(off + 8 + 4*(count+j), days[i+j]);
+					buf.putDouble(off + 8 + 4*BLOCK_CAPACITY + 8*(count+j), closes[i+j]);
+				}
+				buf.force();
+				buf.putInt(off, count+k);
+				i += k;
+				block++;
+				count = 0;
+			}
+			buf.force();
+		}
+	}
+	
+	private static int getBlockCount(MappedByteBuffer buf, int block, File f) throws IOException {
+		int bc = buf.getInt(blockOffset(block));
+		if (bc<0 || bc>BLOCK_CAPACITY) throw new IOException("corrupted bar file: "+f);
+		return bc;
+	}
+	
+	private static int checkHeader(MappedByteBuffer buf, long size, File f) throws IOException {
+		if (size<HEADER_SIZE || buf.getInt(0)!=MAGIC || buf.getInt(4)!=VERSION || buf.getInt(8)!=BLOCK_CAPACITY) throw new IOException("not a bar file: "+f);
+		if ((size-HEADER_SIZE)%BLOCK_SIZE!=0) throw new IOException("corrupted bar file: "+f);
+		return (int) ((size-HEADER_SIZE)/BLOCK_SIZE);
+	}
+	
+}
@@ -0,0 +1,79 @@
+/**
+ * 	This file is part of PTL Trader.
+ *
+ * 	Copyright © 2011-2021 Quantverse OÜ. All Rights Reserved.
+ *
+ *  PTL Trader is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  PTL Trader is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with PTL Trader. If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.pairtradinglab.ptltrader.trading;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.apache.log4j.Logger;
+import org.picocontainer.Startable;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.pairtradinglab.ptltrader.RuntimeParams;
+
+import net.jcip.annotations.*;
+
+/**
+ * Fixed worker pool running the confined engines when the pooled engine mode is enabled.
+ * Each core drains its own mailbox in tasks submitted here, at most one task per core at
+ * a time, so an engine is still accessed by a single thread at any given moment.
+ */
+@ThreadSafe
+public class EngineScheduler implements Startable {
+	private final ExecutorService executor;
+	private final int poolSize;
+	private final Logger l;
+	
+	public EngineScheduler(RuntimeParams runtimeParams, Logger l) {
+		super();
+		this.l = l;
+		if (runtimeParams.isPooledEngines()) {
+			poolSize = Math.max(2, Runtime.getRuntime().availableProcessors());
+			executor = Executors.newFixedThreadPool(poolSize, new ThreadFactoryBuilder().setNameFormat("engine-%d").build());
+		} else {
+			poolSize = 0;
+			executor = null;
+		}
+	}
+	
+	public boolean isEnabled() {
+		return executor!=null;
+	}
+	
+	public void execute(Runnable task) {
+		try {
+			executor.execute(task);
+		} catch (RejectedExecutionException e) {
+			// shutting down
+			l.debug("engine task rejected, scheduler is stopped");
+		}
+	}
+
+	@Override
+	public void start() {
+		if (executor!=null) l.info(String.format("running trading engines on a shared pool of %d threads", poolSize));
+	}
+
+	@Override
+	public void stop() {
+		if (executor!=null) executor.shutdown();
+	}
+
+}
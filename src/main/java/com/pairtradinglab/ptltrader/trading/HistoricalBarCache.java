@@ -0,0 +1,340 @@
+/**
+ * 	This file is part of PTL Trader.
+ *
+ * 	Copyright © 2011-2021 Quantverse OÜ. All Rights Reserved.
+ *
+ *  PTL Trader is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  PTL Trader is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with PTL Trader. If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.pairtradinglab.ptltrader.trading;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.log4j.Logger;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeUtils;
+import org.joda.time.Days;
+import org.joda.time.LocalDate;
+import org.picocontainer.Startable;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.ib.client.Contract;
+import com.pairtradinglab.ptltrader.RuntimeParams;
+
+import net.jcip.annotations.*;
+
+/**
+ * Process wide cache of the daily bars, shared by all strategies trading the same contract.
+ * The first provider asking for a contract sends the request to IB (only for the days missing in the cache),
+ * providers asking meanwhile just wait for the result. Once the bars are complete for the day, the following
+ * requests are served from the cache without touching IB.
+ * If the bar store is enabled, the bars are loaded from it when a contract is first requested and the new bars are
+ * stored when received, so even the first request after a restart asks IB for the missing days only. The bars are
+ * written by a single writer thread, in the order received, so neither the EReader thread nor the cache lock wait for
+ * the disk.
+ * The bars are kept from the start of the HistoryWindow, so the series grows by the new bars until the start moves.
+ * A request in flight is sent again if its provider asks again (its owner gave up waiting), or by another provider
+ * once it is older than LEADER_TIMEOUT_MINUTES (its provider may have been stopped, or the connection lost).
+ * Stopped providers cancel their requests; the next waiting provider then sends the request again.
+ * The IB callbacks are delivered outside the cache lock, as the owners of the providers have locks of their own.
+ */
+@ThreadSafe
+public class HistoricalBarCache implements Startable {
+	private static final double ADJUSTMENT_TOLERANCE = 1e-9;
+	static final int LEADER_TIMEOUT_MINUTES = 10; // shorter than the retry period of the engines
+	private static final int STOP_TIMEOUT_SECONDS = 10;
+	
+	private final boolean enabled;
+	private final DailyBarStore store;
+	private final Logger l;
+	private final ExecutorService writer; // null if the store is disabled
+	
+	@GuardedBy("this")
+	private final Map<String, Entry> entries = new HashMap<String, Entry>();
+	
+	@NotThreadSafe
+	private static class Entry {
+		final TreeMap<DateTime, Double> bars = new TreeMap<DateTime, Double>();
+		LocalDate completeFor = null; // day the bars were requested for
+		HistoricalDataProvider leader = null; // provider running the IB request, null if none in flight
+		long leaderSince = 0; // time the request in flight was sent (millis)
+		boolean full = false; // the request in flight replaces the bars
+		boolean adjusted = false; // the stored bars must be replaced
+		boolean rewrite = false; // a write failed, the stored bars must be replaced
+		boolean loaded = false; // stored bars loaded
+		int storedLast = Integer.MIN_VALUE; // epoch day of the last stored bar
+		final List<HistoricalDataProvider> waiting = new ArrayList<HistoricalDataProvider>();
+	}
+	
+	public HistoricalBarCache(RuntimeParams runtimeParams, DailyBarStore store, Logger l) {
+		this(runtimeParams.isSharedBars(), store, l);
+	}
+	
+	HistoricalBarCache(boolean enabled, DailyBarStore store, Logger l) {
+		super();
+		this.enabled = enabled;
+		this.store = store;
+		this.l = l;
+		writer = store.isEnabled() ? Executors.newSingleThreadExecutor(new ThreadFactoryBuilder().setNameFormat("bar-writer-%d").setDaemon(true).build()) : null;
+	}
+	
+	@Override
+	public void start() {
+		
+	}
+	
+	/**
+	 * Stores the bars still queued
+	 */
+	@Override
+	public void stop() {
+		if (writer==null) return;
+		writer.shutdown();
+		try {
+			if (!writer.awaitTermination(STOP_TIMEOUT_SECONDS, TimeUnit.SECONDS)) l.warn("bar store writes not completed");
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+	
+	/**
+	 * Waits until the bars received so far are stored
+	 */
+	void flush() throws InterruptedException, ExecutionException {
+		if (writer==null) return;
+		writer.submit(new Runnable() {
+			@Override
+			public void run() {
+				
+			}
+		}).get();
+	}
+	
+	public boolean isEnabled() {
+		return enabled;
+	}
+	
+	static String key(Contract c) {
+		return String.format("%s_%s_%s_%s_%s", c.m_symbol, c.m_secType, c.m_exchange, c.m_primaryExch, c.m_currency);
+	}
+	
+	/**
+	 * Serves the bars from the cache, joins the request in flight or starts a new one
+	 */
+	void request(HistoricalDataProvider provider) {
+		TreeMap<DateTime, Double> hit = null;
+		String duration = null;
+		LocalDate today = LocalDate.now();
+		synchronized(this) {
+			String key = key(provider.getContract());
+			Entry e = entries.get(key);
+			if (e==null) {
+				e = new Entry();
+				entries.put(key, e);
+			}
+			if (e.leader==null && today.equals(e.completeFor)) {
+				hit = new TreeMap<DateTime, Double>(e.bars);
+			} else {
+				if (!e.waiting.contains(provider)) e.waiting.add(provider);
+				if (e.leader==null) {
+					if (!e.loaded) {
+						e.loaded = true;
+						load(key, e, today);
+					}
+					duration = lead(e, provider, today);
+				} else if (e.leader==provider || DateTimeUtils.currentTimeMillis()-e.leaderSince>LEADER_TIMEOUT_MINUTES*60000L) {
+					l.info(String.format("historical data request for %s not completed, sending it again", provider.getContract().m_symbol));
+					duration = lead(e, provider, today);
+				}
+			}
+		}
+		
+		if (hit!=null) {
+			l.debug(String.format("historical data for %s served from cache, samples = %d", provider.getContract().m_symbol, hit.size()));
+			provider.deliver(hit);
+		} else if (duration!=null) {
+			provider.requestShared(duration);
+		} else {
+			l.debug(String.format("historical data for %s already requested, waiting", provider.getContract().m_symbol));
+		}
+	}
+	
+	/**
+	 * Called by the provider which sent the request when all the bars are received
+	 */
+	void completed(HistoricalDataProvider provider, TreeMap<DateTime, Double> bars) {
+		List<HistoricalDataProvider> out;
+		TreeMap<DateTime, Double> result;
+		LocalDate today = LocalDate.now();
+		String key = key(provider.getContract());
+		synchronized(this) {
+			Entry e = entries.get(key);
+			if (e==null || e.leader!=provider) return;
+			if (!e.full && !isConsistent(e.bars, bars)) {
+				e.full = true;
+				e.adjusted = true;
+				e.leaderSince = DateTimeUtils.currentTimeMillis();
+				out = null;
+				result = null;
+			} else {
+				if (e.full) e.bars.clear();
+				e.bars.putAll(bars);
+				e.bars.headMap(HistoryWindow.start(today).toDateTimeAtStartOfDay()).clear();
+				save(key, e, bars);
+				e.completeFor = today;
+				e.leader = null;
+				out = new ArrayList<HistoricalDataProvider>(e.waiting);
+				e.waiting.clear();
+				result = new TreeMap<DateTime, Double>(e.bars); // the entry may be updated by the next request
+			}
+		}
+		
+		if (out==null) {
+			l.info(String.format("cached historical data for %s do not match (adjusted?), requesting the full history", provider.getContract().m_symbol));
+			provider.requestShared(HistoryWindow.DURATION);
+			return;
+		}
+		for (HistoricalDataProvider p: out) p.deliver(new TreeMap<DateTime, Double>(result));
+	}
+	
+	/**
+	 * Called by the provider which sent the request when IB rejected it
+	 */
+	void failed(HistoricalDataProvider provider, int code, String message) {
+		List<HistoricalDataProvider> out;
+		synchronized(this) {
+			Entry e = entries.get(key(provider.getContract()));
+			if (e==null || e.leader!=provider) return;
+			e.leader = null;
+			out = new ArrayList<HistoricalDataProvider>(e.waiting);
+			e.waiting.clear();
+		}
+		for (HistoricalDataProvider p: out) p.fail(code, message);
+	}
+	
+	/**
+	 * Called by a provider which is stopped, so it no longer waits for the bars; if it was sending the request,
+	 * the next waiting provider sends it again
+	 */
+	void cancel(HistoricalDataProvider provider) {
+		HistoricalDataProvider next = null;
+		String duration = null;
+		synchronized(this) {
+			Entry e = entries.get(key(provider.getContract()));
+			if (e==null) return;
+			e.waiting.remove(provider);
+			if (e.leader!=provider) return;
+			e.leader = null;
+			if (!e.waiting.isEmpty()) {
+				next = e.waiting.get(0);
+				duration = lead(e, next, LocalDate.now());
+			}
+		}
+		if (next!=null) next.requestShared(duration);
+	}
+	
+	/**
+	 * Makes the provider send the request of the entry
+	 * @return duration to request
+	 */
+	@GuardedBy("this")
+	private String lead(Entry e, HistoricalDataProvider provider, LocalDate today) {
+		e.leader = provider;
+		e.leaderSince = DateTimeUtils.currentTimeMillis();
+		e.full = e.adjusted || e.bars.isEmpty() || e.bars.lastKey().toLocalDate().isBefore(HistoryWindow.start(today));
+		// the last cached bar is requested again to detect adjusted history
+		return e.full ? HistoryWindow.DURATION : (Days.daysBetween(e.bars.lastKey().toLocalDate(), today).getDays()+1)+" D";
+	}
+	
+	@GuardedBy("this")
+	private void load(String key, Entry e, LocalDate today) {
+		if (!store.isEnabled()) return;
+		try {
+			BarSeries stored = store.load(key);
+			if (stored==null) return;
+			e.storedLast = stored.lastDay();
+			DateTime from = HistoryWindow.start(today).toDateTimeAtStartOfDay();
+			for (int i=0; i<stored.size(); i++) {
+				DateTime dt = BarSeries.fromEpochDay(stored.days[i]);
+				if (!dt.isBefore(from)) e.bars.put(dt, stored.closes[i]);
+			}
+			l.debug(String.format("loaded %d stored bars of %s, in use %d", stored.size(), key, e.bars.size()));
+		} catch (IOException ex) {
+			l.warn(String.format("unable to load stored bars of %s: %s", key, ex.getMessage()));
+		}
+	}
+	
+	/**
+	 * Queues the bars received after the last stored one to be stored, or all bars to replace the stored ones if the
+	 * history was adjusted
+	 */
+	@GuardedBy("this")
+	private void save(final String key, final Entry e, TreeMap<DateTime, Double> received) {
+		if (!store.isEnabled()) return;
+		final boolean replace = e.adjusted || e.rewrite;
+		SortedMap<DateTime, Double> bars;
+		if (replace) {
+			bars = e.bars;
+		} else {
+			bars = e.storedLast==Integer.MIN_VALUE ? received : received.tailMap(BarSeries.fromEpochDay(e.storedLast), false);
+		}
+		final int n = bars.size();
+		if (n==0 && !replace) return;
+		final int[] days = new int[n];
+		final double[] closes = new double[n];
+		int i = 0;
+		for (Map.Entry<DateTime, Double> b: bars.entrySet()) {
+			days[i] = BarSeries.toEpochDay(b.getKey());
+			closes[i++] = b.getValue();
+		}
+		e.adjusted = false;
+		e.rewrite = false;
+		if (n>0) e.storedLast = days[n-1];
+		writer.execute(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					if (replace) {
+						store.replace(key, days, closes, n);
+					} else {
+						store.append(key, days, closes, n);
+					}
+				} catch (IOException ex) {
+					l.warn(String.format("unable to store bars of %s: %s", key, ex.getMessage()));
+					synchronized(HistoricalBarCache.this) {
+						e.rewrite = true;
+					}
+				}
+			}
+		});
+	}
+	
+	private static boolean isConsistent(TreeMap<DateTime, Double> cached, TreeMap<DateTime, Double> fresh) {
+		for (Map.Entry<DateTime, Double> b: fresh.entrySet()) {
+			Double old = cached.get(b.getKey());
+			if (old!=null && Math.abs(old-b.getValue())>ADJUSTMENT_TOLERANCE*Math.abs(old)) return false;
+		}
+		return true;
+	}
+	
+}
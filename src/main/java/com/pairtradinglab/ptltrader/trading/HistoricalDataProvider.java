@@ -17,7 +17,9 @@
  *  along with PTL Trader. If not, see <https://www.gnu.org/licenses/>.
  */
 package com.pairtradinglab.ptltrader.trading;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
 import java.util.TreeMap;
 
 import org.apache.log4j.Logger;
@@ -46,21 +48,33 @@ import net.jcip.annotations.*;
  */
 @NotThreadSafe
 public class HistoricalDataProvider {
+	private static final int INITIAL_CAPACITY = 256; // a year of daily bars
+	private static final String DURATION = "1 Y"; // sliding window of the private requests, unless anchored
+	
 	// dependencies for DI
 	private final List<SimpleWrapper> ibWrapperList;
 	private final Settings settings;
 	private final Contract contract;
+	private final HistoricalBarCache barCache;
+	private final boolean anchored; // private requests cover the HistoryWindow, for the model snapshots
 	private final Logger l;
 	
 	// local dependencies
 	private final SimpleWrapper ibWrapper;
 	
-	private final DateTimeFormatter formatter = DateTimeFormat.forPattern("yyyyMMdd");
-	
 	private volatile int reqid=0;
 	private int lastreqidused=0;
+	private volatile int ibReqId=0; // id of the request sent to IB, reqid unless the bar cache had to resend it
+	private volatile boolean shared=false; // request sent on behalf of the bar cache
+	private volatile int priority=HistoricalDataRequest.PRIORITY_REFRESH;
 	
-	private TreeMap<DateTime, Double> data = new TreeMap<DateTime, Double>();
+	// bars received, epoch days ascending
+	@GuardedBy("lock")
+	private int[] days = new int[INITIAL_CAPACITY];
+	@GuardedBy("lock")
+	private double[] closes = new double[INITIAL_CAPACITY];
+	@GuardedBy("lock")
+	private int count = 0;
 	
 	private volatile IDataProviderOwner owner=null;
 	
@@ -68,11 +82,18 @@ public class HistoricalDataProvider {
 	
 	
 	public HistoricalDataProvider(List<SimpleWrapper> ibWrapperList,
-			Settings settings, Contract contract, Logger l) {
+			Settings settings, Contract contract, HistoricalBarCache barCache, Logger l) {
+		this(ibWrapperList, settings, contract, barCache, false, l);
+	}
+	
+	public HistoricalDataProvider(List<SimpleWrapper> ibWrapperList,
+			Settings settings, Contract contract, HistoricalBarCache barCache, boolean anchored, Logger l) {
 		super();
 		this.ibWrapperList = ibWrapperList;
 		this.settings = settings;
 		this.contract = contract;
+		this.barCache = barCache;
+		this.anchored = anchored;
 		this.l = l;
 		
 		// according to settings, we must decide what IB connection we are going to use for this data provider
@@ -93,19 +114,82 @@ public class HistoricalDataProvider {
 	 * Called from ConfinedEngine thread only
 	 */
 	public void requestData() {
+		requestData(HistoricalDataRequest.PRIORITY_REFRESH);
+	}
+	
+	/**
+	 * Called from ConfinedEngine thread only
+	 * @param priority HistoricalDataRequest.PRIORITY_*
+	 */
+	public void requestData(int priority) {
 		if (reqid==lastreqidused) throw new IllegalArgumentException("allocate new request id");
 		lastreqidused=reqid;
+		this.priority = priority;
 		
-		ibWrapper.hmapPut(reqid, this);
+		if (barCache.isEnabled()) {
+			barCache.request(this);
+		} else {
+			shared = false;
+			send(reqid, anchored ? HistoryWindow.DURATION : DURATION);
+		}
+		
+	}
+	
+	/**
+	 * Sends the request for the bars to IB on behalf of the bar cache
+	 */
+	void requestShared(String duration) {
+		shared = true;
+		int id = ibReqId;
+		if (id!=0) ibWrapper.hmapRemove(id); // sent again, the bars of the previous request are not wanted
+		send(id==0 ? reqid : ibWrapper.getNextReqId(), duration);
+	}
+	
+	/**
+	 * Drops the request in flight, called when the owner is stopped
+	 */
+	public void cancel() {
+		dropRequest();
+		if (barCache.isEnabled()) barCache.cancel(this);
+	}
+	
+	private void dropRequest() {
+		int id = ibReqId;
+		if (id!=0) ibWrapper.hmapRemove(id);
+		ibReqId = 0;
+	}
+	
+	private void send(int id, String duration) {
+		ibReqId = id;
+		ibWrapper.hmapPut(id, this);
 		synchronized(lock) {
-			data.clear();
+			count = 0;
 		}
 		
-		l.debug(String.format("requesting historical data for %s, request id = %d", contract.m_symbol, reqid));
+		l.debug(String.format("requesting historical data for %s, request id = %d, duration = %s", contract.m_symbol, id, duration));
 		DateTimeFormatter fmt = DateTimeFormat.forPattern("yyyyMMdd-00:00:00");
-		HistoricalDataRequest req = new HistoricalDataRequest(reqid, contract, DateTime.now().toString(fmt), "1 Y", "1 day");
+		HistoricalDataRequest req = new HistoricalDataRequest(id, contract, DateTime.now().toString(fmt), duration, "1 day", priority);
 		ibWrapper.executeHistoricalDataRequestQueued(req);
-		
+	}
+	
+	/**
+	 * Called by the bar cache with the bars for this request
+	 */
+	void deliver(TreeMap<DateTime, Double> bars) {
+		synchronized(lock) {
+			count = 0;
+			for (Map.Entry<DateTime, Double> b: bars.entrySet()) put(BarSeries.toEpochDay(b.getKey()), b.getValue());
+		}
+		dropRequest(); // if sent again by another provider, ours may still be running
+		if (owner!=null) owner.notifyDataReady(reqid, this);
+	}
+	
+	/**
+	 * Called by the bar cache when the request it has joined failed
+	 */
+	void fail(int code, String message) {
+		dropRequest();
+		if (owner!=null) owner.notifyRequestFailed(reqid, this, code, message);
 	}
 	
 	/**
@@ -114,22 +198,84 @@ public class HistoricalDataProvider {
 	public void addRecord(String datetime, double price) {
 		if (datetime.startsWith("finished")) {
 			// request done, we can unregister object and fire event
-			l.debug(String.format("successfuly retrieved all data for %s, request id = %d, samples = %d", contract.m_symbol, reqid, data.size()));
-			ibWrapper.hmapRemove(reqid);
-			if (owner!=null) owner.notifyDataReady(reqid, this);
+			int id = ibReqId;
+			l.debug(String.format("successfuly retrieved all data for %s, request id = %d, samples = %d", contract.m_symbol, id, size()));
+			ibWrapper.hmapRemove(id);
+			if (shared) {
+				barCache.completed(this, getData());
+			} else {
+				if (anchored) trimBefore(HistoryWindow.startDay(LocalDate.now()));
+				if (owner!=null) owner.notifyDataReady(reqid, this);
+			}
 		} else {
+			int day = BarSeries.parseDay(datetime);
 			synchronized(lock) {
-				data.put(DateTime.parse(datetime, formatter), price);
+				put(day, price);
 			}
 		}
 	}
 	
+	@GuardedBy("lock")
+	private void put(int day, double close) {
+		int i = count;
+		if (i>0 && day<=days[i-1]) {
+			// IB sends the bars in order, but keep the days sorted and unique anyway
+			i = Arrays.binarySearch(days, 0, count, day);
+			if (i>=0) {
+				closes[i] = close;
+				return;
+			}
+			i = -i-1;
+		}
+		if (count==days.length) {
+			days = Arrays.copyOf(days, 2*count);
+			closes = Arrays.copyOf(closes, 2*count);
+		}
+		System.arraycopy(days, i, days, i+1, count-i);
+		System.arraycopy(closes, i, closes, i+1, count-i);
+		days[i] = day;
+		closes[i] = close;
+		count++;
+	}
+	
+	private void trimBefore(int day) {
+		synchronized(lock) {
+			int i = Arrays.binarySearch(days, 0, count, day);
+			if (i<0) i = -i-1;
+			if (i==0) return;
+			System.arraycopy(days, i, days, 0, count-i);
+			System.arraycopy(closes, i, closes, 0, count-i);
+			count -= i;
+		}
+	}
+	
+	private int size() {
+		synchronized(lock) {
+			return count;
+		}
+	}
+	
 	public TreeMap<DateTime, Double> getData() {
 		synchronized(lock) {
-			return (TreeMap<DateTime, Double>) data.clone();
+			TreeMap<DateTime, Double> out = new TreeMap<DateTime, Double>();
+			for (int i=0; i<count; i++) out.put(BarSeries.fromEpochDay(days[i]), closes[i]);
+			return out;
+		}
+	}
+	
+	/**
+	 * Returns the bars received as a primitive series
+	 */
+	public BarSeries getSeries() {
+		synchronized(lock) {
+			return new BarSeries(Arrays.copyOf(days, count), Arrays.copyOf(closes, count));
 		}
 	}
 
+	public Contract getContract() {
+		return contract;
+	}
+
 	public IDataProviderOwner getOwner() {
 		return owner;
 	}
@@ -144,10 +290,13 @@ public class HistoricalDataProvider {
 	@Subscribe
 	public void onError(Error e) {
 		if (!e.ibWrapperUid.equals(ibWrapper.getUid())) return; // ignore error of other connections!
-		if (e.id>0 && e.code !=2176 && e.id==reqid && ibWrapper.hmapCheckExists(reqid)) {
-			l.warn(String.format("historical data request failed for request #%d", reqid));
-			ibWrapper.hmapRemove(reqid);
-			if (owner!=null) owner.notifyRequestFailed(reqid, this, e.code, e.message);
+		int id = ibReqId;
+		if (e.id>0 && e.code !=2176 && e.id==id && ibWrapper.hmapCheckExists(id)) {
+			l.warn(String.format("historical data request failed for request #%d", id));
+			ibWrapper.hmapRemove(id);
+			if (shared) {
+				barCache.failed(this, e.code, e.message);
+			} else if (owner!=null) owner.notifyRequestFailed(reqid, this, e.code, e.message);
 		}
 	}
 	
@@ -23,6 +23,7 @@ import java.util.List;
 import org.apache.log4j.Logger;
 
 import com.ib.client.Contract;
+import com.pairtradinglab.ptltrader.RuntimeParams;
 import com.pairtradinglab.ptltrader.ib.SimpleWrapper;
 import com.pairtradinglab.ptltrader.model.Settings;
 
@@ -31,15 +32,20 @@ public class HistoricalDataProviderFactoryImpl implements
 	
 	private final List<SimpleWrapper> ibWrapperList;
 	private final Settings settings;
+	private final HistoricalBarCache barCache;
+	private final boolean anchored;
 	private final Logger l;
 	
 	
 
 	public HistoricalDataProviderFactoryImpl(List<SimpleWrapper> ibWrapperList,
-			Settings settings, Logger l) {
+			Settings settings, HistoricalBarCache barCache, RuntimeParams runtimeParams, Logger l) {
 		super();
 		this.ibWrapperList = ibWrapperList;
 		this.settings = settings;
+		this.barCache = barCache;
+		// the snapshots need the anchored window even without the bar cache, which always keeps it
+		this.anchored = runtimeParams.isModelSnapshots();
 		this.l = l;
 	}
 
@@ -47,7 +53,7 @@ public class HistoricalDataProviderFactoryImpl implements
 
 	@Override
 	public HistoricalDataProvider createForContract(Contract c) {
-		return new HistoricalDataProvider(ibWrapperList, settings, c, l);
+		return new HistoricalDataProvider(ibWrapperList, settings, c, barCache, anchored, l);
 	}
 
 }
@@ -0,0 +1,52 @@
+/**
+ * 	This file is part of PTL Trader.
+ *
+ * 	Copyright © 2011-2021 Quantverse OÜ. All Rights Reserved.
+ *
+ *  PTL Trader is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  PTL Trader is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with PTL Trader. If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.pairtradinglab.ptltrader.trading;
+
+import org.joda.time.LocalDate;
+
+import net.jcip.annotations.*;
+
+/**
+ * Window of the daily bars fed to the models. The window starts at the beginning of the quarter a year back, so the
+ * start stays the same for a quarter and the series of the following days only grows by the new bars. The models can
+ * then consume just the new bars (see PairTradingModel.appendPrices) and their snapshots stay valid across restarts.
+ * The window spans from one year to one year and a quarter; when the start moves, the models replay the history.
+ * It applies only to the bar cache (shared and stored bars) and the model snapshots; otherwise the strategies request
+ * a sliding year of bars as they always did.
+ */
+@Immutable
+final class HistoryWindow {
+	/**
+	 * IB request duration covering the window (IB wants durations over 365 days in years)
+	 */
+	static final String DURATION = "2 Y";
+	
+	private HistoryWindow() {
+	}
+	
+	static LocalDate start(LocalDate today) {
+		LocalDate d = today.minusYears(1);
+		return new LocalDate(d.getYear(), 3*((d.getMonthOfYear()-1)/3)+1, 1);
+	}
+	
+	static int startDay(LocalDate today) {
+		return BarSeries.toEpochDay(start(today).toDateTimeAtStartOfDay());
+	}
+
+}
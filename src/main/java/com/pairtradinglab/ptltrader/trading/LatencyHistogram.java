@@ -0,0 +1,107 @@
+/**
+ * 	This file is part of PTL Trader.
+ *
+ * 	Copyright © 2011-2021 Quantverse OÜ. All Rights Reserved.
+ *
+ *  PTL Trader is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  PTL Trader is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with PTL Trader. If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.pairtradinglab.ptltrader.trading;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import net.jcip.annotations.*;
+
+/**
+ * Histogram of nanosecond durations in power of two buckets. Bucket 0 holds 0 and 1 ns, bucket i holds
+ * durations from 2^i up to 2^(i+1)-1 ns. Percentiles are reported as the upper bound of their bucket,
+ * so they are accurate within a factor of two.
+ */
+@ThreadSafe
+public class LatencyHistogram {
+	public static final int BUCKETS = 63;
+	
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+	private final AtomicLong count = new AtomicLong();
+	private final AtomicLong sum = new AtomicLong();
+	private final AtomicLong max = new AtomicLong();
+	
+	/**
+	 * Negative durations are recorded as zero
+	 */
+	public void record(long nanos) {
+		if (nanos<0) nanos = 0;
+		counts.incrementAndGet(bucketOf(nanos));
+		sum.addAndGet(nanos);
+		count.incrementAndGet();
+		long m = max.get();
+		while (nanos>m && !max.compareAndSet(m, nanos)) m = max.get();
+	}
+	
+	public long getCount() {
+		return count.get();
+	}
+	
+	public long getMax() {
+		return max.get();
+	}
+	
+	public double getMean() {
+		long n = count.get();
+		return n==0 ? 0 : sum.get()/(double) n;
+	}
+	
+	public long getBucketCount(int bucket) {
+		return counts.get(bucket);
+	}
+	
+	/**
+	 * @param q quantile between 0 and 1
+	 * @return upper bound of the bucket of the quantile in nanoseconds, not more than the maximum; 0 if empty
+	 */
+	public long getPercentile(double q) {
+		long n = 0;
+		for (int i=0; i<BUCKETS; i++) n += counts.get(i);
+		if (n==0) return 0;
+		long rank = Math.max(1, (long) Math.ceil(q*n));
+		long seen = 0;
+		for (int i=0; i<BUCKETS; i++) {
+			seen += counts.get(i);
+			if (seen>=rank) return Math.min(upperBound(i), max.get());
+		}
+		return max.get();
+	}
+	
+	public void reset() {
+		for (int i=0; i<BUCKETS; i++) counts.set(i, 0);
+		count.set(0);
+		sum.set(0);
+		max.set(0);
+	}
+	
+	static int bucketOf(long nanos) {
+		return nanos<2 ? 0 : 63-Long.numberOfLeadingZeros(nanos);
+	}
+	
+	static long upperBound(int bucket) {
+		return bucket>=62 ? Long.MAX_VALUE : (2L<<bucket)-1;
+	}
+	
+	@Override
+	public String toString() {
+		return String.format("n=%d mean=%.3fms p50=%.3fms p90=%.3fms p99=%.3fms max=%.3fms", getCount(), getMean()/1e6,
+				getPercentile(0.5)/1e6, getPercentile(0.9)/1e6, getPercentile(0.99)/1e6, getMax()/1e6);
+	}
+
+}
@@ -0,0 +1,81 @@
+/**
+ * 	This file is part of PTL Trader.
+ *
+ * 	Copyright © 2011-2021 Quantverse OÜ. All Rights Reserved.
+ *
+ *  PTL Trader is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  PTL Trader is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with PTL Trader. If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.pairtradinglab.ptltrader.trading;
+
+import net.jcip.annotations.*;
+
+/**
+ * Order leg latency statistics of one strategy, measured from the moment the leg is handed to the socket.
+ * The skews are measured between the two legs of a pair only.
+ */
+@ThreadSafe
+public class LegLatency {
+	private final LatencyHistogram timeToAck = new LatencyHistogram();
+	private final LatencyHistogram timeToFirstFill = new LatencyHistogram();
+	private final LatencyHistogram timeToFill = new LatencyHistogram();
+	private final LatencyHistogram submitSkew = new LatencyHistogram();
+	private final LatencyHistogram fillSkew = new LatencyHistogram();
+	
+	/**
+	 * Time to the first order status
+	 */
+	public LatencyHistogram getTimeToAck() {
+		return timeToAck;
+	}
+	
+	public LatencyHistogram getTimeToFirstFill() {
+		return timeToFirstFill;
+	}
+	
+	/**
+	 * Time to the complete fill
+	 */
+	public LatencyHistogram getTimeToFill() {
+		return timeToFill;
+	}
+	
+	/**
+	 * Time between the transmission of the legs
+	 */
+	public LatencyHistogram getSubmitSkew() {
+		return submitSkew;
+	}
+	
+	/**
+	 * Time between the complete fills of the legs, the time the pair was exposed to one leg only
+	 */
+	public LatencyHistogram getFillSkew() {
+		return fillSkew;
+	}
+	
+	public void reset() {
+		timeToAck.reset();
+		timeToFirstFill.reset();
+		timeToFill.reset();
+		submitSkew.reset();
+		fillSkew.reset();
+	}
+	
+	@Override
+	public String toString() {
+		return String.format("ack: %s; first fill: %s; fill: %s; submit skew: %s; fill skew: %s", timeToAck, timeToFirstFill,
+				timeToFill, submitSkew, fillSkew);
+	}
+
+}
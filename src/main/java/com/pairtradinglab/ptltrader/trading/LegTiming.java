@@ -0,0 +1,96 @@
+/**
+ * 	This file is part of PTL Trader.
+ *
+ * 	Copyright © 2011-2021 Quantverse OÜ. All Rights Reserved.
+ *
+ *  PTL Trader is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  PTL Trader is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with PTL Trader. If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.pairtradinglab.ptltrader.trading;
+
+import net.jcip.annotations.*;
+
+/**
+ * Nanosecond timestamps of one order leg: transmission, first order status, first and complete fill.
+ * The durations are recorded into the strategy statistics as soon as they are known.
+ */
+@NotThreadSafe
+class LegTiming {
+	static final long NONE = Long.MIN_VALUE;
+	
+	private int orderId = 0;
+	private volatile long transmitted = NONE; // written by the transmitting thread
+	private long acked = NONE;
+	private long firstFill = NONE;
+	private long lastFill = NONE;
+	
+	void start(int orderId) {
+		this.orderId = orderId;
+		transmitted = NONE;
+		acked = NONE;
+		firstFill = NONE;
+		lastFill = NONE;
+	}
+	
+	int getOrderId() {
+		return orderId;
+	}
+	
+	void transmitted(long nanoTime) {
+		transmitted = nanoTime;
+	}
+	
+	void acked(long nanoTime, LegLatency stats) {
+		long t = transmitted;
+		if (acked!=NONE || t==NONE) return;
+		acked = nanoTime;
+		stats.getTimeToAck().record(nanoTime-t);
+	}
+	
+	void partiallyFilled(long nanoTime, LegLatency stats) {
+		long t = transmitted;
+		if (firstFill!=NONE || t==NONE) return;
+		firstFill = nanoTime;
+		stats.getTimeToFirstFill().record(nanoTime-t);
+	}
+	
+	void filled(long nanoTime, LegLatency stats) {
+		long t = transmitted;
+		if (lastFill!=NONE || t==NONE) return;
+		acked(nanoTime, stats);
+		partiallyFilled(nanoTime, stats);
+		lastFill = nanoTime;
+		stats.getTimeToFill().record(nanoTime-t);
+	}
+	
+	long getTransmitted() {
+		return transmitted;
+	}
+	
+	long getAcked() {
+		return acked;
+	}
+	
+	long getFirstFill() {
+		return firstFill;
+	}
+	
+	long getLastFill() {
+		return lastFill;
+	}
+	
+	boolean isFilled() {
+		return lastFill!=NONE;
+	}
+
+}
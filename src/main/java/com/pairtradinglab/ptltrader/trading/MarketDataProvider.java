@@ -18,19 +18,22 @@
  */
 package com.pairtradinglab.ptltrader.trading;
 
-import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
-import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 
 import org.apache.log4j.Logger;
 import org.picocontainer.Startable;
 
 import com.google.common.eventbus.EventBus;
 import com.google.common.eventbus.Subscribe;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.pairtradinglab.ptltrader.LoggerFactory;
 import com.pairtradinglab.ptltrader.ib.SimpleWrapper;
+import com.pairtradinglab.ptltrader.model.PairStrategy;
 import com.pairtradinglab.ptltrader.model.Settings;
 import com.pairtradinglab.ptltrader.trading.events.Disconnected;
 import com.pairtradinglab.ptltrader.trading.events.Error;
@@ -47,9 +50,25 @@ public class MarketDataProvider implements Startable {
 	
     private final static AtomicInteger lastReqId = new AtomicInteger(20000000);
     
-    @GuardedBy("lock")
-    private HashMap<String, HashSet<String>> contractSet = new HashMap<String, HashSet<String>>();
-    private final Object lock = new Object();
+    private final ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(1, new ThreadFactoryBuilder().setNameFormat("resubscriber-%d").build());
+    private volatile MarketDataResubscriber resubscriber = null; // created on start, the wrapper does not exist before
+    
+    // strategies subscribed, their symbols are resubscribed first while they hold a position
+    private final ConcurrentHashMap<String, PairStrategy> strategies = new ConcurrentHashMap<String, PairStrategy>();
+    
+    private final MarketDataResubscriber.Requester requester = new MarketDataResubscriber.Requester() {
+		@Override
+		public void request(int reqId, String symbol) {
+			l.info("re-subscribing for market data of "+symbol);
+			ContractExt c = ContractExt.createFromGoogleSymbol(symbol, false); // always use STK here
+			getWrapper().getIbSocket().reqMktData(reqId, c, "236", false, null); // 236=also request SHORTABLE field
+		}
+		
+		@Override
+		public void cancel(int reqId) {
+			getWrapper().getIbSocket().cancelMktData(reqId);
+		}
+	};
     
     public MarketDataProvider(List<SimpleWrapper> ibWrapperList,
 			Settings settings, EventBus bus, LoggerFactory loggerFactory) {
@@ -70,73 +89,46 @@ public class MarketDataProvider implements Startable {
 	}
     
     public void subscribeData(String symbol, String subscriberUid) {
-    	int reqId;
-    	synchronized(lock) {
-    		if (contractSet.containsKey(symbol)) {
-    			// already in subscribe list, we just add subscriber to the list
-    			contractSet.get(symbol).add(subscriberUid);
-    			return;
-    		}
-	    	reqId = getNextReqId();
-	    	HashSet<String> set = new HashSet<String>();
-	    	set.add(subscriberUid);
-	    	contractSet.put(symbol, set);
-	    	getWrapper().putToMarketDataReqMap(reqId, symbol);
-	    	
-    	}
+    	int reqId = getWrapper().getSubscriptions().subscribe(symbol, subscriberUid);
+    	if (reqId==0) return; // already subscribed, we just added subscriber to the list
     	l.info("subscribing for market data of "+symbol+", subscriber UID="+subscriberUid);
     	ContractExt c = ContractExt.createFromGoogleSymbol(symbol, false); // always use STK
     	getWrapper().getIbSocket().reqMktData(reqId, c, "236", false, null); // 236=also request SHORTABLE field
     }
     
+    public void subscribeData(String symbol, PairStrategy strategy) {
+    	strategies.put(strategy.getUid(), strategy);
+    	subscribeData(symbol, strategy.getUid());
+    }
+    
+    public void unsubscribeData(String symbol, PairStrategy strategy) {
+    	strategies.remove(strategy.getUid());
+    	unsubscribeData(symbol, strategy.getUid());
+    }
+    
     public void unsubscribeData(String symbol, String subscriberUid) {
-    	int reqId;
-    	synchronized(lock) {
-    		if (!contractSet.containsKey(symbol)) return; // no subscription
-    		if (!contractSet.get(symbol).contains(subscriberUid)) return; // unknown subscriber
-    		
-    		// remove subscriber
-    		contractSet.get(symbol).remove(subscriberUid);
-    		if (contractSet.get(symbol).size()>0) return; // there are still subscribers
-    		
-    		// no more subscribers, let's cancel the subscription
-    		reqId=-1;
-    		ArrayList<Entry<Integer, String>> entryset = new ArrayList<Entry<Integer, String>>();
-    		getWrapper().getMarketDataReqMapCopy(entryset);
-    		for (Entry<Integer, String> entry : entryset) {
-    	        if (symbol.equals(entry.getValue())) {
-    	        	reqId=entry.getKey();
-    	            break;
-    	        }
-    	    }
-    		
-	    	if (reqId<=0) return; // not found
-	    	
-    	}
+    	int reqId = getWrapper().getSubscriptions().unsubscribe(symbol, subscriberUid);
+    	if (reqId==0) return; // no subscription, unknown subscriber or there are still subscribers
     	l.info("cancelling market data of "+symbol+", last subscriber was "+subscriberUid);
     	getWrapper().getIbSocket().cancelMktData(reqId);
     }
     
     
     private void resubscribeAll() {
-    	// we need to resubscribe for all data we have
+    	// we need to resubscribe for all data we have, paced by the resubscriber
 		l.warn("resubscribing to market data after reconnect");
-		HashMap<Integer,String> subscribeList = new HashMap<Integer,String>();
-		synchronized(lock) {
-			getWrapper().clearMarketDataReqMap();
-    		for (String sym:contractSet.keySet()) {
-    			int reqId = getNextReqId();
-    			getWrapper().putToMarketDataReqMap(reqId, sym);
-    			subscribeList.put(reqId, sym);
-    			
+		resubscriber.start(getWrapper().getSubscriptions().resubscribeAll(), getSymbolsInPositions());
+    }
+    
+    private Set<String> getSymbolsInPositions() {
+    	Set<String> out = new HashSet<String>();
+    	for (PairStrategy ps: strategies.values()) {
+    		if (ps.checkPosition()) {
+    			out.add(ps.getStock1());
+    			out.add(ps.getStock2());
     		}
-		}
-		for (Entry<Integer, String> entry : subscribeList.entrySet()) {
-			l.info("re-subscribing for market data of "+entry.getValue());
-			ContractExt c = ContractExt.createFromGoogleSymbol(entry.getValue(), false); // always use STK here
-			getWrapper().getIbSocket().reqMktData(entry.getKey(), c, "236", false, null); // 236=also request SHORTABLE field
-		}
-    	
+    	}
+    	return out;
     }
     
     @Subscribe
@@ -146,9 +138,9 @@ public class MarketDataProvider implements Startable {
     		// IB API reconnected after connection loss but not able to resubscribe for market data
     		resubscribeAll();
     		
-    	} else if (err.id>=20000000 && getWrapper().getSymbolFromMarketDataReqMap(err.id)!=null) {
-    		l.error("there was a problem in subscribing for data of "+getWrapper().getSymbolFromMarketDataReqMap(err.id));
-    		//@FIXME - what to do here? retry?
+    	} else if (err.id>=20000000 && getWrapper().getSubscriptions().getSymbol(err.id)!=null) {
+    		l.error("there was a problem in subscribing for data of "+getWrapper().getSubscriptions().getSymbol(err.id));
+    		if (err.code<2100) resubscriber.rejected(err.id); // retried if resubscribing
     	}
     	
     }
@@ -158,16 +150,14 @@ public class MarketDataProvider implements Startable {
     	if (!getWrapper().getUid().equals(d.ibWrapperUid)) return; // not interested in alien disconnections
     	// we got disconnected from IB API - let's delete all data
     	l.warn("IB API disconnected - reseting market provider data");
-    	synchronized(lock) {
-    		contractSet.clear();
-    		getWrapper().clearMarketDataReqMap();
-    	}
+    	getWrapper().getSubscriptions().clear();
     	
     	
     }
 
 	@Override
 	public void start() {
+		resubscriber = new MarketDataResubscriber(getWrapper().getSubscriptions(), requester, scheduler, l);
 		bus.register(this);
 		
 	}
@@ -175,6 +165,7 @@ public class MarketDataProvider implements Startable {
 	@Override
 	public void stop() {
 		bus.unregister(this);
+		scheduler.shutdownNow();
 		
 	}
 	
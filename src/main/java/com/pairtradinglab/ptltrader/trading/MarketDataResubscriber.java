@@ -0,0 +1,208 @@
+/**
+ * 	This file is part of PTL Trader.
+ *
+ * 	Copyright © 2011-2021 Quantverse OÜ. All Rights Reserved.
+ *
+ *  PTL Trader is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  PTL Trader is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with PTL Trader. If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.pairtradinglab.ptltrader.trading;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.log4j.Logger;
+
+import net.jcip.annotations.*;
+
+/**
+ * Sends the market data requests again after IB lost the subscriptions, paced to stay within the IB message
+ * rate limit (the requests over the limit fail silently). Symbols of strategies holding a position go first.
+ * A request is confirmed by its first tick (IB sends the last known prices right away, even out of trading
+ * hours); requests not confirmed in time or rejected by IB are sent again with a new request id.
+ */
+@ThreadSafe
+public class MarketDataResubscriber {
+	static final int REQUESTS_PER_SECOND = 40; // IB allows 50 messages per second, leave room for orders
+	static final long INTERVAL = TimeUnit.SECONDS.toNanos(1)/REQUESTS_PER_SECOND;
+	static final long ACK_TIMEOUT = TimeUnit.SECONDS.toNanos(15);
+	static final int MAX_ATTEMPTS = 4;
+	
+	public interface Requester {
+		void request(int reqId, String symbol);
+		void cancel(int reqId);
+	}
+	
+	@NotThreadSafe
+	private static class Item {
+		int reqId;
+		final String symbol;
+		final boolean urgent;
+		int attempts = 0;
+		long sentAt = 0;
+		boolean rejected = false;
+		
+		Item(int reqId, String symbol, boolean urgent) {
+			this.reqId = reqId;
+			this.symbol = symbol;
+			this.urgent = urgent;
+		}
+	}
+	
+	private final SubscriptionRegistry subscriptions;
+	private final Requester requester;
+	private final ScheduledExecutorService scheduler;
+	private final Logger l;
+	
+	@GuardedBy("this")
+	private final ArrayDeque<Item> urgent = new ArrayDeque<Item>();
+	@GuardedBy("this")
+	private final ArrayDeque<Item> normal = new ArrayDeque<Item>();
+	@GuardedBy("this")
+	private final List<Item> sent = new ArrayList<Item>();
+	@GuardedBy("this")
+	private long nextSendAt = 0;
+	@GuardedBy("this")
+	private long startedAt = 0;
+	@GuardedBy("this")
+	private int confirmed = 0;
+	@GuardedBy("this")
+	private int failed = 0;
+	@GuardedBy("this")
+	private ScheduledFuture<?> pollHandle = null;
+	
+	private final Runnable poller = new Runnable() {
+		public void run() {
+			try {
+				poll();
+			} catch (RuntimeException e) {
+				l.error("market data resubscription failed", e);
+			}
+		}
+	};
+	
+	public MarketDataResubscriber(SubscriptionRegistry subscriptions, Requester requester, ScheduledExecutorService scheduler, Logger l) {
+		super();
+		this.subscriptions = subscriptions;
+		this.requester = requester;
+		this.scheduler = scheduler;
+		this.l = l;
+	}
+	
+	/**
+	 * Starts sending the requests, replaces the resubscription in progress
+	 * @param requests request ids and their symbols, already bound in the registry
+	 * @param urgentSymbols symbols to request first
+	 */
+	public synchronized void start(Map<Integer, String> requests, Set<String> urgentSymbols) {
+		urgent.clear();
+		normal.clear();
+		sent.clear();
+		confirmed = 0;
+		failed = 0;
+		startedAt = nanoTime();
+		nextSendAt = startedAt;
+		for (Map.Entry<Integer, String> e: requests.entrySet()) {
+			boolean u = urgentSymbols.contains(e.getValue());
+			(u ? urgent : normal).add(new Item(e.getKey(), e.getValue(), u));
+			subscriptions.expectAck(e.getKey());
+		}
+		l.info(String.format("resubscribing %d symbols (%d with positions first), %d requests per second", requests.size(), urgent.size(), REQUESTS_PER_SECOND));
+		if (pollHandle==null && scheduler!=null) pollHandle = scheduler.scheduleWithFixedDelay(poller, 0, INTERVAL, TimeUnit.NANOSECONDS);
+	}
+	
+	/**
+	 * Called when IB rejected the request
+	 */
+	public synchronized void rejected(int reqId) {
+		for (Item it: sent) {
+			if (it.reqId==reqId) it.rejected = true;
+		}
+	}
+	
+	public synchronized boolean isActive() {
+		return !urgent.isEmpty() || !normal.isEmpty() || !sent.isEmpty();
+	}
+	
+	public synchronized int getPendingCount() {
+		return urgent.size()+normal.size()+sent.size();
+	}
+	
+	/**
+	 * Checks the requests sent and sends the ones the rate allows, called periodically
+	 */
+	synchronized void poll() {
+		long now = nanoTime();
+		Iterator<Item> iter = sent.iterator();
+		while (iter.hasNext()) {
+			Item it = iter.next();
+			if (subscriptions.getSymbolId(it.reqId)==0) {
+				iter.remove(); // unsubscribed meanwhile
+			} else if (subscriptions.isAcknowledged(it.reqId)) {
+				iter.remove();
+				confirmed++;
+			} else if (it.rejected || now-it.sentAt>ACK_TIMEOUT) {
+				iter.remove();
+				if (it.attempts<MAX_ATTEMPTS) {
+					l.warn(String.format("no market data of %s after request #%d, retrying", it.symbol, it.reqId));
+					(it.urgent ? urgent : normal).add(it);
+				} else {
+					l.error(String.format("unable to resubscribe market data of %s after %d attempts", it.symbol, it.attempts));
+					failed++;
+				}
+			}
+		}
+		
+		while (now-nextSendAt>=0 && !(urgent.isEmpty() && normal.isEmpty())) {
+			Item it = urgent.isEmpty() ? normal.poll() : urgent.poll();
+			if (it.attempts>0) {
+				int reqId = subscriptions.rebind(it.reqId);
+				if (reqId==0) continue; // unsubscribed meanwhile
+				requester.cancel(it.reqId); // in case IB got it after all
+				it.reqId = reqId;
+				subscriptions.expectAck(reqId);
+				nextSendAt = Math.max(nextSendAt, now-INTERVAL)+INTERVAL; // the cancel counts as a message too
+			} else if (subscriptions.getSymbolId(it.reqId)==0) {
+				continue; // unsubscribed meanwhile
+			}
+			requester.request(it.reqId, it.symbol);
+			it.attempts++;
+			it.sentAt = now;
+			it.rejected = false;
+			sent.add(it);
+			nextSendAt = Math.max(nextSendAt, now-INTERVAL)+INTERVAL;
+		}
+		
+		if (!isActive() && startedAt!=0) {
+			l.info(String.format("resubscription finished in %d ms: %d symbols confirmed, %d failed", TimeUnit.NANOSECONDS.toMillis(now-startedAt), confirmed, failed));
+			startedAt = 0;
+			subscriptions.stopTrackingAcks();
+			if (pollHandle!=null) {
+				pollHandle.cancel(false);
+				pollHandle = null;
+			}
+		}
+	}
+	
+	long nanoTime() {
+		return System.nanoTime();
+	}
+
+}
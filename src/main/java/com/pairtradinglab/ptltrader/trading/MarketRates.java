@@ -18,7 +18,8 @@
  */
 package com.pairtradinglab.ptltrader.trading;
 
-import org.joda.time.DateTime;
+import org.joda.time.DateTimeConstants;
+import org.joda.time.DateTimeUtils;
 import org.joda.time.DateTimeZone;
 
 import net.jcip.annotations.NotThreadSafe;
@@ -29,8 +30,9 @@ public class MarketRates {
 	private volatile double ask = 0;
 	private volatile double last = 0;
 
-	private DateTime lastBidChange = null;
-	private DateTime lastAskChange = null;
+	private long lastBidChange = 0; // epoch millis, 0 = never
+	private long lastAskChange = 0; // epoch millis, 0 = never
+	private long quoteVersion = 0; // incremented on every bid/ask change
 
 	public static final int MARKET_STATUS_OK = 0;
 	public static final int MARKET_STATUS_INVALID_PRICES = 1;
@@ -45,14 +47,16 @@ public class MarketRates {
 	}
 	public void setBid(double bid) {
 		this.bid = bid;
-		lastBidChange = DateTime.now();
+		lastBidChange = DateTimeUtils.currentTimeMillis();
+		quoteVersion++;
 	}
 	public double getAsk() {
 		return ask;
 	}
 	public void setAsk(double ask) {
 		this.ask = ask;
-		lastAskChange = DateTime.now();
+		lastAskChange = DateTimeUtils.currentTimeMillis();
+		quoteVersion++;
 	}
 	public double getLast() {
 		return last;
@@ -61,16 +65,24 @@ public class MarketRates {
 		this.last = last;
 	}
 
+	public long getQuoteVersion() {
+		return quoteVersion;
+	}
+
 	public int getMarketStatus() {
 		if (bid<MIN_PRICE || ask<MIN_PRICE) return MARKET_STATUS_INVALID_PRICES;
 
-		DateTime dt = DateTime.now();
-		if (lastBidChange==null || lastBidChange.withZone(timezone).getDayOfMonth()!=dt.withZone(timezone).getDayOfMonth()) return MARKET_STATUS_PRICES_TOO_OLD;
-		if (lastAskChange==null || lastAskChange.withZone(timezone).getDayOfMonth()!=dt.withZone(timezone).getDayOfMonth()) return MARKET_STATUS_PRICES_TOO_OLD;
+		long today = localDay(DateTimeUtils.currentTimeMillis());
+		if (lastBidChange==0 || localDay(lastBidChange)!=today) return MARKET_STATUS_PRICES_TOO_OLD;
+		if (lastAskChange==0 || localDay(lastAskChange)!=today) return MARKET_STATUS_PRICES_TOO_OLD;
 
 		return MARKET_STATUS_OK;
 
 	}
+	
+	private long localDay(long millis) {
+		return Math.floorDiv(timezone.convertUTCToLocal(millis), (long) DateTimeConstants.MILLIS_PER_DAY);
+	}
 
 
 }
@@ -0,0 +1,127 @@
+/**
+ * 	This file is part of PTL Trader.
+ *
+ * 	Copyright © 2011-2021 Quantverse OÜ. All Rights Reserved.
+ *
+ *  PTL Trader is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  PTL Trader is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with PTL Trader. If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.pairtradinglab.ptltrader.trading;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import com.pairtradinglab.ptltrader.RuntimeParams;
+
+import net.jcip.annotations.*;
+
+/**
+ * Keeps per strategy snapshots of the model state built from the historical prices, so a restarted
+ * core does not have to replay the whole history. A snapshot is keyed on the range of (epoch) days of
+ * the bars it was built from: it is used only if the fresh series starts on the same day (the history
+ * window is anchored, see HistoryWindow) and has the same bar on the last day of the range, and the prices
+ * of the range match (checked by a fingerprint against adjusted restatements). The remaining bars are
+ * appended.
+ * Each strategy writes its own file from its own engine, so no locking is needed.
+ */
+@ThreadSafe
+public class ModelSnapshotStore {
+	private static final int MAGIC = 0x50544c53; // "PTLS"
+	private static final int VERSION = 6;
+	
+	private final File dir;
+	
+	public ModelSnapshotStore(RuntimeParams runtimeParams) {
+		super();
+		if (runtimeParams.isModelSnapshots()) {
+			String home = System.getProperty("user.home")+ File.separator + "Application Data";
+			dir = new File(home + File.separator + "PTLTrader" + File.separator + runtimeParams.getProfile() + "-snapshots");
+		} else {
+			dir = null;
+		}
+	}
+	
+	ModelSnapshotStore(File dir) {
+		super();
+		this.dir = dir;
+	}
+	
+	public boolean isEnabled() {
+		return dir!=null;
+	}
+	
+	private File getFile(String uid) {
+		return new File(dir, uid + ".snap");
+	}
+	
+	/**
+	 * Writes the snapshot of the model (if it supports it and has prices)
+	 * @param series the series the model state was built from
+	 * @return true if written
+	 */
+	public boolean save(String uid, PairTradingModel model, AlignedPairSeries series) throws IOException {
+		if (!(model instanceof SnapshotModel) || !model.isPricesInitialized()) return false;
+		int count = model.getConsumedCount();
+		if (count<=0 || count>series.size()) return false;
+		if (!dir.isDirectory() && !dir.mkdirs()) throw new IOException("unable to create directory "+dir);
+		File target = getFile(uid);
+		File tmp = new File(dir, uid + ".tmp");
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new GZIPOutputStream(new FileOutputStream(tmp))))) {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeUTF(model.getClass().getName());
+			out.writeInt(series.days[0]);
+			out.writeInt(series.days[count-1]);
+			out.writeInt(count);
+			out.writeLong(model.getConsumedFingerprint());
+			((SnapshotModel) model).writeSnapshot(out);
+		}
+		Files.move(tmp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		return true;
+	}
+	
+	/**
+	 * Restores the model from its snapshot if there is one covering the first days of the series
+	 * @return true if restored, false if there is no usable snapshot
+	 * @throws IOException if the snapshot can't be read (the model is left without prices)
+	 */
+	public boolean restore(String uid, PairTradingModel model, AlignedPairSeries series) throws IOException {
+		if (!(model instanceof SnapshotModel)) return false;
+		File f = getFile(uid);
+		if (!f.isFile()) return false;
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(new GZIPInputStream(new FileInputStream(f))))) {
+			if (in.readInt()!=MAGIC || in.readInt()!=VERSION) return false;
+			if (!model.getClass().getName().equals(in.readUTF())) return false;
+			int firstDay = in.readInt();
+			int lastDay = in.readInt();
+			int count = in.readInt();
+			long fp = in.readLong();
+			if (count<=0 || count>series.size()) return false;
+			if (series.days[0]!=firstDay || series.days[count-1]!=lastDay) return false;
+			if (PairTradingModel.fingerprint(series.prices1, series.prices2, count)!=fp) return false;
+			((SnapshotModel) model).readSnapshot(in, series.prices1, series.prices2, count);
+			return true;
+		}
+	}
+	
+}
@@ -17,12 +17,11 @@
  *  along with PTL Trader. If not, see <https://www.gnu.org/licenses/>.
  */
 package com.pairtradinglab.ptltrader.trading;
-import java.util.TreeMap;
-
 import org.joda.time.DateTime;
 import org.picocontainer.Startable;
 
 import com.ib.client.*;
+import com.pairtradinglab.ptltrader.ib.HistoricalDataRequest;
 import com.pairtradinglab.ptltrader.trading.events.PairDataFailure;
 import com.pairtradinglab.ptltrader.trading.events.PairDataReady;
 import com.google.common.eventbus.*;
@@ -41,11 +40,10 @@ public class PairDataProvider implements IDataProviderOwner, Startable {
 	private int reqId2=0;
 	private int reqId=0;
 	
-	private TreeMap<DateTime, Double> data1 = null;
-	private TreeMap<DateTime, Double> data2 = null;
+	private BarSeries data1 = null;
+	private BarSeries data2 = null;
 	
-	private TreeMap<DateTime, Double> dataOut1 = new TreeMap<DateTime, Double>();
-	private TreeMap<DateTime, Double> dataOut2 = new TreeMap<DateTime, Double>();
+	private AlignedPairSeries series = AlignedPairSeries.EMPTY;
 	
 	private DateTime dataStamp=null;
 	
@@ -82,18 +80,26 @@ public class PairDataProvider implements IDataProviderOwner, Startable {
 	/**
 	 * Called from ConfinedEngine thread
 	 */
-	public synchronized void requestData() {
+	public void requestData() {
+		requestData(HistoricalDataRequest.PRIORITY_REFRESH);
+	}
+	
+	/**
+	 * Called from ConfinedEngine thread
+	 * @param priority HistoricalDataRequest.PRIORITY_*
+	 */
+	public synchronized void requestData(int priority) {
 		data1=null;
 		data2=null;
 		
-		dataOut1.clear();
-		dataOut2.clear();
-		
-		p1.requestData();
-		p2.requestData();
+		series = AlignedPairSeries.EMPTY;
 		
 		dataStamp=null;
 		
+		// bars served by the bar cache may be delivered right away
+		p1.requestData(priority);
+		p2.requestData(priority);
+		
 	}
 
 
@@ -104,11 +110,11 @@ public class PairDataProvider implements IDataProviderOwner, Startable {
 	public synchronized void notifyDataReady(int rqid, HistoricalDataProvider provider) {
 		//System.out.println(String.format("ready reqid %d rq1 %d rq2 %d", rqid, reqId1, reqId2));
 		if (rqid==reqId1) {
-			data1 = provider.getData();
+			data1 = provider.getSeries();
 			//System.out.println("d1: "+data1);
 			
 		} else if (rqid==reqId2) {
-			data2 = provider.getData();
+			data2 = provider.getSeries();
 			//System.out.println("d2: "+data2);
 			
 		}
@@ -117,14 +123,7 @@ public class PairDataProvider implements IDataProviderOwner, Startable {
 			reqId1=0;
 			reqId2=0;
 			
-			dataOut1.clear();
-			dataOut2.clear();
-			for (DateTime dt:data1.keySet()) {
-				if (data2.get(dt)!=null) {
-					dataOut1.put(dt, data1.get(dt));
-					dataOut2.put(dt, data2.get(dt));
-				}
-			}
+			series = AlignedPairSeries.join(data1, data2);
 			
 			dataStamp=DateTime.now();
 			
@@ -142,8 +141,7 @@ public class PairDataProvider implements IDataProviderOwner, Startable {
 	 */
 	@Override
 	public synchronized void notifyRequestFailed(int reqId, HistoricalDataProvider provider, int code, String message) {
-		dataOut1.clear();
-		dataOut2.clear();
+		series = AlignedPairSeries.EMPTY;
 		if (reqId==reqId1) {
 			data1=null;
 			reqId1=0;
@@ -156,12 +154,11 @@ public class PairDataProvider implements IDataProviderOwner, Startable {
 		
 	}
 
-	public synchronized TreeMap<DateTime, Double> getDataOut1() {
-		return dataOut1;
-	}
-
-	public synchronized TreeMap<DateTime, Double> getDataOut2() {
-		return dataOut2;
+	/**
+	 * Returns the prices of both legs aligned by day (empty until the data are ready)
+	 */
+	public synchronized AlignedPairSeries getSeries() {
+		return series;
 	}
 
 
@@ -177,6 +174,9 @@ public class PairDataProvider implements IDataProviderOwner, Startable {
 	public void stop() {
 		bus.unregister(p1);
 		bus.unregister(p2);
+		// the requests in flight would never complete or fail now
+		p1.cancel();
+		p2.cancel();
 		
 	}
 
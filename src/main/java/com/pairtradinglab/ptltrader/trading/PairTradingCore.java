@@ -20,6 +20,7 @@ package com.pairtradinglab.ptltrader.trading;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.LinkedTransferQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import com.ib.client.*;
 import com.google.common.eventbus.*;
@@ -29,6 +30,7 @@ import org.picocontainer.Startable;
 
 import com.pairtradinglab.ptltrader.ActiveCores;
 import com.pairtradinglab.ptltrader.LoggerFactory;
+import com.pairtradinglab.ptltrader.RuntimeParams;
 import com.pairtradinglab.ptltrader.events.AccountConnected;
 import com.pairtradinglab.ptltrader.events.BeaconFlash;
 import com.pairtradinglab.ptltrader.events.LogEvent;
@@ -37,13 +39,14 @@ import com.pairtradinglab.ptltrader.model.PairStrategy;
 import com.pairtradinglab.ptltrader.trading.events.*;
 import com.pairtradinglab.ptltrader.trading.events.Error;
 
-public class PairTradingCore implements Startable {
+public class PairTradingCore implements Startable, TickListener {
 	
 	// dependencies to be injected
 	private final PairStrategy strategy;
 	private final EventBus bus;
 	private final Map<String, SimpleWrapper> ibWrapperMap;
 	private final ActiveCores activeCores;
+	private final TickRouter tickRouter;
 	
 	private final ConfinedEngine ce;
 	
@@ -58,17 +61,36 @@ public class PairTradingCore implements Startable {
 	private final String label;
 	
 	private final LinkedTransferQueue<ControlMessage> messages = new LinkedTransferQueue<ControlMessage>();
-	private final Thread cthread;
+	private final Thread cthread; // null if the engine runs on the shared scheduler
+	
+	// pooled engine mode
+	private static final int MAILBOX_BATCH = 64;
+	private final EngineScheduler engineScheduler;
+	private final AtomicBoolean scheduled = new AtomicBoolean(false);
+	private volatile boolean terminated = false;
+	private final Runnable mailboxTask = new Runnable() {
+		
+		@Override
+		public void run() {
+			processMailbox();
+		}
+	};
+	
+	// primitive tick ingestion, null if ticks are passed as control messages
+	private final TickRing tickRing;
+	private final ControlMessage ticksPending = new ControlMessage(ControlMessage.TYPE_TICKS_PENDING, null);
+	private final int symbolId1;
 		
 	
 	public PairTradingCore(PairTradingModel ptmodel, PairStrategy strategy,
 			Map<String, SimpleWrapper> ibWrapperMap, LoggerFactory loggerFactory,
 			MarketDataProvider marketDataProvider,
-			EventBus bus, PairDataProviderFactory pairDataProviderFactory, Set<String> connectedAccounts, ActiveCores activeCores, ActivityDetector activityDetector) {
+			EventBus bus, PairDataProviderFactory pairDataProviderFactory, Set<String> connectedAccounts, ActiveCores activeCores, ActivityDetector activityDetector, TickRouter tickRouter, RuntimeParams runtimeParams, EngineScheduler engineScheduler, ModelSnapshotStore snapshotStore) {
 		super();
 		this.strategy = strategy;
 		this.ibWrapperMap = ibWrapperMap;
 		this.bus = bus;
+		this.tickRouter = tickRouter;
 		
 		c1 = ContractExt.createFromGoogleSymbol(strategy.getStock1(), strategy.getTradeAs1() == PairStrategy.TRADE_AS_CFD);
 		c2 = ContractExt.createFromGoogleSymbol(strategy.getStock2(), strategy.getTradeAs2() == PairStrategy.TRADE_AS_CFD);
@@ -81,6 +103,21 @@ public class PairTradingCore implements Startable {
 		// initialize confined engine object
 		ce = new ConfinedEngine(ptmodel, strategy, ibWrapperMap, loggerFactory, marketDataProvider, bus, pairDataProviderFactory, connectedAccounts, activeCores, activityDetector);
 		
+		symbolId1 = tickRouter.getSymbolId(strategy.getStock1());
+		if (runtimeParams.isTickRing()) {
+			tickRing = ce.enableTickRing(symbolId1, tickRouter.getSymbolId(strategy.getStock2()));
+		} else {
+			tickRing = null;
+		}
+		if (snapshotStore.isEnabled()) ce.enableSnapshots(snapshotStore);
+		
+		if (engineScheduler.isEnabled()) {
+			this.engineScheduler = engineScheduler;
+			cthread = null;
+			return;
+		}
+		this.engineScheduler = null;
+		
 		cthread = new Thread(new Runnable() {
 			
 			@Override
@@ -108,6 +145,39 @@ public class PairTradingCore implements Startable {
 	
 	private void msg(ControlMessage m) {
 		messages.put(m);
+		if (engineScheduler!=null && !terminated && scheduled.compareAndSet(false, true)) engineScheduler.execute(mailboxTask);
+	}
+	
+	/**
+	 * Mailbox drain task of the pooled engine mode. The scheduled flag guarantees that at most
+	 * one task per core is queued or running, so the engine stays confined to one thread at a time.
+	 * Setting and testing the flag also publishes the engine state from one pool thread to the next.
+	 */
+	private void processMailbox() {
+		for (int i=0; i<MAILBOX_BATCH; i++) {
+			ControlMessage message = messages.poll();
+			if (message==null) break;
+			try {
+				ce.handleMessage(message);
+			} catch (RuntimeException e) {
+				// the engine state may be inconsistent, stop it like the failure ends the core thread in thread mode
+				l.error("failed to process message "+message.type+", engine stopped", e);
+				bus.post(new LogEvent(label+": engine stopped after a failure, restart of the strategy required"));
+				terminated = true;
+				messages.clear();
+				return;
+			}
+			if (message.type==ControlMessage.TYPE_STOP) {
+				// the engine interrupts its thread on stop, the pool thread must survive it
+				Thread.interrupted();
+				terminated = true;
+				messages.clear();
+				return;
+			}
+		}
+		scheduled.set(false);
+		// reschedule if there is more work, yielding the pool thread to other engines
+		if (!messages.isEmpty() && scheduled.compareAndSet(false, true)) engineScheduler.execute(mailboxTask);
 	}
 	
 	
@@ -119,8 +189,10 @@ public class PairTradingCore implements Startable {
 		
 		messages.clear();
 		msg(new ControlMessage(ControlMessage.TYPE_START, null));
+		tickRouter.subscribe(strategy.getStock1(), this);
+		tickRouter.subscribe(strategy.getStock2(), this);
 		activeCores.registerCore(strategy.getUid(), label);
-		cthread.start();
+		if (cthread!=null) cthread.start();
 		
 		started=true;
 		
@@ -131,6 +203,8 @@ public class PairTradingCore implements Startable {
 		if (!started) return;
 		debug("stopping PTL core");
 		bus.unregister(this);
+		tickRouter.unsubscribe(strategy.getStock1(), this);
+		tickRouter.unsubscribe(strategy.getStock2(), this);
 		msg(new ControlMessage(ControlMessage.TYPE_STOP, null));
 		started=false;
 	}
@@ -183,10 +257,15 @@ public class PairTradingCore implements Startable {
 		
 	}
 	
-	@Subscribe
-	public void onTick(Tick t) {
-		if (t.symbol.equals(strategy.getStock1()) || t.symbol.equals(strategy.getStock2())) {
-			msg(new ControlMessage(ControlMessage.TYPE_TICK, t));
+	@Override
+	public void onTick(int symbolId, int field, double price, int canAutoExecute, long nanoTime) {
+		// the router delivers only ticks of our legs
+		if (tickRing!=null) {
+			tickRing.offer(symbolId, field, price, canAutoExecute, nanoTime);
+			if (tickRing.markPending()) msg(ticksPending);
+		} else {
+			String symbol = (symbolId==symbolId1) ? strategy.getStock1() : strategy.getStock2();
+			msg(new ControlMessage(ControlMessage.TYPE_TICK, new Tick(symbol, field, price, canAutoExecute)));
 		}
 	}
 	
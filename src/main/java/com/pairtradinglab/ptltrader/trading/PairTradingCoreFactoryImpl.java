@@ -20,12 +20,14 @@ package com.pairtradinglab.ptltrader.trading;
 
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
 
 import org.apache.log4j.Logger;
 
 import com.google.common.eventbus.EventBus;
 import com.pairtradinglab.ptltrader.ActiveCores;
 import com.pairtradinglab.ptltrader.LoggerFactory;
+import com.pairtradinglab.ptltrader.RuntimeParams;
 import com.pairtradinglab.ptltrader.ib.SimpleWrapper;
 import com.pairtradinglab.ptltrader.model.PairStrategy;
 
@@ -39,12 +41,16 @@ public class PairTradingCoreFactoryImpl implements PairTradingCoreFactory {
 	private final Set<String> connectedAccounts;
 	private final ActiveCores activeCores;
 	private final ActivityDetector activityDetector;
+	private final TickRouter tickRouter;
+	private final RuntimeParams runtimeParams;
+	private final EngineScheduler engineScheduler;
+	private final ModelSnapshotStore snapshotStore;
 	
 
 	public PairTradingCoreFactoryImpl(Map<String, SimpleWrapper> ibWrapperMap,
 			LoggerFactory loggerFactory,
 			PairDataProviderFactory pairDataProviderFactory,
-			MarketDataProvider marketDataProvider, EventBus bus, Set<String> connectedAccounts, ActiveCores activeCores, ActivityDetector activityDetector) {
+			MarketDataProvider marketDataProvider, EventBus bus, Set<String> connectedAccounts, ActiveCores activeCores, ActivityDetector activityDetector, TickRouter tickRouter, RuntimeParams runtimeParams, EngineScheduler engineScheduler, ModelSnapshotStore snapshotStore) {
 		super();
 		this.ibWrapperMap = ibWrapperMap;
 		this.loggerFactory = loggerFactory;
@@ -54,6 +60,10 @@ public class PairTradingCoreFactoryImpl implements PairTradingCoreFactory {
 		this.connectedAccounts = connectedAccounts;
 		this.activeCores = activeCores;
 		this.activityDetector = activityDetector;
+		this.tickRouter = tickRouter;
+		this.runtimeParams = runtimeParams;
+		this.engineScheduler = engineScheduler;
+		this.snapshotStore = snapshotStore;
 	}
 
 
@@ -72,7 +82,10 @@ public class PairTradingCoreFactoryImpl implements PairTradingCoreFactory {
 		} else if (PairStrategy.MODEL_RATIO.equals(ps.getModel())) {
 			ptmodel = new PairTradingModelRatio(new MarketRates(), new MarketRates(), l);
 		} else if (PairStrategy.MODEL_KALMAN_GRID.equals(ps.getModel())) {
-			ptmodel = new PairTradingModelKalmanGrid(new MarketRates(), new MarketRates(), l);
+			PairTradingModelKalmanGrid kgmodel = new PairTradingModelKalmanGrid(new MarketRates(), new MarketRates(), l);
+			if (runtimeParams.isParallelReplay()) kgmodel.setReplayPool(ForkJoinPool.commonPool());
+			kgmodel.setApproximateTracking(runtimeParams.isApproximateTracking());
+			ptmodel = kgmodel;
 		} else if (PairStrategy.MODEL_KALMAN_AUTO.equals(ps.getModel())) {
 			ptmodel = new PairTradingModelKalmanAuto(new MarketRates(), new MarketRates(), l);
 		} else {
@@ -90,7 +103,7 @@ public class PairTradingCoreFactoryImpl implements PairTradingCoreFactory {
 	public PairTradingCore createForStrategy(PairStrategy ps,
 			PairTradingModel ptmodel) {
 		// find appropriate IB WRAPPER to use
-		return new PairTradingCore(ptmodel, ps, ibWrapperMap, loggerFactory, marketDataProvider, bus, pairDataProviderFactory, connectedAccounts, activeCores, activityDetector);
+		return new PairTradingCore(ptmodel, ps, ibWrapperMap, loggerFactory, marketDataProvider, bus, pairDataProviderFactory, connectedAccounts, activeCores, activityDetector, tickRouter, runtimeParams, engineScheduler, snapshotStore);
 	}
 
 }
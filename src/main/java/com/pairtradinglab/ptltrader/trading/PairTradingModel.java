@@ -49,9 +49,14 @@ public abstract class PairTradingModel {
 	protected DateTimeZone timezone = DateTimeZone.getDefault();
 	
 	protected boolean pricesInitialized=false;
+	private double[] consumedPrices1 = null; // series the model state was built from, see recordPrices()
+	private double[] consumedPrices2 = null;
 	
 	protected double lastZscoreInvolved;
 	
+	private final Evaluation evaluation = new Evaluation();
+	private long stateVersion = 0; // see stateChanged()
+	
 	protected final MarketRates mr1;
 	protected final MarketRates mr2;
 	protected final Logger logger;
@@ -68,6 +73,23 @@ public abstract class PairTradingModel {
 	
 	abstract boolean checkReversalCondition(); // true = yes this seems like reversal
 	abstract void storeReversalState();
+	abstract void evaluate(Evaluation e); // called with prices initialized, see getEvaluation()
+	
+	/**
+	 * Values derived from the current quotes. They are computed once per quote change and shared by the
+	 * z-scores, the entry/exit logic and the profit potential until the next one.
+	 */
+	@NotThreadSafe
+	static final class Evaluation {
+		double lower; // min ratio or spread (if the model has one)
+		double upper; // max ratio or spread
+		double zscoreBid; // ZSCORE_BID
+		double zscoreAsk; // ZSCORE_ASK
+		long serial = 0; // incremented on every evaluation, for values derived lazily by the model
+		private long quote1 = -1;
+		private long quote2 = -1;
+		private long state = -1;
+	}
 	
 	
 	
@@ -88,9 +110,130 @@ public abstract class PairTradingModel {
 	public void setPrices(double[] prices1, double[] prices2) { // may fail with IllegalStateException / IllegalArgumentException
 		if (prices1.length!=prices2.length) throw new IllegalArgumentException("Price arrays must have same length");
 		if (prices1.length==0) throw new IllegalArgumentException("Empty price arrays not accepted");
+		stateChanged();
 		pricesInitialized=true;
 	}
 	
+	/**
+	 * Updates the model by a refreshed price series. Models supporting it keep their state and only
+	 * consume the bars they have not seen yet, provided the series starts with the one consumed before
+	 * (the HistoryWindow keeps the start of the daily refreshes fixed when it is in use; a sliding window
+	 * ends up in a full setPrices); the result is the same as of setPrices. The default implementation is
+	 * a full setPrices.
+	 * @param prices1 price series of instrument 1
+	 * @param prices2 price series of instrument 2
+	 * @throws IllegalArgumentException if something is wrong with prices
+	 * @throws IllegalStateException if called in wrong sequence
+	 */
+	public void appendPrices(double[] prices1, double[] prices2) { // may fail with IllegalStateException / IllegalArgumentException
+		setPrices(prices1, prices2);
+	}
+	
+	/**
+	 * Initializes the model by an aligned series, see setPrices(double[], double[])
+	 */
+	public final void setPrices(AlignedPairSeries series) {
+		setPrices(series.prices1, series.prices2);
+	}
+	
+	/**
+	 * Updates the model by an aligned series, see appendPrices(double[], double[])
+	 */
+	public final void appendPrices(AlignedPairSeries series) {
+		appendPrices(series.prices1, series.prices2);
+	}
+	
+	/**
+	 * Returns the number of bars the model state was built from (0 if none)
+	 */
+	int getConsumedCount() {
+		return (pricesInitialized && consumedPrices1!=null) ? consumedPrices1.length : 0;
+	}
+	
+	/**
+	 * Returns the fingerprint of the price series the model state was built from
+	 */
+	long getConsumedFingerprint() {
+		return fingerprint(consumedPrices1, consumedPrices2, getConsumedCount());
+	}
+	
+	/**
+	 * Computes a 64-bit fingerprint (FNV-1a over the raw bits) of the first count bars of a price series pair
+	 */
+	static long fingerprint(double[] prices1, double[] prices2, int count) {
+		long h = 0xcbf29ce484222325L;
+		for (int i=0; i<count; i++) {
+			h = (h ^ Double.doubleToLongBits(prices1[i])) * 0x100000001b3L;
+			h = (h ^ Double.doubleToLongBits(prices2[i])) * 0x100000001b3L;
+		}
+		return h;
+	}
+	
+	/**
+	 * Remembers the price series the model state was built from (for appendPrices)
+	 */
+	protected void recordPrices(double[] prices1, double[] prices2) {
+		consumedPrices1 = prices1.clone();
+		consumedPrices2 = prices2.clone();
+		stateChanged();
+	}
+	
+	/**
+	 * Returns the evaluation of the current quotes, computed again only if a quote or the model state has
+	 * changed since the last call
+	 */
+	final Evaluation getEvaluation() {
+		long q1 = mr1.getQuoteVersion();
+		long q2 = mr2.getQuoteVersion();
+		Evaluation e = evaluation;
+		if (e.quote1!=q1 || e.quote2!=q2 || e.state!=stateVersion) {
+			e.state = -1; // stays invalid if the evaluation fails
+			evaluate(e);
+			e.serial++;
+			e.quote1 = q1;
+			e.quote2 = q2;
+			e.state = stateVersion;
+		}
+		return e;
+	}
+	
+	/**
+	 * Invalidates the evaluation of the current quotes, to be called on every change of the model state it
+	 * depends on (prices, parameters, locked sub-model)
+	 */
+	protected final void stateChanged() {
+		stateVersion++;
+	}
+	
+	/**
+	 * Combines the bid and ask z-scores into ZSCORE_AUTO
+	 */
+	static double autoZScore(double zscoremin, double zscoremax) {
+		if (zscoremin>0 && zscoremax>0) {
+			return zscoremin;
+		} else if (zscoremin<0 && zscoremax<0) {
+			return zscoremax;
+		} else {
+			// return mean
+			return (zscoremin+zscoremax)/2;
+		}
+	}
+	
+	/**
+	 * Returns the number of leading bars of the series already consumed by the model, or -1 if the series
+	 * does not start with the recorded one (then the model must be set up from scratch).
+	 */
+	protected int getConsumedPrefix(double[] prices1, double[] prices2) {
+		if (!pricesInitialized || consumedPrices1 == null) return -1;
+		if (prices1.length!=prices2.length) return -1;
+		int n = consumedPrices1.length;
+		if (prices1.length<n) return -1;
+		for (int i=0; i<n; i++) {
+			if (prices1[i]!=consumedPrices1[i] || prices2[i]!=consumedPrices2[i]) return -1;
+		}
+		return n;
+	}
+	
 	public void initialize() {
 		
 	}
@@ -81,4 +81,9 @@ public class PairTradingModelDummy extends PairTradingModel {
 		
 	}
 
+	@Override
+	void evaluate(Evaluation e) {
+		
+	}
+
 }
@@ -23,8 +23,13 @@ import com.pairtradinglab.ptltrader.trading.kernelfx.SubModelKalmanAuto;
 import net.jcip.annotations.NotThreadSafe;
 import org.apache.log4j.Logger;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
 @NotThreadSafe
-public class PairTradingModelKalmanAuto extends PairTradingModel implements LockableStateModel {
+public class PairTradingModelKalmanAuto extends PairTradingModel implements LockableStateModel, SnapshotModel {
     private static final int UNSTABLE_PERIOD = 120;
     // settings
     private int neutrality = PairStrategy.NEUTRALITY_DOLLAR;
@@ -45,32 +50,29 @@ public class PairTradingModelKalmanAuto extends PairTradingModel implements Lock
         if (grid == null || !pricesInitialized ||!grid.getIsValid() || grid.getSq()<0.00000001) return 0;
         if (mr1.getMarketStatus()!=MarketRates.MARKET_STATUS_OK) return 0;
 
+        Evaluation e = getEvaluation();
         if (mode== ZSCORE_BID) {
-            return grid.evaluate(mr1.getBid(), mr2.getAsk());
+            return e.zscoreBid;
         } else if (mode== ZSCORE_ASK) {
-            return grid.evaluate(mr1.getAsk(), mr2.getBid());
+            return e.zscoreAsk;
         } else {
-            // auto
-            double zscoremin = grid.evaluate(mr1.getBid(), mr2.getAsk());
-            double zscoremax = grid.evaluate(mr1.getAsk(), mr2.getBid());
-
-            if (zscoremin>0 && zscoremax>0) {
-                return zscoremin;
-            } else if (zscoremin<0 && zscoremax<0) {
-                return zscoremax;
-            } else {
-                // return mean
-                return (zscoremin+zscoremax)/2;
-            }
+            return autoZScore(e.zscoreBid, e.zscoreAsk);
         }
     }
 
+    @Override
+    void evaluate(Evaluation e) {
+        e.zscoreBid = grid.evaluate(mr1.getBid(), mr2.getAsk());
+        e.zscoreAsk = grid.evaluate(mr1.getAsk(), mr2.getBid());
+    }
+
     @Override
     int entryLogic() {
         if (grid == null) throw new IllegalStateException("Model not set up");
         if (!pricesInitialized) throw new IllegalStateException("Prices not initialized");
         if (!grid.getIsValid() || grid.getSq()<0.00000001 || tbl == null) return SIGNAL_NONE;
-        EntrySignal sig = tbl.entryLogic(grid.evaluate(mr1.getAsk(), mr2.getBid()), grid.evaluate(mr1.getBid(), mr2.getAsk()), lastScore, lastScore);
+        Evaluation e = getEvaluation();
+        EntrySignal sig = tbl.entryLogic(e.zscoreAsk, e.zscoreBid, lastScore, lastScore);
         if (sig.signal != PairTradingModel.SIGNAL_NONE) lastZscoreInvolved = sig.zscore;
         return sig.signal;
     }
@@ -80,7 +82,8 @@ public class PairTradingModelKalmanAuto extends PairTradingModel implements Lock
         if (grid == null) throw new IllegalStateException("Model not set up");
         if (!pricesInitialized) throw new IllegalStateException("Prices not initialized");
         if (!grid.getIsValid() || grid.getSq()<0.00000001 || tbl == null) return false;
-        ExitSignal sig = tbl.exitLogic(currentPosition, grid.evaluate(mr1.getAsk(), mr2.getBid()), grid.evaluate(mr1.getBid(), mr2.getAsk()));
+        Evaluation e = getEvaluation();
+        ExitSignal sig = tbl.exitLogic(currentPosition, e.zscoreAsk, e.zscoreBid);
         if (sig.signal) lastZscoreInvolved = sig.zscore;
         return sig.signal;
     }
@@ -108,6 +111,7 @@ public class PairTradingModelKalmanAuto extends PairTradingModel implements Lock
         grid.setAllowLong(ps.getAllowPositions() == PairStrategy.ALLOW_POSITIONS_BOTH || ps.getAllowPositions() == PairStrategy.ALLOW_POSITIONS_LONG);
         grid.setAllowShort(ps.getAllowPositions() == PairStrategy.ALLOW_POSITIONS_BOTH || ps.getAllowPositions() == PairStrategy.ALLOW_POSITIONS_SHORT);
         grid.init();
+        stateChanged();
     }
 
     @Override
@@ -186,6 +190,60 @@ public class PairTradingModelKalmanAuto extends PairTradingModel implements Lock
             logger.debug(String.format("re-locking model to %d", state.subModelId));
             grid.lock(state.subModelId);
         }
+        recordPrices(prices1, prices2);
+        pricesInitialized=true;
+    }
+
+    @Override
+    public void appendPrices(double[] prices1, double[] prices2) {
+        if (grid == null) throw new IllegalStateException("Model not set up");
+        int from = getConsumedPrefix(prices1, prices2);
+        if (from < 0) {
+            setPrices(prices1, prices2);
+            return;
+        }
+        int last = prices1.length-1;
+        if (from <= last) {
+            pricesInitialized=false;
+            // new bars are fed unlocked, like setPrices does
+            if (state != null) grid.unlock();
+            for(int i=from;i<last;i++) grid.update(prices1[i], prices2[i]);
+            lastScore = grid.evaluate(prices1[last], prices2[last]); // for last price
+            grid.update(prices1[last], prices2[last]);
+            if (state != null) grid.lock(state.subModelId);
+            recordPrices(prices1, prices2);
+            pricesInitialized=true;
+        }
+        logger.debug(String.format("appended %d bars to %d already consumed", prices1.length-from, from));
+    }
+
+    @Override
+    public void writeSnapshot(DataOutput out) throws IOException {
+        if (grid == null) throw new IllegalStateException("Model not set up");
+        if (!pricesInitialized) throw new IllegalStateException("Prices not initialized");
+        out.writeDouble(lastScore);
+        grid.writeState(out);
+    }
+
+    @Override
+    public void readSnapshot(DataInput in, double[] prices1, double[] prices2, int count) throws IOException {
+        if (grid == null) throw new IllegalStateException("Model not set up");
+        pricesInitialized=false;
+        try {
+            lastScore = in.readDouble();
+            grid.readState(in);
+        } catch (IOException e) {
+            lastScore = 0;
+            grid.init();
+            throw e;
+        }
+        // the snapshot may have been written with another lock than the current one
+        int lockedId = (state != null) ? state.subModelId : -1;
+        if (grid.getLockedModelId() != lockedId) {
+            if (state != null) grid.lock(state.subModelId);
+            else grid.unlock();
+        }
+        recordPrices(Arrays.copyOf(prices1, count), Arrays.copyOf(prices2, count));
         pricesInitialized=true;
     }
 
@@ -224,6 +282,7 @@ public class PairTradingModelKalmanAuto extends PairTradingModel implements Lock
         if (!(state instanceof PairTradingModelKalmanAutoState)) throw new IllegalArgumentException("Incompatible state argument");
         grid.lock(((PairTradingModelKalmanAutoState) state).subModelId);
         this.state = (PairTradingModelKalmanAutoState) state;
+        stateChanged();
         logger.debug(String.format("locked kalman-auto to sub-model ID %d", this.state.subModelId));
     }
 
@@ -231,6 +290,7 @@ public class PairTradingModelKalmanAuto extends PairTradingModel implements Lock
     public void unlockState() {
         grid.unlock();
         state = null;
+        stateChanged();
         logger.debug("unlocked kalman-auto sub-model");
     }
 }
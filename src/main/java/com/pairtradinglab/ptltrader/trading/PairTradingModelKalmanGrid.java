@@ -23,8 +23,14 @@ import com.pairtradinglab.ptltrader.trading.kernelfx.SubModelKalmanGrid;
 import net.jcip.annotations.NotThreadSafe;
 import org.apache.log4j.Logger;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+
 @NotThreadSafe
-public class PairTradingModelKalmanGrid extends PairTradingModel {
+public class PairTradingModelKalmanGrid extends PairTradingModel implements SnapshotModel {
     private static final int UNSTABLE_PERIOD = 60;
     // settings
     private int neutrality = PairStrategy.NEUTRALITY_DOLLAR;
@@ -34,6 +40,8 @@ public class PairTradingModelKalmanGrid extends PairTradingModel {
     SubModelKalmanGrid grid;
     double lastScore;
     private double lastExitScore;
+    private ForkJoinPool replayPool = null; // parallel history replay if set
+    private boolean approximateTracking = false; // streaming semi-deviation in the OLS tracker
 
     PairTradingModelKalmanGrid(MarketRates mr1, MarketRates mr2, Logger logger) {
         super(mr1, mr2, logger);
@@ -44,32 +52,29 @@ public class PairTradingModelKalmanGrid extends PairTradingModel {
         if (grid == null || !pricesInitialized ||!grid.getIsValid() || grid.getSq()<0.00000001) return 0;
         if (mr1.getMarketStatus()!=MarketRates.MARKET_STATUS_OK) return 0;
 
+        Evaluation e = getEvaluation();
         if (mode== ZSCORE_BID) {
-            return grid.evaluate(mr1.getBid(), mr2.getAsk());
+            return e.zscoreBid;
         } else if (mode== ZSCORE_ASK) {
-            return grid.evaluate(mr1.getAsk(), mr2.getBid());
+            return e.zscoreAsk;
         } else {
-            // auto
-            double zscoremin = grid.evaluate(mr1.getBid(), mr2.getAsk());
-            double zscoremax = grid.evaluate(mr1.getAsk(), mr2.getBid());
-
-            if (zscoremin>0 && zscoremax>0) {
-                return zscoremin;
-            } else if (zscoremin<0 && zscoremax<0) {
-                return zscoremax;
-            } else {
-                // return mean
-                return (zscoremin+zscoremax)/2;
-            }
+            return autoZScore(e.zscoreBid, e.zscoreAsk);
         }
     }
 
+    @Override
+    void evaluate(Evaluation e) {
+        e.zscoreBid = grid.evaluate(mr1.getBid(), mr2.getAsk());
+        e.zscoreAsk = grid.evaluate(mr1.getAsk(), mr2.getBid());
+    }
+
     @Override
     int entryLogic() {
         if (grid == null) throw new IllegalStateException("Model not set up");
         if (!pricesInitialized) throw new IllegalStateException("Prices not initialized");
         if (!grid.getIsValid() || grid.getSq()<0.00000001 || tbl == null) return SIGNAL_NONE;
-        EntrySignal sig = tbl.entryLogic(grid.evaluate(mr1.getAsk(), mr2.getBid()), grid.evaluate(mr1.getBid(), mr2.getAsk()), lastScore, lastScore);
+        Evaluation e = getEvaluation();
+        EntrySignal sig = tbl.entryLogic(e.zscoreAsk, e.zscoreBid, lastScore, lastScore);
         if (sig.signal != PairTradingModel.SIGNAL_NONE) lastZscoreInvolved = sig.zscore;
         return sig.signal;
     }
@@ -79,7 +84,8 @@ public class PairTradingModelKalmanGrid extends PairTradingModel {
         if (grid == null) throw new IllegalStateException("Model not set up");
         if (!pricesInitialized) throw new IllegalStateException("Prices not initialized");
         if (!grid.getIsValid() || grid.getSq()<0.00000001 || tbl == null) return false;
-        ExitSignal sig = tbl.exitLogic(currentPosition, grid.evaluate(mr1.getAsk(), mr2.getBid()), grid.evaluate(mr1.getBid(), mr2.getAsk()));
+        Evaluation e = getEvaluation();
+        ExitSignal sig = tbl.exitLogic(currentPosition, e.zscoreAsk, e.zscoreBid);
         if (sig.signal) lastZscoreInvolved = sig.zscore;
         return sig.signal;
     }
@@ -104,8 +110,9 @@ public class PairTradingModelKalmanGrid extends PairTradingModel {
         grid.setMaxDays(ps.isMaxDaysEnabled() ? ps.getMaxDays() : 0);
         grid.setAllowLong(ps.getAllowPositions() == PairStrategy.ALLOW_POSITIONS_BOTH || ps.getAllowPositions() == PairStrategy.ALLOW_POSITIONS_LONG);
         grid.setAllowShort(ps.getAllowPositions() == PairStrategy.ALLOW_POSITIONS_BOTH || ps.getAllowPositions() == PairStrategy.ALLOW_POSITIONS_SHORT);
+        grid.setTrackingApproximate(approximateTracking);
         grid.init();
-
+        stateChanged();
     }
 
     @Override
@@ -174,14 +181,77 @@ public class PairTradingModelKalmanGrid extends PairTradingModel {
         grid.init();
         int lb = getLookbackRequired();
         if (prices1.length<lb) throw new IllegalArgumentException(String.format("Prices array must have at least %d items", lb));
-        for(int i=0;i<prices1.length;i++) {
-            if (i==prices1.length-1) lastScore = grid.evaluate(prices1[i], prices2[i]); // for last price
-            //System.out.printf("score %f b0 %f b1 %f\n", lastScore, grid.getBeta(), grid.getAlpha());
-            grid.update(prices1[i], prices2[i]);
+        int last = prices1.length-1;
+        grid.replay(prices1, prices2, 0, last, replayPool);
+        lastScore = grid.evaluate(prices1[last], prices2[last]); // for last price
+        grid.update(prices1[last], prices2[last]);
+        recordPrices(prices1, prices2);
+        pricesInitialized=true;
+    }
+
+    @Override
+    public void appendPrices(double[] prices1, double[] prices2) {
+        if (grid == null) throw new IllegalStateException("Model not set up");
+        int from = getConsumedPrefix(prices1, prices2);
+        if (from < 0) {
+            setPrices(prices1, prices2);
+            return;
+        }
+        int last = prices1.length-1;
+        if (from <= last) {
+            pricesInitialized=false;
+            grid.replay(prices1, prices2, from, last, replayPool);
+            lastScore = grid.evaluate(prices1[last], prices2[last]); // for last price
+            grid.update(prices1[last], prices2[last]);
+            recordPrices(prices1, prices2);
+            pricesInitialized=true;
+        }
+        logger.debug(String.format("appended %d bars to %d already consumed", prices1.length-from, from));
+    }
+
+    @Override
+    public void writeSnapshot(DataOutput out) throws IOException {
+        if (grid == null) throw new IllegalStateException("Model not set up");
+        if (!pricesInitialized) throw new IllegalStateException("Prices not initialized");
+        out.writeDouble(lastScore);
+        grid.writeState(out);
+    }
+
+    @Override
+    public void readSnapshot(DataInput in, double[] prices1, double[] prices2, int count) throws IOException {
+        if (grid == null) throw new IllegalStateException("Model not set up");
+        pricesInitialized=false;
+        try {
+            lastScore = in.readDouble();
+            grid.readState(in);
+        } catch (IOException e) {
+            lastScore = 0;
+            grid.init();
+            throw e;
         }
+        recordPrices(Arrays.copyOf(prices1, count), Arrays.copyOf(prices2, count));
         pricesInitialized=true;
     }
 
+    public ForkJoinPool getReplayPool() {
+        return replayPool;
+    }
+
+    public void setReplayPool(ForkJoinPool replayPool) {
+        this.replayPool = replayPool;
+    }
+
+    public boolean isApproximateTracking() {
+        return approximateTracking;
+    }
+
+    /**
+     * Takes effect on the next setupFromStrategy
+     */
+    public void setApproximateTracking(boolean approximateTracking) {
+        this.approximateTracking = approximateTracking;
+    }
+
     public int getNeutrality() {
         return neutrality;
     }
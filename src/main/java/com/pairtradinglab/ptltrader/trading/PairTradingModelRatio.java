@@ -18,7 +18,6 @@
  */
 package com.pairtradinglab.ptltrader.trading;
 
-import java.util.ArrayList;
 import java.util.List;
 
 import org.apache.log4j.Logger;
@@ -61,53 +60,51 @@ public class PairTradingModelRatio extends PairTradingModel {
 	private double[] ratios;
 	
 	private final Core talib = new Core();
+	private final WilderRsi wilderRsi = new WilderRsi(); // primed on first use after the prices are set
 	
 	private double lastExitZscore = 0;
 	private double lastExitRsi = 0;
 	
+	private double rsiLower; // RSI with the min ratio appended
+	private double rsiUpper; // RSI with the max ratio appended
+	private long rsiSerial = -1; // evaluation the RSI values belong to
+	
 
 	@Override
 	public double getZScore(int mode) {
 		if (!pricesInitialized) throw new IllegalArgumentException("Prices not initialized");
 		
-		MultiRatio mr = new MultiRatio(mr1.getBid(), mr1.getAsk(), mr2.getBid(), mr2.getAsk());
-		
-		double minratio=mr.getMinRatio();
-		double maxratio=mr.getMaxRatio();
-		
+		Evaluation e = getEvaluation();
 		if (mode== ZSCORE_BID) {
-			return (minratio-curma)/stddev;
+			return e.zscoreBid;
 		} else if (mode== ZSCORE_ASK) {
-			return (maxratio-curma)/stddev;
+			return e.zscoreAsk;
 		} else {
-			// auto
-			double zscoremin=(minratio-curma)/stddev;
-			double zscoremax=(maxratio-curma)/stddev;
-			
-			if (zscoremin>0 && zscoremax>0) {
-				return zscoremin;
-			} else if (zscoremin<0 && zscoremax<0) {
-				return zscoremax;
-			} else {
-				// return mean
-				return (zscoremin+zscoremax)/2;
-			}
+			return autoZScore(e.zscoreBid, e.zscoreAsk);
 		}
 		
 	}
 	
+	@Override
+	void evaluate(Evaluation e) {
+		MultiRatio mr = new MultiRatio(mr1.getBid(), mr1.getAsk(), mr2.getBid(), mr2.getAsk());
+		e.lower = mr.getMinRatio();
+		e.upper = mr.getMaxRatio();
+		e.zscoreBid = (e.lower-curma)/stddev;
+		e.zscoreAsk = (e.upper-curma)/stddev;
+	}
+	
 
 	@Override
 	public int entryLogic() {
 		if (!pricesInitialized) throw new IllegalArgumentException("Prices not initialized");
 		
-		MultiRatio mr = new MultiRatio(mr1.getBid(), mr1.getAsk(), mr2.getBid(), mr2.getAsk());
-		
-		double minratio=mr.getMinRatio();
-		double maxratio=mr.getMaxRatio();
+		Evaluation e = getEvaluation();
+		double minratio=e.lower;
+		double maxratio=e.upper;
 		
-		double zscoremin=(minratio-curma)/stddev;
-		double zscoremax=(maxratio-curma)/stddev;
+		double zscoremin=e.zscoreBid;
+		double zscoremax=e.zscoreAsk;
 		double lastZscore=(ratios[ratios.length-1]-lastma)/laststddev;
 		
 		//System.out.println(String.format("minr %f maxr %f zscmin %f zscmax %f lastscore %f curma %f", minratio, maxratio, zscoremin, zscoremax, lastZscore, curma));
@@ -162,8 +159,9 @@ public class PairTradingModelRatio extends PairTradingModel {
 		
 		if (rsiThreshold>0.001 && out != SIGNAL_NONE) {
 			// additional RSI filtering
-			double rsi1 = calcRsi(minratio);
-			double rsi2 = calcRsi(maxratio);
+			evaluateRsi(e);
+			double rsi1 = rsiLower;
+			double rsi2 = rsiUpper;
 			
 			//System.out.println(String.format("sig %d minr %f maxr %f rsi1 %f rsi2 %f thres %f", out, minratio, maxratio, rsi1, rsi2, rsiThreshold));
 			if (out == SIGNAL_LONG) {
@@ -191,35 +189,30 @@ public class PairTradingModelRatio extends PairTradingModel {
 		if (talib.SetUnstablePeriod(FuncUnstId.Mama, unstablePeriod) != RetCode.Success) throw new RuntimeException("Ta-lib unstable period initialization failed");
 		if (talib.SetUnstablePeriod(FuncUnstId.Rsi, unstablePeriodRsi) != RetCode.Success) throw new RuntimeException("Ta-lib unstable period initialization failed");
 		if (talib.SetUnstablePeriod(FuncUnstId.T3, unstablePeriod) != RetCode.Success) throw new RuntimeException("Ta-lib unstable period initialization failed");
+		wilderRsi.reset(); // the RSI lookback depends on the unstable period
+		stateChanged();
 		
 	}
 
 	private double calcRsi(double trailingRatio) {
-		int rsiLookback = talib.rsiLookback(rsiPeriod);
-		double buffer[] = new double[rsiLookback+1];
-		int k=0;
-		for (int i = ratios.length-rsiLookback; i<ratios.length; i++) {
-			buffer[k++] = ratios[i];
+		if (!wilderRsi.isPrimed()) wilderRsi.prime(ratios, ratios.length, rsiPeriod, talib.rsiLookback(rsiPeriod));
+		return wilderRsi.valueWith(trailingRatio);
+	}
+	
+	private void evaluateRsi(Evaluation e) {
+		if (rsiSerial!=e.serial) {
+			rsiLower = calcRsi(e.lower);
+			rsiUpper = calcRsi(e.upper);
+			rsiSerial = e.serial;
 		}
-		buffer[k] = trailingRatio;
-		double rsi[] = new double[1];
-		MInteger begidx = new MInteger();
-		MInteger nbelem = new MInteger();
-		
-		RetCode res = talib.rsi(buffer.length-1, buffer.length-1, buffer, rsiPeriod, begidx, nbelem, rsi);
-		if (res!=RetCode.Success) throw new RuntimeException("TA-Lib call failed for stdDev");
-		
-		return rsi[0];
-		
 	}
 	
 	public double getRsi() {
 		if (!pricesInitialized) throw new IllegalArgumentException("Prices not initialized");
 		
-		MultiRatio mr = new MultiRatio(mr1.getBid(), mr1.getAsk(), mr2.getBid(), mr2.getAsk());
-		
-		double minRsi = calcRsi(mr.getMinRatio());
-		double maxRsi = calcRsi(mr.getMaxRatio());
+		evaluateRsi(getEvaluation());
+		double minRsi = rsiLower;
+		double maxRsi = rsiUpper;
 		
 		if (minRsi>50 && maxRsi>50) {
 			return minRsi;
@@ -237,6 +230,7 @@ public class PairTradingModelRatio extends PairTradingModel {
 	public void setPrices(double[] prices1, double[] prices2) {
 		super.setPrices(prices1, prices2);
 		pricesInitialized=false;
+		wilderRsi.reset();
 		// calculate ratio series
 		ratios=new double[prices1.length];
 		for(int i=0;i<prices1.length;i++) {
@@ -258,7 +252,7 @@ public class PairTradingModelRatio extends PairTradingModel {
 		MInteger nbelem = new MInteger();
 		logger.debug(String.format("calculating moving average: period %d type %d input len %d", maPeriod, maType.ordinal(), ratios.length));
 		int ls1 = (ratios.length>49) ? 49 : ratios.length;
-		List<Double> l1 = new ArrayList<Double>(Doubles.asList(ratios)).subList(ratios.length-ls1, ratios.length);
+		List<Double> l1 = Doubles.asList(ratios).subList(ratios.length-ls1, ratios.length);
 		logger.debug(String.format("last %d ratios: %s", ls1, Joiner.on(" ").join(l1)));
 				
 		RetCode res = talib.movingAverage(ratios.length-2, ratios.length-1, ratios, maPeriod, maType, begidx, nbelem, maout);
@@ -345,6 +339,8 @@ public class PairTradingModelRatio extends PairTradingModel {
 
 	public void setRsiPeriod(int rsiPeriod) {
 		this.rsiPeriod = rsiPeriod;
+		wilderRsi.reset();
+		stateChanged();
 	}
 
 	public double getRsiThreshold() {
@@ -358,15 +354,12 @@ public class PairTradingModelRatio extends PairTradingModel {
 	@Override
 	public boolean exitLogic(int currentPosition) {
 		if (!pricesInitialized) throw new IllegalArgumentException("Prices not initialized");
-		MultiRatio mr = new MultiRatio(mr1.getBid(), mr1.getAsk(), mr2.getBid(), mr2.getAsk());
-		
-		double minratio=mr.getMinRatio();
-		double maxratio=mr.getMaxRatio();
+		Evaluation e = getEvaluation();
 		
-		double zscoremin=(minratio-curma)/stddev;
-		double zscoremax=(maxratio-curma)/stddev;
+		double zscoremin=e.zscoreBid;
+		double zscoremax=e.zscoreAsk;
 		
-		//System.out.println(String.format("minr %f maxr %f zscmin %f zscmax %f curma %f", minratio, maxratio, zscoremin, zscoremax, curma));
+		//System.out.println(String.format("minr %f maxr %f zscmin %f zscmax %f curma %f", e.lower, e.upper, zscoremin, zscoremax, curma));
 		
 		if (currentPosition==SIGNAL_LONG) {
 			if (zscoremin>=-exitThreshold) {
@@ -423,13 +416,13 @@ public class PairTradingModelRatio extends PairTradingModel {
 	public double getProfitPotential(double marginAvailable, double marginCoef1, double marginCoef2) {
 		if (!pricesInitialized) return 0;
 		if (mr1.getMarketStatus()!=MarketRates.MARKET_STATUS_OK) return 0;
-		double zscoreAsk = getZScore(ZSCORE_ASK);
-		double zscoreBid = getZScore(ZSCORE_BID);
-		MultiRatio mr = new MultiRatio(mr1.getBid(), mr1.getAsk(), mr2.getBid(), mr2.getAsk());
+		Evaluation e = getEvaluation();
+		double zscoreAsk = e.zscoreAsk;
+		double zscoreBid = e.zscoreBid;
 
 		if (zscoreAsk<-exitThreshold) {
 			// this is long position
-			double spread = mr.getMinRatio() - curma; // we use BID here
+			double spread = e.lower - curma; // we use BID here
 			double targetSpread = -exitThreshold*stddev;
 			double delta=targetSpread - spread;
 
@@ -445,7 +438,7 @@ public class PairTradingModelRatio extends PairTradingModel {
 
 		} else if (zscoreBid>exitThreshold) {
 			// this is short position
-			double spread = mr.getMaxRatio() - curma; // we use ASK here
+			double spread = e.upper - curma; // we use ASK here
 			double targetSpread = exitThreshold*stddev;
 			double delta=targetSpread - spread;
 
@@ -42,6 +42,7 @@ public class PairTradingModelResidual extends PairTradingModel {
 	private int entryMode=ENTRY_MODE_SIMPLE;
 	
 	// internal state
+	private RollingOls ols = null;
 	private OlsResult olsr;
 	private OlsResult olsr1;
 	private double lastExitZscore = 0;
@@ -51,37 +52,34 @@ public class PairTradingModelResidual extends PairTradingModel {
 		if (!pricesInitialized) throw new IllegalArgumentException("Prices not initialized");
 		if (olsr.stdDev<0.00000001 || olsr1.stdDev<0.00000001) return 0;
 		
-		MultiSpread ms = new MultiSpread(olsr.A, olsr.B, mr1.getBid(), mr1.getAsk(), mr2.getBid(), mr2.getAsk());
+		Evaluation e = getEvaluation();
 		if (mode== ZSCORE_BID) {
-			return ms.getMinSpread()/olsr.stdDev;
+			return e.zscoreBid;
 		} else if (mode== ZSCORE_ASK) {
-			return ms.getMaxSpread()/olsr.stdDev;
+			return e.zscoreAsk;
 		} else {
-			// auto
-			double zscoremin=ms.getMinSpread()/olsr.stdDev;
-			double zscoremax=ms.getMaxSpread()/olsr.stdDev;
-			
-			if (zscoremin>0 && zscoremax>0) {
-				return zscoremin;
-			} else if (zscoremin<0 && zscoremax<0) {
-				return zscoremax;
-			} else {
-				// return mean
-				return (zscoremin+zscoremax)/2;
-			}
+			return autoZScore(e.zscoreBid, e.zscoreAsk);
 		}
 		
 	}
+	
+	@Override
+	void evaluate(Evaluation e) {
+		MultiSpread ms = new MultiSpread(olsr.A, olsr.B, mr1.getBid(), mr1.getAsk(), mr2.getBid(), mr2.getAsk());
+		e.lower = ms.getMinSpread();
+		e.upper = ms.getMaxSpread();
+		e.zscoreBid = e.lower/olsr.stdDev;
+		e.zscoreAsk = e.upper/olsr.stdDev;
+	}
 
 	@Override
 	public int entryLogic() {
 		if (!pricesInitialized) throw new IllegalArgumentException("Prices not initialized");
 		if (olsr.stdDev<0.00000001 || olsr1.stdDev<0.00000001) return SIGNAL_NONE;
 		
-		MultiSpread ms = new MultiSpread(olsr.A, olsr.B, mr1.getBid(), mr1.getAsk(), mr2.getBid(), mr2.getAsk());
-		
-		double zscoremin=ms.getMinSpread()/olsr.stdDev;
-		double zscoremax=ms.getMaxSpread()/olsr.stdDev;
+		Evaluation e = getEvaluation();
+		double zscoremin=e.zscoreBid;
+		double zscoremax=e.zscoreAsk;
 		
 		double lastZscore = olsr1.lastSpread / olsr1.stdDev;
 		
@@ -138,10 +136,9 @@ public class PairTradingModelResidual extends PairTradingModel {
 		if (!pricesInitialized) throw new IllegalArgumentException("Prices not initialized");
 		if (olsr.stdDev<0.00000001) return false;
 		
-		MultiSpread ms = new MultiSpread(olsr.A, olsr.B, mr1.getBid(), mr1.getAsk(), mr2.getBid(), mr2.getAsk());
-		
-		double zscoremin=ms.getMinSpread()/olsr.stdDev;
-		double zscoremax=ms.getMaxSpread()/olsr.stdDev;
+		Evaluation e = getEvaluation();
+		double zscoremin=e.zscoreBid;
+		double zscoremax=e.zscoreAsk;
 		
 		//System.out.println(String.format("zscmin %f zscmax %f", zscoremin, zscoremax));
 		
@@ -237,15 +234,41 @@ public class PairTradingModelResidual extends PairTradingModel {
 		pricesInitialized=false;
 		int lb = getLookbackRequired();
 		if (prices1.length<lb) throw new IllegalArgumentException(String.format("Prices array must have at least %d items", lb));
-		OlsCalculator olsc = new OlsCalculator();
-		olsr = olsc.calculate(linRegPeriod, 0, prices1, prices2);
-		olsr1 = olsc.calculate(linRegPeriod, 1, prices1, prices2);
+		if (ols==null || ols.getPeriod()!=linRegPeriod) ols = new RollingOls(linRegPeriod);
+		else ols.reset();
+		int last = prices1.length-1;
+		ols.addAll(prices1, prices2, last);
+		olsr1 = ols.getResult(prices1[last], prices2[last]); // window lagged by one bar
+		ols.add(prices1[last], prices2[last]);
+		olsr = ols.getResult();
 		
 		//System.out.println(String.format("A: %f B: %f stddev: %f", A, B, stdDev));
+		recordPrices(prices1, prices2);
 		pricesInitialized=true;
 		
 	}
 	
+	@Override
+	public void appendPrices(double[] prices1, double[] prices2) {
+		int from = getConsumedPrefix(prices1, prices2);
+		if (from < 0 || ols==null || ols.getPeriod()!=linRegPeriod) {
+			setPrices(prices1, prices2);
+			return;
+		}
+		int last = prices1.length-1;
+		if (from <= last) {
+			// the window already holds the consumed bars, only the new ones are rolled in
+			pricesInitialized=false;
+			for (int i=from; i<last; i++) ols.add(prices1[i], prices2[i]);
+			olsr1 = ols.getResult(prices1[last], prices2[last]); // window lagged by one bar
+			ols.add(prices1[last], prices2[last]);
+			olsr = ols.getResult();
+			recordPrices(prices1, prices2);
+			pricesInitialized=true;
+		}
+		logger.debug(String.format("appended %d bars to %d already consumed", prices1.length-from, from));
+	}
+	
 	
 	@Override
 	public double getProfitPotential(double marginAvailable, double marginCoef1, double marginCoef2) {
@@ -254,11 +277,11 @@ public class PairTradingModelResidual extends PairTradingModel {
         if (olsr.stdDev<0.00000001 || olsr.A<0.1) return 0;
 		double zscoreAsk = getZScore(ZSCORE_ASK);
 		double zscoreBid = getZScore(ZSCORE_BID);
-		MultiSpread ms = new MultiSpread(olsr.A, olsr.B, mr1.getBid(), mr1.getAsk(), mr2.getBid(), mr2.getAsk());
+		Evaluation e = getEvaluation();
 
 		if (zscoreAsk<-exitThreshold) {
 			// this is long position
-			double spread = ms.getMinSpread();
+			double spread = e.lower;
 			double targetSpread = -exitThreshold*olsr.stdDev;
 			double delta=targetSpread - spread;
 
@@ -275,7 +298,7 @@ public class PairTradingModelResidual extends PairTradingModel {
 
 		} else if (zscoreBid>exitThreshold) {
 			// this is short position
-			double spread = ms.getMaxSpread();
+			double spread = e.upper;
 			double targetSpread = exitThreshold*olsr.stdDev;
 			double delta=targetSpread - spread;
 
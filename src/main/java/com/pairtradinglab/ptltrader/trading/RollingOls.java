@@ -0,0 +1,157 @@
+/**
+ * 	This file is part of PTL Trader.
+ *
+ * 	Copyright © 2011-2021 Quantverse OÜ. All Rights Reserved.
+ *
+ *  PTL Trader is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  PTL Trader is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with PTL Trader. If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.pairtradinglab.ptltrader.trading;
+
+import net.jcip.annotations.*;
+
+/**
+ * Ordinary least squares of price1 = A*price2 + B over a rolling window, kept in running sums so that adding
+ * a bar (and dropping the oldest one once the window is full) costs constant time. The sums are taken around
+ * a pair of the window to limit the cancellation of the centered moments: the first bar added, and the oldest
+ * bar of the window each time the window wraps around, when the sums are also computed again from the window
+ * so that the rounding errors of the updates do not pile up (O(period) once per period bars).
+ */
+@NotThreadSafe
+public class RollingOls {
+	private final int period;
+	private final double[] window1;
+	private final double[] window2;
+	private int pos = 0; // next slot to be written
+	private int count = 0;
+	
+	private double shift1 = 0;
+	private double shift2 = 0;
+	private double sum1 = 0;
+	private double sum2 = 0;
+	private double sum11 = 0;
+	private double sum22 = 0;
+	private double sum12 = 0;
+	
+	public RollingOls(int period) {
+		if (period<2) throw new IllegalArgumentException("OLS period must be at least 2");
+		this.period = period;
+		window1 = new double[period];
+		window2 = new double[period];
+	}
+	
+	public int getPeriod() {
+		return period;
+	}
+	
+	public int getCount() {
+		return count;
+	}
+	
+	public boolean isReady() {
+		return count==period;
+	}
+	
+	public void reset() {
+		pos = 0;
+		count = 0;
+		shift1 = shift2 = 0;
+		sum1 = sum2 = sum11 = sum22 = sum12 = 0;
+	}
+	
+	/**
+	 * Adds a bar, the oldest one leaves the window if it is full
+	 */
+	public void add(double price1, double price2) {
+		if (count==0) {
+			shift1 = price1;
+			shift2 = price2;
+		}
+		if (count==period) {
+			double o1 = window1[pos]-shift1;
+			double o2 = window2[pos]-shift2;
+			sum1 -= o1;
+			sum2 -= o2;
+			sum11 -= o1*o1;
+			sum22 -= o2*o2;
+			sum12 -= o1*o2;
+		} else count++;
+		window1[pos] = price1;
+		window2[pos] = price2;
+		pos = (pos+1)%period;
+		if (pos==0 && count==period) {
+			resync();
+			return;
+		}
+		double d1 = price1-shift1;
+		double d2 = price2-shift2;
+		sum1 += d1;
+		sum2 += d2;
+		sum11 += d1*d1;
+		sum22 += d2*d2;
+		sum12 += d1*d2;
+	}
+	
+	/**
+	 * Moves the shift to the oldest bar of the full window and computes the sums from the window again
+	 */
+	private void resync() {
+		shift1 = window1[pos];
+		shift2 = window2[pos];
+		sum1 = sum2 = sum11 = sum22 = sum12 = 0;
+		for (int i=0; i<period; i++) {
+			double d1 = window1[i]-shift1;
+			double d2 = window2[i]-shift2;
+			sum1 += d1;
+			sum2 += d2;
+			sum11 += d1*d1;
+			sum22 += d2*d2;
+			sum12 += d1*d2;
+		}
+	}
+	
+	/**
+	 * Adds all bars of the series up to (excluding) end
+	 */
+	public void addAll(double[] prices1, double[] prices2, int end) {
+		for (int i=Math.max(0, end-period); i<end; i++) add(prices1[i], prices2[i]);
+	}
+	
+	/**
+	 * @return regression of the current window (without the last spread)
+	 */
+	public OlsResult getResult() {
+		if (count<2) throw new IllegalStateException("OLS needs at least 2 values");
+		return solve(count, sum1, sum2, sum11, sum22, sum12, false, 0, 0);
+	}
+	
+	/**
+	 * @return regression of the current window with the spread of the given prices, typically the bar following the window
+	 */
+	public OlsResult getResult(double price1, double price2) {
+		if (count<2) throw new IllegalStateException("OLS needs at least 2 values");
+		return solve(count, sum1, sum2, sum11, sum22, sum12, true, price1, price2);
+	}
+	
+	private OlsResult solve(int n, double s1, double s2, double s11, double s22, double s12, boolean withSpread, double price1, double price2) {
+		double var2 = s22-s2*s2/n;
+		double cov = s12-s1*s2/n;
+		double var1 = s11-s1*s1/n;
+		double a = cov/var2;
+		double b = (s1-a*s2)/n+shift1-a*shift2;
+		double sqsum = var1-a*cov; // sum of squared residuals
+		double stdDev = Math.sqrt(Math.max(0, sqsum)/(double) n);
+		return new OlsResult(a, b, stdDev, withSpread ? price1-(a*price2+b) : 0);
+	}
+
+}
@@ -0,0 +1,46 @@
+/**
+ * 	This file is part of PTL Trader.
+ *
+ * 	Copyright © 2011-2021 Quantverse OÜ. All Rights Reserved.
+ *
+ *  PTL Trader is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  PTL Trader is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with PTL Trader. If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.pairtradinglab.ptltrader.trading;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Model able to persist its state built from the price series, see {@link ModelSnapshotStore}.
+ */
+interface SnapshotModel {
+
+    /**
+     * Writes the model state (the consumed price series itself is not included)
+     * @param out output
+     * @throws IOException on write failure
+     */
+    void writeSnapshot(DataOutput out) throws IOException;
+
+    /**
+     * Restores the model state written by writeSnapshot; on failure the model is left without prices
+     * @param in input
+     * @param prices1 price series of instrument 1 starting with the series the state was built from
+     * @param prices2 price series of instrument 2 starting with the series the state was built from
+     * @param count number of bars the state was built from
+     * @throws IOException on read failure or if the snapshot does not fit the model
+     */
+    void readSnapshot(DataInput in, double[] prices1, double[] prices2, int count) throws IOException;
+}
@@ -0,0 +1,295 @@
+/**
+ * 	This file is part of PTL Trader.
+ *
+ * 	Copyright © 2011-2021 Quantverse OÜ. All Rights Reserved.
+ *
+ *  PTL Trader is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  PTL Trader is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with PTL Trader. If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.pairtradinglab.ptltrader.trading;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import net.jcip.annotations.*;
+
+/**
+ * Market data subscriptions of one IB connection. A symbol is requested from IB once, while it has at least
+ * one subscriber; the subscribers of a symbol are kept as a bitset of interned subscriber ids.
+ * The request id to symbol id mapping (and back) is kept in immutable tables replaced on every change,
+ * so the IB API reader thread resolves the ticks without locking. The symbol ids are the TickRouter ones.
+ * While resubscribing, the requests expecting their first tick are tracked too (see MarketDataResubscriber).
+ */
+@ThreadSafe
+public class SubscriptionRegistry {
+	private final TickRouter tickRouter;
+	
+	private volatile IntTable reqToSymbol = IntTable.EMPTY; // written under this
+	private volatile IntTable symbolToReq = IntTable.EMPTY; // written under this
+	
+	@GuardedBy("this")
+	private final Map<String, Integer> subscriberIds = new HashMap<String, Integer>();
+	@GuardedBy("this")
+	private BitSet[] subscribers = new BitSet[64]; // by symbol id
+	
+	private final ConcurrentHashMap<Integer, Boolean> unacknowledged = new ConcurrentHashMap<Integer, Boolean>();
+	private volatile boolean trackingAcks = false;
+	
+	public SubscriptionRegistry(TickRouter tickRouter) {
+		super();
+		this.tickRouter = tickRouter;
+	}
+	
+	/**
+	 * Lock free, called for every tick
+	 * @return symbol id of the market data request or 0 if unknown
+	 */
+	public int getSymbolId(int reqId) {
+		return reqToSymbol.get(reqId);
+	}
+	
+	/**
+	 * Lock free
+	 * @return symbol of the market data request or null if unknown
+	 */
+	public String getSymbol(int reqId) {
+		int symbolId = reqToSymbol.get(reqId);
+		return symbolId==0 ? null : tickRouter.getSymbol(symbolId);
+	}
+	
+	/**
+	 * Called for every tick, lock free unless acknowledgements are tracked
+	 */
+	public void acknowledge(int reqId) {
+		if (trackingAcks) unacknowledged.remove(reqId);
+	}
+	
+	/**
+	 * Starts tracking the first tick of the request
+	 */
+	public void expectAck(int reqId) {
+		unacknowledged.put(reqId, Boolean.TRUE);
+		trackingAcks = true;
+	}
+	
+	public boolean isAcknowledged(int reqId) {
+		return !unacknowledged.containsKey(reqId);
+	}
+	
+	public void stopTrackingAcks() {
+		trackingAcks = false;
+		unacknowledged.clear();
+	}
+	
+	/**
+	 * Lock free
+	 * @return id of the market data request of the symbol or 0 if not subscribed
+	 */
+	public int getReqId(String symbol) {
+		return symbolToReq.get(tickRouter.getSymbolId(symbol));
+	}
+	
+	/**
+	 * Adds the subscriber of the symbol
+	 * @return id of the new market data request to send if it is the first subscriber, 0 otherwise
+	 */
+	public synchronized int subscribe(String symbol, String subscriberUid) {
+		int symbolId = tickRouter.getSymbolId(symbol);
+		if (symbolId>=subscribers.length) subscribers = Arrays.copyOf(subscribers, Math.max(2*subscribers.length, symbolId+1));
+		BitSet set = subscribers[symbolId];
+		if (set==null) {
+			set = new BitSet();
+			subscribers[symbolId] = set;
+		}
+		boolean first = set.isEmpty();
+		set.set(internSubscriber(subscriberUid));
+		if (!first) return 0;
+		
+		int reqId = MarketDataProvider.getNextReqId();
+		bind(reqId, symbolId);
+		return reqId;
+	}
+	
+	/**
+	 * Removes the subscriber of the symbol
+	 * @return id of the market data request to cancel if it was the last subscriber, 0 otherwise
+	 */
+	public synchronized int unsubscribe(String symbol, String subscriberUid) {
+		Integer subscriberId = subscriberIds.get(subscriberUid);
+		if (subscriberId==null) return 0; // unknown subscriber
+		int symbolId = tickRouter.getSymbolId(symbol);
+		BitSet set = symbolId<subscribers.length ? subscribers[symbolId] : null;
+		if (set==null || !set.get(subscriberId)) return 0; // no subscription
+		
+		set.clear(subscriberId);
+		if (!set.isEmpty()) return 0; // there are still subscribers
+		
+		int reqId = symbolToReq.get(symbolId);
+		if (reqId!=0) {
+			reqToSymbol = reqToSymbol.without(reqId);
+			symbolToReq = symbolToReq.without(symbolId);
+			unacknowledged.remove(reqId);
+		}
+		return reqId;
+	}
+	
+	/**
+	 * Assigns a new market data request id to the symbol of the request (to send the request again)
+	 * @return the new request id or 0 if the request is not bound anymore
+	 */
+	public synchronized int rebind(int reqId) {
+		int symbolId = reqToSymbol.get(reqId);
+		if (symbolId==0) return 0;
+		reqToSymbol = reqToSymbol.without(reqId);
+		unacknowledged.remove(reqId);
+		int newReqId = MarketDataProvider.getNextReqId();
+		bind(newReqId, symbolId);
+		return newReqId;
+	}
+	
+	/**
+	 * Assigns new market data request ids to all subscribed symbols (the old ones are forgotten)
+	 * @return the new request ids and their symbols
+	 */
+	public synchronized Map<Integer, String> resubscribeAll() {
+		reqToSymbol = IntTable.EMPTY;
+		symbolToReq = IntTable.EMPTY;
+		unacknowledged.clear();
+		Map<Integer, String> out = new LinkedHashMap<Integer, String>();
+		for (int symbolId=1; symbolId<subscribers.length; symbolId++) {
+			BitSet set = subscribers[symbolId];
+			if (set==null || set.isEmpty()) continue;
+			int reqId = MarketDataProvider.getNextReqId();
+			bind(reqId, symbolId);
+			out.put(reqId, tickRouter.getSymbol(symbolId));
+		}
+		return out;
+	}
+	
+	/**
+	 * Forgets all subscriptions
+	 */
+	public synchronized void clear() {
+		reqToSymbol = IntTable.EMPTY;
+		symbolToReq = IntTable.EMPTY;
+		Arrays.fill(subscribers, null);
+		stopTrackingAcks();
+	}
+	
+	public synchronized int getSubscriberCount(String symbol) {
+		int symbolId = tickRouter.getSymbolId(symbol);
+		BitSet set = symbolId<subscribers.length ? subscribers[symbolId] : null;
+		return set==null ? 0 : set.cardinality();
+	}
+	
+	@GuardedBy("this")
+	private void bind(int reqId, int symbolId) {
+		reqToSymbol = reqToSymbol.with(reqId, symbolId);
+		symbolToReq = symbolToReq.with(symbolId, reqId);
+	}
+	
+	@GuardedBy("this")
+	private int internSubscriber(String subscriberUid) {
+		Integer id = subscriberIds.get(subscriberUid);
+		if (id==null) {
+			id = subscriberIds.size();
+			subscriberIds.put(subscriberUid, id);
+		}
+		return id;
+	}
+	
+	/**
+	 * Open addressing table of positive int keys and values, copied on write
+	 */
+	@Immutable
+	static final class IntTable {
+		static final IntTable EMPTY = new IntTable(new int[2], new int[2], 0);
+		
+		private final int[] keys;
+		private final int[] values;
+		private final int size;
+		
+		private IntTable(int[] keys, int[] values, int size) {
+			this.keys = keys;
+			this.values = values;
+			this.size = size;
+		}
+		
+		/**
+		 * @return value of the key or 0 if not present
+		 */
+		int get(int key) {
+			int mask = keys.length-1;
+			for (int i=slot(key, mask); ; i=(i+1) & mask) {
+				int k = keys[i];
+				if (k==key) return values[i];
+				if (k==0) return 0;
+			}
+		}
+		
+		int size() {
+			return size;
+		}
+		
+		IntTable with(int key, int value) {
+			int[] ks = new int[size+1];
+			int[] vs = new int[size+1];
+			int n = copyExcept(key, ks, vs);
+			ks[n] = key;
+			vs[n] = value;
+			return build(ks, vs, n+1);
+		}
+		
+		IntTable without(int key) {
+			int[] ks = new int[size];
+			int[] vs = new int[size];
+			return build(ks, vs, copyExcept(key, ks, vs));
+		}
+		
+		private int copyExcept(int key, int[] ks, int[] vs) {
+			int n = 0;
+			for (int i=0; i<keys.length; i++) {
+				if (keys[i]!=0 && keys[i]!=key) {
+					ks[n] = keys[i];
+					vs[n++] = values[i];
+				}
+			}
+			return n;
+		}
+		
+		private static IntTable build(int[] ks, int[] vs, int n) {
+			int capacity = 2;
+			while (capacity<2*n) capacity <<= 1; // at most half full, so the probing always ends
+			int[] keys = new int[capacity];
+			int[] values = new int[capacity];
+			int mask = capacity-1;
+			for (int j=0; j<n; j++) {
+				int i = slot(ks[j], mask);
+				while (keys[i]!=0) i = (i+1) & mask;
+				keys[i] = ks[j];
+				values[i] = vs[j];
+			}
+			return new IntTable(keys, values, n);
+		}
+		
+		private static int slot(int key, int mask) {
+			int h = key*0x9E3779B9;
+			return (h ^ (h>>>16)) & mask;
+		}
+	}
+
+}
@@ -16,17 +16,9 @@
  *  You should have received a copy of the GNU General Public License
  *  along with PTL Trader. If not, see <https://www.gnu.org/licenses/>.
  */
-package com.pairtradinglab.ptltrader.trading.kernelfx;
+package com.pairtradinglab.ptltrader.trading;
 
-import net.jcip.annotations.Immutable;
-
-@Immutable
-class TransformedPrices {
-    final double p1;
-    final double p2;
-
-    TransformedPrices(double p1, double p2) {
-        this.p1 = p1;
-        this.p2 = p2;
-    }
+public interface TickListener {
+	// invoked on the IB API reader thread, implementations must not block
+	public void onTick(int symbolId, int field, double price, int canAutoExecute, long nanoTime);
 }
@@ -0,0 +1,213 @@
+/**
+ * 	This file is part of PTL Trader.
+ *
+ * 	Copyright © 2011-2021 Quantverse OÜ. All Rights Reserved.
+ *
+ *  PTL Trader is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  PTL Trader is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with PTL Trader. If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.pairtradinglab.ptltrader.trading;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import net.jcip.annotations.*;
+
+/**
+ * Preallocated single producer/single consumer ring of price ticks stored in primitive
+ * arrays. The producer is the IB API reader thread, the consumer is the core thread
+ * which is woken up by a single control message per burst of ticks (see markPending).
+ * When the ring is full, ticks are conflated into a small overflow table holding the
+ * latest tick of each symbol and field, so the latest price always survives a stall of
+ * the consumer. An overflowed tick is delivered once the ring is drained up to the point
+ * where it overflowed; a newer tick of the same symbol and field queued in the ring
+ * replaces it.
+ */
+@ThreadSafe
+public class TickRing {
+	private static final int OVERFLOW_SLOTS = 16;
+	
+	private final int capacity;
+	private final int mask;
+	private final int[] symbolIds;
+	private final int[] fields;
+	private final double[] prices;
+	private final int[] canAutoExecutes;
+	private final long[] nanoTimes;
+	
+	private final AtomicLong head = new AtomicLong(0); // next slot to be written
+	private final AtomicLong tail = new AtomicLong(0); // next slot to be read
+	private final AtomicBoolean pending = new AtomicBoolean(false);
+	private final AtomicLong conflated = new AtomicLong(0);
+	private final AtomicLong dropped = new AtomicLong(0);
+	
+	// overflow table, one entry per symbol and field
+	private final Object overflowLock = new Object();
+	@GuardedBy("overflowLock")
+	private final Overflow overflow = new Overflow();
+	private volatile boolean overflowPending = false;
+	// consumer's copy of the overflow table, delivered outside of the lock
+	private final Overflow overflowCopy = new Overflow();
+	
+	private static class Overflow {
+		final int[] symbolIds = new int[OVERFLOW_SLOTS];
+		final int[] fields = new int[OVERFLOW_SLOTS];
+		final double[] prices = new double[OVERFLOW_SLOTS];
+		final int[] canAutoExecutes = new int[OVERFLOW_SLOTS];
+		final long[] nanoTimes = new long[OVERFLOW_SLOTS];
+		final long[] positions = new long[OVERFLOW_SLOTS]; // ring head when the tick overflowed
+		int size = 0;
+		
+		private int indexOf(int symbolId, int field) {
+			for (int i=0; i<size; i++) {
+				if (symbolIds[i]==symbolId && fields[i]==field) return i;
+			}
+			return -1;
+		}
+		
+		boolean put(int symbolId, int field, double price, int canAutoExecute, long nanoTime, long position) {
+			int i = indexOf(symbolId, field);
+			if (i<0) {
+				if (size==OVERFLOW_SLOTS) return false;
+				i = size++;
+			}
+			set(i, symbolId, field, price, canAutoExecute, nanoTime, position);
+			return true;
+		}
+		
+		void remove(int symbolId, int field) {
+			int i = indexOf(symbolId, field);
+			if (i>=0) move(--size, i);
+		}
+		
+		// moves the entries which overflowed at or before the ring position to o
+		void takeUpTo(long position, Overflow o) {
+			o.size = 0;
+			int i = 0;
+			while (i<size) {
+				if (positions[i]<=position) {
+					o.set(o.size++, symbolIds[i], fields[i], prices[i], canAutoExecutes[i], nanoTimes[i], positions[i]);
+					move(--size, i);
+				} else i++;
+			}
+		}
+		
+		private void move(int from, int to) {
+			set(to, symbolIds[from], fields[from], prices[from], canAutoExecutes[from], nanoTimes[from], positions[from]);
+		}
+		
+		private void set(int i, int symbolId, int field, double price, int canAutoExecute, long nanoTime, long position) {
+			symbolIds[i] = symbolId;
+			fields[i] = field;
+			prices[i] = price;
+			canAutoExecutes[i] = canAutoExecute;
+			nanoTimes[i] = nanoTime;
+			positions[i] = position;
+		}
+	}
+	
+	public TickRing(int capacity) {
+		if (capacity<2 || Integer.bitCount(capacity)!=1) throw new IllegalArgumentException("capacity must be a power of two");
+		this.capacity = capacity;
+		mask = capacity-1;
+		symbolIds = new int[capacity];
+		fields = new int[capacity];
+		prices = new double[capacity];
+		canAutoExecutes = new int[capacity];
+		nanoTimes = new long[capacity];
+	}
+	
+	/**
+	 * Producer side
+	 * @return true if the tick was queued in the ring, false if it was conflated because the ring is full
+	 */
+	public boolean offer(int symbolId, int field, double price, int canAutoExecute, long nanoTime) {
+		long h = head.get();
+		if (h-tail.get()>=capacity) {
+			synchronized(overflowLock) {
+				if (overflow.put(symbolId, field, price, canAutoExecute, nanoTime, h)) conflated.incrementAndGet();
+				else dropped.incrementAndGet();
+				overflowPending = true;
+			}
+			return false;
+		}
+		if (overflowPending) {
+			// the tick queued below supersedes the overflowed one
+			synchronized(overflowLock) {
+				overflow.remove(symbolId, field);
+				overflowPending = overflow.size>0;
+			}
+		}
+		int i = (int) h & mask;
+		symbolIds[i] = symbolId;
+		fields[i] = field;
+		prices[i] = price;
+		canAutoExecutes[i] = canAutoExecute;
+		nanoTimes[i] = nanoTime;
+		head.set(h+1);
+		return true;
+	}
+	
+	// producer side, returns true if the consumer has to be woken up
+	public boolean markPending() {
+		return pending.compareAndSet(false, true);
+	}
+	
+	// consumer side
+	public int drainTo(TickListener listener) {
+		pending.set(false);
+		long t = tail.get();
+		long h = head.get();
+		for (long n=t; n<h; n++) {
+			int i = (int) n & mask;
+			int symbolId = symbolIds[i];
+			int field = fields[i];
+			double price = prices[i];
+			int canAutoExecute = canAutoExecutes[i];
+			long nanoTime = nanoTimes[i];
+			tail.lazySet(n+1); // release the slot before the (possibly slow) listener runs
+			listener.onTick(symbolId, field, price, canAutoExecute, nanoTime);
+		}
+		int drained = (int) (h-t);
+		if (overflowPending) {
+			// the ticks queued before the overflowed ones are drained now
+			synchronized(overflowLock) {
+				overflow.takeUpTo(h, overflowCopy);
+				overflowPending = overflow.size>0;
+			}
+			Overflow o = overflowCopy;
+			for (int i=0; i<o.size; i++) listener.onTick(o.symbolIds[i], o.fields[i], o.prices[i], o.canAutoExecutes[i], o.nanoTimes[i]);
+			drained += o.size;
+		}
+		return drained;
+	}
+	
+	public int size() {
+		return (int) (head.get()-tail.get());
+	}
+	
+	/**
+	 * @return number of ticks conflated in the overflow table because the ring was full
+	 */
+	public long getConflated() {
+		return conflated.get();
+	}
+	
+	/**
+	 * @return number of ticks lost because the overflow table was full too
+	 */
+	public long getDropped() {
+		return dropped.get();
+	}
+
+}
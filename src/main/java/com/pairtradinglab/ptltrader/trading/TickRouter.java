@@ -0,0 +1,163 @@
+/**
+ * 	This file is part of PTL Trader.
+ *
+ * 	Copyright © 2011-2021 Quantverse OÜ. All Rights Reserved.
+ *
+ *  PTL Trader is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  PTL Trader is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with PTL Trader. If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.pairtradinglab.ptltrader.trading;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.log4j.Logger;
+
+import net.jcip.annotations.*;
+
+/**
+ * Delivers price ticks directly to the listeners subscribed to the tick's symbol.
+ * Ticks are not posted to the event bus anymore, so every quote reaches just the few
+ * cores trading that symbol instead of being fanned out to all bus subscribers.
+ * Each symbol gets an integer id so that listeners can identify ticks without string
+ * comparisons; routing a tick does not allocate. Ticks can be routed by the symbol id
+ * too, which is a plain array lookup.
+ */
+@ThreadSafe
+public class TickRouter {
+	private static final TickListener[] NO_LISTENERS = new TickListener[0];
+	
+	private final ConcurrentHashMap<String, Route> routes = new ConcurrentHashMap<String, Route>();
+	private volatile Route[] routesById = new Route[64]; // written under routesLock
+	@GuardedBy("routesLock")
+	private int lastSymbolId = 0;
+	private final Object routesLock = new Object();
+	private final Logger l;
+	
+	public TickRouter(Logger l) {
+		super();
+		this.l = l;
+	}
+	
+	public int getSymbolId(String symbol) {
+		return getRoute(symbol).symbolId;
+	}
+	
+	/**
+	 * @return symbol of the id or null if unknown
+	 */
+	public String getSymbol(int symbolId) {
+		Route route = getRoute(symbolId);
+		return route==null ? null : route.symbol;
+	}
+	
+	public void subscribe(String symbol, TickListener listener) {
+		Route route = getRoute(symbol);
+		synchronized(route) {
+			TickListener[] current = route.listeners;
+			for (TickListener x: current) {
+				if (x==listener) return;
+			}
+			TickListener[] updated = new TickListener[current.length+1];
+			System.arraycopy(current, 0, updated, 0, current.length);
+			updated[current.length] = listener;
+			route.listeners = updated;
+		}
+	}
+	
+	public void unsubscribe(String symbol, TickListener listener) {
+		Route route = routes.get(symbol);
+		if (route==null) return;
+		synchronized(route) {
+			TickListener[] current = route.listeners;
+			for (int i=0; i<current.length; i++) {
+				if (current[i]==listener) {
+					TickListener[] updated = new TickListener[current.length-1];
+					System.arraycopy(current, 0, updated, 0, i);
+					System.arraycopy(current, i+1, updated, i, current.length-i-1);
+					route.listeners = updated;
+					return;
+				}
+			}
+		}
+	}
+	
+	public void route(String symbol, int field, double price, int canAutoExecute) {
+		Route route = routes.get(symbol);
+		if (route==null) return;
+		deliver(route, field, price, canAutoExecute);
+	}
+	
+	public void route(int symbolId, int field, double price, int canAutoExecute) {
+		Route route = getRoute(symbolId);
+		if (route==null) return;
+		deliver(route, field, price, canAutoExecute);
+	}
+	
+	private void deliver(Route route, int field, double price, int canAutoExecute) {
+		long nanoTime = System.nanoTime();
+		TickListener[] listeners = route.listeners;
+		for (int i=0; i<listeners.length; i++) {
+			try {
+				listeners[i].onTick(route.symbolId, field, price, canAutoExecute, nanoTime);
+			} catch (RuntimeException e) {
+				// a faulty listener must not break the IB API reader thread
+				l.error("tick listener failed for "+route.symbol, e);
+			}
+		}
+	}
+	
+	public int getListenerCount(String symbol) {
+		Route route = routes.get(symbol);
+		if (route==null) return 0;
+		return route.listeners.length;
+	}
+	
+	private Route getRoute(String symbol) {
+		Route route = routes.get(symbol);
+		if (route==null) {
+			synchronized(routesLock) {
+				route = routes.get(symbol);
+				if (route==null) {
+					route = new Route(++lastSymbolId, symbol);
+					Route[] byId = routesById;
+					if (route.symbolId>=byId.length) byId = Arrays.copyOf(byId, 2*byId.length);
+					byId[route.symbolId] = route;
+					routesById = byId; // publishes the route to the id lookups
+					routes.put(symbol, route);
+				}
+			}
+		}
+		return route;
+	}
+	
+	private Route getRoute(int symbolId) {
+		Route[] byId = routesById;
+		if (symbolId<=0 || symbolId>=byId.length) return null;
+		return byId[symbolId];
+	}
+	
+	@ThreadSafe
+	private static final class Route {
+		final int symbolId;
+		final String symbol;
+		@GuardedBy("this")
+		volatile TickListener[] listeners = NO_LISTENERS;
+		
+		Route(int symbolId, String symbol) {
+			this.symbolId = symbolId;
+			this.symbol = symbol;
+		}
+	}
+
+}
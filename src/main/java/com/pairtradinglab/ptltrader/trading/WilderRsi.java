@@ -0,0 +1,100 @@
+/**
+ * 	This file is part of PTL Trader.
+ *
+ * 	Copyright © 2011-2021 Quantverse OÜ. All Rights Reserved.
+ *
+ *  PTL Trader is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  PTL Trader is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with PTL Trader. If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.pairtradinglab.ptltrader.trading;
+
+import net.jcip.annotations.*;
+
+/**
+ * Wilder RSI of a series extended by one trailing value, with the same result as TA-Lib rsi over the window
+ * of the last lookback values plus the trailing one. The averages of the window are computed once per series
+ * (prime), so the RSI of every trailing value is a single smoothing step.
+ */
+@NotThreadSafe
+final class WilderRsi {
+	private int period = 0;
+	private double gain = 0;
+	private double loss = 0;
+	private double last = 0;
+	private boolean seeding = false; // no unstable period, the trailing value completes the initial averages
+	
+	/**
+	 * Computes the averages of the last lookback values
+	 * @param lookback TA-Lib rsiLookback (period plus the unstable period)
+	 */
+	void prime(double[] values, int count, int period, int lookback) {
+		if (period<2) throw new IllegalArgumentException("RSI period must be at least 2");
+		if (lookback<period || count<lookback) throw new IllegalArgumentException(String.format("RSI needs at least %d values", lookback));
+		this.period = period;
+		int start = count-lookback;
+		double prev = values[start];
+		double g = 0;
+		double l = 0;
+		seeding = lookback==period;
+		int seedEnd = seeding ? count-1 : start+period;
+		for (int i=start+1; i<=seedEnd; i++) {
+			double d = values[i]-prev;
+			prev = values[i];
+			if (d<0) l -= d; else g += d;
+		}
+		if (!seeding) {
+			l /= period;
+			g /= period;
+			for (int i=seedEnd+1; i<count; i++) {
+				double d = values[i]-prev;
+				prev = values[i];
+				l *= (period-1);
+				g *= (period-1);
+				if (d<0) l -= d; else g += d;
+				l /= period;
+				g /= period;
+			}
+		}
+		gain = g;
+		loss = l;
+		last = prev;
+	}
+	
+	boolean isPrimed() {
+		return period>0;
+	}
+	
+	void reset() {
+		period = 0;
+	}
+	
+	/**
+	 * @return RSI with the trailing value appended (the state is not changed)
+	 */
+	double valueWith(double trailing) {
+		double d = trailing-last;
+		double g = gain;
+		double l = loss;
+		if (!seeding) {
+			l *= (period-1);
+			g *= (period-1);
+		}
+		if (d<0) l -= d; else g += d;
+		l /= period;
+		g /= period;
+		double sum = g+l;
+		if (-0.00000001<sum && sum<0.00000001) return 0;
+		return 100.0*(g/sum);
+	}
+
+}
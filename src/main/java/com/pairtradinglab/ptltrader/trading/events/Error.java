@@ -23,6 +23,7 @@ public class Error {
 	public static final int ERRC_ORDER_HELD = 404; // for short orders
 	public static final int ERRC_ORDER_REJECTED = 201; // insufficient funds
 	public static final int ERRC_RECONNECT_DATA_LOST = 1101;
+	public static final int ERRC_ORDER_NOT_TRANSMITTED = -1; // not an IB code, order dropped by the gateway on reconnection
 	
 	public final String ibWrapperUid;
 	public final int id;
@@ -20,7 +20,9 @@ package com.pairtradinglab.ptltrader.trading.kernelfx;
 
 import net.jcip.annotations.NotThreadSafe;
 
-import java.util.ArrayList;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 
 @NotThreadSafe
 abstract class AbstractPerfTracker {
@@ -29,8 +31,8 @@ abstract class AbstractPerfTracker {
     boolean useTradeCount = true;
     double[] w;
     double[] buffer;
-    private int[] tradeCntBuffer;
-    final ArrayList<SimpleCell> tradeCntCells = new ArrayList<>();
+    private double[] tradeCntBuffer;
+    SumColumns tradeCnt; // closed trades of all strategies
 
     abstract void fillWeights();
     abstract int getUnstablePeriod();
@@ -42,19 +44,13 @@ abstract class AbstractPerfTracker {
     void setSize(int length) {
         w = new double[length];
         buffer = new double[length];
-        tradeCntBuffer = new int[length];
-
-        tradeCntCells.clear();
-        for(int i=0; i<length; ++i) {
-            tradeCntCells.add(i, new SimpleCell(period));
-        }
+        tradeCntBuffer = new double[length];
+        tradeCnt = new SumColumns(length, period);
     }
 
     void reset() {
-        for (int i=0; i<w.length; ++i) {
-            w[i] = 0;
-            tradeCntCells.get(i).reset();
-        }
+        for (int i=0; i<w.length; ++i) w[i] = 0;
+        tradeCnt.reset();
         prepare();
     }
 
@@ -65,7 +61,7 @@ abstract class AbstractPerfTracker {
     }
 
     boolean isReady() {
-        return tradeCntCells.size()>0 && tradeCntCells.get(0).isReady(); // we can use any cell here as long we have any (they are of same capacity)
+        return tradeCnt!=null && tradeCnt.width>0;
     }
 
     void prepare() {
@@ -76,9 +72,20 @@ abstract class AbstractPerfTracker {
     }
 
     void update() {
-        for(int i=0; i<w.length; ++i) {
-            tradeCntCells.get(i).add(tradeCntBuffer[i]);
-        }
+        tradeCnt.add(tradeCntBuffer);
+    }
+
+    void writeState(DataOutput out) throws IOException {
+        out.writeInt(w.length);
+        for (double a : w) out.writeDouble(a);
+        tradeCnt.writeState(out);
+    }
+
+    void readState(DataInput in) throws IOException {
+        if (in.readInt() != w.length) throw new IOException("tracker size mismatch");
+        for (int i=0; i<w.length; ++i) w[i] = in.readDouble();
+        tradeCnt.readState(in);
+        prepare();
     }
 
     void set(int ix, double dailyReturn, int closedTradeCnt) {
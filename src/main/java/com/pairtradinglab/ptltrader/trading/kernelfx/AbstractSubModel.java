@@ -20,6 +20,13 @@ package com.pairtradinglab.ptltrader.trading.kernelfx;
 
 import net.jcip.annotations.NotThreadSafe;
 
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
 @NotThreadSafe
 abstract class AbstractSubModel {
 
@@ -47,21 +54,51 @@ abstract class AbstractSubModel {
         return invTransformB + invTransformA / p;
     }
 
-    TransformedPrices applyTransformation(double p1, double p2) {
-        switch(transform) {
-            case 1:
-                return new TransformedPrices(invertPrice(p1), p2);
-            case 2:
-                return new TransformedPrices(p1, invertPrice(p2));
-            default:
-                return new TransformedPrices(p1, p2);
-        }
+    double transformP1(double p1) {
+        return (transform==1) ? invertPrice(p1) : p1;
+    }
+
+    double transformP2(double p2) {
+        return (transform==2) ? invertPrice(p2) : p2;
     }
 
     public void init() {
         pos = 0;
     }
 
+    /**
+     * Writes the settings the state depends on; override to add model specific ones.
+     */
+    void writeConfig(DataOutput out) throws IOException {
+        out.writeInt(invert);
+        out.writeInt(transform);
+        out.writeDouble(invTransformA);
+        out.writeDouble(invTransformB);
+    }
+
+    private byte[] getConfig() throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        writeConfig(new DataOutputStream(bos));
+        return bos.toByteArray();
+    }
+
+    void writeConfigBlock(DataOutput out) throws IOException {
+        byte[] cfg = getConfig();
+        out.writeInt(cfg.length);
+        out.write(cfg);
+    }
+
+    /**
+     * Reads the settings written by writeConfigBlock and fails unless they match the current ones.
+     */
+    void checkConfigBlock(DataInput in) throws IOException {
+        byte[] cfg = getConfig();
+        if (in.readInt() != cfg.length) throw new IOException("model configuration mismatch");
+        byte[] stored = new byte[cfg.length];
+        in.readFully(stored);
+        if (!Arrays.equals(cfg, stored)) throw new IOException("model configuration mismatch");
+    }
+
     public boolean getIsValid() {
         return true; // always; override this in other models
     }
@@ -0,0 +1,100 @@
+/**
+ * 	This file is part of PTL Trader.
+ *
+ * 	Copyright © 2011-2021 Quantverse OÜ. All Rights Reserved.
+ *
+ *  PTL Trader is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  PTL Trader is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with PTL Trader. If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.pairtradinglab.ptltrader.trading.kernelfx;
+
+import net.jcip.annotations.NotThreadSafe;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Ring buffers of equally long series kept side by side in one array (column x window), the columnar
+ * counterpart of MemoryCell. All columns get their next value at once, so the position and size
+ * are shared.
+ */
+@NotThreadSafe
+class ColumnRing {
+    final int width;
+    final int capacity;
+    final int imask;
+    protected int pos;
+    protected int size;
+    protected final double[] x;
+
+    ColumnRing(int width, short logCap) {
+        this.width = width;
+        capacity = 1 << logCap;
+        imask = capacity - 1;
+        x = new double[width*capacity];
+        pos = 0;
+        size = 0;
+    }
+
+    protected void rowAdded(double[] v) {
+        // nothing here
+    }
+
+    int add(double[] v) {
+        rowAdded(v);
+        // now insert the row at the end of every column
+        int slot = pos & imask;
+        for (int i=0; i<width; i++) x[i*capacity + slot] = v[i];
+        if (++pos<0) pos = 0; // we need to do this because it is signed integer
+        if (++size > capacity) size = capacity;
+        return size;
+    }
+
+    void reset() {
+        size = 0;
+        pos = 0;
+        Arrays.fill(x, 0d);
+    }
+
+    double last(int col) {
+        if (size>0) {
+            return x[col*capacity + ((pos-1) & imask)];
+        } else return 0;
+    }
+
+    void writeState(DataOutput out) throws IOException {
+        out.writeInt(width);
+        out.writeInt(capacity);
+        out.writeInt(pos);
+        out.writeInt(size);
+        // only the stored values, column by column, oldest first
+        for (int c=0; c<width; c++) {
+            for (int i=pos-size; i<pos; i++) out.writeDouble(x[c*capacity + (i & imask)]);
+        }
+    }
+
+    void readState(DataInput in) throws IOException {
+        if (in.readInt() != width || in.readInt() != capacity) throw new IOException("column ring shape mismatch");
+        int p = in.readInt();
+        int s = in.readInt();
+        if (p < 0 || s < 0 || s > capacity) throw new IOException("invalid column ring state");
+        reset();
+        pos = p;
+        size = s;
+        for (int c=0; c<width; c++) {
+            for (int i=pos-size; i<pos; i++) x[c*capacity + (i & imask)] = in.readDouble();
+        }
+    }
+}
@@ -0,0 +1,323 @@
+/**
+ * 	This file is part of PTL Trader.
+ *
+ * 	Copyright © 2011-2021 Quantverse OÜ. All Rights Reserved.
+ *
+ *  PTL Trader is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  PTL Trader is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with PTL Trader. If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.pairtradinglab.ptltrader.trading.kernelfx;
+
+import net.jcip.annotations.NotThreadSafe;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Bank of two-state Kalman filters sharing one observation stream. The state of all filters
+ * is kept in parallel arrays and updated in a single pass, which is much friendlier to the
+ * cache than a list of single filter objects. Per filter the arithmetic is the same as in the
+ * reference SubModelKalman of the tests, so the results are bit-identical with it.
+ * <p>
+ * Filters are independent of each other, so a block of observations can be replayed with the
+ * filters partitioned across a fork/join pool. The per-bar outputs are recorded and handed back
+ * bar by bar, which keeps whatever consumes them sequential and deterministic.
+ */
+@NotThreadSafe
+class KalmanBank {
+    private static final int INITIAL_CAPACITY = 64;
+    private static final int REPLAY_CHUNK = 32; // filters per fork/join leaf task
+
+    private int size = 0;
+    private boolean hasR = false;
+
+    private double[] delta = new double[INITIAL_CAPACITY]; // transition covariance
+    private double[] ve = new double[INITIAL_CAPACITY]; // observation covariance
+    private double[] vw = new double[INITIAL_CAPACITY]; // diagonal of Vw
+    private double[] beta0 = new double[INITIAL_CAPACITY];
+    private double[] beta1 = new double[INITIAL_CAPACITY];
+    private double[] p00 = new double[INITIAL_CAPACITY];
+    private double[] p01 = new double[INITIAL_CAPACITY];
+    private double[] p10 = new double[INITIAL_CAPACITY];
+    private double[] p11 = new double[INITIAL_CAPACITY];
+    private double[] sq = new double[INITIAL_CAPACITY];
+    private double[] uncompB0 = new double[INITIAL_CAPACITY];
+    private double[] uncompB1 = new double[INITIAL_CAPACITY];
+
+    // outputs recorded by replay(), indexed [bar * size + filter]
+    private double[] recSq, recB0, recB1, recScore;
+    private final double[] x1 = new double[1], y1 = new double[1];
+
+    /**
+     * Adds a filter in its initial state and returns its index.
+     */
+    int add(double delta, double ve) {
+        if (size == this.delta.length) grow();
+        int i = size++;
+        this.delta[i] = delta;
+        this.ve[i] = ve;
+        vw[i] = delta / (1 - delta);
+        return i;
+    }
+
+    /**
+     * Removes all filters.
+     */
+    void clear() {
+        int n = size;
+        size = 0;
+        hasR = false;
+        Arrays.fill(beta0, 0, n, 0);
+        Arrays.fill(beta1, 0, n, 0);
+        Arrays.fill(p00, 0, n, 0);
+        Arrays.fill(p01, 0, n, 0);
+        Arrays.fill(p10, 0, n, 0);
+        Arrays.fill(p11, 0, n, 0);
+        Arrays.fill(sq, 0, n, 0);
+        Arrays.fill(uncompB0, 0, n, 0);
+        Arrays.fill(uncompB1, 0, n, 0);
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean isReady() {
+        return hasR;
+    }
+
+    /**
+     * Updates all filters with one (already transformed) observation.
+     */
+    void update(double x, double y) {
+        x1[0] = x;
+        y1[0] = y;
+        run(x1, y1, 0, 1, 0, size, !hasR, false);
+        hasR = true;
+    }
+
+    /**
+     * Feeds count (already transformed) observations starting at xs[from]/ys[from] to all filters,
+     * filters being partitioned across the pool. The outputs after each bar are recorded and can be
+     * loaded with {@link #loadRecorded(int, double[])}.
+     */
+    void replay(double[] xs, double[] ys, int from, int count, ForkJoinPool pool) {
+        if (count <= 0) return;
+        int needed = count * size;
+        if (recSq == null || recSq.length < needed) {
+            recSq = new double[needed];
+            recB0 = new double[needed];
+            recB1 = new double[needed];
+            recScore = new double[needed];
+        }
+        pool.invoke(new ReplayTask(xs, ys, from, count, 0, size, !hasR));
+        hasR = true;
+    }
+
+    /**
+     * Makes the outputs recorded for the given bar of the last replay current and copies its
+     * z-scores to out. Bars must be loaded in order, the last one leaves the bank consistent.
+     */
+    void loadRecorded(int bar, double[] out) {
+        int offset = bar * size;
+        System.arraycopy(recSq, offset, sq, 0, size);
+        System.arraycopy(recB0, offset, uncompB0, 0, size);
+        System.arraycopy(recB1, offset, uncompB1, 0, size);
+        System.arraycopy(recScore, offset, out, 0, size);
+    }
+
+    private void run(double[] xs, double[] ys, int from, int count, int lo, int hi, boolean first, boolean record) {
+        for (int i = lo; i < hi; i++) {
+            double b0 = beta0[i], b1 = beta1[i];
+            double P00 = p00[i], P01 = p01[i], P10 = p10[i], P11 = p11[i];
+            double w = first ? 0 : vw[i]; // P is zero before the first observation, so is R
+            double q = 0, e = 0;
+            for (int t = 0; t < count; t++) {
+                double x = xs[from + t];
+                double y = ys[from + t];
+
+                // R = P + Vw
+                double r00 = P00 + w;
+                double r01 = P01;
+                double r10 = P10;
+                double r11 = P11 + w;
+                w = vw[i];
+
+                double yhat = x*b0 + b1;
+                if (record) {
+                    recB0[t * size + i] = b0;
+                    recB1[t * size + i] = b1;
+                }
+
+                double xr0 = x*r00 + r10;
+                double xr1 = x*r01 + r11;
+                q = (xr0*x + xr1) + ve[i];
+                e = yhat - y;
+                if (record) {
+                    double s = Math.sqrt(q);
+                    recSq[t * size + i] = s;
+                    recScore[t * size + i] = e / s;
+                }
+                if (t == count - 1) {
+                    uncompB0[i] = b0;
+                    uncompB1[i] = b1;
+                }
+
+                double k0 = (r00*x + r01) / q;
+                double k1 = (r10*x + r11) / q;
+
+                b0 = b0 + k0*(-e);
+                b1 = b1 + k1*(-e);
+                P00 = r00 - k0*xr0;
+                P01 = r01 - k0*xr1;
+                P10 = r10 - k1*xr0;
+                P11 = r11 - k1*xr1;
+            }
+            sq[i] = Math.sqrt(q);
+            beta0[i] = b0;
+            beta1[i] = b1;
+            p00[i] = P00;
+            p01[i] = P01;
+            p10[i] = P10;
+            p11[i] = P11;
+        }
+    }
+
+    /**
+     * Evaluates the z-score of an (already transformed) observation for all filters.
+     */
+    void evaluate(double x, double y, double[] out) {
+        final int n = size;
+        if (!hasR) {
+            Arrays.fill(out, 0, n, 0);
+            return;
+        }
+        for (int i = 0; i < n; i++) {
+            double yhat = x*uncompB0[i] + uncompB1[i];
+            out[i] = (yhat - y) / sq[i];
+        }
+    }
+
+    double getSq(int i) {
+        return sq[i];
+    }
+
+    double getUncompB0(int i) {
+        return uncompB0[i];
+    }
+
+    double getUncompB1(int i) {
+        return uncompB1[i];
+    }
+
+    double getBeta0(int i) {
+        return beta0[i];
+    }
+
+    double getBeta1(int i) {
+        return beta1[i];
+    }
+
+    double getDelta(int i) {
+        return delta[i];
+    }
+
+    double getVe(int i) {
+        return ve[i];
+    }
+
+    void writeState(DataOutput out) throws IOException {
+        out.writeInt(size);
+        out.writeBoolean(hasR);
+        for (int i = 0; i < size; i++) {
+            out.writeDouble(delta[i]);
+            out.writeDouble(ve[i]);
+            out.writeDouble(beta0[i]);
+            out.writeDouble(beta1[i]);
+            out.writeDouble(p00[i]);
+            out.writeDouble(p01[i]);
+            out.writeDouble(p10[i]);
+            out.writeDouble(p11[i]);
+            out.writeDouble(sq[i]);
+            out.writeDouble(uncompB0[i]);
+            out.writeDouble(uncompB1[i]);
+        }
+    }
+
+    /**
+     * Restores the filter states; the bank must hold the same filters (delta and Ve) as when written.
+     */
+    void readState(DataInput in) throws IOException {
+        if (in.readInt() != size) throw new IOException("filter count mismatch");
+        hasR = in.readBoolean();
+        for (int i = 0; i < size; i++) {
+            if (in.readDouble() != delta[i] || in.readDouble() != ve[i]) throw new IOException("filter parameters mismatch");
+            beta0[i] = in.readDouble();
+            beta1[i] = in.readDouble();
+            p00[i] = in.readDouble();
+            p01[i] = in.readDouble();
+            p10[i] = in.readDouble();
+            p11[i] = in.readDouble();
+            sq[i] = in.readDouble();
+            uncompB0[i] = in.readDouble();
+            uncompB1[i] = in.readDouble();
+        }
+    }
+
+    private final class ReplayTask extends RecursiveAction {
+        private final double[] xs, ys;
+        private final int from, count, lo, hi;
+        private final boolean first;
+
+        ReplayTask(double[] xs, double[] ys, int from, int count, int lo, int hi, boolean first) {
+            this.xs = xs;
+            this.ys = ys;
+            this.from = from;
+            this.count = count;
+            this.lo = lo;
+            this.hi = hi;
+            this.first = first;
+        }
+
+        @Override
+        protected void compute() {
+            if (hi - lo <= REPLAY_CHUNK) {
+                run(xs, ys, from, count, lo, hi, first, true);
+            } else {
+                int mid = (lo + hi) >>> 1;
+                invokeAll(new ReplayTask(xs, ys, from, count, lo, mid, first),
+                        new ReplayTask(xs, ys, from, count, mid, hi, first));
+            }
+        }
+    }
+
+    private void grow() {
+        int capacity = delta.length * 2;
+        delta = Arrays.copyOf(delta, capacity);
+        ve = Arrays.copyOf(ve, capacity);
+        vw = Arrays.copyOf(vw, capacity);
+        beta0 = Arrays.copyOf(beta0, capacity);
+        beta1 = Arrays.copyOf(beta1, capacity);
+        p00 = Arrays.copyOf(p00, capacity);
+        p01 = Arrays.copyOf(p01, capacity);
+        p10 = Arrays.copyOf(p10, capacity);
+        p11 = Arrays.copyOf(p11, capacity);
+        sq = Arrays.copyOf(sq, capacity);
+        uncompB0 = Arrays.copyOf(uncompB0, capacity);
+        uncompB1 = Arrays.copyOf(uncompB1, capacity);
+    }
+}
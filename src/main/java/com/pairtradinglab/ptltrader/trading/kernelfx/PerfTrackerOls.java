@@ -20,16 +20,20 @@ package com.pairtradinglab.ptltrader.trading.kernelfx;
 
 import net.jcip.annotations.NotThreadSafe;
 
-import java.util.ArrayList;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 
 @NotThreadSafe
 class PerfTrackerOls extends AbstractPerfTracker {
     double inhibitThreshold = 2; // in standard deviations (strategy is inactive if below)
     boolean enableKiller = false;
     boolean ignorePositiveDeviation = true;
+    boolean approximateSemiDeviation = false; // streaming semi-deviation, see OlsColumns
 
-    final private ArrayList<OlsCell> cells = new ArrayList<>();
+    private OlsColumns cells;
     private boolean[] aliveMask;
+    private double[] row;
 
     int getUnstablePeriod() {
         return (period < 20) ? period : 20;
@@ -41,53 +45,64 @@ class PerfTrackerOls extends AbstractPerfTracker {
         //printf("rwma resize %u\n", length);
         super.setSize(length);
         aliveMask = new boolean[length];
-        cells.clear();
-        for(int i=0; i<length; ++i) {
-            aliveMask[i] = true;
-            OlsCell c = new OlsCell(getUnstablePeriod(), period);
-            c.ignorePositiveDeviation = ignorePositiveDeviation;
-            cells.add(i, c);
-        }
+        for(int i=0; i<length; ++i) aliveMask[i] = true;
+        row = new double[length];
+        cells = new OlsColumns(length, getUnstablePeriod(), period);
+        cells.ignorePositiveDeviation = ignorePositiveDeviation;
+        cells.approximateSemiDeviation = approximateSemiDeviation;
     }
 
     @Override
     void reset() {
         super.reset();
-        for(int i=0; i<cells.size(); ++i) {
-            aliveMask[i] = true;
-            cells.get(i).reset();
-        }
+        for(int i=0; i<aliveMask.length; ++i) aliveMask[i] = true;
+        cells.reset();
     }
 
     @Override
     boolean isReady() {
-        return super.isReady() && cells.size()>0 && cells.get(0).isReady();
+        return super.isReady() && cells.isReady();
     }
 
     @Override
     void update() {
         super.update();
         for(int i=0; i<w.length; ++i) {
-            double x = cells.get(i).last() + Math.log(buffer[i]);
+            row[i] = cells.last(i) + Math.log(buffer[i]);
             //printf("update: %u using %f to %f (last %f)\n", i, buffer[i], x, cells[i]->getLast());
-            cells.get(i).add(x);
         }
+        cells.add(row);
+    }
+
+    @Override
+    void writeState(DataOutput out) throws IOException {
+        super.writeState(out);
+        for (boolean a : aliveMask) out.writeBoolean(a);
+        cells.writeState(out);
+    }
+
+    @Override
+    void readState(DataInput in) throws IOException {
+        super.readState(in);
+        for (int i=0; i<aliveMask.length; ++i) aliveMask[i] = in.readBoolean();
+        cells.readState(in);
     }
 
     void fillWeights() {
+        boolean ready = cells.isReady();
         for(int i=0; i<w.length; ++i) {
             if (!aliveMask[i]) {
                 //printf("%u strategy is dead\n", i);
                 w[i] = 0; // this strategy is dead
                 continue;
             }
-            if (cells.get(i).isReady()) {
-                double stddev = cells.get(i).getStdDev();
-                if (cells.get(i).getA()<0.00000001 || tradeCntCells.get(i).getSum()==0) {
+            if (ready) {
+                if (cells.getA(i)<0.00000001 || tradeCnt.getSum(i)==0) {
                     w[i] = 0; // cover case if slope is too low or even negative (avoid)
                 } else {
+                    double stddev = cells.getStdDev(i); // computed on demand, only needed here
                     //printf("experiment %u: last %f prediction %f pred-2sd %f\n", i, cells[i]->getLast(), cells[i]->predictNext(), cells[i]->predictNext()-2*stddev);
-                    if (inhibitThreshold>0 && cells.get(i).last() < cells.get(i).predictNext()-inhibitThreshold*stddev) {
+                    if (inhibitThreshold>0 && cells.last(i) < cells.predictNext(i)-inhibitThreshold*stddev) {
                         //printf("inhibited %u\n", i);
                         w[i] = 0; // inhibited
                         if (enableKiller) {
@@ -96,9 +111,9 @@ class PerfTrackerOls extends AbstractPerfTracker {
                         }
                     } else {
                         if (useTradeCount) {
-                            w[i] = Math.log(1 + tradeCntCells.get(i).getSum()) * cells.get(i).getA() / (1 + stddev);
+                            w[i] = Math.log(1 + tradeCnt.getSum(i)) * cells.getA(i) / (1 + stddev);
                         } else {
-                            w[i] = cells.get(i).getA() / (1 + stddev);
+                            w[i] = cells.getA(i) / (1 + stddev);
                         }
                     }
                 }
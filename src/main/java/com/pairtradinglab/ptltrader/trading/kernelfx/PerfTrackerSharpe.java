@@ -20,12 +20,15 @@ package com.pairtradinglab.ptltrader.trading.kernelfx;
 
 import net.jcip.annotations.NotThreadSafe;
 
-import java.util.ArrayList;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 
 @NotThreadSafe
 class PerfTrackerSharpe extends AbstractPerfTracker {
     boolean ignorePositiveDeviation = true;
-    final private ArrayList<SharpeCell> cells = new ArrayList<>();
+    private SharpeColumns cells;
+    private double[] row;
 
     int getUnstablePeriod() {
         return (period < 20) ? period : 20;
@@ -35,49 +38,59 @@ class PerfTrackerSharpe extends AbstractPerfTracker {
     void setSize(int length) {
         //printf("rwma resize %u\n", length);
         super.setSize(length);
-        cells.clear();
-        for(int i=0; i<length; ++i) {
-            SharpeCell sc = new SharpeCell(getUnstablePeriod(), period);
-            sc.ignorePositiveDeviation = ignorePositiveDeviation;
-            cells.add(i, sc);
-        }
+        row = new double[length];
+        cells = new SharpeColumns(length, getUnstablePeriod(), period);
+        cells.ignorePositiveDeviation = ignorePositiveDeviation;
     }
 
     @Override
     void reset() {
         super.reset();
         //printf("rwma reset, cell size %u\n", cells.size());
-        for (SharpeCell c : cells) c.reset();
+        cells.reset();
     }
 
     @Override
     boolean isReady() {
-        return super.isReady() && cells.size()>0 && cells.get(0).isReady();
+        return super.isReady() && cells.isReady();
     }
 
     @Override
     void update() {
         super.update();
         for(int i=0; i<w.length; ++i) {
-            double x = buffer[i]-1;
+            row[i] = buffer[i]-1;
             //printf("update: %u using %f to %f\n", i, buffer[i], x);
-            cells.get(i).add(x);
         }
+        cells.add(row);
+    }
+
+    @Override
+    void writeState(DataOutput out) throws IOException {
+        super.writeState(out);
+        cells.writeState(out);
+    }
+
+    @Override
+    void readState(DataInput in) throws IOException {
+        super.readState(in);
+        cells.readState(in);
     }
 
     void fillWeights() {
+        boolean ready = cells.isReady();
         for(int i=0; i<w.length; ++i) {
-            if (cells.get(i).isReady() && tradeCntCells.get(i).isReady()) {
+            if (ready) {
                 //printf("tcnt sum: %f\n", tradeCntCells[i]->getSum());
-                double stddev = cells.get(i).getStdDev();
+                double stddev = cells.getStdDev(i);
                 if (stddev<0.00000001) stddev = 0.00000001;
-                if (cells.get(i).getMean()<0 || tradeCntCells.get(i).getSum()==0) {
+                if (cells.getMean(i)<0 || tradeCnt.getSum(i)==0) {
                     w[i] = 0; // cover case if there is zero stdDev or negative mean or no trades
                 } else {
                     if (useTradeCount) {
-                        w[i] = Math.log(1 + tradeCntCells.get(i).getSum()) * cells.get(i).getMean() / stddev;
+                        w[i] = Math.log(1 + tradeCnt.getSum(i)) * cells.getMean(i) / stddev;
                     } else {
-                        w[i] = cells.get(i).getMean() / stddev;
+                        w[i] = cells.getMean(i) / stddev;
                     }
                 }
                 //printf("fill: %u to %f (mean=%f stddev=%.12f)\n", i, w[i], cells[i]->getMean(), stddev);
@@ -0,0 +1,268 @@
+/**
+ * 	This file is part of PTL Trader.
+ *
+ * 	Copyright © 2011-2021 Quantverse OÜ. All Rights Reserved.
+ *
+ *  PTL Trader is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  PTL Trader is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with PTL Trader. If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.pairtradinglab.ptltrader.trading.kernelfx;
+
+import net.jcip.annotations.NotThreadSafe;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Simulated positions of a strategy grid, at most one per strategy, kept in primitive arrays indexed by the
+ * strategy ID, without allocating anything per position or update. Each leg of a position is opened with half
+ * of the unit equity; the return of every update is the equity change including the fees.
+ */
+@NotThreadSafe
+class PositionTable {
+    static final int DIR_LONG = 0;
+    static final int DIR_SHORT = 1;
+    static final int INV_NONE = 0;
+    static final int INV_FIRST = 1;
+    static final int INV_SECOND = 2;
+    static final int PEC_GE = 0; // exit when the score gets to the target or above
+    static final int PEC_LE = 1; // exit when the score gets to the target or below
+
+    static final int ST_NONE = 0; // no position in the last update
+    static final int ST_OPEN = 1; // position stays open
+    static final int ST_CLOSED = 2; // position closed by the target score
+    static final int ST_TIMEOUT = 3; // position closed by the time stop
+
+    private int size = 0;
+    private boolean[] open = new boolean[0];
+    private int[] state = new int[0];
+    private double[] ret = new double[0];
+
+    private int[] poolId = new int[0];
+    private int[] modelId = new int[0];
+    private int[] direction = new int[0];
+    private int[] inversion = new int[0];
+    private long[] expires = new long[0];
+    private double[] targetScore = new double[0];
+    private int[] condition = new int[0];
+    private double[] fee = new double[0];
+    private double[] openP1 = new double[0];
+    private double[] openP2 = new double[0];
+    private double[] qty1 = new double[0];
+    private double[] qty2 = new double[0];
+    private int[] dir1 = new int[0];
+    private int[] dir2 = new int[0];
+    private double[] lastEquity = new double[0];
+
+    void setSize(int length) {
+        size = length;
+        open = new boolean[length];
+        state = new int[length];
+        ret = new double[length];
+        poolId = new int[length];
+        modelId = new int[length];
+        direction = new int[length];
+        inversion = new int[length];
+        expires = new long[length];
+        targetScore = new double[length];
+        condition = new int[length];
+        fee = new double[length];
+        openP1 = new double[length];
+        openP2 = new double[length];
+        qty1 = new double[length];
+        qty2 = new double[length];
+        dir1 = new int[length];
+        dir2 = new int[length];
+        lastEquity = new double[length];
+    }
+
+    int size() {
+        return size;
+    }
+
+    void clear() {
+        Arrays.fill(open, false);
+        Arrays.fill(state, ST_NONE);
+    }
+
+    boolean isOpen(int stratId) {
+        return open[stratId];
+    }
+
+    /**
+     * Result of the last update for the strategy, one of the ST_ constants.
+     */
+    int getState(int stratId) {
+        return state[stratId];
+    }
+
+    /**
+     * Return of the position in the last update (1 if there was none).
+     */
+    double getReturn(int stratId) {
+        return ret[stratId];
+    }
+
+    int getModelId(int stratId) {
+        return modelId[stratId];
+    }
+
+    int getDirection(int stratId) {
+        return direction[stratId];
+    }
+
+    int getDir1(int stratId) {
+        return dir1[stratId];
+    }
+
+    int getDir2(int stratId) {
+        return dir2[stratId];
+    }
+
+    long getExpires(int stratId) {
+        return expires[stratId];
+    }
+
+    double getTargetScore(int stratId) {
+        return targetScore[stratId];
+    }
+
+    int getCondition(int stratId) {
+        return condition[stratId];
+    }
+
+    void open(int poolId, int stratId, int modelId, int direction, int inversion, long expires, double targetScore, int condition, double fee, double openP1, double openP2) {
+        this.poolId[stratId] = poolId;
+        this.modelId[stratId] = modelId;
+        this.direction[stratId] = direction;
+        this.inversion[stratId] = inversion;
+        this.expires[stratId] = expires;
+        this.targetScore[stratId] = targetScore;
+        this.condition[stratId] = condition;
+        this.fee[stratId] = fee;
+        this.openP1[stratId] = openP1;
+        this.openP2[stratId] = openP2;
+        qty1[stratId] = 0.5 / openP1;
+        qty2[stratId] = 0.5 / openP2;
+        dir1[stratId] = firstLegDirection(direction, inversion);
+        dir2[stratId] = secondLegDirection(direction, inversion);
+        lastEquity[stratId] = 1;
+        open[stratId] = true;
+    }
+
+    private static int firstLegDirection(int direction, int inversion) {
+        if (direction == DIR_LONG) {
+            return inversion == INV_FIRST ? DIR_SHORT : DIR_LONG; // first leg inverted
+        } else {
+            return inversion == INV_FIRST ? DIR_LONG : DIR_SHORT; // first leg inverted
+        }
+    }
+
+    private static int secondLegDirection(int direction, int inversion) {
+        if (direction == DIR_LONG) {
+            return inversion == INV_SECOND ? DIR_LONG : DIR_SHORT; // second leg inverted
+        } else {
+            return inversion == INV_SECOND ? DIR_SHORT : DIR_LONG; // second leg inverted
+        }
+    }
+
+    /**
+     * Updates all open positions at the given prices and the scores of their models, closing the ones reaching
+     * the target score or the time stop. See getState and getReturn for the outcome.
+     */
+    void update(double p1, double p2, double[] scores, long timestamp) {
+        for (int i=0; i<size; i++) {
+            if (!open[i]) {
+                state[i] = ST_NONE;
+                ret[i] = 1;
+                continue;
+            }
+            double nav = 0;
+            if (dir1[i] == DIR_LONG) {
+                nav += qty1[i]*(p1-openP1[i]);
+            } else {
+                nav += qty1[i]*(openP1[i]-p1);
+            }
+            if (dir2[i] == DIR_LONG) {
+                nav += qty2[i]*(p2-openP2[i]);
+            } else {
+                nav += qty2[i]*(openP2[i]-p2);
+            }
+
+            double score = scores[modelId[i]];
+            int st = ST_OPEN;
+            if (timestamp>expires[i]) {
+                st = ST_TIMEOUT;
+            } else if ((condition[i] == PEC_LE && score <= targetScore[i]) || (condition[i] == PEC_GE && score >= targetScore[i])) {
+                st = ST_CLOSED;
+            }
+            if (st != ST_OPEN) {
+                open[i] = false;
+                nav -= fee[i];
+            }
+
+            ret[i] = (1 + nav - fee[i]) / lastEquity[i];
+            lastEquity[i] = 1 + nav - fee[i];
+            state[i] = st;
+        }
+    }
+
+    void writeState(DataOutput out) throws IOException {
+        int cnt = 0;
+        for (int i=0; i<size; i++) if (open[i]) cnt++;
+        out.writeInt(cnt);
+        for (int i=0; i<size; i++) {
+            if (!open[i]) continue;
+            out.writeInt(poolId[i]);
+            out.writeInt(i);
+            out.writeInt(modelId[i]);
+            out.writeInt(direction[i]);
+            out.writeInt(inversion[i]);
+            out.writeLong(expires[i]);
+            out.writeDouble(targetScore[i]);
+            out.writeInt(condition[i]);
+            out.writeDouble(fee[i]);
+            out.writeDouble(openP1[i]);
+            out.writeDouble(openP2[i]);
+            out.writeDouble(lastEquity[i]);
+        }
+    }
+
+    /**
+     * Restores the positions written by writeState; models are checked against modelCount.
+     */
+    void readState(DataInput in, int modelCount) throws IOException {
+        clear();
+        int cnt = in.readInt();
+        if (cnt < 0 || cnt > size) throw new IOException("invalid position count");
+        for (int k=0; k<cnt; k++) {
+            int pool = in.readInt();
+            int sid = in.readInt();
+            int mid = in.readInt();
+            int dir = in.readInt();
+            int inv = in.readInt();
+            long exp = in.readLong();
+            double target = in.readDouble();
+            int cond = in.readInt();
+            double f = in.readDouble();
+            double op1 = in.readDouble();
+            double op2 = in.readDouble();
+            double equity = in.readDouble();
+            if (sid < 0 || sid >= size || mid < 0 || mid >= modelCount || open[sid]) throw new IOException("invalid position");
+            open(pool, sid, mid, dir, inv, exp, target, cond, f, op1, op2);
+            lastEquity[sid] = equity;
+        }
+    }
+}
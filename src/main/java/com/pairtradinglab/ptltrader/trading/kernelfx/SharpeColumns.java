@@ -0,0 +1,265 @@
+/**
+ * 	This file is part of PTL Trader.
+ *
+ * 	Copyright © 2011-2021 Quantverse OÜ. All Rights Reserved.
+ *
+ *  PTL Trader is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  PTL Trader is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with PTL Trader. If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.pairtradinglab.ptltrader.trading.kernelfx;
+
+import net.jcip.annotations.NotThreadSafe;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Rolling mean and (semi-)deviation of every column, the columnar counterpart of SharpeCell.
+ * The window of every column is also kept in a treap (randomized search tree) with the count, sum and
+ * sum of squares of each subtree, so the sums of the values below the mean are found in O(log period)
+ * and a window slide costs one removal and one insertion of O(log period). The subtree sums are
+ * recalculated from the children on every change, so they don't drift. The tree is ordered by Double.compare,
+ * a total order placing NaN above all values, so a NaN return can be removed again (it turns the mean and the
+ * deviation into NaN while in the window, as in the window pass).
+ */
+@NotThreadSafe
+class SharpeColumns extends ColumnRing {
+    final int unstablePeriod;
+    final int cutOffPeriod;
+    boolean ignorePositiveDeviation = true;
+    private final double[] sum, mean, stdDev;
+
+    // treap nodes, column x cutOffPeriod, -1 is no node
+    private final double[] key, keySum, keySqSum;
+    private final int[] left, right, count, priority;
+    private final int[] root;
+    private int treeSize = 0; // nodes per column
+    private int seed = 1;
+    private int splitLow, splitHigh, erased; // results of split() and erase()
+
+    SharpeColumns(int width, int unstablePeriod, int cutOffPeriod) {
+        super(width, (short) Math.ceil(Math.log(cutOffPeriod)/Math.log(2)));
+        this.unstablePeriod = unstablePeriod;
+        this.cutOffPeriod = cutOffPeriod;
+        sum = new double[width];
+        mean = new double[width];
+        stdDev = new double[width];
+        key = new double[width*cutOffPeriod];
+        keySum = new double[width*cutOffPeriod];
+        keySqSum = new double[width*cutOffPeriod];
+        left = new int[width*cutOffPeriod];
+        right = new int[width*cutOffPeriod];
+        count = new int[width*cutOffPeriod];
+        priority = new int[width*cutOffPeriod];
+        root = new int[width];
+        Arrays.fill(root, -1);
+    }
+
+    double getStdDev(int col) {
+        return stdDev[col];
+    }
+
+    double getMean(int col) {
+        return mean[col];
+    }
+
+    boolean isReady() {
+        return size >= unstablePeriod;
+    }
+
+    @Override
+    void reset() {
+        super.reset();
+        Arrays.fill(sum, 0d);
+        Arrays.fill(mean, 0d);
+        Arrays.fill(stdDev, 0d);
+        Arrays.fill(root, -1);
+        treeSize = 0;
+        seed = 1;
+    }
+
+    @Override
+    void writeState(DataOutput out) throws IOException {
+        super.writeState(out);
+        for (int i=0; i<width; i++) {
+            out.writeDouble(sum[i]);
+            out.writeDouble(mean[i]);
+            out.writeDouble(stdDev[i]);
+        }
+    }
+
+    @Override
+    void readState(DataInput in) throws IOException {
+        super.readState(in);
+        int n = Math.min(size, cutOffPeriod);
+        Arrays.fill(root, -1);
+        seed = 1;
+        for (int i=0; i<width; i++) {
+            sum[i] = in.readDouble();
+            mean[i] = in.readDouble();
+            stdDev[i] = in.readDouble();
+            int base = i*cutOffPeriod;
+            for (int k=0; k<n; k++) root[i] = insert(root[i], node(base+k, x[i*capacity + ((pos-n+k) & imask)]));
+        }
+        treeSize = n;
+    }
+
+    @Override
+    protected void rowAdded(double[] v) {
+        int effperiod = size+1;
+        if (effperiod>cutOffPeriod) effperiod = cutOffPeriod;
+        boolean full = size>=cutOffPeriod;
+        int slot = (pos-cutOffPeriod) & imask;
+        for (int i=0; i<width; i++) {
+            sum[i] += v[i];
+            int n;
+            if (full) {
+                root[i] = erase(root[i], x[i*capacity + slot]);
+                n = erased; // reused for the new value
+            } else n = i*cutOffPeriod + treeSize;
+            root[i] = insert(root[i], node(n, v[i]));
+        }
+        if (!full) treeSize++;
+
+        if (effperiod<unstablePeriod) return;
+
+        if (full) {
+            for (int i=0; i<width; i++) sum[i] -= x[i*capacity + slot];
+        }
+
+        for (int i=0; i<width; i++) {
+            double m = sum[i] / (double) effperiod;
+            mean[i] = m;
+            // count, sum and sum of squares of the values below the mean (of all of them)
+            double n = 0, s = 0, sq = 0;
+            int t = root[i];
+            if (!ignorePositiveDeviation) {
+                n = count[t];
+                s = keySum[t];
+                sq = keySqSum[t];
+            } else {
+                while (t>=0) {
+                    if (key[t]<m) {
+                        int l = left[t];
+                        if (l>=0) {
+                            n += count[l];
+                            s += keySum[l];
+                            sq += keySqSum[l];
+                        }
+                        n += 1;
+                        s += key[t];
+                        sq += key[t]*key[t];
+                        t = right[t];
+                    } else t = left[t];
+                }
+            }
+            double sqsum = n>0 ? sq - 2*m*s + m*m*n : 0; // nothing below a NaN mean
+            stdDev[i] = Math.sqrt(Math.max(0, sqsum)/(double) effperiod);
+        }
+    }
+
+    private int node(int n, double v) {
+        seed ^= seed << 13; // xorshift
+        seed ^= seed >>> 17;
+        seed ^= seed << 5;
+        key[n] = v;
+        priority[n] = seed;
+        left[n] = -1;
+        right[n] = -1;
+        update(n);
+        return n;
+    }
+
+    private void update(int t) {
+        int l = left[t], r = right[t];
+        double k = key[t];
+        int c = 1;
+        double s = k, sq = k*k;
+        if (l>=0) {
+            c += count[l];
+            s += keySum[l];
+            sq += keySqSum[l];
+        }
+        if (r>=0) {
+            c += count[r];
+            s += keySum[r];
+            sq += keySqSum[r];
+        }
+        count[t] = c;
+        keySum[t] = s;
+        keySqSum[t] = sq;
+    }
+
+    private int insert(int t, int n) {
+        if (t<0) return n;
+        if (priority[n]>priority[t]) {
+            split(t, key[n]);
+            left[n] = splitLow;
+            right[n] = splitHigh;
+            update(n);
+            return n;
+        }
+        if (Double.compare(key[n], key[t])<0) left[t] = insert(left[t], n); else right[t] = insert(right[t], n);
+        update(t);
+        return t;
+    }
+
+    /**
+     * Splits the subtree into the values below v (splitLow) and the rest (splitHigh)
+     */
+    private void split(int t, double v) {
+        if (t<0) {
+            splitLow = -1;
+            splitHigh = -1;
+        } else if (Double.compare(key[t], v)<0) {
+            split(right[t], v);
+            right[t] = splitLow;
+            update(t);
+            splitLow = t;
+        } else {
+            split(left[t], v);
+            left[t] = splitHigh;
+            update(t);
+            splitHigh = t;
+        }
+    }
+
+    private int merge(int a, int b) {
+        if (a<0) return b;
+        if (b<0) return a;
+        if (priority[a]>priority[b]) {
+            right[a] = merge(right[a], b);
+            update(a);
+            return a;
+        }
+        left[b] = merge(a, left[b]);
+        update(b);
+        return b;
+    }
+
+    /**
+     * Removes a node with value v (which must be there), the node is left in erased
+     */
+    private int erase(int t, double v) {
+        int c = Double.compare(v, key[t]);
+        if (c==0) {
+            erased = t;
+            return merge(left[t], right[t]);
+        }
+        if (c<0) left[t] = erase(left[t], v); else right[t] = erase(right[t], v);
+        update(t);
+        return t;
+    }
+}
@@ -48,22 +48,14 @@ public class SimpleStrategy {
     }
 
 
-    PairPosition getNewPosition(int sig, int poolId, int stratId, double p1, double p2, long timestamp, double fee) {
-        int dir;
-        int pec;
-        double targetScore;
-
+    /**
+     * Opens the position for the signal in the table (none for SIGNONE).
+     */
+    void openPosition(PositionTable positions, int sig, int poolId, int stratId, double p1, double p2, long timestamp, double fee) {
         if (sig == SIGLONG) {
-            dir = PairPosition.DIR_LONG;
-            pec = PairPosition.PEC_GE;
-            targetScore = -exitThreshold;
+            positions.open(poolId, stratId, modelId, PositionTable.DIR_LONG, invert, timestamp + timeStop*86400, -exitThreshold, PositionTable.PEC_GE, fee, p1, p2);
         } else if (sig == SIGSHORT) {
-            dir = PairPosition.DIR_SHORT;
-            pec = PairPosition.PEC_LE;
-            targetScore = exitThreshold;
-        } else return null;
-        long expires = timestamp + timeStop*86400;
-
-        return new PairPosition(poolId, stratId, modelId, dir, invert, expires, targetScore, pec, fee, p1, p2);
+            positions.open(poolId, stratId, modelId, PositionTable.DIR_SHORT, invert, timestamp + timeStop*86400, exitThreshold, PositionTable.PEC_LE, fee, p1, p2);
+        }
     }
 }
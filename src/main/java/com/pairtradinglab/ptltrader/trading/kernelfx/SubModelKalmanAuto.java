@@ -18,11 +18,10 @@
  */
 package com.pairtradinglab.ptltrader.trading.kernelfx;
 
-import org.ejml.simple.SimpleMatrix;
-
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.util.ArrayList;
-import java.util.LinkedList;
-import java.util.ListIterator;
 
 public class SubModelKalmanAuto extends AbstractSubModel {
     // for transition covariance Delta
@@ -42,15 +41,14 @@ public class SubModelKalmanAuto extends AbstractSubModel {
     double trackerShapeSigma = 1.5;
 
     final private ArrayList<SimpleStrategy> strategies = new ArrayList<>();
-    final private ArrayList<SubModelKalman> kalmans = new ArrayList<>();
-    final private LinkedList<PairPosition> positions = new LinkedList<>();
+    final private KalmanBank kalmans = new KalmanBank();
+    final private PositionTable positions = new PositionTable();
     final private UsageTracker tracker = new UsageTracker();
-    private boolean[] strategiesInPosition;
     private double[] scores;
     final private ArrayList<Double> modelLogDeltas = new ArrayList<>();
 
     private long timestamp = 0;
-    private final SimpleMatrix beta = new SimpleMatrix(1, 2);
+    private double beta0, beta1; // hedge ratio and intercept of the model in use
     private double sq; // stddev coming from Kalman calculations
     private boolean isValid = false;
     private int rdycnt = 0;
@@ -60,7 +58,7 @@ public class SubModelKalmanAuto extends AbstractSubModel {
     private int lockedModelId = -1;
 
     public double getAlpha() {
-        return beta.get(0, 1);
+        return beta1;
     }
 
     public double getSq() {
@@ -77,9 +75,9 @@ public class SubModelKalmanAuto extends AbstractSubModel {
 
     private void refreshStats() {
         if (lockedModelId>=0) {
-            sq = kalmans.get(lockedModelId).getSq();
-            beta.set(0, 0, kalmans.get(lockedModelId).getUncompB0());
-            beta.set(0, 1, kalmans.get(lockedModelId).getUncompB1());
+            sq = kalmans.getSq(lockedModelId);
+            beta0 = kalmans.getUncompB0(lockedModelId);
+            beta1 = kalmans.getUncompB1(lockedModelId);
             isValid = true;
             currentDelta = modelLogDeltas.get(lockedModelId);
             currentDeltaTarget = currentDelta;
@@ -109,9 +107,9 @@ public class SubModelKalmanAuto extends AbstractSubModel {
 
                 if (modid>=0) {
                     //printf("model selected %d log delta %f\n", modid, modelLogDeltas[modid]);
-                    sq = kalmans.get(modid).getSq();
-                    beta.set(0, 0, kalmans.get(modid).getUncompB0());
-                    beta.set(0, 1, kalmans.get(modid).getUncompB1());
+                    sq = kalmans.getSq(modid);
+                    beta0 = kalmans.getUncompB0(modid);
+                    beta1 = kalmans.getUncompB1(modid);
                     isValid = true;
                     currentDelta = modelLogDeltas.get(modid);
                     modelIdUsed = modid;
@@ -126,7 +124,8 @@ public class SubModelKalmanAuto extends AbstractSubModel {
                 modelIdUsed = -1;
             }
             sq = 0;
-            beta.zero();
+            beta0 = 0;
+            beta1 = 0;
             currentDelta = 0;
             currentDeltaTarget = 0;
             isValid = false;
@@ -157,20 +156,18 @@ public class SubModelKalmanAuto extends AbstractSubModel {
 
     public double evaluate(double p1, double p2) {
         if (!isValid) return 0;
-        TransformedPrices tp = applyTransformation(p1, p2);
-        double yhat = tp.p1*beta.get(0, 0) + beta.get(0, 1);
+        double yhat = transformP1(p1)*beta0 + beta1;
 
-        double spread = yhat - tp.p2;
+        double spread = yhat - transformP2(p2);
         //printf("evaluate: p1 %f x1 %f p2 %f x2 %f yhat %f e %f spread %f sq %f ret %f\n", p1, x1, p2, x2, yhat, e, spread, sq, spread/sq);
         return spread/sq;
     }
 
     double getSpread(double p1, double p2) {
         if (!isValid) return 0;
-        TransformedPrices tp = applyTransformation(p1, p2);
-        double yhat = tp.p1*beta.get(0, 0) + beta.get(0, 1);
+        double yhat = transformP1(p1)*beta0 + beta1;
 
-        return yhat - tp.p2;
+        return yhat - transformP2(p2);
     }
 
     @Override
@@ -178,8 +175,7 @@ public class SubModelKalmanAuto extends AbstractSubModel {
         super.init();
         kalmans.clear();
         strategies.clear();
-        positions.clear();
-        strategiesInPosition = new boolean[0];
+        positions.setSize(0);
         scores = new double[0];
         timestamp = 0;
         isValid = false;
@@ -190,20 +186,9 @@ public class SubModelKalmanAuto extends AbstractSubModel {
         double step = (1.0 + kalmanDeltaEnd - kalmanDeltaStart)/(double) kalmanDeltaGridSize;
         for (double i=kalmanDeltaStart; i<=kalmanDeltaEnd; i+=step) {
             //printf("step %f i %f delta %f\n", step, i, pow(10, i));
-            SubModelKalman m = new SubModelKalman();
-            m.Ve = kalmanVe;
-            m.delta = Math.pow(10, i);
-            //printf("ve %.16f delta %.16f\n", m->Ve, m->delta);
-            m.transform = transform;
-            m.invert = invert;
-            m.invTransformA = invTransformA;
-            m.invTransformB = invTransformB;
-            m.init();
-            kalmans.add(m);
+            int modelId = kalmans.add(Math.pow(10, i), kalmanVe);
             modelLogDeltas.add(i);
 
-            int modelId = kalmans.size()-1;
-
             SimpleStrategy pts = new SimpleStrategy(modelId);
             pts.entryThreshold = 1; // always 1
             pts.exitThreshold = 0; // always 0
@@ -220,10 +205,73 @@ public class SubModelKalmanAuto extends AbstractSubModel {
         tracker.setSize(strategies.size());
         tracker.reset();
 
-        strategiesInPosition = new boolean[strategies.size()];
+        positions.setSize(strategies.size());
         scores = new double[strategies.size()];
     }
 
+    @Override
+    void writeConfig(DataOutput out) throws IOException {
+        super.writeConfig(out);
+        out.writeDouble(kalmanDeltaStart);
+        out.writeDouble(kalmanDeltaEnd);
+        out.writeInt(kalmanDeltaGridSize);
+        out.writeDouble(kalmanVe);
+        out.writeBoolean(allowLong);
+        out.writeBoolean(allowShort);
+        out.writeInt(maxDays);
+        out.writeInt(trackingCutOffPeriod);
+        out.writeInt(unstablePeriod);
+        out.writeDouble(usageTarget);
+        out.writeDouble(trackerShapeSigma);
+    }
+
+    /**
+     * Writes the complete state (filters, tracker, simulated positions, lock and counters) for readState.
+     */
+    public void writeState(DataOutput out) throws IOException {
+        writeConfigBlock(out);
+        out.writeInt(pos);
+        out.writeLong(timestamp);
+        out.writeInt(rdycnt);
+        out.writeBoolean(isValid);
+        out.writeDouble(beta0);
+        out.writeDouble(beta1);
+        out.writeDouble(sq);
+        out.writeDouble(currentDelta);
+        out.writeDouble(currentDeltaTarget);
+        out.writeInt(modelIdUsed);
+        out.writeInt(lockedModelId);
+        kalmans.writeState(out);
+        out.writeInt(positions.size());
+        positions.writeState(out);
+        tracker.writeState(out);
+    }
+
+    /**
+     * Restores the state written by writeState. The model must be set up the same way and initialized;
+     * if this fails, the model must be initialized again.
+     */
+    public void readState(DataInput in) throws IOException {
+        checkConfigBlock(in);
+        positions.clear();
+        pos = in.readInt();
+        timestamp = in.readLong();
+        rdycnt = in.readInt();
+        isValid = in.readBoolean();
+        beta0 = in.readDouble();
+        beta1 = in.readDouble();
+        sq = in.readDouble();
+        currentDelta = in.readDouble();
+        currentDeltaTarget = in.readDouble();
+        modelIdUsed = in.readInt();
+        lockedModelId = in.readInt();
+        if (modelIdUsed >= kalmans.size() || lockedModelId >= kalmans.size()) throw new IOException("invalid sub model id");
+        kalmans.readState(in);
+        if (in.readInt() != positions.size()) throw new IOException("strategy count mismatch");
+        positions.readState(in, kalmans.size());
+        tracker.readState(in);
+    }
+
     public int getLookback() {
         return unstablePeriod + tracker.getUnstablePeriod();
     }
@@ -240,17 +288,15 @@ public class SubModelKalmanAuto extends AbstractSubModel {
 
     @Override
     public double getBeta() {
-        return beta.get(0, 0);
+        return beta0;
     }
 
     public boolean update(double p1, double p2) {
         // we need to update all models until they are all ready
-        boolean allrdy = true;
-        for(SubModelKalman m : kalmans) {
-            boolean rdy = m.update(p1, p2);
-            allrdy = allrdy && rdy;
-        }
-        if (!allrdy) {
+        double x = transformP1(p1);
+        double y = transformP2(p2);
+        kalmans.update(x, y);
+        if (!kalmans.isReady()) {
             // not all models are ready
             pos++;
             timestamp += 86400;
@@ -269,28 +315,17 @@ public class SubModelKalmanAuto extends AbstractSubModel {
 
         // all models are ready and unstable period is passed!
         // calculate all scores
-        for (int i=0; i<kalmans.size(); i++) {
-            scores[i] = kalmans.get(i).evaluate(p1, p2);
-        }
+        kalmans.evaluate(x, y, scores);
 
         // start process strategies
         tracker.prepare();
 
         // here we go
-        // let's iterate all positions and mark strategies which terminated position in profit/loss
-        ListIterator<PairPosition> it = positions.listIterator();
-        while(it.hasNext()) {
-            PairPosition p = it.next();
-            PairPositionState pstate =  p.update(p1, p2, scores[p.modelId], timestamp); // we need to use original prices here
-            int sid = p.stratId;
-            //System.out.printf("pos %d sid %d\n", pos, sid);
-            if (!pstate.active) {
-                // no longer active: delete this position and mark the strategy inactive!
-                //printf("closing position: strat %u reason %u\n", p->stratId, pres);
-                strategiesInPosition[sid] = false;
-                it.remove();
-                //System.out.printf("pos %d REMOVED sid %d score %f reason %d\n", pos, sid, scores[p.modelId], pstate.exitReason);
-            }
+        // let's update all positions and mark strategies which terminated position in profit/loss
+        positions.update(p1, p2, scores, timestamp); // we need to use original prices here
+        for (int sid=0; sid<positions.size(); sid++) {
+            if (positions.getState(sid) == PositionTable.ST_NONE) continue;
+            //System.out.printf("pos %d sid %d state %d\n", pos, sid, positions.getState(sid));
             tracker.markUsage(sid, true); // mark strategy usage
         }
 
@@ -300,17 +335,15 @@ public class SubModelKalmanAuto extends AbstractSubModel {
 
         // now execute all strategies and create new positions (but only for strategies marked inactive)
         for (int i=0; i<strategies.size(); i++) {
-            if (strategiesInPosition[i]) continue; // skip active strategies
+            if (positions.isOpen(i)) continue; // skip active strategies
             //auto& s = poolStrategies[poolId][i];
             SimpleStrategy s = strategies.get(i);
             int sig = s.entryLogic(scores[s.modelId]);
             if (sig != SimpleStrategy.SIGNONE) {
                 // model and strategy signals to open a position
                 //printf("opening position: strat %u sig %u\n", i, sig);
-                PairPosition position = s.getNewPosition(sig, 0, i, p1, p2, timestamp, 0); // we need to use original prices here; no fee!
-                positions.add(position);
+                s.openPosition(positions, sig, 0, i, p1, p2, timestamp, 0); // we need to use original prices here; no fee!
                 //printf("new position opened sid %u model %u dir1 %u dir2 %u: p1 %f p2 %f\n", pos->stratId, pos->modelId, pos->getDir1(), pos->getDir2(), p1, p2);
-                strategiesInPosition[i] = true; // marked active!
                 //System.out.printf("pos %d ADDED sid %d for score %f\n", pos, i, scores[s.modelId]);
 
             }
@@ -18,15 +18,16 @@
  */
 package com.pairtradinglab.ptltrader.trading.kernelfx;
 
-import org.ejml.simple.SimpleMatrix;
-
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.util.ArrayList;
-import java.util.LinkedList;
-import java.util.ListIterator;
+import java.util.concurrent.ForkJoinPool;
 
 public class SubModelKalmanGrid extends AbstractSubModel {
     public static final int TRACKER_OLS = 0;
     public static final int TRACKER_SHARPE = 1;
+    private static final int REPLAY_BLOCK = 64; // bars replayed through the filter bank at once
 
     // for transition covariance Delta
     private double kalmanDeltaStart = -13;
@@ -43,29 +44,29 @@ public class SubModelKalmanGrid extends AbstractSubModel {
     private int maxDays = 20;
     private int trackingCutOffPeriod = 240;
     private boolean trackingUseTradeCount = false;
+    private boolean trackingApproximate = false; // streaming semi-deviation in the OLS tracker
     private int trackingMode = TRACKER_OLS;
     private int unstablePeriod = 20; // unstable period for kalman filters
 
     private final ArrayList<SimpleStrategy> strategies = new ArrayList<>();
-    private final ArrayList<SubModelKalman> kalmans = new ArrayList<>();
-    private final LinkedList<PairPosition> positions = new LinkedList<>();
+    private final KalmanBank kalmans = new KalmanBank();
+    private final PositionTable positions = new PositionTable();
     private AbstractPerfTracker tracker;
-    private boolean[] strategiesInPosition;
     private double[] scores;
 
     private long timestamp = 0;
-    private SimpleMatrix beta = new SimpleMatrix(1, 2);
+    private double beta0, beta1; // merged hedge ratio and intercept
     private double e, sq; // spread and stddev coming from Kalman calculations
     private boolean isValid = false;
     private int rdycnt = 0;
 
     public double getAlpha() {
-        return beta.get(0, 1);
+        return beta1;
     }
 
     @Override
     public double getBeta() {
-        return beta.get(0, 0);
+        return beta0;
     }
 
     double getE() {
@@ -81,8 +82,7 @@ public class SubModelKalmanGrid extends AbstractSubModel {
         super.init();
         kalmans.clear();
         strategies.clear();
-        positions.clear();
-        strategiesInPosition = new boolean[0];
+        positions.setSize(0);
         scores = new double[0];
         timestamp = 0;
         isValid = false;
@@ -94,18 +94,7 @@ public class SubModelKalmanGrid extends AbstractSubModel {
             double veStep = (1.0 + kalmanVeEnd - kalmanVeStart)/(double) kalmanVeGridSize;
             for (double ve=kalmanVeStart; ve<=kalmanVeEnd; ve+=veStep) {
                 //printf("step %f i %f delta %f vexp %f ve %f\n", step, i, pow(10, i), ve, pow(10, ve));
-                SubModelKalman m = new SubModelKalman();
-                m.Ve = Math.pow(10, ve);
-                m.delta = Math.pow(10, i);
-                //printf("ve %.16f delta %.16f\n", m->Ve, m->delta);
-                m.transform = transform;
-                m.invert = invert;
-                m.invTransformA = invTransformA;
-                m.invTransformB = invTransformB;
-                m.init();
-                kalmans.add(m);
-
-                int modelId = kalmans.size()-1;
+                int modelId = kalmans.add(Math.pow(10, i), Math.pow(10, ve));
                 SimpleStrategy pts = new SimpleStrategy(modelId);
                 pts.entryThreshold = 1; // always 1
                 if (allowLong && allowShort) pts.exitThreshold = -1; // always -1 if both directions enabled
@@ -123,6 +112,7 @@ public class SubModelKalmanGrid extends AbstractSubModel {
             PerfTrackerOls pp = new PerfTrackerOls();
             pp.inhibitThreshold = 0;
             pp.enableKiller = false;
+            pp.approximateSemiDeviation = trackingApproximate;
             tracker = pp;
         } else {
             // sharpe
@@ -133,7 +123,7 @@ public class SubModelKalmanGrid extends AbstractSubModel {
         tracker.setSize(strategies.size());
         tracker.reset();
 
-        strategiesInPosition = new boolean[strategies.size()];
+        positions.setSize(strategies.size());
         scores = new double[strategies.size()];
 
     }
@@ -153,12 +143,42 @@ public class SubModelKalmanGrid extends AbstractSubModel {
 
     public boolean update(double p1, double p2) {
         // we need to update all models until they are all ready
-        boolean allrdy = true;
-        for(SubModelKalman m : kalmans) {
-            boolean rdy = m.update(p1, p2);
-            allrdy = allrdy && rdy;
+        double x = transformP1(p1);
+        double y = transformP2(p2);
+        kalmans.update(x, y);
+        kalmans.evaluate(x, y, scores);
+        return step(p1, p2, x, y);
+    }
+
+    /**
+     * Feeds bars from (inclusive) to to (exclusive) as consecutive update calls would. With a pool
+     * the filters are replayed in blocks of bars across the pool, strategies and the tracker still
+     * advance bar by bar, so the result is identical to the sequential replay.
+     */
+    public void replay(double[] prices1, double[] prices2, int from, int to, ForkJoinPool pool) {
+        if (pool == null) {
+            for (int i=from; i<to; i++) update(prices1[i], prices2[i]);
+            return;
+        }
+        double[] xs = new double[REPLAY_BLOCK];
+        double[] ys = new double[REPLAY_BLOCK];
+        for (int b=from; b<to; b+=REPLAY_BLOCK) {
+            int n = Math.min(REPLAY_BLOCK, to-b);
+            for (int t=0; t<n; t++) {
+                xs[t] = transformP1(prices1[b+t]);
+                ys[t] = transformP2(prices2[b+t]);
+            }
+            kalmans.replay(xs, ys, 0, n, pool);
+            for (int t=0; t<n; t++) {
+                kalmans.loadRecorded(t, scores);
+                step(prices1[b+t], prices2[b+t], xs[t], ys[t]);
+            }
         }
-        if (!allrdy) {
+    }
+
+    // everything after the filter update; scores must already hold the filter z-scores
+    private boolean step(double p1, double p2, double x, double y) {
+        if (!kalmans.isReady()) {
             // not all models are ready
             pos++;
             timestamp += 86400;
@@ -176,34 +196,20 @@ public class SubModelKalmanGrid extends AbstractSubModel {
         //printf("unstable period passed %u rdycnt %u\n", pos, rdycnt);
 
         // all models are ready and unstable period is passed!
-        // calculate all scores
-        for (int i=0; i<kalmans.size(); i++) {
-            scores[i] = kalmans.get(i).evaluate(p1, p2); // use original prices here, models apply the transformation themselves
-        }
-
         // start process strategies
         tracker.prepare();
 
         // here we go
-        // let's iterate all positions and mark strategies which terminated position in profit/loss
-        ListIterator<PairPosition> it = positions.listIterator();
-        while(it.hasNext()) {
-            PairPosition p = it.next();
-            PairPositionState pstate =  p.update(p1, p2, scores[p.modelId], timestamp); // we need to use original prices here
-            int sid = p.stratId;
-            int closed = 0;
-
+        // let's update all positions and mark strategies which terminated position in profit/loss
+        positions.update(p1, p2, scores, timestamp); // we need to use original prices here
+        for (int sid=0; sid<positions.size(); ++sid) {
+            int pstate = positions.getState(sid);
+            if (pstate == PositionTable.ST_NONE) continue;
             //printf("rewarding/penalizing return %f of strat %u\n", ret, sid);
-            if (!pstate.active) {
-                // no longer active: delete this position and mark the strategy inactive!
-                //printf("closing position: strat %u reason %u\n", p->stratId, pres);
-                strategiesInPosition[sid] = false;
-                closed = (pstate.exitReason == PairPositionState.PREA_CLOSED) ? 1:0;
-                it.remove();
-            }
+            int closed = (pstate == PositionTable.ST_CLOSED) ? 1:0;
 
             // set the return
-            tracker.set(sid, pstate.ret, closed);
+            tracker.set(sid, positions.getReturn(sid), closed);
         }
         // update perf tracker, wait for rdy
         tracker.update();
@@ -211,18 +217,15 @@ public class SubModelKalmanGrid extends AbstractSubModel {
 
         // now execute all strategies and create new positions (but only for strategies marked inactive)
         for (int i=0; i<strategies.size(); ++i) {
-            if (strategiesInPosition[i]) continue; // skip active strategies
+            if (positions.isOpen(i)) continue; // skip active strategies
             //auto& s = poolStrategies[poolId][i];
             SimpleStrategy s = strategies.get(i);
             int sig = s.entryLogic(scores[s.modelId]);
             if (sig != SimpleStrategy.SIGNONE) {
                 // model and strategy signals to open a position
                 //printf("opening position: strat %u sig %u\n", i, sig);
-                PairPosition pos = s.getNewPosition(sig, 0, i, p1, p2, timestamp, 0); // we need to use original prices here; no fee!
-                positions.add(pos);
+                s.openPosition(positions, sig, 0, i, p1, p2, timestamp, 0); // we need to use original prices here; no fee!
                 //printf("new position opened sid %u model %u dir1 %u dir2 %u: p1 %f p2 %f\n", pos->stratId, pos->modelId, pos->getDir1(), pos->getDir2(), p1, p2);
-                strategiesInPosition[i] = true; // marked active!
-
             }
         }
 
@@ -242,25 +245,24 @@ public class SubModelKalmanGrid extends AbstractSubModel {
             for(int i=0; i<strategies.size(); ++i) {
                 double w = tracker.getWeight(i);
                 //printf("strat %u weight %f\n", i, w);
-                tsq += kalmans.get(strategies.get(i).modelId).getSq() * w;
-                b0 += kalmans.get(strategies.get(i).modelId).getUncompB0() * w;
-                b1 += kalmans.get(strategies.get(i).modelId).getUncompB1() * w;
+                int modelId = strategies.get(i).modelId;
+                tsq += kalmans.getSq(modelId) * w;
+                b0 += kalmans.getUncompB0(modelId) * w;
+                b1 += kalmans.getUncompB1(modelId) * w;
             }
 
             sq = tsq / wsum;
-            beta.set(0, 0, b0 / wsum);
-            beta.set(0, 1, b1 / wsum);
-
-            TransformedPrices tp = applyTransformation(p1, p2);
+            beta0 = b0 / wsum;
+            beta1 = b1 / wsum;
 
-            double yhat = tp.p1*beta.get(0, 0) + beta.get(0, 1);
-            e = yhat - tp.p2;
+            double yhat = x*beta0 + beta1;
+            e = yhat - y;
             isValid = true;
         } else {
             // there is nothing
             sq = 0;
-            beta.set(0, 0, 0);
-            beta.set(0, 1, 0);
+            beta0 = 0;
+            beta1 = 0;
             e = 0;
             isValid = false;
         }
@@ -277,20 +279,77 @@ public class SubModelKalmanGrid extends AbstractSubModel {
 
     public double evaluate(double p1, double p2) {
         if (!isValid) return 0;
-        TransformedPrices tp = applyTransformation(p1, p2);
-        double yhat = tp.p1*beta.get(0, 0) + beta.get(0, 1);
+        double yhat = transformP1(p1)*beta0 + beta1;
 
-        double spread = yhat - tp.p2;
+        double spread = yhat - transformP2(p2);
         //printf("evaluate: p1 %f x1 %f p2 %f x2 %f yhat %f e %f spread %f sq %f ret %f\n", p1, x1, p2, x2, yhat, e, spread, sq, spread/sq);
         return spread/sq;
     }
 
     double getSpread(double p1, double p2) {
         if (!isValid) return 0;
-        TransformedPrices tp = applyTransformation(p1, p2);
-        double yhat = tp.p1*beta.get(0, 0) + beta.get(0, 1);
+        double yhat = transformP1(p1)*beta0 + beta1;
 
-        return yhat - tp.p2;
+        return yhat - transformP2(p2);
+    }
+
+    @Override
+    void writeConfig(DataOutput out) throws IOException {
+        super.writeConfig(out);
+        out.writeDouble(kalmanDeltaStart);
+        out.writeDouble(kalmanDeltaEnd);
+        out.writeInt(kalmanDeltaGridSize);
+        out.writeDouble(kalmanVeStart);
+        out.writeDouble(kalmanVeEnd);
+        out.writeInt(kalmanVeGridSize);
+        out.writeBoolean(allowLong);
+        out.writeBoolean(allowShort);
+        out.writeInt(maxDays);
+        out.writeInt(trackingCutOffPeriod);
+        out.writeBoolean(trackingUseTradeCount);
+        out.writeBoolean(trackingApproximate);
+        out.writeInt(trackingMode);
+        out.writeInt(unstablePeriod);
+    }
+
+    /**
+     * Writes the complete state (filters, tracker, simulated positions and counters) for readState.
+     */
+    public void writeState(DataOutput out) throws IOException {
+        writeConfigBlock(out);
+        out.writeInt(pos);
+        out.writeLong(timestamp);
+        out.writeInt(rdycnt);
+        out.writeBoolean(isValid);
+        out.writeDouble(beta0);
+        out.writeDouble(beta1);
+        out.writeDouble(e);
+        out.writeDouble(sq);
+        kalmans.writeState(out);
+        out.writeInt(positions.size());
+        positions.writeState(out);
+        tracker.writeState(out);
+    }
+
+    /**
+     * Restores the state written by writeState. The model must be set up the same way and initialized;
+     * if this fails, the model must be initialized again.
+     */
+    public void readState(DataInput in) throws IOException {
+        checkConfigBlock(in);
+        positions.clear();
+        pos = in.readInt();
+        timestamp = in.readLong();
+        rdycnt = in.readInt();
+        isValid = in.readBoolean();
+        beta0 = in.readDouble();
+        beta1 = in.readDouble();
+        e = in.readDouble();
+        sq = in.readDouble();
+        kalmans.readState(in);
+        if (in.readInt() != positions.size()) throw new IOException("strategy count mismatch");
+        positions.readState(in, kalmans.size());
+        tracker.readState(in);
     }
 
     public double getKalmanDeltaStart() {
@@ -381,6 +440,14 @@ public class SubModelKalmanGrid extends AbstractSubModel {
         this.trackingUseTradeCount = trackingUseTradeCount;
     }
 
+    public boolean isTrackingApproximate() {
+        return trackingApproximate;
+    }
+
+    public void setTrackingApproximate(boolean trackingApproximate) {
+        this.trackingApproximate = trackingApproximate;
+    }
+
     public int getTrackingMode() {
         return trackingMode;
     }
@@ -0,0 +1,78 @@
+/**
+ * 	This file is part of PTL Trader.
+ *
+ * 	Copyright © 2011-2021 Quantverse OÜ. All Rights Reserved.
+ *
+ *  PTL Trader is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  PTL Trader is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with PTL Trader. If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.pairtradinglab.ptltrader.trading.kernelfx;
+
+import net.jcip.annotations.NotThreadSafe;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Rolling sums of the columns, the columnar counterpart of SimpleCell.
+ */
+@NotThreadSafe
+class SumColumns extends ColumnRing {
+    final int period;
+    private final double[] sum;
+
+    SumColumns(int width, int period) {
+        super(width, (short) Math.ceil(Math.log(period)/Math.log(2)));
+        this.period = period;
+        sum = new double[width];
+    }
+
+    @Override
+    void reset() {
+        super.reset();
+        Arrays.fill(sum, 0d);
+    }
+
+    @Override
+    protected void rowAdded(double[] v) {
+        for (int i=0; i<width; i++) sum[i] += v[i];
+        if (size+1<period) return;
+
+        if (size>=period) {
+            int slot = (pos-period) & imask;
+            for (int i=0; i<width; i++) sum[i] -= x[i*capacity + slot];
+        }
+    }
+
+    double getSum(int col) {
+        return sum[col];
+    }
+
+    int getEffectiveSize() {
+        return size>period ? period:size;
+    }
+
+    @Override
+    void writeState(DataOutput out) throws IOException {
+        super.writeState(out);
+        for (double s : sum) out.writeDouble(s);
+    }
+
+    @Override
+    void readState(DataInput in) throws IOException {
+        super.readState(in);
+        for (int i=0; i<width; i++) sum[i] = in.readDouble();
+    }
+}
@@ -20,7 +20,9 @@ package com.pairtradinglab.ptltrader.trading.kernelfx;
 
 import net.jcip.annotations.NotThreadSafe;
 
-import java.util.ArrayList;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 
 @NotThreadSafe
 class UsageTracker {
@@ -28,8 +30,8 @@ class UsageTracker {
     double target = 50;
     double shapeSigma = 3;
     private double[] w;
-    private int[] buffer;
-    private final ArrayList<SimpleCell> cells = new ArrayList<>();
+    private double[] buffer;
+    private SumColumns cells;
 
 
     private double shape(double x) {
@@ -42,20 +44,13 @@ class UsageTracker {
 
     void setSize(int length) {
         w = new double[length];
-        buffer = new int[length];
-        cells.clear();
-        for (int i=0; i<length; ++i) {
-            SimpleCell c = new SimpleCell(period);
-            cells.add(i, c);
-        }
-
+        buffer = new double[length];
+        cells = new SumColumns(length, period);
     }
 
     void reset() {
-        for (int i=0; i<w.length; ++i) {
-            w[i] = 0;
-            cells.get(i).reset();
-        }
+        for (int i=0; i<w.length; ++i) w[i] = 0;
+        cells.reset();
         prepare();
     }
 
@@ -66,7 +61,7 @@ class UsageTracker {
     }
 
     boolean isReady() {
-        return cells.size()>0 && cells.get(0).isReady() && cells.get(0).getEffectiveSize()>=2;
+        return cells!=null && cells.width>0 && cells.getEffectiveSize()>=2;
     }
 
     void prepare() {
@@ -74,23 +69,35 @@ class UsageTracker {
     }
 
     void update() {
-        for(int i=0; i<w.length; ++i) {
-            cells.get(i).add(buffer[i]);
-        }
+        cells.add(buffer);
     }
 
     void markUsage(int ix, boolean used) {
         buffer[ix] = used ? 1:0;
     }
 
+    void writeState(DataOutput out) throws IOException {
+        out.writeInt(w.length);
+        for (double a : w) out.writeDouble(a);
+        cells.writeState(out);
+    }
+
+    void readState(DataInput in) throws IOException {
+        if (in.readInt() != w.length) throw new IOException("tracker size mismatch");
+        for (int i=0; i<w.length; ++i) w[i] = in.readDouble();
+        cells.readState(in);
+        prepare();
+    }
+
     int getUnstablePeriod() {
         return (period < 2) ? period : 2;
     }
 
     void fillWeights() {
+        int n = cells.getEffectiveSize();
         for(int i=0; i<w.length; ++i) {
-            if (cells.get(i).isReady() && cells.get(i).getEffectiveSize()>0) {
-                double usage = 100 * cells.get(i).getSum() / cells.get(i).getEffectiveSize();
+            if (n>0) {
+                double usage = 100 * cells.getSum(i) / n;
                 w[i] = shape(usage);
                 //printf("fill: %u to %f (sum=%f size=%u usage=%f)\n", i, w[i], cells[i]->getSum(), cells[i]->getEffectiveSize(), usage);
             } else {
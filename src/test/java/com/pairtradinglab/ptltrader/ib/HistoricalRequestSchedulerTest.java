@@ -0,0 +1,123 @@
+/**
+ * 	This file is part of PTL Trader.
+ *
+ * 	Copyright © 2011-2021 Quantverse OÜ. All Rights Reserved.
+ *
+ *  PTL Trader is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  PTL Trader is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with PTL Trader. If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.pairtradinglab.ptltrader.ib;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.pairtradinglab.ptltrader.trading.ContractExt;
+
+public class HistoricalRequestSchedulerTest {
+	private long now;
+	private HistoricalRequestScheduler scheduler;
+
+	@Before
+	public void setUp() throws Exception {
+		now = 1000;
+		scheduler = new HistoricalRequestScheduler() {
+			@Override
+			long nanoTime() {
+				return now;
+			}
+		};
+	}
+	
+	private HistoricalDataRequest createRequest(int reqid, String symbol, String duration, int priority) {
+		return new HistoricalDataRequest(reqid, ContractExt.createFromGoogleSymbol(symbol, false), "20130110-00:00:00", duration, "1 day", priority);
+	}
+	
+	@Test
+	public void testPriority() throws Exception {
+		scheduler.submit(createRequest(1, "NYSE:A", "1 Y", HistoricalDataRequest.PRIORITY_REFRESH));
+		scheduler.submit(createRequest(2, "NYSE:B", "1 Y", HistoricalDataRequest.PRIORITY_WAITING));
+		scheduler.submit(createRequest(3, "NYSE:C", "1 Y", HistoricalDataRequest.PRIORITY_REFRESH));
+		assertEquals(3, scheduler.getQueueDepth());
+		
+		// back-to-back, the waiting strategy first
+		assertEquals(2, scheduler.take().reqid);
+		assertEquals(1, scheduler.take().reqid);
+		assertEquals(3, scheduler.take().reqid);
+		assertEquals(0, scheduler.getQueueDepth());
+		assertEquals(Long.MAX_VALUE, scheduler.getReadyIn());
+		assertEquals(3, scheduler.getSentCount());
+	}
+	
+	@Test
+	public void testMergesIdenticalRequests() throws Exception {
+		scheduler.submit(createRequest(1, "NYSE:A", "1 Y", HistoricalDataRequest.PRIORITY_REFRESH));
+		scheduler.submit(createRequest(2, "NYSE:B", "1 Y", HistoricalDataRequest.PRIORITY_REFRESH));
+		scheduler.submit(createRequest(3, "NYSE:B", "1 Y", HistoricalDataRequest.PRIORITY_WAITING));
+		assertEquals(2, scheduler.getQueueDepth());
+		
+		assertEquals(2, scheduler.take().reqid); // promoted by the merged request
+		assertArrayEquals(new int[] {3}, scheduler.getAliases(2));
+		scheduler.release(2);
+		assertNull(scheduler.getAliases(2));
+		
+		assertEquals(1, scheduler.take().reqid);
+		assertNull(scheduler.getAliases(1));
+	}
+	
+	@Test
+	public void testContractPacing() throws Exception {
+		for (int i=1; i<=6; i++) scheduler.submit(createRequest(i, "NYSE:A", i+" D", HistoricalDataRequest.PRIORITY_REFRESH));
+		for (int i=1; i<=5; i++) assertEquals(i, scheduler.take().reqid);
+		
+		// the sixth request for the contract within two seconds is not allowed
+		assertEquals(TimeUnit.SECONDS.toNanos(2), scheduler.getReadyIn());
+		scheduler.submit(createRequest(7, "NYSE:B", "1 Y", HistoricalDataRequest.PRIORITY_REFRESH));
+		assertEquals(7, scheduler.take().reqid);
+		
+		now += TimeUnit.SECONDS.toNanos(2);
+		assertEquals(6, scheduler.take().reqid);
+		assertEquals(TimeUnit.SECONDS.toMillis(2)/7, scheduler.getAverageWaitMillis());
+		assertEquals(TimeUnit.SECONDS.toMillis(2), scheduler.getMaxWaitMillis());
+	}
+	
+	@Test
+	public void testIdenticalPacing() throws Exception {
+		scheduler.submit(createRequest(1, "NYSE:A", "1 Y", HistoricalDataRequest.PRIORITY_REFRESH));
+		assertEquals(1, scheduler.take().reqid);
+		scheduler.submit(createRequest(2, "NYSE:A", "1 Y", HistoricalDataRequest.PRIORITY_REFRESH));
+		now += TimeUnit.SECONDS.toNanos(10);
+		assertEquals(TimeUnit.SECONDS.toNanos(5), scheduler.getReadyIn());
+		now += TimeUnit.SECONDS.toNanos(5);
+		assertEquals(2, scheduler.take().reqid);
+	}
+	
+	@Test
+	public void testWindowPacing() throws Exception {
+		String[] symbols = {"NYSE:A", "NYSE:B", "NYSE:C", "NYSE:D"};
+		for (int i=0; i<61; i++) scheduler.submit(createRequest(i, symbols[i % 4], (i+1)+" D", HistoricalDataRequest.PRIORITY_REFRESH));
+		for (int i=0; i<60; i++) {
+			if (i % 20 == 0) now += TimeUnit.SECONDS.toNanos(2);
+			assertEquals(i, scheduler.take().reqid);
+		}
+		
+		// until the oldest request leaves the ten minute window
+		assertEquals(TimeUnit.MINUTES.toNanos(10)-TimeUnit.SECONDS.toNanos(4), scheduler.getReadyIn());
+		now += TimeUnit.MINUTES.toNanos(10)-TimeUnit.SECONDS.toNanos(4);
+		assertEquals(60, scheduler.take().reqid);
+	}
+
+}
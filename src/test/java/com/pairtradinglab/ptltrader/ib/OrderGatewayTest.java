@@ -0,0 +1,231 @@
+/**
+ * 	This file is part of PTL Trader.
+ *
+ * 	Copyright © 2011-2021 Quantverse OÜ. All Rights Reserved.
+ *
+ *  PTL Trader is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  PTL Trader is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with PTL Trader. If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.pairtradinglab.ptltrader.ib;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.log4j.Logger;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import com.ib.client.Contract;
+import com.ib.client.EClientSocket;
+import com.ib.client.Order;
+
+public class OrderGatewayTest {
+	private long now;
+	private final List<Integer> transmitted = new ArrayList<Integer>();
+	private EClientSocket socket;
+	private ScheduledExecutorService scheduler;
+	private OrderGateway gateway;
+	
+	@Before
+	public void setUp() throws Exception {
+		now = 1000000000L;
+		socket = mock(EClientSocket.class);
+		doAnswer(new Answer<Object>() {
+			@Override
+			public Object answer(InvocationOnMock invocation) throws Throwable {
+				transmitted.add((Integer) invocation.getArguments()[0]);
+				return null;
+			}
+		}).when(socket).placeOrder(anyInt(), any(Contract.class), any(Order.class));
+		scheduler = mock(ScheduledExecutorService.class);
+		gateway = new OrderGateway(socket, scheduler, mock(Logger.class)) {
+			@Override
+			long nanoTime() {
+				return now;
+			}
+		};
+	}
+	
+	@Test
+	public void testPair() {
+		final List<Integer> assigned = new ArrayList<Integer>();
+		Order o1 = new Order();
+		Order o2 = new Order();
+		gateway.submitPair(new Contract(), o1, new Contract(), o2, new OrderGateway.Listener() {
+			@Override
+			public void assigned(Order order) {
+				// both legs get their IDs before any of them is transmitted
+				assertTrue(transmitted.isEmpty());
+				assigned.add(order.m_orderId);
+			}
+			
+			@Override
+			public void transmitted(Order order, long nanoTime) {
+				assertFalse(transmitted.contains(order.m_orderId));
+				assertEquals(now, nanoTime);
+			}
+		});
+		assertEquals(1, o1.m_orderId);
+		assertEquals(2, o2.m_orderId);
+		assertEquals(assigned, transmitted);
+		assertEquals(2, transmitted.size());
+		
+		gateway.setNextId(100);
+		Order o3 = new Order();
+		gateway.submit(new Contract(), o3, null);
+		assertEquals(100, o3.m_orderId);
+		assertEquals(101, gateway.getNextId());
+	}
+	
+	@Test
+	public void testRateLimit() {
+		for (int i=0; i<OrderGateway.BURST+5; i++) gateway.submit(new Contract(), new Order(), null);
+		assertEquals(OrderGateway.BURST, transmitted.size());
+		assertEquals(5, gateway.getQueueDepth());
+		verify(scheduler, times(1)).schedule(any(Runnable.class), anyLong(), eq(TimeUnit.NANOSECONDS));
+		
+		// one token after 1/rate seconds
+		now += 1000000000L/OrderGateway.MESSAGES_PER_SECOND;
+		gateway.drain();
+		assertEquals(OrderGateway.BURST+1, transmitted.size());
+		
+		// the queued orders go first, in ID order
+		now += 1000000000L;
+		gateway.submit(new Contract(), new Order(), null);
+		assertEquals(OrderGateway.BURST+6, transmitted.size());
+		for (int i=1; i<transmitted.size(); i++) assertEquals(transmitted.get(i-1)+1, (int) transmitted.get(i));
+		assertEquals(0, gateway.getQueueDepth());
+	}
+	
+	@Test
+	public void testBurstRefill() {
+		for (int i=0; i<OrderGateway.BURST; i++) gateway.submit(new Contract(), new Order(), null);
+		assertEquals(OrderGateway.BURST, transmitted.size());
+		
+		// the bucket does not fill over its size
+		now += 60*1000000000L;
+		for (int i=0; i<OrderGateway.BURST+1; i++) gateway.submit(new Contract(), new Order(), null);
+		assertEquals(2*OrderGateway.BURST, transmitted.size());
+		assertEquals(1, gateway.getQueueDepth());
+	}
+	
+	@Test
+	public void testPairNotSplit() {
+		for (int i=0; i<OrderGateway.BURST-1; i++) gateway.submit(new Contract(), new Order(), null);
+		// one token left, the pair waits for the second one
+		gateway.submitPair(new Contract(), new Order(), new Contract(), new Order(), null);
+		assertEquals(OrderGateway.BURST-1, transmitted.size());
+		assertEquals(2, gateway.getQueueDepth());
+		verify(scheduler).schedule(any(Runnable.class), eq(1000000000L/OrderGateway.MESSAGES_PER_SECOND), eq(TimeUnit.NANOSECONDS));
+		
+		now += 1000000000L/OrderGateway.MESSAGES_PER_SECOND;
+		gateway.drain();
+		assertEquals(OrderGateway.BURST+1, transmitted.size());
+		assertEquals(0, gateway.getQueueDepth());
+	}
+	
+	@Test
+	public void testCancel() {
+		for (int i=0; i<OrderGateway.BURST; i++) gateway.submit(new Contract(), new Order(), null);
+		Order queued = new Order();
+		gateway.submit(new Contract(), queued, null);
+		assertEquals(1, gateway.getQueueDepth());
+		
+		// still queued: dropped, never transmitted
+		assertTrue(gateway.cancel(queued.m_orderId));
+		assertEquals(0, gateway.getQueueDepth());
+		verify(socket, never()).cancelOrder(anyInt());
+		
+		// transmitted: the cancellation waits for a token
+		assertFalse(gateway.cancel(3));
+		verify(socket, never()).cancelOrder(anyInt());
+		assertEquals(1, gateway.getQueueDepth());
+		now += 1000000000L/OrderGateway.MESSAGES_PER_SECOND;
+		gateway.drain();
+		verify(socket).cancelOrder(3);
+		assertEquals(0, gateway.getQueueDepth());
+		assertEquals(OrderGateway.BURST, transmitted.size());
+	}
+	
+	@Test
+	public void testCancelSecondLeg() {
+		for (int i=0; i<OrderGateway.BURST; i++) gateway.submit(new Contract(), new Order(), null);
+		Order o1 = new Order();
+		Order o2 = new Order();
+		gateway.submitPair(new Contract(), o1, new Contract(), o2, null);
+		assertTrue(gateway.cancel(o2.m_orderId));
+		
+		// the first leg no longer waits for two tokens
+		now += 1000000000L/OrderGateway.MESSAGES_PER_SECOND;
+		gateway.drain();
+		assertEquals(OrderGateway.BURST+1, transmitted.size());
+		assertEquals(o1.m_orderId, (int) transmitted.get(OrderGateway.BURST));
+	}
+	
+	@Test
+	public void testReconnect() {
+		for (int i=0; i<OrderGateway.BURST+4; i++) gateway.submit(new Contract(), new Order(), null);
+		assertEquals(4, gateway.getQueueDepth()); // IDs 11-14 queued
+		
+		// IDs below 13 are no longer valid
+		List<Order> dropped = gateway.setNextId(13);
+		assertEquals(2, dropped.size());
+		assertEquals(11, dropped.get(0).m_orderId);
+		assertEquals(12, dropped.get(1).m_orderId);
+		assertEquals(2, gateway.getQueueDepth());
+		assertEquals(15, gateway.getNextId());
+		
+		// the valid ones keep their IDs, nothing dropped
+		assertTrue(gateway.setNextId(5).isEmpty());
+		assertEquals(15, gateway.getNextId());
+		
+		now += 1000000000L;
+		gateway.drain();
+		assertEquals(OrderGateway.BURST+2, transmitted.size());
+		assertEquals(13, (int) transmitted.get(OrderGateway.BURST));
+		assertEquals(14, (int) transmitted.get(OrderGateway.BURST+1));
+		
+		// empty queue: the reported ID is taken as it is
+		assertTrue(gateway.setNextId(100).isEmpty());
+		assertEquals(100, gateway.getNextId());
+	}
+	
+	@Test
+	public void testReconnectPair() {
+		for (int i=0; i<OrderGateway.BURST; i++) gateway.submit(new Contract(), new Order(), null);
+		Order o1 = new Order();
+		Order o2 = new Order();
+		gateway.submitPair(new Contract(), o1, new Contract(), o2, null);
+		assertEquals(2, gateway.getQueueDepth());
+		
+		// only the first leg is below the new ID, the second one goes with it
+		List<Order> dropped = gateway.setNextId(o1.m_orderId+1);
+		assertEquals(2, dropped.size());
+		assertSame(o1, dropped.get(0));
+		assertSame(o2, dropped.get(1));
+		assertEquals(0, gateway.getQueueDepth());
+		assertEquals(o2.m_orderId, gateway.getNextId());
+		
+		now += 1000000000L;
+		gateway.drain();
+		assertEquals(OrderGateway.BURST, transmitted.size());
+	}
+
+}
@@ -0,0 +1,55 @@
+/**
+ * 	This file is part of PTL Trader.
+ *
+ * 	Copyright © 2011-2021 Quantverse OÜ. All Rights Reserved.
+ *
+ *  PTL Trader is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  PTL Trader is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with PTL Trader. If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.pairtradinglab.ptltrader.trading;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class AlignedPairSeriesTest {
+
+	@Test
+	public void testJoin() {
+		BarSeries s1 = new BarSeries(new int[]{1, 2, 4, 5, 7}, new double[]{10, 20, 40, 50, 70});
+		BarSeries s2 = new BarSeries(new int[]{0, 2, 3, 4, 7, 8}, new double[]{1, 2, 3, 4, 7, 8});
+		AlignedPairSeries s = AlignedPairSeries.join(s1, s2);
+		assertEquals(3, s.size());
+		assertArrayEquals(new int[]{2, 4, 7}, s.days);
+		assertArrayEquals(new double[]{20, 40, 70}, s.prices1, 0);
+		assertArrayEquals(new double[]{2, 4, 7}, s.prices2, 0);
+		assertEquals(BarSeries.fromEpochDay(7), s.getLastDate());
+	}
+
+	@Test
+	public void testJoinSameDays() {
+		BarSeries s1 = new BarSeries(new int[]{1, 2}, new double[]{10, 20});
+		BarSeries s2 = new BarSeries(new int[]{1, 2}, new double[]{1, 2});
+		AlignedPairSeries s = AlignedPairSeries.join(s1, s2);
+		assertArrayEquals(new int[]{1, 2}, s.days);
+		assertArrayEquals(new double[]{10, 20}, s.prices1, 0);
+		assertArrayEquals(new double[]{1, 2}, s.prices2, 0);
+	}
+
+	@Test
+	public void testJoinEmpty() {
+		assertEquals(0, AlignedPairSeries.join(BarSeries.EMPTY, new BarSeries(new int[]{1}, new double[]{1})).size());
+		assertEquals(0, AlignedPairSeries.join(new BarSeries(new int[]{1}, new double[]{1}), new BarSeries(new int[]{2}, new double[]{2})).size());
+	}
+
+}
@@ -0,0 +1,67 @@
+/**
+ * 	This file is part of PTL Trader.
+ *
+ * 	Copyright © 2011-2021 Quantverse OÜ. All Rights Reserved.
+ *
+ *  PTL Trader is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  PTL Trader is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with PTL Trader. If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.pairtradinglab.ptltrader.trading;
+
+import static org.junit.Assert.*;
+
+import org.joda.time.DateTime;
+import org.joda.time.LocalDate;
+import org.joda.time.format.DateTimeFormat;
+import org.joda.time.format.DateTimeFormatter;
+import org.junit.Test;
+
+public class BarSeriesTest {
+
+	@Test
+	public void testEpochDay() {
+		assertEquals(0, BarSeries.toEpochDay(new DateTime(1970, 1, 1, 0, 0)));
+		assertEquals(15716, BarSeries.toEpochDay(new DateTime(2013, 1, 11, 0, 0)));
+		assertEquals(new DateTime(2013, 1, 11, 0, 0), BarSeries.fromEpochDay(15716));
+	}
+
+	@Test
+	public void testParseDay() {
+		assertEquals(0, BarSeries.parseDay("19700101"));
+		assertEquals(15716, BarSeries.parseDay("20130111"));
+		assertEquals(-1, BarSeries.parseDay("19691231"));
+		assertEquals(11016, BarSeries.parseDay("20000229"));
+		
+		DateTimeFormatter fmt = DateTimeFormat.forPattern("yyyyMMdd");
+		LocalDate d = new LocalDate(1899, 12, 1);
+		LocalDate end = new LocalDate(2101, 3, 1);
+		while (d.isBefore(end)) {
+			assertEquals(d.toString(), BarSeries.toEpochDay(d.toDateTimeAtStartOfDay()), BarSeries.parseDay(d.toString(fmt)));
+			d = d.plusDays(1);
+		}
+	}
+
+	@Test
+	public void testParseDayInvalid() {
+		String[] invalid = {"", "2013011", "201301110", "2013-111", "20131301", "20130100", "20130230", "21000229", "2013011a"};
+		for (String s: invalid) {
+			try {
+				BarSeries.parseDay(s);
+				fail(s);
+			} catch (IllegalArgumentException e) {
+				// expected
+			}
+		}
+	}
+
+}
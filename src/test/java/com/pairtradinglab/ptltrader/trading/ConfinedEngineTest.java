@@ -55,6 +55,7 @@ import com.pairtradinglab.ptltrader.RuntimeParams;
 import com.pairtradinglab.ptltrader.StringXorProcessor;
 import com.pairtradinglab.ptltrader.events.AccountConnected;
 import com.pairtradinglab.ptltrader.events.BeaconFlash;
+import com.pairtradinglab.ptltrader.ib.OrderGateway;
 import com.pairtradinglab.ptltrader.ib.SimpleWrapper;
 import com.pairtradinglab.ptltrader.model.PairStrategy;
 import com.pairtradinglab.ptltrader.model.Portfolio;
@@ -84,14 +85,12 @@ public class ConfinedEngineTest {
 	private RuntimeParams runtimeMock;
 	private ActivityDetector detectorMock;
 	
-	private int orderId;
 	private final PairTradingModelKalmanAutoState testModelState = new PairTradingModelKalmanAutoState(13);
     private final PairTradingModelKalmanAutoState testModelState2= new PairTradingModelKalmanAutoState(19);
 	
 	@Before
 	public void setUp() throws Exception {
 		DateTimeUtils.setCurrentMillisFixed(new DateTime(2013, 1, 11, 16, 0, 0, 1, tz).getMillis());
-		orderId=1;
 		
 		runtimeMock = mock(RuntimeParams.class);
 		
@@ -110,20 +109,13 @@ public class ConfinedEngineTest {
 		when(wrapperMock.getIbSocket()).thenReturn(es);
 		when(wrapperMock.getUid()).thenReturn("");
 		when(wrapperMap.get(any())).thenReturn(wrapperMock);
-		when(wrapperMock.getNextId()).then(new Answer() {
-
-			@Override
-			public Object answer(InvocationOnMock invocation) throws Throwable {
-				return orderId++;
-			}
-			
-		});
+		when(wrapperMock.getOrderGateway()).thenReturn(new OrderGateway(es, null, l));
 		
 		pf = new Portfolio(bus, null, lf, "abcd");
 		pf.setAccountCode("xxx");
 		pf.setEquity(30000);
 		
-		ps = new PairStrategy("xyz", pf, "NYSE:A", "NASDAQ:B", 0, 0, bus, null);
+		ps = new PairStrategy("xyz", pf, "NYSE:A", "NASDAQ:B", 0, 0, bus, new TickRouter(l), null);
 		ps.injectCore(mock(PairTradingCore.class));
         ps.setModelState(testModelState2);
 		pf.addPairStrategy(ps);
@@ -147,7 +139,7 @@ public class ConfinedEngineTest {
 		});
 
 		
-		ce = new ConfinedEngine(ptm, ps, wrapperMap, lf, mdp, bus, new PairDataProviderFactoryImpl(bus, new HistoricalDataProviderFactoryImpl(mock(List.class), new Settings(runtimeMock, new StringXorProcessor()), l)), connectedAccounts, mock(ActiveCores.class), detectorMock);
+		ce = new ConfinedEngine(ptm, ps, wrapperMap, lf, mdp, bus, new PairDataProviderFactoryImpl(bus, new HistoricalDataProviderFactoryImpl(mock(List.class), new Settings(runtimeMock, new StringXorProcessor()), new HistoricalBarCache(runtimeMock, new DailyBarStore(runtimeMock), l), runtimeMock, l)), connectedAccounts, mock(ActiveCores.class), detectorMock);
 		ce.setLastDataObtained(DateTime.now());
 		
 	}
@@ -1762,4 +1754,27 @@ private void setupSocketMockFriendlyExecComm4() {
 	}
 	
 
+	@Test
+	public void testTickRingConflation() {
+		TickRing ring = ce.enableTickRing(1, 2);
+		long now = System.nanoTime();
+		ring.offer(1, TickType.BID, 10.1, 0, now);
+		ring.offer(1, TickType.BID, 10.2, 0, now);
+		ring.offer(2, TickType.ASK, 20.1, 0, now);
+		ring.offer(1, TickType.BID, 10.3, 0, now);
+		ring.offer(3, TickType.BID, 99, 0, now); // not our symbol
+		ring.offer(2, TickType.LAST, 20, 0, now-3000000000L); // too old
+		
+		ce.handleMessage(new ControlMessage(ControlMessage.TYPE_TICKS_PENDING, null));
+		
+		assertEquals(0, ring.size());
+		verify(mr1, times(1)).setBid(anyDouble());
+		verify(mr1).setBid(10.3);
+		verify(mr1, never()).setAsk(anyDouble());
+		verify(mr2).setAsk(20.1);
+		verify(mr2, never()).setBid(anyDouble());
+		verify(mr2, never()).setLast(anyDouble());
+	}
+	
+
 }
@@ -0,0 +1,91 @@
+/**
+ * 	This file is part of PTL Trader.
+ *
+ * 	Copyright © 2011-2021 Quantverse OÜ. All Rights Reserved.
+ *
+ *  PTL Trader is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  PTL Trader is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with PTL Trader. If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.pairtradinglab.ptltrader.trading;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.nio.file.Files;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class DailyBarStoreTest {
+	private File dir;
+	private DailyBarStore store;
+
+	@Before
+	public void setUp() throws Exception {
+		dir = Files.createTempDirectory("bars").toFile();
+		store = new DailyBarStore(dir);
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		File[] files = dir.listFiles();
+		if (files != null) for (File f : files) f.delete();
+		dir.delete();
+	}
+	
+	private void append(int from, int n) throws Exception {
+		int[] days = new int[n];
+		double[] closes = new double[n];
+		for (int i=0; i<n; i++) {
+			days[i] = from+i;
+			closes[i] = 0.5*(from+i);
+		}
+		store.append("SPY_STK", days, closes, n);
+	}
+	
+	@Test
+	public void testAppendAndLoad() throws Exception {
+		assertNull(store.load("SPY_STK"));
+		append(15000, 200);
+		append(15200, 200); // spans two blocks
+		append(15400, 1);
+		
+		BarSeries s = new DailyBarStore(dir).load("SPY_STK");
+		assertEquals(401, s.size());
+		assertEquals(15400, s.lastDay());
+		for (int i=0; i<s.size(); i++) {
+			assertEquals(15000+i, s.days[i]);
+			assertEquals(0.5*(15000+i), s.closes[i], 0);
+		}
+		assertNull(store.load("QQQ_STK"));
+	}
+	
+	@Test(expected=IllegalArgumentException.class)
+	public void testRejectsStoredDays() throws Exception {
+		append(15000, 10);
+		append(15009, 2);
+	}
+	
+	@Test
+	public void testReplace() throws Exception {
+		append(15000, 300);
+		store.replace("SPY_STK", new int[] {15290, 15291, 15292}, new double[] {1, 2, 3}, 3);
+		append(15293, 2);
+		
+		BarSeries s = store.load("SPY_STK");
+		assertArrayEquals(new int[] {15290, 15291, 15292, 15293, 15294}, s.days);
+		assertArrayEquals(new double[] {1, 2, 3, 0.5*15293, 0.5*15294}, s.closes, 0);
+	}
+
+}
@@ -0,0 +1,312 @@
+/**
+ * 	This file is part of PTL Trader.
+ *
+ * 	Copyright © 2011-2021 Quantverse OÜ. All Rights Reserved.
+ *
+ *  PTL Trader is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  PTL Trader is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with PTL Trader. If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.pairtradinglab.ptltrader.trading;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.log4j.Logger;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import com.pairtradinglab.ptltrader.ib.HistoricalDataRequest;
+import com.pairtradinglab.ptltrader.ib.SimpleWrapper;
+
+public class HistoricalBarCacheTest {
+	private SimpleWrapper sw;
+	private HistoricalBarCache cache;
+	private Logger l;
+	private int nextReqId;
+	private final List<HistoricalDataRequest> sent = new ArrayList<HistoricalDataRequest>();
+	private final List<String> notified = new ArrayList<String>();
+	
+	private final IDataProviderOwner owner = new IDataProviderOwner() {
+		@Override
+		public void notifyDataReady(int reqId, HistoricalDataProvider provider) {
+			notified.add(reqId+":"+provider.getData().values());
+		}
+		
+		@Override
+		public void notifyRequestFailed(int reqId, HistoricalDataProvider provider, int code, String message) {
+			notified.add(reqId+":failed");
+		}
+	};
+
+	@Before
+	public void setUp() throws Exception {
+		DateTimeUtils.setCurrentMillisFixed(new DateTime(2013, 1, 10, 12, 0).getMillis());
+		nextReqId = 10000001;
+		sw = mock(SimpleWrapper.class);
+		l = mock(Logger.class);
+		when(sw.getUid()).thenReturn("ABCD");
+		when(sw.getNextReqId()).then(new Answer() {
+			@Override
+			public Object answer(InvocationOnMock invocation) throws Throwable {
+				return nextReqId++;
+			}
+		});
+		doAnswer(new Answer() {
+			@Override
+			public Object answer(InvocationOnMock invocation) throws Throwable {
+				sent.add((HistoricalDataRequest) invocation.getArguments()[0]);
+				return null;
+			}
+		}).when(sw).executeHistoricalDataRequestQueued(any(HistoricalDataRequest.class));
+		cache = new HistoricalBarCache(true, new DailyBarStore((File) null), l);
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		DateTimeUtils.setCurrentMillisSystem();
+	}
+	
+	private HistoricalDataProvider createProvider(String symbol) {
+		HistoricalDataProvider hdp = new HistoricalDataProvider(Arrays.asList(sw), null, ContractExt.createFromGoogleSymbol(symbol, false), cache, l);
+		hdp.setOwner(owner);
+		return hdp;
+	}
+	
+	private void request(HistoricalDataProvider hdp) {
+		hdp.allocRequestId();
+		hdp.requestData();
+	}
+
+	@Test
+	public void testCoalescesRequestsForSameContract() {
+		HistoricalDataProvider a1 = createProvider("NYSE:A");
+		HistoricalDataProvider a2 = createProvider("NYSE:A");
+		HistoricalDataProvider b = createProvider("NYSE:B");
+		request(a1);
+		request(a2);
+		request(b);
+		
+		assertEquals(2, sent.size());
+		assertEquals(HistoryWindow.DURATION, sent.get(0).duration);
+		assertEquals(10000001, sent.get(0).reqid);
+		assertEquals(10000003, sent.get(1).reqid);
+		
+		a1.addRecord("20130108", 11);
+		a1.addRecord("20130109", 12);
+		a1.addRecord("finished-20120110  00:00:00-20130110  00:00:00", 0);
+		
+		assertEquals(Arrays.asList("10000001:[11.0, 12.0]", "10000002:[11.0, 12.0]"), notified);
+		assertEquals("[11.0, 12.0]", a2.getData().values().toString());
+	}
+	
+	@Test
+	public void testServesFromCacheAndRequestsMissingDays() {
+		HistoricalDataProvider a1 = createProvider("NYSE:A");
+		HistoricalDataProvider a2 = createProvider("NYSE:A");
+		request(a1);
+		a1.addRecord("20130108", 11);
+		a1.addRecord("20130109", 12);
+		a1.addRecord("finished-20120110  00:00:00-20130110  00:00:00", 0);
+		
+		// same day: no IB request at all
+		notified.clear();
+		request(a2);
+		assertEquals(1, sent.size());
+		assertEquals(Arrays.asList("10000002:[11.0, 12.0]"), notified);
+		
+		// next trading days: only the bars since the last cached one
+		DateTimeUtils.setCurrentMillisFixed(new DateTime(2013, 1, 12, 12, 0).getMillis());
+		notified.clear();
+		request(a2);
+		assertEquals(2, sent.size());
+		assertEquals("4 D", sent.get(1).duration);
+		a2.addRecord("20130109", 12);
+		a2.addRecord("20130110", 13);
+		a2.addRecord("20130111", 14);
+		a2.addRecord("finished-20130108  00:00:00-20130112  00:00:00", 0);
+		assertEquals(Arrays.asList("10000003:[11.0, 12.0, 13.0, 14.0]"), notified);
+	}
+	
+	@Test
+	public void testKeepsWindowStart() {
+		HistoricalDataProvider a1 = createProvider("NYSE:A");
+		request(a1);
+		a1.addRecord("20111230", 9); // before the window
+		a1.addRecord("20120105", 10); // more than a year back, but in the window
+		a1.addRecord("20130109", 12);
+		a1.addRecord("finished-20110110  00:00:00-20130110  00:00:00", 0);
+		assertEquals(Arrays.asList("10000001:[10.0, 12.0]"), notified);
+		
+		// the next day the series only grows
+		DateTimeUtils.setCurrentMillisFixed(new DateTime(2013, 1, 11, 12, 0).getMillis());
+		notified.clear();
+		request(a1);
+		assertEquals("3 D", sent.get(1).duration);
+		a1.addRecord("20130109", 12);
+		a1.addRecord("20130110", 13);
+		a1.addRecord("finished-20130108  00:00:00-20130111  00:00:00", 0);
+		assertEquals(Arrays.asList("10000002:[10.0, 12.0, 13.0]"), notified);
+	}
+	
+	@Test
+	public void testRequestsFullHistoryWhenAdjusted() {
+		HistoricalDataProvider a1 = createProvider("NYSE:A");
+		request(a1);
+		a1.addRecord("20130108", 11);
+		a1.addRecord("20130109", 12);
+		a1.addRecord("finished-20120110  00:00:00-20130110  00:00:00", 0);
+		
+		DateTimeUtils.setCurrentMillisFixed(new DateTime(2013, 1, 11, 12, 0).getMillis());
+		notified.clear();
+		request(a1);
+		a1.addRecord("20130109", 6);
+		a1.addRecord("20130110", 6.5);
+		a1.addRecord("finished-20130108  00:00:00-20130111  00:00:00", 0);
+		
+		assertTrue(notified.isEmpty());
+		assertEquals(3, sent.size());
+		assertEquals(HistoryWindow.DURATION, sent.get(2).duration);
+		a1.addRecord("20130108", 5.5);
+		a1.addRecord("20130109", 6);
+		a1.addRecord("20130110", 6.5);
+		a1.addRecord("finished-20120111  00:00:00-20130111  00:00:00", 0);
+		assertEquals(Arrays.asList("10000002:[5.5, 6.0, 6.5]"), notified);
+	}
+	
+	@Test
+	public void testRequestsMissingDaysAfterRestart() throws Exception {
+		File dir = Files.createTempDirectory("bars").toFile();
+		try {
+			cache = new HistoricalBarCache(true, new DailyBarStore(dir), l);
+			HistoricalDataProvider a1 = createProvider("NYSE:A");
+			request(a1);
+			a1.addRecord("20130108", 11);
+			a1.addRecord("20130109", 12);
+			a1.addRecord("finished-20120110  00:00:00-20130110  00:00:00", 0);
+			cache.stop(); // stores the queued bars
+			
+			// restarted on the next day
+			DateTimeUtils.setCurrentMillisFixed(new DateTime(2013, 1, 11, 12, 0).getMillis());
+			cache = new HistoricalBarCache(true, new DailyBarStore(dir), l);
+			notified.clear();
+			HistoricalDataProvider a2 = createProvider("NYSE:A");
+			request(a2);
+			assertEquals(2, sent.size());
+			assertEquals("3 D", sent.get(1).duration);
+			a2.addRecord("20130109", 12);
+			a2.addRecord("20130110", 13);
+			a2.addRecord("finished-20130108  00:00:00-20130111  00:00:00", 0);
+			assertEquals(Arrays.asList("10000002:[11.0, 12.0, 13.0]"), notified);
+			
+			cache.flush();
+			BarSeries stored = new DailyBarStore(dir).load(HistoricalBarCache.key(a2.getContract()));
+			assertArrayEquals(new double[] {11, 12, 13}, stored.closes, 0);
+		} finally {
+			File[] files = dir.listFiles();
+			if (files != null) for (File f : files) f.delete();
+			dir.delete();
+		}
+	}
+
+	@Test
+	public void testLeaderRequestingAgainResends() {
+		HistoricalDataProvider a1 = createProvider("NYSE:A");
+		HistoricalDataProvider a2 = createProvider("NYSE:A");
+		request(a1);
+		request(a2);
+		assertEquals(1, sent.size());
+		
+		// the owner of a1 gave up waiting and asks again
+		request(a1);
+		assertEquals(2, sent.size());
+		assertEquals(10000004, sent.get(1).reqid);
+		verify(sw).hmapRemove(10000001);
+		
+		a1.addRecord("20130109", 12);
+		a1.addRecord("finished-20120110  00:00:00-20130110  00:00:00", 0);
+		assertEquals(Arrays.asList("10000003:[12.0]", "10000002:[12.0]"), notified);
+	}
+	
+	@Test
+	public void testStaleLeaderReplaced() {
+		HistoricalDataProvider a1 = createProvider("NYSE:A");
+		HistoricalDataProvider a2 = createProvider("NYSE:A");
+		request(a1);
+		request(a2);
+		
+		// a2 asks again while the request is recent: keeps waiting
+		DateTimeUtils.setCurrentMillisFixed(new DateTime(2013, 1, 10, 12, HistoricalBarCache.LEADER_TIMEOUT_MINUTES-1).getMillis());
+		request(a2);
+		assertEquals(1, sent.size());
+		
+		// the request of a1 got lost, a2 sends it again
+		DateTimeUtils.setCurrentMillisFixed(new DateTime(2013, 1, 10, 12, HistoricalBarCache.LEADER_TIMEOUT_MINUTES+1).getMillis());
+		request(a2);
+		assertEquals(2, sent.size());
+		assertEquals(10000004, sent.get(1).reqid);
+		assertEquals(HistoryWindow.DURATION, sent.get(1).duration);
+		
+		// the late bars of a1 are ignored
+		a1.addRecord("20130109", 11);
+		a1.addRecord("finished-20120110  00:00:00-20130110  00:00:00", 0);
+		assertTrue(notified.isEmpty());
+		
+		a2.addRecord("20130109", 12);
+		a2.addRecord("finished-20120110  00:00:00-20130110  00:00:00", 0);
+		assertEquals(Arrays.asList("10000001:[12.0]", "10000004:[12.0]"), notified);
+	}
+	
+	@Test
+	public void testCancelledLeaderHandsOver() {
+		HistoricalDataProvider a1 = createProvider("NYSE:A");
+		HistoricalDataProvider a2 = createProvider("NYSE:A");
+		request(a1);
+		request(a2);
+		
+		// the engine of a1 stopped
+		a1.cancel();
+		verify(sw).hmapRemove(10000001);
+		assertEquals(2, sent.size());
+		assertEquals(10000002, sent.get(1).reqid);
+		
+		a2.addRecord("20130109", 12);
+		a2.addRecord("finished-20120110  00:00:00-20130110  00:00:00", 0);
+		assertEquals(Arrays.asList("10000002:[12.0]"), notified);
+	}
+	
+	@Test
+	public void testCancelledWaitingProviderNotDelivered() {
+		HistoricalDataProvider a1 = createProvider("NYSE:A");
+		HistoricalDataProvider a2 = createProvider("NYSE:A");
+		request(a1);
+		request(a2);
+		a2.cancel();
+		assertEquals(1, sent.size());
+		
+		a1.addRecord("20130109", 12);
+		a1.addRecord("finished-20120110  00:00:00-20130110  00:00:00", 0);
+		assertEquals(Arrays.asList("10000001:[12.0]"), notified);
+	}
+
+}
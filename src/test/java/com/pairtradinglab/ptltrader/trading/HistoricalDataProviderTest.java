@@ -62,6 +62,8 @@ public class HistoricalDataProviderTest {
 		
 		pico = new DefaultPicoContainer();
 		pico.addComponent(HistoricalDataProviderFactoryImpl.class);
+		pico.addComponent(HistoricalBarCache.class);
+		pico.addComponent(DailyBarStore.class);
 		pico.addComponent(StringXorProcessor.class);
 		pico.addComponent(runtimeMock);
 		//LoggerFactory lf = new LoggerFactoryImpl();
@@ -135,7 +137,12 @@ public class HistoricalDataProviderTest {
 		//System.out.println(res);
 		List<Double> prices = new ArrayList<>(res.values());
 		assertArrayEquals(new Double[]{10.0, 11.0, 12.0}, prices.toArray());
-		// TODO also check keys
+		assertEquals(new DateTime(2013, 1, 1, 0, 0), res.firstKey());
+		assertEquals(new DateTime(2013, 1, 3, 0, 0), res.lastKey());
+		
+		BarSeries series = hdp.getSeries();
+		assertArrayEquals(new int[]{15706, 15707, 15708}, series.days);
+		assertArrayEquals(new double[]{10.0, 11.0, 12.0}, series.closes, 0);
 	}
 	
 	
@@ -0,0 +1,48 @@
+/**
+ * 	This file is part of PTL Trader.
+ *
+ * 	Copyright © 2011-2021 Quantverse OÜ. All Rights Reserved.
+ *
+ *  PTL Trader is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  PTL Trader is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with PTL Trader. If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.pairtradinglab.ptltrader.trading;
+
+import static org.junit.Assert.*;
+
+import org.joda.time.LocalDate;
+import org.junit.Test;
+
+public class HistoryWindowTest {
+
+	@Test
+	public void testStartIsAnchoredToQuarter() {
+		assertEquals(new LocalDate(2012, 1, 1), HistoryWindow.start(new LocalDate(2013, 1, 10)));
+		assertEquals(new LocalDate(2012, 1, 1), HistoryWindow.start(new LocalDate(2013, 3, 31)));
+		assertEquals(new LocalDate(2012, 4, 1), HistoryWindow.start(new LocalDate(2013, 4, 1)));
+		assertEquals(new LocalDate(2012, 10, 1), HistoryWindow.start(new LocalDate(2013, 12, 31)));
+	}
+	
+	@Test
+	public void testSpansAtLeastAYear() {
+		LocalDate day = new LocalDate(2013, 1, 1);
+		for (int i=0; i<800; i++) {
+			LocalDate start = HistoryWindow.start(day);
+			assertFalse(start.isAfter(day.minusYears(1)));
+			assertTrue(start.isAfter(day.minusYears(1).minusMonths(3).minusDays(1)));
+			assertEquals(BarSeries.toEpochDay(start.toDateTimeAtStartOfDay()), HistoryWindow.startDay(day));
+			day = day.plusDays(1);
+		}
+	}
+
+}
@@ -0,0 +1,63 @@
+/**
+ * 	This file is part of PTL Trader.
+ *
+ * 	Copyright © 2011-2021 Quantverse OÜ. All Rights Reserved.
+ *
+ *  PTL Trader is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  PTL Trader is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with PTL Trader. If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.pairtradinglab.ptltrader.trading;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class LatencyHistogramTest {
+
+	@Test
+	public void testBuckets() {
+		assertEquals(0, LatencyHistogram.bucketOf(0));
+		assertEquals(0, LatencyHistogram.bucketOf(1));
+		assertEquals(1, LatencyHistogram.bucketOf(2));
+		assertEquals(1, LatencyHistogram.bucketOf(3));
+		assertEquals(10, LatencyHistogram.bucketOf(1024));
+		assertEquals(62, LatencyHistogram.bucketOf(Long.MAX_VALUE));
+		assertEquals(Long.MAX_VALUE, LatencyHistogram.upperBound(62));
+		assertEquals(1023, LatencyHistogram.upperBound(9));
+	}
+	
+	@Test
+	public void testPercentiles() {
+		LatencyHistogram h = new LatencyHistogram();
+		assertEquals(0, h.getPercentile(0.5));
+		for (int i=0; i<90; i++) h.record(1000000); // 1 ms
+		for (int i=0; i<10; i++) h.record(50000000); // 50 ms
+		h.record(-5);
+		
+		assertEquals(101, h.getCount());
+		assertEquals(50000000, h.getMax());
+		assertEquals(1, h.getBucketCount(0));
+		assertEquals(90, h.getBucketCount(LatencyHistogram.bucketOf(1000000)));
+		assertEquals((90*1000000.0+10*50000000.0)/101, h.getMean(), 1e-6);
+		
+		long p50 = h.getPercentile(0.5);
+		assertTrue(p50>=1000000 && p50<2000000);
+		assertEquals(50000000, h.getPercentile(0.99));
+		
+		h.reset();
+		assertEquals(0, h.getCount());
+		assertEquals(0, h.getMax());
+		assertEquals(0, h.getPercentile(0.99));
+	}
+
+}
@@ -0,0 +1,168 @@
+/**
+ * 	This file is part of PTL Trader.
+ *
+ * 	Copyright © 2011-2021 Quantverse OÜ. All Rights Reserved.
+ *
+ *  PTL Trader is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  PTL Trader is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with PTL Trader. If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.pairtradinglab.ptltrader.trading;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.log4j.Logger;
+import org.junit.Before;
+import org.junit.Test;
+
+public class MarketDataResubscriberTest {
+	
+	private long now;
+	private SubscriptionRegistry registry;
+	private final List<String> requested = new ArrayList<String>();
+	private final List<Integer> requestIds = new ArrayList<Integer>();
+	private final List<Integer> cancelled = new ArrayList<Integer>();
+	private MarketDataResubscriber resubscriber;
+	
+	@Before
+	public void setUp() throws Exception {
+		now = 1000000000L;
+		registry = new SubscriptionRegistry(new TickRouter(mock(Logger.class)));
+		MarketDataResubscriber.Requester requester = new MarketDataResubscriber.Requester() {
+			@Override
+			public void request(int reqId, String symbol) {
+				requested.add(symbol);
+				requestIds.add(reqId);
+			}
+			
+			@Override
+			public void cancel(int reqId) {
+				cancelled.add(reqId);
+			}
+		};
+		resubscriber = new MarketDataResubscriber(registry, requester, null, mock(Logger.class)) {
+			@Override
+			long nanoTime() {
+				return now;
+			}
+		};
+	}
+	
+	private Map<Integer, String> subscribe(int count) {
+		for (int i=0; i<count; i++) registry.subscribe("NYSE:S"+i, "s"+i);
+		return registry.resubscribeAll();
+	}
+
+	@Test
+	public void testPacing() {
+		resubscriber.start(subscribe(100), Collections.<String>emptySet());
+		resubscriber.poll();
+		assertEquals(1, requested.size());
+		now += MarketDataResubscriber.INTERVAL/2;
+		resubscriber.poll();
+		assertEquals(1, requested.size());
+		now += MarketDataResubscriber.INTERVAL/2;
+		resubscriber.poll();
+		assertEquals(2, requested.size());
+		
+		// a late poll does not burst over the rate
+		now += 10*MarketDataResubscriber.INTERVAL;
+		resubscriber.poll();
+		assertEquals(4, requested.size());
+		now += 1000000000L;
+		resubscriber.poll();
+		assertTrue(requested.size()<=4+MarketDataResubscriber.REQUESTS_PER_SECOND+1);
+	}
+	
+	@Test
+	public void testPositionsFirst() {
+		resubscriber.start(subscribe(10), new HashSet<String>(java.util.Arrays.asList("NYSE:S7", "NYSE:S3")));
+		for (int i=0; i<10; i++) {
+			resubscriber.poll();
+			now += MarketDataResubscriber.INTERVAL;
+		}
+		assertEquals(10, requested.size());
+		assertEquals(new HashSet<String>(java.util.Arrays.asList("NYSE:S7", "NYSE:S3")), new HashSet<String>(requested.subList(0, 2)));
+	}
+	
+	@Test
+	public void testAcknowledgedByFirstTick() {
+		resubscriber.start(subscribe(2), Collections.<String>emptySet());
+		resubscriber.poll();
+		now += MarketDataResubscriber.INTERVAL;
+		resubscriber.poll();
+		assertEquals(2, requested.size());
+		assertTrue(resubscriber.isActive());
+		
+		registry.acknowledge(requestIds.get(0));
+		registry.acknowledge(requestIds.get(1));
+		resubscriber.poll();
+		assertFalse(resubscriber.isActive());
+		assertTrue(cancelled.isEmpty());
+	}
+	
+	@Test
+	public void testRetriesUnacknowledged() {
+		resubscriber.start(subscribe(2), Collections.<String>emptySet());
+		resubscriber.poll();
+		now += MarketDataResubscriber.INTERVAL;
+		resubscriber.poll();
+		int first = requestIds.get(0);
+		registry.acknowledge(requestIds.get(1));
+		
+		now += MarketDataResubscriber.ACK_TIMEOUT+1;
+		resubscriber.poll();
+		assertEquals(3, requested.size());
+		assertEquals(requested.get(0), requested.get(2));
+		assertEquals(Collections.singletonList(first), cancelled);
+		int retry = requestIds.get(2);
+		assertTrue(retry!=first);
+		assertNull(registry.getSymbol(first));
+		assertEquals(requested.get(0), registry.getSymbol(retry));
+		
+		registry.acknowledge(retry);
+		resubscriber.poll();
+		assertFalse(resubscriber.isActive());
+	}
+	
+	@Test
+	public void testRejectedRetriedAndGivenUp() {
+		resubscriber.start(subscribe(1), Collections.<String>emptySet());
+		for (int i=0; i<MarketDataResubscriber.MAX_ATTEMPTS; i++) {
+			now += 2*MarketDataResubscriber.INTERVAL;
+			resubscriber.poll();
+			assertEquals(i+1, requested.size());
+			resubscriber.rejected(requestIds.get(i));
+			resubscriber.poll();
+		}
+		assertFalse(resubscriber.isActive());
+		assertEquals(MarketDataResubscriber.MAX_ATTEMPTS, requested.size());
+	}
+	
+	@Test
+	public void testUnsubscribedMeanwhile() {
+		resubscriber.start(subscribe(2), Collections.<String>emptySet());
+		registry.unsubscribe("NYSE:S0", "s0");
+		registry.unsubscribe("NYSE:S1", "s1");
+		resubscriber.poll();
+		assertTrue(requested.isEmpty());
+		assertFalse(resubscriber.isActive());
+	}
+
+}
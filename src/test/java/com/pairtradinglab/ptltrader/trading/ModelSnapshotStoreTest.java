@@ -0,0 +1,189 @@
+/**
+ * 	This file is part of PTL Trader.
+ *
+ * 	Copyright © 2011-2021 Quantverse OÜ. All Rights Reserved.
+ *
+ *  PTL Trader is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  PTL Trader is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with PTL Trader. If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.pairtradinglab.ptltrader.trading;
+
+import com.pairtradinglab.ptltrader.model.PairStrategy;
+import org.apache.log4j.Logger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class ModelSnapshotStoreTest {
+    private File dir;
+    private ModelSnapshotStore store;
+
+    private PairStrategy getStrategyMock() {
+        PairStrategy ps = mock(PairStrategy.class);
+        when(ps.getEntryThreshold()).thenReturn(2d);
+        when(ps.getExitThreshold()).thenReturn(0.2);
+        when(ps.getMaxEntryScore()).thenReturn(10d);
+        when(ps.getAllowPositions()).thenReturn(PairStrategy.ALLOW_POSITIONS_BOTH);
+        when(ps.isMaxDaysEnabled()).thenReturn(true);
+        when(ps.getMaxDays()).thenReturn(20);
+        when(ps.getEntryMode()).thenReturn(PairTradingModel.ENTRY_MODE_SIMPLE);
+        when(ps.getNeutrality()).thenReturn(PairStrategy.NEUTRALITY_DOLLAR);
+        when(ps.getKalmanAutoVe()).thenReturn(0.001);
+        when(ps.getKalmanAutoUsageTarget()).thenReturn(60d);
+        return ps;
+    }
+
+    private PairTradingModelKalmanGrid createGridModel(PairStrategy ps) {
+        PairTradingModelKalmanGrid mod = new PairTradingModelKalmanGrid(new MarketRates(), new MarketRates(), mock(Logger.class));
+        mod.initialize();
+        mod.setupFromStrategy(ps);
+        return mod;
+    }
+
+    private double[] genPrices(int len, double mult, double offset, double noiseFreq, double noiseMult) {
+        double out[] = new double[len];
+        for(int i=0; i<len; i++) {
+            out[i]=offset+noiseMult*Math.sin(noiseFreq*(double) (i-1))+mult*(double) (i-1);
+        }
+        return out;
+    }
+
+    private AlignedPairSeries series(int firstDay, double[] prices1, double[] prices2) {
+        int days[] = new int[prices1.length];
+        for(int i=0; i<days.length; i++) days[i] = firstDay+i;
+        return AlignedPairSeries.join(new BarSeries(days, prices1), new BarSeries(days.clone(), prices2));
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        dir = Files.createTempDirectory("snapshots").toFile();
+        store = new ModelSnapshotStore(dir);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        File[] files = dir.listFiles();
+        if (files != null) for (File f : files) f.delete();
+        dir.delete();
+    }
+
+    @Test
+    public void testGridRoundTrip() throws Exception {
+        double prices1[] = genPrices(300, 1, 10, 2, 0.3);
+        double prices2[] = genPrices(300, 2, 10, 3, 0.3);
+        PairStrategy ps = getStrategyMock();
+
+        PairTradingModelKalmanGrid reference = createGridModel(ps);
+        reference.setPrices(prices1, prices2);
+
+        PairTradingModelKalmanGrid mod = createGridModel(ps);
+        assertFalse(store.restore("s1", mod, series(1000, prices1, prices2))); // nothing stored yet
+        AlignedPairSeries saved = series(1000, Arrays.copyOf(prices1, 290), Arrays.copyOf(prices2, 290));
+        mod.appendPrices(saved);
+        assertTrue(store.save("s1", mod, saved));
+
+        // warm start (restarted days later): 290 bars restored, 10 appended
+        PairTradingModelKalmanGrid restored = createGridModel(ps);
+        assertTrue(store.restore("s1", restored, series(1000, prices1, prices2)));
+        assertTrue(restored.isPricesInitialized());
+        restored.appendPrices(prices1, prices2);
+
+        assertTrue(reference.grid.getIsValid());
+        assertEquals(reference.grid.getBeta(), restored.grid.getBeta(), 0);
+        assertEquals(reference.grid.getAlpha(), restored.grid.getAlpha(), 0);
+        assertEquals(reference.grid.getSq(), restored.grid.getSq(), 0);
+        assertEquals(reference.lastScore, restored.lastScore, 0);
+        assertEquals(reference.getStatusInfo(), restored.getStatusInfo());
+    }
+
+    @Test
+    public void testFingerprintMismatch() throws Exception {
+        double prices1[] = genPrices(100, 1, 10, 2, 0.3);
+        double prices2[] = genPrices(100, 2, 10, 3, 0.3);
+        PairStrategy ps = getStrategyMock();
+        PairTradingModelKalmanGrid mod = createGridModel(ps);
+        mod.setPrices(prices1, prices2);
+        assertTrue(store.save("s1", mod, series(1000, prices1, prices2)));
+
+        double changed2[] = prices2.clone();
+        changed2[50] += 0.01;
+        PairTradingModelKalmanGrid other = createGridModel(ps);
+        assertFalse(store.restore("s1", other, series(1000, prices1, changed2)));
+        assertFalse(other.isPricesInitialized());
+        // shorter series than the snapshot
+        assertFalse(store.restore("s1", other, series(1000, Arrays.copyOf(prices1, 99), Arrays.copyOf(prices2, 99))));
+        // same prices, but the window starts on another day
+        assertFalse(store.restore("s1", other, series(1001, prices1, prices2)));
+        // other model type
+        PairTradingModelKalmanAuto auto = new PairTradingModelKalmanAuto(new MarketRates(), new MarketRates(), mock(Logger.class));
+        auto.setupFromStrategy(ps);
+        assertFalse(store.restore("s1", auto, series(1000, prices1, prices2)));
+        assertTrue(store.restore("s1", other, series(1000, prices1, prices2)));
+    }
+
+    @Test
+    public void testDayRangeMismatch() throws Exception {
+        double prices1[] = genPrices(100, 1, 10, 2, 0.3);
+        double prices2[] = genPrices(100, 2, 10, 3, 0.3);
+        PairStrategy ps = getStrategyMock();
+        PairTradingModelKalmanGrid mod = createGridModel(ps);
+        mod.setPrices(prices1, prices2);
+        assertTrue(store.save("s1", mod, series(1000, prices1, prices2)));
+
+        // a bar inside the range missing (and one more at the end): the last bar of the range is from another day
+        int days[] = new int[101];
+        for(int i=0; i<101; i++) days[i] = 1000+i+(i>=50 ? 1 : 0);
+        double ext1[] = Arrays.copyOf(prices1, 101);
+        double ext2[] = Arrays.copyOf(prices2, 101);
+        AlignedPairSeries gap = AlignedPairSeries.join(new BarSeries(days, ext1), new BarSeries(days.clone(), ext2));
+        PairTradingModelKalmanGrid other = createGridModel(ps);
+        assertFalse(store.restore("s1", other, gap));
+        assertFalse(other.isPricesInitialized());
+    }
+
+    @Test
+    public void testAutoRoundTrip() throws Exception {
+        double prices1[] = genPrices(200, 1, 10, 2, 0.3);
+        double prices2[] = genPrices(200, 2, 10, 3, 0.3);
+        PairStrategy ps = getStrategyMock();
+
+        PairTradingModelKalmanAuto reference = new PairTradingModelKalmanAuto(new MarketRates(), new MarketRates(), mock(Logger.class));
+        reference.setupFromStrategy(ps);
+        reference.setPrices(prices1, prices2);
+
+        PairTradingModelKalmanAuto mod = new PairTradingModelKalmanAuto(new MarketRates(), new MarketRates(), mock(Logger.class));
+        mod.setupFromStrategy(ps);
+        mod.setPrices(prices1, prices2);
+        mod.lockState(new PairTradingModelKalmanAutoState(50));
+        assertTrue(store.save("s2", mod, series(1000, prices1, prices2)));
+
+        // restored without a lock, the lock of the snapshot must not survive
+        PairTradingModelKalmanAuto restored = new PairTradingModelKalmanAuto(new MarketRates(), new MarketRates(), mock(Logger.class));
+        restored.setupFromStrategy(ps);
+        assertTrue(store.restore("s2", restored, series(1000, prices1, prices2)));
+        assertEquals(-1, restored.grid.getLockedModelId());
+        assertEquals(reference.grid.getCurrentDelta(), restored.grid.getCurrentDelta(), 0);
+        assertEquals(reference.grid.getBeta(), restored.grid.getBeta(), 0);
+        assertEquals(reference.grid.getAlpha(), restored.grid.getAlpha(), 0);
+        assertEquals(reference.grid.getSq(), restored.grid.getSq(), 0);
+        assertEquals(reference.lastScore, restored.lastScore, 0);
+    }
+}
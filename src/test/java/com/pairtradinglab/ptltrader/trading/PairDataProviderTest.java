@@ -25,9 +25,6 @@ import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 
-import java.util.ArrayList;
-import java.util.TreeMap;
-
 import com.google.common.eventbus.EventBus;
 import com.ib.client.*;
 
@@ -40,7 +37,6 @@ import com.pairtradinglab.ptltrader.trading.events.Error;
 
 import static org.mockito.Mockito.*;
 
-import org.joda.time.DateTime;
 import org.mockito.invocation.InvocationOnMock;
 import org.mockito.stubbing.Answer;
 import org.picocontainer.DefaultPicoContainer;
@@ -67,6 +63,8 @@ public class PairDataProviderTest {
 		
 		pico = new DefaultPicoContainer();
 		pico.addComponent(HistoricalDataProviderFactoryImpl.class);
+		pico.addComponent(HistoricalBarCache.class);
+		pico.addComponent(DailyBarStore.class);
 		pico.addComponent(StringXorProcessor.class);
 		pico.addComponent(runtimeMock);
 		//LoggerFactory lf = new LoggerFactoryImpl();
@@ -151,18 +149,10 @@ public class PairDataProviderTest {
 		int rid = pdr.allocReqId();
 		assertTrue(rid>10000000);
 		pdr.requestData();
-		TreeMap<DateTime, Double> res1 = pdr.getDataOut1();
-		//System.out.println(res1);
-		TreeMap<DateTime, Double> res2 = pdr.getDataOut2();
-		//System.out.println(res2);
-		//assertEquals("{2013-01-02T00:00:00.000+01:00=11.0, 2013-01-03T00:00:00.000+01:00=12.0}", res1.toString());
-		List<Double> prices1 = new ArrayList<>(res1.values());
-		assertArrayEquals(new Double[]{11.0, 12.0}, prices1.toArray());
-		// TODO also check keys
-		//assertEquals("{2013-01-02T00:00:00.000+01:00=21.0, 2013-01-03T00:00:00.000+01:00=22.0}", res2.toString());
-		List<Double> prices2 = new ArrayList<>(res2.values());
-		assertArrayEquals(new Double[]{21.0, 22.0}, prices2.toArray());
-		// TODO also check keys
+		AlignedPairSeries res = pdr.getSeries();
+		assertArrayEquals(new int[]{15707, 15708}, res.days); // 2013-01-02, 2013-01-03
+		assertArrayEquals(new double[]{11.0, 12.0}, res.prices1, 0);
+		assertArrayEquals(new double[]{21.0, 22.0}, res.prices2, 0);
 		
 	}
 	
@@ -219,12 +209,7 @@ public class PairDataProviderTest {
 		int rid = pdr.allocReqId();
 		assertTrue(rid>10000000);
 		pdr.requestData();
-		TreeMap<DateTime, Double> res1 = pdr.getDataOut1();
-		//System.out.println(res1);
-		TreeMap<DateTime, Double> res2 = pdr.getDataOut2();
-		//System.out.println(res2);
-		assertEquals("{}", res1.toString());
-		assertEquals("{}", res2.toString());
+		assertEquals(0, pdr.getSeries().size());
 		
 	}
 
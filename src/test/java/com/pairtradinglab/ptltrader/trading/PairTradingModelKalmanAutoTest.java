@@ -28,6 +28,7 @@ import org.junit.Before;
 import org.junit.Test;
 
 import java.io.IOException;
+import java.util.Arrays;
 
 import static org.junit.Assert.*;
 import static org.mockito.Mockito.mock;
@@ -350,6 +351,28 @@ public class PairTradingModelKalmanAutoTest {
 
     }
 
+    @Test
+    public void testAppendPrices() {
+        double prices1[] = genPrices(140, 1, 10, 2, 0.3);
+        double prices2[] = genPrices(140, 2, 10, 3, 0.3);
+        PairStrategy ps = getStrategyMock();
+        mod.setupFromStrategy(ps);
+        mod.setPrices(Arrays.copyOf(prices1, 139), Arrays.copyOf(prices2, 139));
+        mod.lockState(new PairTradingModelKalmanAutoState(50));
+        // only the last bar is new, the result must be the same as of setPrices
+        mod.appendPrices(prices1, prices2);
+
+        PairTradingModelKalmanAutoState st = (PairTradingModelKalmanAutoState) mod.getCurrentState();
+        assertEquals(50, st.subModelId);
+        assertEquals(1.9335730275008196, mod.grid.getBeta(), 0.00000001);
+        assertEquals(0.08686177054369819, mod.grid.getAlpha(), 0.00000001);
+        assertEquals(0.07565427555080334, mod.grid.getSq(), 0.00000001);
+        assertEquals(-1.2429170825865246, mod.lastScore, 0.00000001);
+
+        mod.unlockState();
+        basicModelCheck();
+    }
+
     @Test
     public void testLockLogic() {
         double prices1[] = genPrices(140, 1, 10, 2, 0.3);
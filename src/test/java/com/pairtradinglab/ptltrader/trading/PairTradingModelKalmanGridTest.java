@@ -24,6 +24,8 @@ import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.util.Arrays;
+
 import static org.junit.Assert.*;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
@@ -415,4 +417,28 @@ public class PairTradingModelKalmanGridTest {
 
     }
 
+    @Test
+    public void testAppendPrices() {
+        double prices1[] = genPrices(100, 1, 10, 2, 0.3);
+        double prices2[] = genPrices(100, 2, 10, 3, 0.3);
+        PairStrategy ps = getStrategyMock();
+        mod.setupFromStrategy(ps);
+        mod.setPrices(Arrays.copyOf(prices1, 98), Arrays.copyOf(prices2, 98));
+        // only the last 2 bars are new
+        mod.appendPrices(prices1, prices2);
+        assertTrue(mod.isPricesInitialized());
+        basicCheck();
+
+        // nothing new
+        mod.appendPrices(prices1, prices2);
+        basicCheck();
+
+        // history changed: full replay
+        double changed1[] = prices1.clone();
+        changed1[10] += 0.5;
+        mod.appendPrices(changed1, prices2);
+        assertNotEquals(0.116136338158041, mod.grid.getAlpha(), 0.00000001);
+        mod.appendPrices(prices1, prices2);
+        basicCheck();
+    }
 }
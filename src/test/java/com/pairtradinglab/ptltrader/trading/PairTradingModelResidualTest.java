@@ -21,6 +21,8 @@ package com.pairtradinglab.ptltrader.trading;
 import static org.junit.Assert.*;
 import static org.mockito.Mockito.mock;
 
+import java.util.Arrays;
+
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
@@ -487,6 +489,71 @@ public class PairTradingModelResidualTest {
 		
 		
 	}
-
+	
+	@Test
+	public void testEvaluationFollowsQuotes() {
+		double prices1[] = genPrices(31, 1, 10, 2, 0.3);
+		double prices2[] = genPrices(31, 2, 10, 3, 0.3);
+		mod.setPrices(prices1, prices2);
+		
+		MarketRates mr1 = mod.getMr1();
+		MarketRates mr2 = mod.getMr2();
+		mr1.setBid(13.5);
+		mr1.setAsk(13.5);
+		mr2.setBid(18);
+		mr2.setAsk(18);
+		
+		assertEquals(-2.116644, mod.getZScore(PairTradingModel.ZSCORE_BID), 0.0001);
+		long serial = mod.getEvaluation().serial;
+		mod.getZScore(PairTradingModel.ZSCORE_ASK);
+		mod.entryLogic();
+		mod.exitLogic(PairTradingModel.SIGNAL_LONG);
+		assertEquals(serial, mod.getEvaluation().serial);
+		
+		// new quote
+		mr1.setBid(14);
+		mr1.setAsk(14);
+		mr2.setBid(17.2);
+		mr2.setAsk(17.2);
+		assertEquals(1.6708805, mod.getZScore(PairTradingModel.ZSCORE_AUTO), 0.0001);
+		assertEquals(serial+1, mod.getEvaluation().serial);
+		
+		// new model state with the same quote
+		mod.setPrices(genPrices(31, 1, 10, 2, 0.5), prices2);
+		assertNotEquals(1.6708805, mod.getZScore(PairTradingModel.ZSCORE_AUTO), 0.0001);
+		assertEquals(serial+2, mod.getEvaluation().serial);
+	}
+	
+	@Test
+	public void testAppendPrices() {
+		double prices1[] = genPrices(100, 1, 10, 2, 0.3);
+		double prices2[] = genPrices(100, 2, 10, 3, 0.3);
+		PairTradingModelResidual full = new PairTradingModelResidual(new MarketRates(), new MarketRates(), mock(Logger.class));
+		full.setPrices(prices1, prices2);
+		
+		mod.setPrices(Arrays.copyOf(prices1, 60), Arrays.copyOf(prices2, 60));
+		// only the last 40 bars are new
+		mod.appendPrices(prices1, prices2);
+		assertTrue(mod.isPricesInitialized());
+		assertEquals(100, mod.getConsumedCount());
+		
+		for (PairTradingModelResidual m : new PairTradingModelResidual[] {mod, full}) {
+			m.getMr1().setBid(107);
+			m.getMr1().setAsk(107.2);
+			m.getMr2().setBid(204);
+			m.getMr2().setAsk(204.1);
+		}
+		assertEquals(full.getZScore(PairTradingModel.ZSCORE_BID), mod.getZScore(PairTradingModel.ZSCORE_BID), 1e-9);
+		assertEquals(full.getZScore(PairTradingModel.ZSCORE_ASK), mod.getZScore(PairTradingModel.ZSCORE_ASK), 1e-9);
+		assertEquals(full.getStatusInfo(), mod.getStatusInfo());
+		
+		// history changed: full setPrices
+		double changed1[] = prices1.clone();
+		changed1[90] += 0.5;
+		mod.appendPrices(changed1, prices2);
+		assertNotEquals(full.getZScore(PairTradingModel.ZSCORE_BID), mod.getZScore(PairTradingModel.ZSCORE_BID), 1e-9);
+		mod.appendPrices(prices1, prices2);
+		assertEquals(full.getZScore(PairTradingModel.ZSCORE_BID), mod.getZScore(PairTradingModel.ZSCORE_BID), 1e-9);
+	}
 
 }
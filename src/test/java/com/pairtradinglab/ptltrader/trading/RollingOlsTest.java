@@ -0,0 +1,124 @@
+/**
+ * 	This file is part of PTL Trader.
+ *
+ * 	Copyright © 2011-2021 Quantverse OÜ. All Rights Reserved.
+ *
+ *  PTL Trader is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  PTL Trader is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with PTL Trader. If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.pairtradinglab.ptltrader.trading;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+public class RollingOlsTest {
+	
+	// straightforward regression over prices[from, from+n)
+	private static double[] reference(double[] prices1, double[] prices2, int from, int n) {
+		double m1 = 0;
+		double m2 = 0;
+		for (int i=from; i<from+n; i++) {
+			m1 += prices1[i];
+			m2 += prices2[i];
+		}
+		m1 /= n;
+		m2 /= n;
+		double cov = 0;
+		double var = 0;
+		for (int i=from; i<from+n; i++) {
+			cov += (prices1[i]-m1)*(prices2[i]-m2);
+			var += (prices2[i]-m2)*(prices2[i]-m2);
+		}
+		double a = cov/var;
+		double b = m1-a*m2;
+		double sqsum = 0;
+		for (int i=from; i<from+n; i++) sqsum += (prices1[i]-a*prices2[i]-b)*(prices1[i]-a*prices2[i]-b);
+		return new double[] {a, b, Math.sqrt(sqsum/n)};
+	}
+	
+	private static void assertResult(double[] expected, OlsResult r) {
+		assertEquals(expected[0], r.A, 1e-9);
+		assertEquals(expected[1], r.B, 1e-7);
+		assertEquals(expected[2], r.stdDev, 1e-8);
+	}
+	
+	private static double[][] genPrices(int len, long seed) {
+		Random rnd = new Random(seed);
+		double[][] out = new double[2][len];
+		double p2 = 120;
+		for (int i=0; i<len; i++) {
+			p2 += rnd.nextGaussian();
+			out[1][i] = p2;
+			out[0][i] = 0.7*p2+15+0.8*rnd.nextGaussian();
+		}
+		return out;
+	}
+
+	@Test
+	public void testRolling() {
+		double[][] p = genPrices(1000, 3);
+		RollingOls ols = new RollingOls(30);
+		for (int i=0; i<p[0].length; i++) {
+			ols.add(p[0][i], p[1][i]);
+			if (i==0) continue;
+			assertEquals(Math.min(i+1, 30), ols.getCount());
+			int n = ols.getCount();
+			assertResult(reference(p[0], p[1], i+1-n, n), ols.getResult());
+		}
+		assertTrue(ols.isReady());
+	}
+	
+	@Test
+	public void testLastSpread() {
+		double[][] p = genPrices(40, 5);
+		RollingOls ols = new RollingOls(30);
+		ols.addAll(p[0], p[1], 39);
+		OlsResult r = ols.getResult(p[0][39], p[1][39]);
+		assertEquals(p[0][39]-(r.A*p[1][39]+r.B), r.lastSpread, 1e-12);
+		assertEquals(0, ols.getResult().lastSpread, 0);
+		
+		OlsResult r2 = new OlsCalculator().calculate(30, 1, p[0], p[1]);
+		assertResult(new double[] {r.A, r.B, r.stdDev}, r2);
+		assertEquals(r.lastSpread, r2.lastSpread, 1e-12);
+	}
+	
+	@Test
+	public void testResync() {
+		// many wraps of a short window on a series wandering far from its first bar
+		double[][] p = genPrices(20000, 13);
+		for (int i=0; i<p[0].length; i++) {
+			p[0][i] += 0.05*i;
+			p[1][i] += 0.05*i;
+		}
+		RollingOls ols = new RollingOls(25);
+		for (int i=0; i<p[0].length; i++) {
+			ols.add(p[0][i], p[1][i]);
+			if (i>=19950) assertResult(reference(p[0], p[1], i-24, 25), ols.getResult());
+		}
+	}
+	
+	@Test
+	public void testReset() {
+		double[][] p = genPrices(100, 11);
+		RollingOls ols = new RollingOls(20);
+		ols.addAll(p[0], p[1], 60);
+		ols.reset();
+		assertEquals(0, ols.getCount());
+		ols.addAll(p[0], p[1], 100);
+		assertResult(reference(p[0], p[1], 80, 20), ols.getResult());
+	}
+
+}
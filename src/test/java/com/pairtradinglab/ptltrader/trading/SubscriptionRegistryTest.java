@@ -0,0 +1,122 @@
+/**
+ * 	This file is part of PTL Trader.
+ *
+ * 	Copyright © 2011-2021 Quantverse OÜ. All Rights Reserved.
+ *
+ *  PTL Trader is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  PTL Trader is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with PTL Trader. If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.pairtradinglab.ptltrader.trading;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import java.util.Map;
+
+import org.apache.log4j.Logger;
+import org.junit.Before;
+import org.junit.Test;
+
+public class SubscriptionRegistryTest {
+	
+	private TickRouter router;
+	private SubscriptionRegistry registry;
+	
+	@Before
+	public void setUp() throws Exception {
+		router = new TickRouter(mock(Logger.class));
+		registry = new SubscriptionRegistry(router);
+	}
+
+	@Test
+	public void testFirstSubscriberRequestsData() {
+		int reqId = registry.subscribe("NYSE:A", "s1");
+		assertTrue(reqId>20000000);
+		assertEquals(0, registry.subscribe("NYSE:A", "s2"));
+		assertEquals(0, registry.subscribe("NYSE:A", "s2"));
+		assertEquals(2, registry.getSubscriberCount("NYSE:A"));
+		
+		assertEquals(router.getSymbolId("NYSE:A"), registry.getSymbolId(reqId));
+		assertEquals("NYSE:A", registry.getSymbol(reqId));
+		assertEquals(reqId, registry.getReqId("NYSE:A"));
+		assertEquals(0, registry.getSymbolId(reqId+1));
+		assertNull(registry.getSymbol(reqId+1));
+	}
+	
+	@Test
+	public void testLastSubscriberCancelsData() {
+		int reqId = registry.subscribe("NYSE:A", "s1");
+		registry.subscribe("NYSE:A", "s2");
+		int reqIdB = registry.subscribe("NASDAQ:B", "s1");
+		
+		assertEquals(0, registry.unsubscribe("NYSE:A", "s3")); // unknown subscriber
+		assertEquals(0, registry.unsubscribe("NYSE:X", "s1")); // no subscription
+		assertEquals(0, registry.unsubscribe("NYSE:A", "s1"));
+		assertEquals(0, registry.unsubscribe("NYSE:A", "s1"));
+		assertEquals(reqId, registry.unsubscribe("NYSE:A", "s2"));
+		
+		assertEquals(0, registry.getSymbolId(reqId));
+		assertEquals(0, registry.getReqId("NYSE:A"));
+		assertEquals("NASDAQ:B", registry.getSymbol(reqIdB));
+		
+		int reqId2 = registry.subscribe("NYSE:A", "s1");
+		assertNotEquals(reqId, reqId2);
+		assertEquals("NYSE:A", registry.getSymbol(reqId2));
+	}
+	
+	@Test
+	public void testResubscribeAll() {
+		int reqIdA = registry.subscribe("NYSE:A", "s1");
+		int reqIdB = registry.subscribe("NASDAQ:B", "s2");
+		registry.subscribe("NYSE:C", "s1");
+		registry.unsubscribe("NYSE:C", "s1");
+		
+		Map<Integer, String> out = registry.resubscribeAll();
+		assertEquals(2, out.size());
+		assertTrue(out.containsValue("NYSE:A"));
+		assertTrue(out.containsValue("NASDAQ:B"));
+		assertNull(registry.getSymbol(reqIdA));
+		assertNull(registry.getSymbol(reqIdB));
+		for (Map.Entry<Integer, String> e: out.entrySet()) {
+			assertEquals(e.getValue(), registry.getSymbol(e.getKey()));
+			assertEquals((int) e.getKey(), registry.getReqId(e.getValue()));
+		}
+		assertEquals(0, registry.subscribe("NYSE:A", "s3"));
+	}
+	
+	@Test
+	public void testClear() {
+		int reqId = registry.subscribe("NYSE:A", "s1");
+		registry.clear();
+		assertNull(registry.getSymbol(reqId));
+		assertEquals(0, registry.getSubscriberCount("NYSE:A"));
+		assertEquals(0, registry.unsubscribe("NYSE:A", "s1"));
+		assertTrue(registry.subscribe("NYSE:A", "s1")>0);
+	}
+	
+	@Test
+	public void testIntTable() {
+		SubscriptionRegistry.IntTable t = SubscriptionRegistry.IntTable.EMPTY;
+		for (int i=1; i<=1000; i++) t = t.with(20000000+i, i);
+		assertEquals(1000, t.size());
+		for (int i=1; i<=1000; i++) assertEquals(i, t.get(20000000+i));
+		assertEquals(0, t.get(20000000));
+		t = t.with(20000005, 7);
+		assertEquals(1000, t.size());
+		assertEquals(7, t.get(20000005));
+		for (int i=1; i<=1000; i+=2) t = t.without(20000000+i);
+		assertEquals(500, t.size());
+		for (int i=1; i<=1000; i++) assertEquals(i%2==0 ? (i==5 ? 7 : i) : 0, t.get(20000000+i));
+	}
+
+}
@@ -0,0 +1,118 @@
+/**
+ * 	This file is part of PTL Trader.
+ *
+ * 	Copyright © 2011-2021 Quantverse OÜ. All Rights Reserved.
+ *
+ *  PTL Trader is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  PTL Trader is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with PTL Trader. If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.pairtradinglab.ptltrader.trading;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+public class TickRingTest {
+	
+	private static class Collector implements TickListener {
+		final List<double[]> ticks = new ArrayList<double[]>();
+
+		@Override
+		public void onTick(int symbolId, int field, double price, int canAutoExecute, long nanoTime) {
+			ticks.add(new double[] {symbolId, field, price, nanoTime});
+		}
+	}
+
+	@Test
+	public void testFifo() {
+		TickRing r = new TickRing(4);
+		assertTrue(r.offer(1, 1, 10.5, 0, 100));
+		assertTrue(r.offer(2, 2, 20.5, 1, 101));
+		assertEquals(2, r.size());
+		
+		Collector c = new Collector();
+		assertEquals(2, r.drainTo(c));
+		assertEquals(0, r.size());
+		assertEquals(2, c.ticks.size());
+		assertArrayEquals(new double[] {1, 1, 10.5, 100}, c.ticks.get(0), 0);
+		assertArrayEquals(new double[] {2, 2, 20.5, 101}, c.ticks.get(1), 0);
+		
+		assertEquals(0, r.drainTo(c));
+	}
+	
+	@Test
+	public void testOverflowAndWrap() {
+		TickRing r = new TickRing(2);
+		assertTrue(r.offer(1, 1, 1, 0, 1));
+		assertTrue(r.offer(1, 1, 2, 0, 2));
+		assertFalse(r.offer(1, 1, 3, 0, 3));
+		assertFalse(r.offer(1, 1, 4, 0, 4)); // conflated with the previous one
+		assertFalse(r.offer(2, 1, 5, 0, 5));
+		assertEquals(3, r.getConflated());
+		assertEquals(0, r.getDropped());
+		
+		Collector c = new Collector();
+		assertEquals(4, r.drainTo(c));
+		assertEquals(4, c.ticks.size());
+		assertEquals(2, c.ticks.get(1)[2], 0);
+		// the latest price of each symbol and field survives
+		assertEquals(4, c.ticks.get(2)[2], 0);
+		assertEquals(5, c.ticks.get(3)[2], 0);
+		
+		assertTrue(r.offer(1, 2, 6, 0, 6));
+		assertEquals(1, r.drainTo(c));
+		assertEquals(5, c.ticks.size());
+		assertEquals(6, c.ticks.get(4)[2], 0);
+	}
+	
+	@Test
+	public void testOverflowSuperseded() {
+		TickRing r = new TickRing(2);
+		r.offer(1, 1, 1, 0, 1);
+		r.offer(2, 1, 2, 0, 2);
+		assertFalse(r.offer(1, 1, 3, 0, 3));
+		
+		final Collector c = new Collector();
+		final TickRing ring = r;
+		// the producer queues newer ticks while the consumer drains the ring
+		r.drainTo(new TickListener() {
+			@Override
+			public void onTick(int symbolId, int field, double price, int canAutoExecute, long nanoTime) {
+				c.onTick(symbolId, field, price, canAutoExecute, nanoTime);
+				if (price==1) ring.offer(1, 1, 4, 0, 4);
+			}
+		});
+		r.drainTo(c);
+		assertEquals(3, c.ticks.size());
+		assertEquals(4, c.ticks.get(2)[2], 0);
+		assertEquals(0, r.size());
+	}
+	
+	@Test
+	public void testPendingFlag() {
+		TickRing r = new TickRing(4);
+		assertTrue(r.markPending());
+		assertFalse(r.markPending());
+		r.drainTo(new Collector());
+		assertTrue(r.markPending());
+	}
+	
+	@Test(expected=IllegalArgumentException.class)
+	public void testCapacityMustBePowerOfTwo() {
+		new TickRing(6);
+	}
+
+}
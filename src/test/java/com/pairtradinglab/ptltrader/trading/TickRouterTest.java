@@ -0,0 +1,126 @@
+/**
+ * 	This file is part of PTL Trader.
+ *
+ * 	Copyright © 2011-2021 Quantverse OÜ. All Rights Reserved.
+ *
+ *  PTL Trader is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  PTL Trader is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with PTL Trader. If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.pairtradinglab.ptltrader.trading;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import org.apache.log4j.Logger;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.ib.client.TickType;
+
+public class TickRouterTest {
+	
+	private TickRouter router;
+	
+	@Before
+	public void setUp() throws Exception {
+		router = new TickRouter(mock(Logger.class));
+	}
+	
+	@Test
+	public void testSymbolIds() {
+		int a = router.getSymbolId("NYSE:A");
+		int b = router.getSymbolId("NASDAQ:B");
+		assertNotEquals(a, b);
+		assertEquals(a, router.getSymbolId("NYSE:A"));
+		assertEquals(b, router.getSymbolId("NASDAQ:B"));
+	}
+
+	@Test
+	public void testRoutesOnlyToSubscribers() {
+		TickListener a = mock(TickListener.class);
+		TickListener b = mock(TickListener.class);
+		router.subscribe("NYSE:A", a);
+		router.subscribe("NASDAQ:B", b);
+		int idA = router.getSymbolId("NYSE:A");
+		
+		router.route("NYSE:A", TickType.BID, 10.5, 0);
+		verify(a).onTick(eq(idA), eq(TickType.BID), eq(10.5), anyInt(), anyLong());
+		verify(b, never()).onTick(anyInt(), anyInt(), anyDouble(), anyInt(), anyLong());
+		
+		router.route("NYSE:C", TickType.BID, 1, 0);
+		verifyNoMoreInteractions(a, b);
+	}
+	
+	@Test
+	public void testRouteBySymbolId() {
+		TickListener a = mock(TickListener.class);
+		router.subscribe("NYSE:A", a);
+		int idA = router.getSymbolId("NYSE:A");
+		assertEquals("NYSE:A", router.getSymbol(idA));
+		assertNull(router.getSymbol(idA+1000));
+		
+		router.route(idA, TickType.BID, 10.5, 0);
+		verify(a).onTick(eq(idA), eq(TickType.BID), eq(10.5), anyInt(), anyLong());
+		
+		router.route(idA+1000, TickType.BID, 1, 0);
+		router.route(0, TickType.BID, 1, 0);
+		verifyNoMoreInteractions(a);
+	}
+	
+	@Test
+	public void testManySymbolIds() {
+		for (int i=0; i<1000; i++) {
+			int id = router.getSymbolId("NYSE:S"+i);
+			assertEquals("NYSE:S"+i, router.getSymbol(id));
+		}
+	}
+	
+	@Test
+	public void testDuplicateSubscriptionDeliversOnce() {
+		TickListener a = mock(TickListener.class);
+		router.subscribe("NYSE:A", a);
+		router.subscribe("NYSE:A", a);
+		assertEquals(1, router.getListenerCount("NYSE:A"));
+		
+		router.route("NYSE:A", TickType.ASK, 10.6, 0);
+		verify(a, times(1)).onTick(anyInt(), eq(TickType.ASK), eq(10.6), anyInt(), anyLong());
+	}
+	
+	@Test
+	public void testUnsubscribe() {
+		TickListener a = mock(TickListener.class);
+		TickListener b = mock(TickListener.class);
+		router.subscribe("NYSE:A", a);
+		router.subscribe("NYSE:A", b);
+		router.unsubscribe("NYSE:A", a);
+		router.unsubscribe("NYSE:X", a);
+		assertEquals(1, router.getListenerCount("NYSE:A"));
+		
+		router.route("NYSE:A", TickType.LAST, 10.55, 0);
+		verify(a, never()).onTick(anyInt(), anyInt(), anyDouble(), anyInt(), anyLong());
+		verify(b).onTick(anyInt(), eq(TickType.LAST), eq(10.55), anyInt(), anyLong());
+	}
+	
+	@Test
+	public void testFailingListenerDoesNotStopDelivery() {
+		TickListener a = mock(TickListener.class);
+		TickListener b = mock(TickListener.class);
+		doThrow(new IllegalStateException("boom")).when(a).onTick(anyInt(), anyInt(), anyDouble(), anyInt(), anyLong());
+		router.subscribe("NYSE:A", a);
+		router.subscribe("NYSE:A", b);
+		
+		router.route("NYSE:A", TickType.LAST, 10.55, 0);
+		verify(b).onTick(anyInt(), eq(TickType.LAST), eq(10.55), anyInt(), anyLong());
+	}
+
+}
@@ -0,0 +1,108 @@
+/**
+ * 	This file is part of PTL Trader.
+ *
+ * 	Copyright © 2011-2021 Quantverse OÜ. All Rights Reserved.
+ *
+ *  PTL Trader is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  PTL Trader is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with PTL Trader. If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.pairtradinglab.ptltrader.trading;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+public class WilderRsiTest {
+	
+	// TA-Lib rsi over the whole buffer, the last value being the trailing one
+	private static double referenceRsi(double[] buffer, int period) {
+		double prev = buffer[0];
+		double gain = 0;
+		double loss = 0;
+		int today = 1;
+		for (int i=0; i<period; i++) {
+			double d = buffer[today]-prev;
+			prev = buffer[today++];
+			if (d<0) loss -= d; else gain += d;
+		}
+		loss /= period;
+		gain /= period;
+		while (today<buffer.length) {
+			double d = buffer[today]-prev;
+			prev = buffer[today++];
+			loss = (loss*(period-1)+(d<0 ? -d : 0))/period;
+			gain = (gain*(period-1)+(d<0 ? 0 : d))/period;
+		}
+		if (Math.abs(gain+loss)<0.00000001) return 0;
+		return 100.0*gain/(gain+loss);
+	}
+	
+	private static double[] window(double[] values, int lookback, double trailing) {
+		double[] out = new double[lookback+1];
+		System.arraycopy(values, values.length-lookback, out, 0, lookback);
+		out[lookback] = trailing;
+		return out;
+	}
+
+	@Test
+	public void testSameAsFullWindow() {
+		Random rnd = new Random(7);
+		double[] values = new double[80];
+		for (int i=0; i<values.length; i++) values[i] = 1+0.1*rnd.nextGaussian();
+		int[][] cases = {{10, 34}, {6, 30}, {14, 14}, {2, 2}, {2, 80}};
+		for (int[] c: cases) {
+			WilderRsi rsi = new WilderRsi();
+			rsi.prime(values, values.length, c[0], c[1]);
+			for (int k=0; k<20; k++) {
+				double trailing = 1+0.1*rnd.nextGaussian();
+				assertEquals(referenceRsi(window(values, c[1], trailing), c[0]), rsi.valueWith(trailing), 1e-9);
+			}
+		}
+	}
+	
+	@Test
+	public void testFlatSeries() {
+		double[] values = new double[40];
+		java.util.Arrays.fill(values, 2.0);
+		WilderRsi rsi = new WilderRsi();
+		rsi.prime(values, values.length, 10, 34);
+		assertEquals(0, rsi.valueWith(2.0), 0);
+		assertEquals(100, rsi.valueWith(2.1), 1e-9);
+		assertEquals(0, rsi.valueWith(1.9), 1e-9);
+	}
+	
+	@Test
+	public void testPrimeChecks() {
+		WilderRsi rsi = new WilderRsi();
+		assertFalse(rsi.isPrimed());
+		try {
+			rsi.prime(new double[10], 10, 6, 30);
+			fail();
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+		try {
+			rsi.prime(new double[10], 10, 1, 5);
+			fail();
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+		rsi.prime(new double[10], 10, 6, 10);
+		assertTrue(rsi.isPrimed());
+		rsi.reset();
+		assertFalse(rsi.isPrimed());
+	}
+
+}
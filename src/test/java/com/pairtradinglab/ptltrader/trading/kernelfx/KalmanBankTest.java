@@ -0,0 +1,144 @@
+/**
+ * 	This file is part of PTL Trader.
+ *
+ * 	Copyright © 2011-2021 Quantverse OÜ. All Rights Reserved.
+ *
+ *  PTL Trader is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  PTL Trader is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with PTL Trader. If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.pairtradinglab.ptltrader.trading.kernelfx;
+import static org.junit.Assert.*;
+
+import org.junit.Before;
+import org.junit.Test;
+
+
+public class KalmanBankTest {
+    private static final double[] DELTAS = {1e-13, 1e-8, 1e-5, 1e-3, 0.01, 0.1};
+    private static final double[] VES = {1e-4, 1e-3};
+
+    private KalmanBank t;
+    private SubModelKalman[] reference;
+
+    @Before
+    public void setUp() throws Exception {
+        t = new KalmanBank();
+        reference = new SubModelKalman[DELTAS.length * VES.length];
+        int n = 0;
+        for (double delta : DELTAS) {
+            for (double ve : VES) {
+                assertEquals(n, t.add(delta, ve));
+                SubModelKalman m = new SubModelKalman();
+                m.delta = delta;
+                m.Ve = ve;
+                m.init();
+                reference[n++] = m;
+            }
+        }
+    }
+
+    @Test
+    public void testNotReadyState() {
+        assertFalse(t.isReady());
+        assertEquals(reference.length, t.size());
+        double[] scores = new double[t.size()];
+        t.evaluate(10, 5, scores);
+        for (double s : scores) assertEquals(0, s, 0);
+    }
+
+    @Test
+    public void testMatchesSingleFilters() {
+        double[] scores = new double[t.size()];
+        for (int i=0; i<200; i++) {
+            double p1 = 10+0.2*i+0.2*Math.sin(2*i);
+            double p2 = 5+0.1*i+0.1*Math.cos(2.1*i);
+            t.update(p1, p2);
+            for (SubModelKalman m : reference) m.update(p1, p2);
+            assertTrue(t.isReady());
+
+            t.evaluate(p1, p2, scores);
+            for (int j=0; j<reference.length; j++) {
+                // must be bit-identical, not just close
+                assertEquals(reference[j].getSq(), t.getSq(j), 0);
+                assertEquals(reference[j].getUncompB0(), t.getUncompB0(j), 0);
+                assertEquals(reference[j].getUncompB1(), t.getUncompB1(j), 0);
+                assertEquals(reference[j].evaluate(p1, p2), scores[j], 0);
+            }
+        }
+    }
+
+    @Test
+    public void testClearAndGrow() {
+        for (int i=0; i<10; i++) t.update(10+i, 5+0.5*i);
+        t.clear();
+        assertEquals(0, t.size());
+        assertFalse(t.isReady());
+
+        // more filters than the initial capacity
+        for (int i=0; i<150; i++) t.add(Math.pow(10, -13+i*0.08), 0.001);
+        assertEquals(150, t.size());
+        assertEquals(0.001, t.getVe(149), 0);
+        assertEquals(Math.pow(10, -13+149*0.08), t.getDelta(149), 0);
+
+        SubModelKalman m = new SubModelKalman();
+        m.delta = t.getDelta(100);
+        m.Ve = 0.001;
+        m.init();
+        for (int i=0; i<30; i++) {
+            t.update(10+i, 5+0.5*i);
+            m.update(10+i, 5+0.5*i);
+        }
+        assertEquals(m.getSq(), t.getSq(100), 0);
+        assertEquals(m.getUncompB0(), t.getUncompB0(100), 0);
+        assertEquals(m.getUncompB1(), t.getUncompB1(100), 0);
+    }
+
+    // fixed values of a single filter with the default delta and Ve, the former SubModelKalman ones
+    private static double[] fixedRun(boolean transformFirst) {
+        KalmanBank b = new KalmanBank();
+        b.add(0.0001, 0.001);
+        double x=0, y=0;
+        for (int i=0; i<20; i++) {
+            double p1 = 10+0.2*i+0.2*Math.sin(2*i);
+            double p2 = 5+0.1*i+0.1*Math.cos(2.1*i);
+            x = transformFirst ? 0.1+1000/p1 : p1; // P = B + A/P with the default transformation
+            y = p2;
+            b.update(x, y);
+        }
+        assertTrue(b.isReady());
+        double[] score = new double[1];
+        b.evaluate(x, y, score);
+        double[] again = new double[1];
+        b.evaluate(x, y, again); // must not update
+        assertEquals(score[0], again[0], 0);
+        return new double[] {b.getBeta0(0), b.getBeta1(0), b.getSq(0), score[0]};
+    }
+
+    @Test
+    public void testFixedValues() {
+        double[] r = fixedRun(false);
+        assertEquals(0.490806423362324, r[0], 0.00000001);
+        assertEquals(0.051850568750981339, r[1], 0.00000001);
+        assertEquals(0.14603949931646956, r[2], 0.00000001);
+        assertEquals(0.27710924803989823/0.14603949931646956, r[3], 0.00000001);
+    }
+
+    @Test
+    public void testFixedValuesTransformed() {
+        double[] r = fixedRun(true);
+        assertEquals(0.094660770322177498, r[0], 0.00000001);
+        assertEquals(0.0011495341693955664, r[1], 0.00000001);
+        assertEquals(0.72398175751774163, r[2], 0.00000001);
+        assertEquals(-0.16939220772354258/0.72398175751774163, r[3], 0.00000001);
+    }
+}
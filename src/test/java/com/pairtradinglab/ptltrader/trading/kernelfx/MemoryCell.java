@@ -22,6 +22,10 @@ import net.jcip.annotations.NotThreadSafe;
 
 import java.util.ArrayList;
 
+/**
+ * Ring buffer of a single series. The trackers use the columnar ColumnRing; this is kept as its
+ * reference in the tests.
+ */
 @NotThreadSafe
 class MemoryCell {
     final int capacity;
@@ -20,6 +20,11 @@ package com.pairtradinglab.ptltrader.trading.kernelfx;
 
 import net.jcip.annotations.NotThreadSafe;
 
+/**
+ * Rolling linear regression of a single series over the positions, the (semi-)deviation computed by a
+ * pass over the window. The trackers use the columnar OlsColumns; this is kept as its
+ * reference in the tests.
+ */
 @NotThreadSafe
 class OlsCell extends MemoryCell {
 
@@ -0,0 +1,205 @@
+/**
+ * 	This file is part of PTL Trader.
+ *
+ * 	Copyright © 2011-2021 Quantverse OÜ. All Rights Reserved.
+ *
+ *  PTL Trader is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  PTL Trader is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with PTL Trader. If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.pairtradinglab.ptltrader.trading.kernelfx;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class OlsColumnsTest {
+
+    @Test
+    public void testInitialState() {
+        OlsColumns t = new OlsColumns(1, 4, 8);
+        t.reset();
+        assertEquals(0, t.size);
+        assertEquals(0, t.last(0), 0.000000001);
+        assertFalse(t.isReady());
+    }
+
+    @Test
+    public void testBasicFunctionality() {
+        OlsColumns t = new OlsColumns(1, 4, 8);
+        t.reset();
+        assertFalse(t.isReady());
+        assertEquals(0, t.last(0), 0.001);
+        assertEquals(1, t.add(new double[] {1}));
+        assertEquals(1, t.last(0), 0.001);
+        assertEquals(2, t.add(new double[] {3}));
+        assertEquals(3, t.add(new double[] {5}));
+        assertFalse(t.isReady());
+        assertEquals(0, t.predictNext(0), 0.001);
+        assertEquals(4, t.add(new double[] {7}));
+        assertTrue(t.isReady());
+        assertEquals(5, t.add(new double[] {9}));
+        assertEquals(6, t.add(new double[] {11}));
+        assertEquals(7, t.add(new double[] {13}));
+        assertTrue(t.isReady());
+        assertEquals(8, t.add(new double[] {15}));
+        assertTrue(t.isReady());
+        assertEquals(2, t.getA(0), 0.001);
+        assertEquals(1, t.getB(0), 0.001);
+        assertEquals(0, t.getStdDev(0), 0.001);
+        assertEquals(17, t.predictNext(0), 0.001);
+        assertEquals(8, t.add(new double[] {17.2}));
+        assertTrue(t.isReady());
+        assertEquals(2.0166666666666666, t.getA(0), 0.00000001);
+        assertEquals(0.95000000000000107, t.getB(0), 0.00000001);
+        assertEquals(0.032274861218395713, t.getStdDev(0), 0.00000001);
+
+        assertEquals(8, t.add(new double[] {25}));
+        assertTrue(t.isReady());
+        assertEquals(0.94557351311650217, t.getStdDev(0), 0.00000001);
+
+        assertEquals(25, t.last(0), 0.001);
+
+        assertEquals(8, t.size);
+    }
+
+    @Test
+    public void testBasicFunctionalityPeriod9() {
+        OlsColumns x = new OlsColumns(1, 4, 9);
+        x.reset();
+        assertFalse(x.isReady());
+        assertEquals(0, x.last(0), 0.001);
+        assertEquals(1, x.add(new double[] {1}));
+        assertEquals(1, x.last(0), 0.001);
+        assertEquals(2, x.add(new double[] {3}));
+        assertEquals(3, x.add(new double[] {5}));
+        assertFalse(x.isReady());
+        assertEquals(0, x.predictNext(0), 0.001);
+        assertEquals(4, x.add(new double[] {7}));
+        assertTrue(x.isReady());
+        assertEquals(5, x.add(new double[] {9}));
+        assertEquals(6, x.add(new double[] {11}));
+        assertEquals(7, x.add(new double[] {13}));
+        assertTrue(x.isReady());
+        assertEquals(8, x.add(new double[] {15}));
+        assertTrue(x.isReady());
+        assertEquals(9, x.add(new double[] {17}));
+        assertTrue(x.isReady());
+        assertEquals(2, x.getA(0), 0.001);
+        assertEquals(1, x.getB(0), 0.001);
+        assertEquals(0, x.getStdDev(0), 0.001);
+        assertEquals(19, x.predictNext(0), 0.001);
+        assertEquals(10, x.add(new double[] {19}));
+        assertTrue(x.isReady());
+        assertEquals(2, x.getA(0), 0.001);
+        assertEquals(1, x.getB(0), 0.001);
+        assertEquals(0, x.getStdDev(0), 0.001);
+        assertEquals(21, x.predictNext(0), 0.001);
+    }
+
+    @Test
+    public void testMatchesCells() throws Exception {
+        matchCells(false);
+    }
+
+    @Test
+    public void testMatchesCellsApproximate() throws Exception {
+        matchCells(true);
+    }
+
+    private void matchCells(boolean approximate) throws Exception {
+        for (boolean ignore : new boolean[] {true, false}) {
+            OlsColumns t = new OlsColumns(4, 20, 60);
+            t.ignorePositiveDeviation = ignore;
+            t.approximateSemiDeviation = approximate;
+            t.reset();
+            OlsCell[] cells = new OlsCell[4];
+            for (int i=0; i<cells.length; i++) {
+                cells[i] = new OlsCell(20, 60);
+                cells[i].ignorePositiveDeviation = ignore;
+                cells[i].reset();
+            }
+            Random r = new Random(5);
+            double[] row = new double[4];
+            for (int k=0; k<200; k++) {
+                for (int i=0; i<row.length; i++) {
+                    row[i] = t.last(i) + 0.001*i + 0.01*r.nextGaussian();
+                    cells[i].add(row[i]);
+                }
+                t.add(row);
+                assertEquals(cells[0].isReady(), t.isReady());
+                for (int i=0; i<row.length; i++) {
+                    assertEquals(cells[i].getA(), t.getA(i), 0);
+                    assertEquals(cells[i].getB(), t.getB(i), 0);
+                    assertEquals(cells[i].predictNext(), t.predictNext(i), 0);
+                    if (ignore && approximate) {
+                        // streaming approximation of the semi-deviation
+                        assertEquals(cells[i].getStdDev(), t.getStdDev(i), 0.05*cells[i].getStdDev());
+                    } else if (ignore) {
+                        assertEquals(cells[i].getStdDev(), t.getStdDev(i), 0);
+                    } else {
+                        assertEquals(cells[i].getStdDev(), t.getStdDev(i), 1e-12);
+                    }
+                }
+            }
+
+            ByteArrayOutputStream bos = new ByteArrayOutputStream();
+            t.writeState(new DataOutputStream(bos));
+            OlsColumns c = new OlsColumns(4, 20, 60);
+            c.ignorePositiveDeviation = ignore;
+            c.approximateSemiDeviation = approximate;
+            c.readState(new DataInputStream(new ByteArrayInputStream(bos.toByteArray())));
+            for (int i=0; i<row.length; i++) row[i] = t.last(i) + 0.01;
+            t.add(row);
+            c.add(row);
+            for (int i=0; i<row.length; i++) {
+                assertEquals(t.getA(i), c.getA(i), 0);
+                assertEquals(t.getStdDev(i), c.getStdDev(i), 1e-12);
+            }
+        }
+    }
+
+    @Test
+    public void testSemiDeviationSteadyLine() {
+        // alternating around a steady line, the values below stay below
+        OlsColumns t = new OlsColumns(1, 4, 8);
+        t.approximateSemiDeviation = true;
+        t.reset();
+        double[] row = new double[1];
+        for (int k=0; k<50; k++) {
+            row[0] = k + (k % 2 == 0 ? -1 : 1);
+            t.add(row);
+        }
+        OlsCell cell = new OlsCell(4, 8);
+        cell.reset();
+        for (int k=0; k<50; k++) cell.add(k + (k % 2 == 0 ? -1 : 1));
+        assertEquals(cell.getStdDev(), t.getStdDev(0), 1e-12);
+    }
+
+    @Test
+    public void testNotReady() {
+        OlsColumns t = new OlsColumns(2, 4, 8);
+        t.reset();
+        t.add(new double[] {1, 2});
+        assertFalse(t.isReady());
+        assertEquals(0, t.predictNext(1), 0);
+        assertEquals(2, t.last(1), 0);
+    }
+}
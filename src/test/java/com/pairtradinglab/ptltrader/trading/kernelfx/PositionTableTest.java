@@ -0,0 +1,191 @@
+/**
+ * 	This file is part of PTL Trader.
+ *
+ * 	Copyright © 2011-2021 Quantverse OÜ. All Rights Reserved.
+ *
+ *  PTL Trader is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  PTL Trader is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with PTL Trader. If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.pairtradinglab.ptltrader.trading.kernelfx;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+
+import static org.junit.Assert.*;
+
+public class PositionTableTest {
+    private PositionTable t;
+    private final double[] scores = new double[3];
+
+    @Before
+    public void setUp() throws Exception {
+        t = new PositionTable();
+        t.setSize(4);
+        t.open(0, 1, 2, PositionTable.DIR_LONG, PositionTable.INV_NONE, 864000, 0.5, PositionTable.PEC_GE, 0.001, 24, 16);
+        t.open(0, 3, 0, PositionTable.DIR_SHORT, PositionTable.INV_NONE, 864000, -0.5, PositionTable.PEC_LE, 0.001, 24, 16);
+    }
+
+    @Test
+    public void testUpdate() {
+        assertFalse(t.isOpen(0));
+        assertTrue(t.isOpen(1));
+        assertTrue(t.isOpen(3));
+
+        t.update(24.5, 16.5, scores, 864000);
+        assertEquals(PositionTable.ST_NONE, t.getState(0));
+        assertEquals(1, t.getReturn(0), 0);
+        assertEquals(PositionTable.ST_OPEN, t.getState(1));
+        assertEquals(0.99379166666666663, t.getReturn(1), 0.0000000001);
+        assertEquals(PositionTable.ST_OPEN, t.getState(3));
+        assertEquals(1.0042083333333334, t.getReturn(3), 0.0000000001);
+
+        // target score of the long position
+        scores[2] = 0.5001;
+        t.update(24.5, 16.5, scores, 864000);
+        assertEquals(PositionTable.ST_CLOSED, t.getState(1));
+        assertFalse(t.isOpen(1));
+        assertEquals(PositionTable.ST_OPEN, t.getState(3));
+
+        // time stop of the short position
+        t.update(23.5, 15.5, scores, 950400);
+        assertEquals(PositionTable.ST_NONE, t.getState(1));
+        assertEquals(PositionTable.ST_TIMEOUT, t.getState(3));
+        assertFalse(t.isOpen(3));
+    }
+
+    @Test
+    public void testLongPos() {
+        assertEquals(PositionTable.DIR_LONG, t.getDir1(1));
+        assertEquals(PositionTable.DIR_SHORT, t.getDir2(1));
+        // should not close the position
+        t.update(24.5, 16.5, scores, 864000);
+        assertEquals(PositionTable.ST_OPEN, t.getState(1));
+        assertEquals(0.99379166666666663, t.getReturn(1), 0.0000000001);
+        scores[2] = 0.4999;
+        t.update(24.5, 16.5, scores, 864000);
+        assertEquals(PositionTable.ST_OPEN, t.getState(1));
+        assertEquals(1, t.getReturn(1), 0.001);
+        // should close the position because it has expired
+        scores[2] = 0;
+        t.update(24.5, 16.5, scores, 950400);
+        assertEquals(PositionTable.ST_TIMEOUT, t.getState(1));
+        assertFalse(t.isOpen(1));
+        assertEquals(0.99899375288247871, t.getReturn(1), 0.0000000001);
+        // closed
+        t.update(24.5, 16.5, scores, 864000);
+        assertEquals(PositionTable.ST_NONE, t.getState(1));
+        assertEquals(1, t.getReturn(1), 0);
+    }
+
+    @Test
+    public void testLongPos2() {
+        // should close position because of the score
+        scores[2] = 0.5001;
+        t.update(24.5, 16.5, scores, 864000);
+        assertEquals(PositionTable.ST_CLOSED, t.getState(1));
+        assertFalse(t.isOpen(1));
+        assertEquals(0.99279166666666663, t.getReturn(1), 0.0000000001);
+    }
+
+    @Test
+    public void testShortPos() {
+        assertEquals(PositionTable.DIR_SHORT, t.getDir1(3));
+        assertEquals(PositionTable.DIR_LONG, t.getDir2(3));
+        // should not close the position
+        t.update(24.5, 16.5, scores, 864000);
+        assertEquals(PositionTable.ST_OPEN, t.getState(3));
+        assertEquals(1.0042083333333334, t.getReturn(3), 0.0000000001);
+        scores[0] = -0.4999;
+        t.update(24.5, 16.5, scores, 864000);
+        assertEquals(PositionTable.ST_OPEN, t.getState(3));
+        assertEquals(1, t.getReturn(3), 0.001);
+        // should close the position because it has expired
+        scores[0] = 0;
+        t.update(23.5, 15.5, scores, 950400);
+        assertEquals(PositionTable.ST_TIMEOUT, t.getState(3));
+        assertFalse(t.isOpen(3));
+        assertEquals(0.9886311771295796, t.getReturn(3), 0.00000000001);
+        // closed
+        t.update(24.5, 16.5, scores, 864000);
+        assertEquals(PositionTable.ST_NONE, t.getState(3));
+        assertEquals(1, t.getReturn(3), 0);
+    }
+
+    @Test
+    public void testShortPos2() {
+        // should close position because of the score
+        scores[0] = -0.5001;
+        t.update(23.5, 15.5, scores, 864000);
+        assertEquals(PositionTable.ST_CLOSED, t.getState(3));
+        assertFalse(t.isOpen(3));
+        assertEquals(0.99279166666666663, t.getReturn(3), 0.0000000001);
+    }
+
+    @Test
+    public void testInversion() {
+        t.open(0, 0, 1, PositionTable.DIR_LONG, PositionTable.INV_FIRST, 864000, 0.5, PositionTable.PEC_GE, 0, 24, 16);
+        assertEquals(PositionTable.DIR_SHORT, t.getDir1(0));
+        assertEquals(PositionTable.DIR_SHORT, t.getDir2(0));
+        t.open(0, 0, 1, PositionTable.DIR_LONG, PositionTable.INV_SECOND, 864000, 0.5, PositionTable.PEC_GE, 0, 24, 16);
+        assertEquals(PositionTable.DIR_LONG, t.getDir1(0));
+        assertEquals(PositionTable.DIR_LONG, t.getDir2(0));
+        t.open(0, 0, 1, PositionTable.DIR_SHORT, PositionTable.INV_FIRST, 864000, 0.5, PositionTable.PEC_GE, 0, 24, 16);
+        assertEquals(PositionTable.DIR_LONG, t.getDir1(0));
+        assertEquals(PositionTable.DIR_LONG, t.getDir2(0));
+        t.open(0, 0, 1, PositionTable.DIR_SHORT, PositionTable.INV_SECOND, 864000, 0.5, PositionTable.PEC_GE, 0, 24, 16);
+        assertEquals(PositionTable.DIR_SHORT, t.getDir1(0));
+        assertEquals(PositionTable.DIR_SHORT, t.getDir2(0));
+    }
+
+    @Test
+    public void testSpecial() {
+        t.open(0, 2, 1, PositionTable.DIR_LONG, PositionTable.INV_NONE, 8640000, 2, PositionTable.PEC_GE, 0.001, 10, 20);
+        scores[1] = 0.5001;
+        t.update(10.2, 20.1, scores, 864000);
+        assertEquals(PositionTable.ST_OPEN, t.getState(2));
+        assertEquals(1.0065, t.getReturn(2), 0.0001);
+        t.update(10.3, 19.7, scores, 864000);
+        assertEquals(PositionTable.ST_OPEN, t.getState(2));
+        assertEquals(1.0149031296572282, t.getReturn(2), 0.0000000001);
+        t.update(10.2, 19.2, scores, 864000);
+        assertEquals(PositionTable.ST_OPEN, t.getState(2));
+        assertEquals(1.0073421439060206, t.getReturn(2), 0.0000000001);
+        t.update(10.2, 19.8, scores, 864000);
+        assertEquals(PositionTable.ST_OPEN, t.getState(2));
+        assertEquals(0.98542274052478118, t.getReturn(2), 0.0000000001);
+    }
+
+    @Test
+    public void testWriteReadState() throws Exception {
+        t.update(24.5, 16.5, scores, 864000);
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        t.writeState(new DataOutputStream(bos));
+
+        PositionTable c = new PositionTable();
+        c.setSize(4);
+        c.readState(new DataInputStream(new ByteArrayInputStream(bos.toByteArray())), 3);
+        assertFalse(c.isOpen(0));
+        assertTrue(c.isOpen(1));
+        assertTrue(c.isOpen(3));
+
+        t.update(24.7, 16.2, scores, 864000);
+        c.update(24.7, 16.2, scores, 864000);
+        assertEquals(t.getReturn(1), c.getReturn(1), 0);
+        assertEquals(t.getReturn(3), c.getReturn(3), 0);
+    }
+}
@@ -20,6 +20,10 @@ package com.pairtradinglab.ptltrader.trading.kernelfx;
 
 import net.jcip.annotations.NotThreadSafe;
 
+/**
+ * Rolling mean and (semi-)deviation of a single series, computed by a pass over the window. The trackers use the columnar SharpeColumns; this is kept as its
+ * reference in the tests.
+ */
 @NotThreadSafe
 class SharpeCell extends MemoryCell {
     final int unstablePeriod;
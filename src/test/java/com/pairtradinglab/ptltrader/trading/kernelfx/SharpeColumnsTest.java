@@ -0,0 +1,171 @@
+/**
+ * 	This file is part of PTL Trader.
+ *
+ * 	Copyright © 2011-2021 Quantverse OÜ. All Rights Reserved.
+ *
+ *  PTL Trader is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  PTL Trader is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with PTL Trader. If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.pairtradinglab.ptltrader.trading.kernelfx;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class SharpeColumnsTest {
+
+    @Test
+    public void testInitialState() {
+        SharpeColumns t = new SharpeColumns(2, 4, 8);
+        t.reset();
+        assertEquals(0, t.size);
+        assertEquals(0, t.last(0), 0.000000001);
+        assertFalse(t.isReady());
+    }
+
+    @Test
+    public void testBasicFunctionality() {
+        SharpeColumns t = new SharpeColumns(2, 4, 8);
+        t.reset();
+        assertFalse(t.isReady());
+        assertEquals(0, t.last(0), 0.001);
+        assertEquals(1, t.add(new double[] {1, 1}));
+        assertEquals(1, t.last(0), 0.001);
+        assertEquals(2, t.add(new double[] {3, 1}));
+        assertEquals(3, t.add(new double[] {5, 1}));
+        assertFalse(t.isReady());
+        assertEquals(4, t.add(new double[] {7, 1}));
+        assertTrue(t.isReady());
+        assertEquals(5, t.add(new double[] {9, 1}));
+        assertEquals(6, t.add(new double[] {11, 1}));
+        assertEquals(7, t.add(new double[] {13, 1}));
+        assertTrue(t.isReady());
+        assertEquals(8, t.add(new double[] {15, 1}));
+        assertTrue(t.isReady());
+        assertEquals(8, t.getMean(0), 0.001);
+        assertEquals(3.2403703492039302, t.getStdDev(0), 0.00000001);
+        assertEquals(1, t.getMean(1), 0.001);
+        assertEquals(0, t.getStdDev(1), 0.00000001);
+        assertEquals(8, t.add(new double[] {17.2, 1}));
+        assertTrue(t.isReady());
+        assertEquals(10.025, t.getMean(0), 0.001);
+        assertEquals(3.255812110672236, t.getStdDev(0), 0.00000001);
+
+        assertEquals(8, t.add(new double[] {25, 1}));
+        assertTrue(t.isReady());
+        assertEquals(3.7283122857400239, t.getStdDev(0), 0.00000001);
+
+        assertEquals(25, t.last(0), 0.001);
+
+        assertEquals(8, t.size);
+    }
+
+    @Test
+    public void testBasicFunctionalityPeriod9() {
+        SharpeColumns x = new SharpeColumns(1, 4, 9);
+        x.reset();
+        assertFalse(x.isReady());
+        assertEquals(0, x.last(0), 0.001);
+        assertEquals(1, x.add(new double[] {1}));
+        assertEquals(1, x.last(0), 0.001);
+        assertEquals(2, x.add(new double[] {3}));
+        assertEquals(3, x.add(new double[] {5}));
+        assertFalse(x.isReady());
+        assertEquals(4, x.add(new double[] {7}));
+        assertTrue(x.isReady());
+        assertEquals(5, x.add(new double[] {9}));
+        assertEquals(6, x.add(new double[] {11}));
+        assertEquals(7, x.add(new double[] {13}));
+        assertTrue(x.isReady());
+        assertEquals(8, x.add(new double[] {15}));
+        assertTrue(x.isReady());
+        assertEquals(9, x.add(new double[] {17}));
+        assertTrue(x.isReady());
+        assertEquals(9, x.getMean(0), 0.001);
+        assertEquals(3.6514837167011076, x.getStdDev(0), 0.00000001);
+        assertEquals(10, x.add(new double[] {19}));
+        assertTrue(x.isReady());
+        assertEquals(11, x.getMean(0), 0.001);
+        assertEquals(3.6514837167011076, x.getStdDev(0), 0.00000001);
+    }
+
+    @Test
+    public void testMatchesCells() throws Exception {
+        for (boolean ignore : new boolean[] {true, false}) {
+            SharpeColumns t = new SharpeColumns(4, 20, 60);
+            t.ignorePositiveDeviation = ignore;
+            t.reset();
+            SharpeCell[] cells = new SharpeCell[4];
+            for (int i=0; i<cells.length; i++) {
+                cells[i] = new SharpeCell(20, 60);
+                cells[i].ignorePositiveDeviation = ignore;
+                cells[i].reset();
+            }
+            Random r = new Random(9);
+            double[] row = new double[4];
+            for (int k=0; k<300; k++) {
+                for (int i=0; i<row.length; i++) {
+                    row[i] = k % 40 == 39 ? t.last(i) : 0.0002*i + 0.01*r.nextGaussian();
+                    cells[i].add(row[i]);
+                }
+                t.add(row);
+                assertEquals(cells[0].isReady(), t.isReady());
+                for (int i=0; i<row.length; i++) {
+                    assertEquals(cells[i].getMean(), t.getMean(i), 0);
+                    assertEquals(cells[i].getStdDev(), t.getStdDev(i), 1e-12);
+                }
+            }
+
+            ByteArrayOutputStream bos = new ByteArrayOutputStream();
+            t.writeState(new DataOutputStream(bos));
+            SharpeColumns c = new SharpeColumns(4, 20, 60);
+            c.ignorePositiveDeviation = ignore;
+            c.readState(new DataInputStream(new ByteArrayInputStream(bos.toByteArray())));
+            for (int k=0; k<100; k++) {
+                for (int i=0; i<row.length; i++) row[i] = 0.01*r.nextGaussian();
+                t.add(row);
+                c.add(row);
+                for (int i=0; i<row.length; i++) {
+                    assertEquals(t.getMean(i), c.getMean(i), 0);
+                    assertEquals(t.getStdDev(i), c.getStdDev(i), 1e-12);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testNaN() {
+        SharpeColumns t = new SharpeColumns(2, 4, 8);
+        t.reset();
+        SharpeCell cell = new SharpeCell(4, 8);
+        cell.reset();
+        for (int k=0; k<30; k++) {
+            double v = k == 10 ? Double.NaN : 0.01*(k % 5) - 0.02;
+            t.add(new double[] {v, 0.01*(k % 3)});
+            cell.add(v);
+            // the NaN leaves the window without failing, the results follow the window pass
+            assertEquals(cell.getMean(), t.getMean(0), 0);
+            assertEquals(cell.getStdDev(), t.getStdDev(0), 1e-12);
+        }
+        assertTrue(Double.isNaN(t.getMean(0)));
+        assertEquals(0.01, t.getMean(1), 0.002);
+    }
+}
@@ -20,6 +20,10 @@ package com.pairtradinglab.ptltrader.trading.kernelfx;
 
 import net.jcip.annotations.NotThreadSafe;
 
+/**
+ * Rolling sum of a single series. The trackers use the columnar SumColumns; this is kept as its
+ * reference in the tests.
+ */
 @NotThreadSafe
 class SimpleCell extends MemoryCell {
     final int period;
@@ -79,36 +79,49 @@ public class SimpleStrategyTest {
     @Test
     public void testCreateLongPosition() {
         t.exitThreshold = -0.5;
+        PositionTable positions = new PositionTable();
+        positions.setSize(1000);
 
-        PairPosition q = t.getNewPosition(SimpleStrategy.SIGLONG, 0, 999, 100, 50, 86400, 0);
-        assertNotNull(q);
-        assertEquals(PairPosition.DIR_LONG, q.direction);
-        assertEquals(PairPosition.DIR_LONG, q.getDir1());
-        assertEquals(PairPosition.DIR_SHORT, q.getDir2());
-        assertEquals(86400 + 20 * 86400, q.expires);
-        assertEquals(11, q.modelId);
-        assertEquals(999, q.stratId);
-        assertEquals(PairPosition.PEC_GE, q.condition);
-        assertEquals(100, q.openP1, 0.001);
-        assertEquals(50, q.openP2, 0.001);
-        assertEquals(0.5, q.targetScore, 0.001);
+        t.openPosition(positions, SimpleStrategy.SIGLONG, 0, 999, 100, 50, 86400, 0);
+        assertTrue(positions.isOpen(999));
+        assertEquals(PositionTable.DIR_LONG, positions.getDirection(999));
+        assertEquals(PositionTable.DIR_LONG, positions.getDir1(999));
+        assertEquals(PositionTable.DIR_SHORT, positions.getDir2(999));
+        assertEquals(86400 + 20 * 86400, positions.getExpires(999));
+        assertEquals(11, positions.getModelId(999));
+        assertEquals(PositionTable.PEC_GE, positions.getCondition(999));
+        assertEquals(0.5, positions.getTargetScore(999), 0.001);
+        // opened at 100 and 50 (no fee)
+        double[] scores = new double[12];
+        positions.update(100, 50, scores, 86400);
+        assertEquals(1, positions.getReturn(999), 0);
     }
 
     @Test
     public void testCreateShortPosition() {
         t.exitThreshold = -0.5;
+        PositionTable positions = new PositionTable();
+        positions.setSize(1000);
 
-        PairPosition q = t.getNewPosition(SimpleStrategy.SIGSHORT, 0, 999, 100, 50, 86400, 0);
-        assertNotNull(q);
-        assertEquals(PairPosition.DIR_SHORT, q.direction);
-        assertEquals(PairPosition.DIR_SHORT, q.getDir1());
-        assertEquals(PairPosition.DIR_LONG, q.getDir2());
-        assertEquals(86400 + 20 * 86400, q.expires);
-        assertEquals(11, q.modelId);
-        assertEquals(999, q.stratId);
-        assertEquals(PairPosition.PEC_LE, q.condition);
-        assertEquals(100, q.openP1, 0.001);
-        assertEquals(50, q.openP2, 0.001);
-        assertEquals(-0.5, q.targetScore, 0.001);
+        t.openPosition(positions, SimpleStrategy.SIGSHORT, 0, 999, 100, 50, 86400, 0);
+        assertTrue(positions.isOpen(999));
+        assertEquals(PositionTable.DIR_SHORT, positions.getDirection(999));
+        assertEquals(PositionTable.DIR_SHORT, positions.getDir1(999));
+        assertEquals(PositionTable.DIR_LONG, positions.getDir2(999));
+        assertEquals(86400 + 20 * 86400, positions.getExpires(999));
+        assertEquals(11, positions.getModelId(999));
+        assertEquals(PositionTable.PEC_LE, positions.getCondition(999));
+        assertEquals(-0.5, positions.getTargetScore(999), 0.001);
+        double[] scores = new double[12];
+        positions.update(100, 50, scores, 86400);
+        assertEquals(1, positions.getReturn(999), 0);
+    }
+
+    @Test
+    public void testNoSignal() {
+        PositionTable positions = new PositionTable();
+        positions.setSize(1);
+        t.openPosition(positions, SimpleStrategy.SIGNONE, 0, 0, 100, 50, 86400, 0);
+        assertFalse(positions.isOpen(0));
     }
 }
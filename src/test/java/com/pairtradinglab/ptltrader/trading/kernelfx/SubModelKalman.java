@@ -19,17 +19,23 @@
 package com.pairtradinglab.ptltrader.trading.kernelfx;
 
 import net.jcip.annotations.NotThreadSafe;
-import org.ejml.simple.SimpleMatrix;
 
+/**
+ * Two-state Kalman filter (hedge ratio and intercept) with the 2x2 algebra written out
+ * in scalars. The operations are ordered the same way as the former EJML matrix code
+ * so the results are bit-comparable with it. Reference implementation of one filter of
+ * the {@link KalmanBank}.
+ */
 @NotThreadSafe
 class SubModelKalman extends AbstractSubModel {
 
     double delta = 0.0001; // transition covariance
     double Ve = 0.001; // observation covariance
-    private SimpleMatrix Vw = SimpleMatrix.identity(2); // matrix 2x2
-    private SimpleMatrix beta = new SimpleMatrix(1, 2); // vactor / matrix 1x2
-    private SimpleMatrix P = new SimpleMatrix(2, 2);
-    private SimpleMatrix R = null;
+    private double vw = 1; // diagonal of the transition covariance matrix Vw
+    private double beta0, beta1; // state vector
+    private double P00, P01, P10, P11; // state covariance
+    private double R00, R01, R10, R11; // predicted state covariance
+    private boolean hasR = false;
     private double e, sq; // spread and stddev coming from Kalman calculations
     private double uncompB0;
     private double uncompB1;
@@ -42,39 +48,58 @@ class SubModelKalman extends AbstractSubModel {
         return sq;
     }
 
-    SimpleMatrix getBetaVector() {
-        return beta;
+    double getBeta0() {
+        return beta0;
+    }
+
+    double getBeta1() {
+        return beta1;
     }
 
     public boolean update(double p1, double p2) {
-        TransformedPrices t = applyTransformation(p1, p2);
-        SimpleMatrix X = new SimpleMatrix(1, 2, true, t.p1, 1.0);
-        // x = np.asarray([data[context.ewa].price, 1.0]).reshape((1, 2))
-
-        // update Kalman filter with latest price
-        // R = matrix 2x2
-        if (R!=null) {
-            R = P.plus(Vw);
+        // observation vector X = [x, 1]
+        double x = transformP1(p1);
+        double y = transformP2(p2);
+
+        // R = P + Vw
+        if (hasR) {
+            R00 = P00 + vw;
+            R01 = P01;
+            R10 = P10;
+            R11 = P11 + vw;
         } else {
-            R = new SimpleMatrix(2, 2);
+            R00 = 0;
+            R01 = 0;
+            R10 = 0;
+            R11 = 0;
+            hasR = true;
         }
 
-        double yhat = X.dot(beta);
+        double yhat = x*beta0 + beta1;
 
         // beta before compensation
-        uncompB0 = beta.get(0, 0);
-        uncompB1 = beta.get(0, 1);
+        uncompB0 = beta0;
+        uncompB1 = beta1;
 
-        double q = X.mult(R).dot(X.transpose()) + Ve;
+        // XR = X * R
+        double xr0 = x*R00 + R10;
+        double xr1 = x*R01 + R11;
+        double q = (xr0*x + xr1) + Ve;
         sq = Math.sqrt(q);
-        e = yhat - t.p2;
+        e = yhat - y;
 
-        SimpleMatrix K = R.mult(X.transpose()).divide(q);
+        // K = R * X' / q
+        double k0 = (R00*x + R01) / q;
+        double k1 = (R10*x + R11) / q;
 
         // ORIG: context.beta = context.beta + K.flatten() * -e
-        beta = beta.plus(new SimpleMatrix(1, 2, true, K.get(0), K.get(1)).scale(-e));
+        beta0 = beta0 + k0*(-e);
+        beta1 = beta1 + k1*(-e);
         // ontext.P = context.R - K * x.dot(context.R)
-        P = R.minus(K.mult(X.mult(R)));
+        P00 = R00 - k0*xr0;
+        P01 = R01 - k0*xr1;
+        P10 = R10 - k1*xr0;
+        P11 = R11 - k1*xr1;
         pos++;
         return true;
     }
@@ -84,11 +109,10 @@ class SubModelKalman extends AbstractSubModel {
     }
 
     public double evaluate(double p1, double p2) {
-        if (R==null) return 0;
-        TransformedPrices t = applyTransformation(p1, p2);
-        double yhat = t.p1*uncompB0 + uncompB1;
+        if (!hasR) return 0;
+        double yhat = transformP1(p1)*uncompB0 + uncompB1;
 
-        double spread = yhat - t.p2;
+        double spread = yhat - transformP2(p2);
         return spread/sq;
     }
 
@@ -101,10 +125,14 @@ class SubModelKalman extends AbstractSubModel {
         uncompB0 = 0;
         uncompB1 = 0;
 
-        P.zero();
-        beta.zero();
-        Vw = SimpleMatrix.identity(2).scale(delta / (1 - delta));
-        R = null;
+        P00 = 0;
+        P01 = 0;
+        P10 = 0;
+        P11 = 0;
+        beta0 = 0;
+        beta1 = 0;
+        vw = delta / (1 - delta);
+        hasR = false;
     }
 
     public int getLookback() {
@@ -117,7 +145,7 @@ class SubModelKalman extends AbstractSubModel {
     }
 
     public double getBeta() {
-        return beta.get(0, 1);
+        return beta1;
     }
 
     public double getUncompB0() {
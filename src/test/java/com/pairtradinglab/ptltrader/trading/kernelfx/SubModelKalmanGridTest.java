@@ -21,6 +21,8 @@ package com.pairtradinglab.ptltrader.trading.kernelfx;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.util.concurrent.ForkJoinPool;
+
 import static org.junit.Assert.*;
 
 public class SubModelKalmanGridTest {
@@ -67,4 +69,49 @@ public class SubModelKalmanGridTest {
         assertEquals(e/sq, t.evaluate(p1, p2), 0.00000000000000001);
         assertEquals(e/sq, t.evaluate(p1, p2), 0.00000000000000001); // test again (should be the same to make sure it does not update)
     }
+
+    @Test
+    public void testParallelReplay() {
+        int n = 300;
+        double[] p1 = new double[n];
+        double[] p2 = new double[n];
+        for (int i=0; i<n; i++) {
+            p1[i] = 10+0.02*i+0.2*Math.sin(2*i);
+            p2[i] = 5+0.01*i+0.1*Math.cos(2.1*i);
+        }
+
+        SubModelKalmanGrid par = new SubModelKalmanGrid();
+        par.setTrackingUseTradeCount(true);
+        par.init();
+        SubModelKalmanGrid seq = new SubModelKalmanGrid();
+        seq.setTrackingUseTradeCount(true);
+        seq.init();
+
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            // split the history in uneven parts to cross block boundaries
+            par.replay(p1, p2, 0, 1, pool);
+            par.replay(p1, p2, 1, 150, pool);
+            par.replay(p1, p2, 150, n, pool);
+        } finally {
+            pool.shutdown();
+        }
+        seq.replay(p1, p2, 0, n, null);
+
+        assertTrue(seq.isReady());
+        assertTrue(seq.getIsValid());
+        assertEquals(seq.getPos(), par.getPos());
+        assertEquals(seq.getIsValid(), par.getIsValid());
+        // must be bit-identical, not just close
+        assertEquals(seq.getBeta(), par.getBeta(), 0);
+        assertEquals(seq.getAlpha(), par.getAlpha(), 0);
+        assertEquals(seq.getSq(), par.getSq(), 0);
+        assertEquals(seq.getE(), par.getE(), 0);
+        assertEquals(seq.evaluate(p1[n-1], p2[n-1]), par.evaluate(p1[n-1], p2[n-1]), 0);
+
+        seq.update(11, 5.4);
+        par.update(11, 5.4);
+        assertEquals(seq.getBeta(), par.getBeta(), 0);
+        assertEquals(seq.getSq(), par.getSq(), 0);
+    }
 }
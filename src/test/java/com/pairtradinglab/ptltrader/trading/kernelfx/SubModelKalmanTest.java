@@ -19,7 +19,6 @@
 package com.pairtradinglab.ptltrader.trading.kernelfx;
 import static org.junit.Assert.*;
 
-import org.ejml.simple.SimpleMatrix;
 import org.junit.Before;
 import org.junit.Test;
 
@@ -54,9 +53,8 @@ public class SubModelKalmanTest {
         }
         assertTrue(t.isReady());
         assertEquals(i, t.getPos());
-        SimpleMatrix b = t.getBetaVector();
-        assertEquals(0.490806423362324, b.get(0, 0), 0.00000001);
-        assertEquals(0.051850568750981339, b.get(0, 1), 0.00000001);
+        assertEquals(0.490806423362324, t.getBeta0(), 0.00000001);
+        assertEquals(0.051850568750981339, t.getBeta1(), 0.00000001);
 
         double e = t.getE();
         assertEquals(0.27710924803989823, e, 0.00000001);
@@ -80,9 +78,8 @@ public class SubModelKalmanTest {
         }
         assertTrue(t.isReady());
         assertEquals(i, t.getPos());
-        SimpleMatrix b = t.getBetaVector();
-        assertEquals(0.094660770322177498, b.get(0, 0), 0.00000001);
-        assertEquals(0.0011495341693955664, b.get(0, 1), 0.00000001);
+        assertEquals(0.094660770322177498, t.getBeta0(), 0.00000001);
+        assertEquals(0.0011495341693955664, t.getBeta1(), 0.00000001);
 
         double e = t.getE();
         assertEquals(-0.16939220772354258, e, 0.00000001);
@@ -0,0 +1,135 @@
+/**
+ * 	This file is part of PTL Trader.
+ *
+ * 	Copyright © 2011-2021 Quantverse OÜ. All Rights Reserved.
+ *
+ *  PTL Trader is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  PTL Trader is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with PTL Trader. If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.pairtradinglab.ptltrader.trading.kernelfx;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+public class SumColumnsTest {
+
+    @Test
+    public void testInitialState() {
+        SumColumns t = new SumColumns(1, 8);
+        t.reset();
+        assertEquals(0, t.size);
+        assertEquals(0, t.last(0), 0.000000001);
+        assertEquals(0, t.getSum(0), 0.000000001);
+    }
+
+    @Test
+    public void testBasicFunctionality() {
+        SumColumns t = new SumColumns(1, 8);
+        t.reset();
+        assertEquals(0, t.last(0), 0.001);
+        assertEquals(1, t.add(new double[] {1}));
+        assertEquals(1, t.last(0), 0.001);
+        assertEquals(2, t.add(new double[] {3}));
+        assertEquals(3, t.add(new double[] {5}));
+        assertEquals(4, t.add(new double[] {7}));
+        assertEquals(5, t.add(new double[] {9}));
+        assertEquals(6, t.add(new double[] {11}));
+        assertEquals(7, t.add(new double[] {13}));
+        assertEquals(8, t.add(new double[] {15}));
+        assertEquals(64, t.getSum(0), 0.001);
+        assertEquals(8, t.add(new double[] {17.2}));
+        assertEquals(80.2, t.getSum(0), 0.001);
+
+        assertEquals(8, t.add(new double[] {25}));
+
+        assertEquals(25, t.last(0), 0.001);
+
+        assertEquals(8, t.size);
+    }
+
+    @Test
+    public void testBasicFunctionalityPeriod9() {
+        SumColumns x = new SumColumns(1, 9);
+        x.reset();
+        assertEquals(0, x.last(0), 0.001);
+        assertEquals(1, x.add(new double[] {1}));
+        assertEquals(1, x.last(0), 0.001);
+        assertEquals(2, x.add(new double[] {3}));
+        assertEquals(3, x.add(new double[] {5}));
+        assertEquals(4, x.add(new double[] {7}));
+        assertEquals(5, x.add(new double[] {9}));
+        assertEquals(6, x.add(new double[] {11}));
+        assertEquals(7, x.add(new double[] {13}));
+        assertEquals(8, x.add(new double[] {15}));
+        assertEquals(64, x.getSum(0), 0.001);
+        assertEquals(9, x.add(new double[] {17}));
+        assertEquals(81, x.getSum(0), 0.001);
+
+        assertEquals(10, x.add(new double[] {19}));
+        assertEquals(99, x.getSum(0), 0.001);
+    }
+
+    @Test
+    public void testRing() {
+        ColumnRing t = new ColumnRing(1, (short) 3);
+        for (int k=1; k<=8; k++) assertEquals(k, t.add(new double[] {1}));
+        assertEquals(8, t.add(new double[] {-2}));
+        assertEquals(-2, t.last(0), 0.0001);
+
+        assertEquals(8, t.size);
+        double sum = 0;
+        for (double v : t.x) sum += v;
+        assertEquals(5, sum, 0.0000001);
+    }
+
+    @Test
+    public void testMatchesCells() throws Exception {
+        SumColumns t = new SumColumns(5, 10);
+        t.reset();
+        SimpleCell[] cells = new SimpleCell[5];
+        for (int i=0; i<cells.length; i++) {
+            cells[i] = new SimpleCell(10);
+            cells[i].reset();
+        }
+        Random r = new Random(3);
+        double[] row = new double[5];
+        for (int k=0; k<40; k++) {
+            for (int i=0; i<row.length; i++) {
+                row[i] = r.nextInt(3);
+                cells[i].add(row[i]);
+            }
+            assertEquals(cells[0].size, t.add(row));
+            assertEquals(cells[0].getEffectiveSize(), t.getEffectiveSize());
+            for (int i=0; i<row.length; i++) {
+                assertEquals(cells[i].getSum(), t.getSum(i), 0);
+                assertEquals(cells[i].last(), t.last(i), 0);
+            }
+        }
+
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        t.writeState(new DataOutputStream(bos));
+        SumColumns c = new SumColumns(5, 10);
+        c.readState(new DataInputStream(new ByteArrayInputStream(bos.toByteArray())));
+        for (int i=0; i<row.length; i++) row[i] = i;
+        t.add(row);
+        c.add(row);
+        for (int i=0; i<row.length; i++) assertEquals(t.getSum(i), c.getSum(i), 0);
+    }
+}